@@ -33,9 +33,10 @@ public interface Stmt {
     }
 
     final class While implements Stmt {
+        public final Token keyword;
         public final Expr cond;
         public final Stmt body;
-        public While(Expr cond, Stmt body) { this.cond = cond; this.body = body; }
+        public While(Token keyword, Expr cond, Stmt body) { this.keyword = keyword; this.cond = cond; this.body = body; }
     }
 
     final class Return implements Stmt {
@@ -0,0 +1,142 @@
+package com.seed.bytecode;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+// Reads the binary .sbc that BinaryWriter writes back into a Module. A file is mapped rather
+// than read, and the header, checksum and every count and index are checked while decoding,
+// so a damaged file fails with an IllegalArgumentException instead of yielding a Module.
+// The code itself is checked by the Verifier, as for any other Module.
+public final class BinaryReader {
+    private static final Opcode[] OPS = Opcode.values();
+
+    private final ByteBuffer buf;
+
+    private BinaryReader(ByteBuffer buf) { this.buf = buf; }
+
+    // True if the file starts with the binary .sbc magic
+    public static boolean isBinary(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return Arrays.equals(in.readNBytes(BinaryWriter.MAGIC.length), BinaryWriter.MAGIC);
+        }
+    }
+
+    public static Module read(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            return read(ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()));
+        }
+    }
+
+    public static Module read(byte[] bytes) { return read(ByteBuffer.wrap(bytes)); }
+
+    public static Module read(ByteBuffer bytes) {
+        ByteBuffer b = bytes.slice().order(ByteOrder.LITTLE_ENDIAN);
+        if (b.remaining() < BinaryWriter.HEADER) throw bad("too short for a header");
+        byte[] magic = new byte[BinaryWriter.MAGIC.length];
+        b.get(magic);
+        if (!Arrays.equals(magic, BinaryWriter.MAGIC)) throw bad("not a binary module");
+        int version = b.getShort() & 0xFFFF;
+        if (version != BinaryWriter.VERSION) throw bad("unsupported version " + version);
+        b.getShort();
+        long length = b.getInt() & 0xFFFFFFFFL;
+        int checksum = b.getInt();
+        if (length != b.remaining()) throw bad("payload is " + b.remaining() + " bytes, header says " + length);
+        CRC32 crc = new CRC32();
+        crc.update(b.duplicate());
+        if ((int) crc.getValue() != checksum) throw bad("checksum mismatch");
+        return new BinaryReader(b).module();
+    }
+
+    private Module module() {
+        String[] strings = new String[count()];
+        for (int i = 0; i < strings.length; i++) {
+            byte[] s = new byte[count()];
+            buf.get(s);
+            strings[i] = new String(s, StandardCharsets.UTF_8);
+        }
+        Module m = new Module();
+        int nconsts = count();
+        for (int i = 0; i < nconsts; i++) {
+            Object c = switch (u8()) {
+                case Module.INT -> {
+                    long v = svar();
+                    if (v != (int) v) throw bad("constant " + i + " out of int range");
+                    yield (int) v;
+                }
+                case Module.BOOL -> u8() != 0;
+                case Module.NIL -> null;
+                default -> throw bad("constant " + i + " has an unknown tag");
+            };
+            if (m.addConst(c) != i) throw bad("constant " + i + " repeats an earlier one");
+        }
+        int nfuncs = count();
+        for (int fi = 0; fi < nfuncs; fi++) {
+            int name = index();
+            if (name >= strings.length) throw bad("function " + fi + " names string " + name);
+            Function f = new Function(strings[name], index(), index());
+            int n = count();
+            for (int pc = 0; pc < n; pc++) {
+                int op = u8();
+                if (op >= OPS.length) throw bad(f.name + ":" + pc + ": unknown opcode " + op);
+                int k = BinaryWriter.operands(OPS[op]);
+                int a = k > 0 ? operand() : 0, bb = k > 1 ? operand() : 0, c = k > 2 ? operand() : 0;
+                f.code.add(new Instr(OPS[op], a, bb, c));
+            }
+            m.addFunction(f);
+        }
+        if (buf.hasRemaining()) throw bad(buf.remaining() + " bytes after the last function");
+        return m;
+    }
+
+    private int u8() {
+        if (!buf.hasRemaining()) throw bad("truncated");
+        return buf.get() & 0xFF;
+    }
+
+    private long uvar() {
+        long v = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = u8();
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return v;
+        }
+        throw bad("varint too long");
+    }
+
+    private long svar() {
+        long v = uvar();
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    // A number of bytes or items to follow; every item takes at least a byte
+    private int count() {
+        long v = uvar();
+        if (v < 0 || v > buf.remaining()) throw bad("count " + v + " exceeds the " + buf.remaining() + " bytes left");
+        return (int) v;
+    }
+
+    private int index() {
+        long v = uvar();
+        if (v < 0 || v > Integer.MAX_VALUE) throw bad("index " + v + " out of range");
+        return (int) v;
+    }
+
+    private int operand() {
+        long v = svar();
+        if (v != (int) v) throw bad("operand out of int range");
+        return (int) v;
+    }
+
+    private static IllegalArgumentException bad(String why) {
+        return new IllegalArgumentException("Bad binary .sbc: " + why);
+    }
+}
@@ -0,0 +1,116 @@
+package com.seed.bytecode;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+// Binary .sbc, for loading without parsing text (BinaryReader here, binary_loader.cpp in seedvm).
+// A 16-byte header, then the payload:
+//   header:  "SBC" 0, u16 version, u16 reserved (0), u32 payload length, u32 CRC-32 of the payload
+//   strings: count, then per string its UTF-8 length and bytes (function names)
+//   consts:  count, then per constant a tag byte (Module.INT/BOOL/NIL) and, for ints, the value
+//            and for bools one 0/1 byte
+//   funcs:   count, then per function its name (string index), arity, nlocals, instruction count
+//            and per instruction an opcode byte followed by its operands (see operands())
+// Fixed-size fields are little-endian; counts and operands are LEB128 varints, signed ones
+// (ints and operands) zigzag-encoded first. The opcode byte is the Opcode's ordinal, which
+// seed::bc::Op mirrors, so reordering Opcode means a new VERSION.
+public final class BinaryWriter {
+    public static final byte[] MAGIC = { 'S', 'B', 'C', 0 };
+    public static final int VERSION = 1;
+    static final int HEADER = 16;
+
+    private BinaryWriter() {}
+
+    public static byte[] write(Module m) {
+        Out strings = new Out();
+        List<String> names = new ArrayList<>();
+        Map<String, Integer> nameIndex = new HashMap<>();
+        Out body = new Out();
+        body.uvar(m.constCount());
+        for (int i = 0; i < m.constCount(); i++) {
+            byte tag = m.constTag(i);
+            body.write(tag);
+            if (tag == Module.INT) body.svar(m.constValue(i));
+            else if (tag == Module.BOOL) body.write(m.constValue(i) != 0 ? 1 : 0);
+        }
+        body.uvar(m.funcs.size());
+        for (Function f : m.funcs) {
+            Integer k = nameIndex.get(f.name);
+            if (k == null) {
+                k = names.size();
+                names.add(f.name);
+                nameIndex.put(f.name, k);
+            }
+            body.uvar(k);
+            body.uvar(f.arity);
+            body.uvar(f.nlocals);
+            body.uvar(f.code.size());
+            for (Instr in : f.code) {
+                body.write(in.op.ordinal());
+                int n = operands(in.op);
+                if (n > 0) body.svar(in.a);
+                if (n > 1) body.svar(in.b);
+                if (n > 2) body.svar(in.c);
+            }
+        }
+        strings.uvar(names.size());
+        for (String s : names) {
+            byte[] b = s.getBytes(StandardCharsets.UTF_8);
+            strings.uvar(b.length);
+            strings.write(b, 0, b.length);
+        }
+
+        int length = strings.size() + body.size();
+        CRC32 crc = new CRC32();
+        crc.update(strings.bytes(), 0, strings.size());
+        crc.update(body.bytes(), 0, body.size());
+        Out out = new Out();
+        out.write(MAGIC, 0, MAGIC.length);
+        out.u16(VERSION);
+        out.u16(0);
+        out.u32(length);
+        out.u32((int) crc.getValue());
+        out.write(strings.bytes(), 0, strings.size());
+        out.write(body.bytes(), 0, body.size());
+        return out.toByteArray();
+    }
+
+    // Operands an instruction carries in the file, as in the text format: ENTER's is dropped
+    static int operands(Opcode op) {
+        return switch (op) {
+            case CONST, LOAD, STORE, JMP, JMP_IF_FALSE -> 1;
+            case CALL, TAIL_CALL, LOAD_LOAD_ADD -> 2;
+            case LOAD_CONST_ADD_STORE, LOAD_CONST_LT_JMP_IF_FALSE, LOAD_LOAD_LT_JMP_IF_FALSE -> 3;
+            default -> 0;
+        };
+    }
+
+    private static final class Out extends ByteArrayOutputStream {
+        byte[] bytes() { return buf; }
+
+        void uvar(long v) {
+            while ((v & ~0x7FL) != 0) {
+                write((int) (v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            write((int) v);
+        }
+
+        void svar(long v) { uvar((v << 1) ^ (v >> 63)); }
+
+        void u16(int v) {
+            write(v);
+            write(v >>> 8);
+        }
+
+        void u32(int v) {
+            u16(v);
+            u16(v >>> 16);
+        }
+    }
+}
@@ -3,6 +3,9 @@ package com.seed.bytecode;
 import com.seed.ast.Expr;
 import com.seed.ast.Stmt;
 import com.seed.lexer.Token;
+import com.seed.lexer.TokenType;
+import com.seed.sema.Resolver;
+import com.seed.sema.Symbol;
 
 import java.util.*;
 
@@ -19,6 +22,27 @@ public final class Compiler {
     }
 
     private final Deque<FuncCtx> stack = new ArrayDeque<>();
+    private int inlineBudget = 0;
+    private final List<String> inlined = new ArrayList<>();
+    private Resolver types;
+
+    // Calls to leaf functions of at most this many instructions are replaced by their body
+    // (see Inliner); 0, the default, inlines nothing
+    public void setInlineBudget(int budget) {
+        if (budget < 0) throw new IllegalArgumentException("inline budget must not be negative");
+        this.inlineBudget = budget;
+    }
+
+    // The call sites the last compile inlined, as "caller:pc callee"
+    public List<String> inlined() { return inlined; }
+
+    // Types from a Resolver that resolved the program about to be compiled: where they prove
+    // the operands int (bool for !), compile() emits IADD, ILT, BNOT and the like instead of
+    // the generic opcodes. Ignored if that resolve reported diagnostics. The typed code relies
+    // on functions with parameters being entered only by CALL and TAIL_CALL.
+    public void setTypes(Resolver resolver) {
+        this.types = resolver.diagnostics().isEmpty() ? resolver : null;
+    }
 
     public Module compile(List<Stmt> program) {
         // Predeclare functions (name and arity) to allow direct calls
@@ -54,6 +78,8 @@ public final class Compiler {
             emit(RET);
             pop();
         }
+        if (inlineBudget > 0) inlined.addAll(Inliner.run(mod, inlineBudget));
+        for (Function f : mod.funcs) SlotAllocator.allocate(f);
         return mod;
     }
 
@@ -96,22 +122,20 @@ public final class Compiler {
             return;
         }
         if (s instanceof Stmt.Block b) {
-            // Simple approach: locals remain allocated (no stack frame shrinking here)
+            // A name keeps its slot after the block; SlotAllocator shares slots by liveness
             for (Stmt st : b.stmts) stmt(st);
             return;
         }
         if (s instanceof Stmt.If iff) {
-            expr(iff.cond);
-            int jmpFalseAt = cur().fn.code.size();
-            emit(JMP_IF_FALSE, 0); // patch later
+            List<Integer> toElse = new ArrayList<>();
+            branch(iff.cond, false, toElse);
             stmt(iff.thenBranch);
             int jmpEndAt = -1;
             if (iff.elseBranch != null) {
                 jmpEndAt = cur().fn.code.size();
                 emit(JMP, 0);
             }
-            // patch jmpFalse
-            patchRel(jmpFalseAt, cur().fn.code.size() - (jmpFalseAt + 1));
+            patchHere(toElse);
             if (iff.elseBranch != null) {
                 stmt(iff.elseBranch);
                 patchRel(jmpEndAt, cur().fn.code.size() - (jmpEndAt + 1));
@@ -120,16 +144,22 @@ public final class Compiler {
         }
         if (s instanceof Stmt.While w) {
             int loopStart = cur().fn.code.size();
-            expr(w.cond);
-            int jmpOutAt = cur().fn.code.size();
-            emit(JMP_IF_FALSE, 0);
+            List<Integer> toExit = new ArrayList<>();
+            branch(w.cond, false, toExit);
             stmt(w.body);
             int back = loopStart - (cur().fn.code.size() + 1);
             emit(JMP, back);
-            patchRel(jmpOutAt, cur().fn.code.size() - (jmpOutAt + 1));
+            patchHere(toExit);
             return;
         }
         if (s instanceof Stmt.Return r) {
+            // return f(...): the callee's result is ours, so it can take over this frame
+            Expr value = r.value;
+            while (value instanceof Expr.Grouping g) value = g.expr;
+            if (value instanceof Expr.Call c) {
+                call(c, TAIL_CALL);
+                return;
+            }
             if (r.value != null) expr(r.value); else emit(CONST, addConst(null));
             emit(LEAVE);
             emit(RET);
@@ -147,6 +177,40 @@ public final class Compiler {
         cur().fn.code.set(at, new Instr(old.op, rel, old.b));
     }
 
+    // Points the jumps at the given pcs to the next instruction
+    private void patchHere(List<Integer> jumps) {
+        for (int at : jumps) patchRel(at, cur().fn.code.size() - (at + 1));
+    }
+
+    // Code that jumps when the truthiness of e is `when` and falls through otherwise; the jumps
+    // to patch are added to `jumps`. && and || only evaluate their right side when the left does
+    // not decide, and ! flips the sense instead of computing a value.
+    private void branch(Expr e, boolean when, List<Integer> jumps) {
+        while (e instanceof Expr.Grouping g) e = g.expr;
+        if (e instanceof Expr.Unary u && u.op.type == TokenType.BANG) {
+            branch(u.right, !when, jumps);
+            return;
+        }
+        if (e instanceof Expr.Binary b && (b.op.type == TokenType.AND_AND || b.op.type == TokenType.OR_OR)) {
+            // a && b is false as soon as a is, a || b true as soon as a is
+            boolean decides = b.op.type == TokenType.OR_OR;
+            if (decides == when) {
+                branch(b.left, when, jumps);
+                branch(b.right, when, jumps);
+            } else {
+                List<Integer> skip = new ArrayList<>();
+                branch(b.left, decides, skip);
+                branch(b.right, when, jumps);
+                patchHere(skip);
+            }
+            return;
+        }
+        expr(e);
+        if (when) emit(is(e, Symbol.Type.BOOL) ? BNOT : NOT);
+        jumps.add(cur().fn.code.size());
+        emit(JMP_IF_FALSE, 0);
+    }
+
     // Expressions
     private void expr(Expr e) {
         if (e instanceof Expr.Literal l) {
@@ -166,36 +230,41 @@ public final class Compiler {
             return;
         }
         if (e instanceof Expr.Unary u) {
-            expr(u.right);
             switch (u.op.type) {
-                case BANG -> emit(NOT);
-                case MINUS -> { int z = addConst(0); emit(CONST, z); emit(SUB); } // 0 - x
+                case BANG -> { expr(u.right); emit(is(u.right, Symbol.Type.BOOL) ? BNOT : NOT); }
+                case MINUS -> { int z = addConst(0); emit(CONST, z); expr(u.right); emit(is(u.right, Symbol.Type.INT) ? ISUB : SUB); } // 0 - x
                 default -> throw new RuntimeException("Unsupported unary: " + u.op.lexeme);
             }
             return;
         }
         if (e instanceof Expr.Binary b) {
+            if (b.op.type == TokenType.AND_AND || b.op.type == TokenType.OR_OR) {
+                // The bool of the operands' truthiness, as in the Interpreter
+                List<Integer> toFalse = new ArrayList<>();
+                branch(b, false, toFalse);
+                emit(CONST, addConst(true));
+                int jmpEndAt = cur().fn.code.size();
+                emit(JMP, 0);
+                patchHere(toFalse);
+                emit(CONST, addConst(false));
+                patchRel(jmpEndAt, cur().fn.code.size() - (jmpEndAt + 1));
+                return;
+            }
             expr(b.left);
             expr(b.right);
+            boolean ints = is(b.left, Symbol.Type.INT) && is(b.right, Symbol.Type.INT);
             switch (b.op.type) {
-                case PLUS -> emit(ADD);
-                case MINUS -> emit(SUB);
-                case STAR -> emit(MUL);
-                case SLASH -> emit(DIV);
+                case PLUS -> emit(ints ? IADD : ADD);
+                case MINUS -> emit(ints ? ISUB : SUB);
+                case STAR -> emit(ints ? IMUL : MUL);
+                case SLASH -> emit(ints ? IDIV : DIV);
                 
-                case EQUAL_EQUAL -> emit(EQ);
-                case BANG_EQUAL -> emit(NE);
-                case LESS -> emit(LT);
-                case LESS_EQUAL -> emit(LE);
-                case GREATER -> emit(GT);
-                case GREATER_EQUAL -> emit(GE);
-                case OR_OR -> { // a || b  => (a) dup; jmp_if_false eval_b; pop; load true
-                    // For bytecode simplicity, compute a || b as: (a) (b) OR at runtime via truthiness in VM (not implemented yet).
-                    // Here we just leave both evaluated and not emit special op; interpreter/VM to define truthiness later.
-                    // Placeholder: emit NEQ against zero? keep EQ/NE for ints only.
-                    // Keep as-is: no extra op; would require VM semantics.
-                }
-                case AND_AND -> { /* same note as above */ }
+                case EQUAL_EQUAL -> emit(ints ? IEQ : EQ);
+                case BANG_EQUAL -> emit(ints ? INE : NE);
+                case LESS -> emit(ints ? ILT : LT);
+                case LESS_EQUAL -> emit(ints ? ILE : LE);
+                case GREATER -> emit(ints ? IGT : GT);
+                case GREATER_EQUAL -> emit(ints ? IGE : GE);
                 default -> throw new RuntimeException("Unsupported binary: " + b.op.lexeme);
             }
             return;
@@ -205,18 +274,27 @@ public final class Compiler {
             return;
         }
         if (e instanceof Expr.Call c) {
-            // Direct calls only: callee must be a Variable
-            if (c.callee instanceof Expr.Variable v) {
-                int fidx = mod.findFunctionByName(v.name.lexeme);
-                if (fidx < 0) throw new RuntimeException("Unknown function '" + v.name.lexeme + "'");
-                for (Expr a : c.args) expr(a);
-                emit2(CALL, fidx, c.args.size());
-                return;
-            }
-            throw new RuntimeException("Only direct calls by name are supported in bytecode compiler");
+            call(c, CALL);
+            return;
         }
         throw new IllegalArgumentException("Unknown Expr: " + e.getClass());
     }
 
+    // CALL or TAIL_CALL (LEAVE first: a tail call ends this function's frame)
+    private void call(Expr.Call c, Opcode op) {
+        // Direct calls only: callee must be a Variable
+        if (c.callee instanceof Expr.Variable v) {
+            int fidx = mod.findFunctionByName(v.name.lexeme);
+            if (fidx < 0) throw new RuntimeException("Unknown function '" + v.name.lexeme + "'");
+            for (Expr a : c.args) expr(a);
+            if (op == TAIL_CALL) emit(LEAVE);
+            emit2(op, fidx, c.args.size());
+            return;
+        }
+        throw new RuntimeException("Only direct calls by name are supported in bytecode compiler");
+    }
+
+    private boolean is(Expr e, Symbol.Type t) { return types != null && types.typeOf(e) == t; }
+
     private int addConst(Object v) { return mod.addConst(v); }
 }
\ No newline at end of file
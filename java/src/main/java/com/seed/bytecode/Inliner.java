@@ -0,0 +1,207 @@
+package com.seed.bytecode;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import static com.seed.bytecode.Opcode.*;
+
+// Replaces calls to small functions with a copy of their body, for Compiler.setInlineBudget.
+// A callee qualifies if it makes no calls and prints nothing (so it is not recursive and its
+// only effect is its result), has at most `budget` instructions besides ENTER/LEAVE, and
+// returns with at most its result on the stack. Callers are done after their callees, so a
+// helper whose own calls were all inlined can then be inlined in turn.
+//
+// At a site the arguments are stored into slots past the caller's own locals (every site in
+// a caller shares them, as an inlined body never outlives its site), the callee's locals are
+// renumbered onto those slots, and each RET becomes a jump past the body. Callee locals that
+// may be read before they are written are reset to nil first, as a fresh frame would have
+// them. An inlined TAIL_CALL keeps the RETs, since the callee's result is the caller's.
+final class Inliner {
+    // Mutable instruction; for JMP and JMP_IF_FALSE, a is an absolute target, in the caller's
+    // old code if inCaller is set and in the new code otherwise
+    private static final class Node {
+        final Opcode op;
+        final int a, b;
+        final boolean inCaller;
+
+        Node(Opcode op, int a, int b, boolean inCaller) {
+            this.op = op;
+            this.a = a;
+            this.b = b;
+            this.inCaller = inCaller;
+        }
+    }
+
+    private final Module mod;
+    private final int budget;
+    private final List<String> sites = new ArrayList<>();
+    private final boolean[] done;
+
+    private Inliner(Module mod, int budget) {
+        this.mod = mod;
+        this.budget = budget;
+        this.done = new boolean[mod.funcs.size()];
+    }
+
+    // Inlines what qualifies in every function of m; returns the sites, as "caller:pc callee"
+    // with pc in the caller's code before inlining
+    static List<String> run(Module m, int budget) {
+        Inliner in = new Inliner(m, budget);
+        for (int i = 0; i < m.funcs.size(); i++) in.visit(i);
+        return in.sites;
+    }
+
+    private void visit(int fi) {
+        if (done[fi]) return;
+        done[fi] = true; // a call back into a function being visited is left alone
+        for (Instr in : mod.funcs.get(fi).code) {
+            if ((in.op == CALL || in.op == TAIL_CALL) && in.a >= 0 && in.a < done.length) visit(in.a);
+        }
+        inlineInto(mod.funcs.get(fi));
+    }
+
+    private boolean qualifies(Function caller, Instr call) {
+        if (call.a < 0 || call.a >= mod.funcs.size()) return false;
+        Function g = mod.funcs.get(call.a);
+        if (g == caller || call.b != g.arity) return false;
+        int size = 0;
+        for (Instr in : g.code) {
+            switch (in.op.generic()) {
+                case ENTER, LEAVE -> {}
+                case CONST, LOAD, STORE, ADD, SUB, MUL, DIV, EQ, NE, LT, LE, GT, GE, NOT, POP, DUP,
+                        JMP, JMP_IF_FALSE, RET -> size++;
+                default -> { return false; }
+            }
+        }
+        if (size > budget) return false;
+        int[] depth;
+        try {
+            depth = Verifier.stackDepths(g);
+        } catch (Verifier.VerificationError e) {
+            return false;
+        }
+        for (int pc = 0; pc < g.code.size(); pc++) {
+            if (g.code.get(pc).op == RET && depth[pc] > 1) return false;
+        }
+        return depth[g.code.size()] < 0;
+    }
+
+    private void inlineInto(Function f) {
+        List<Instr> code = f.code;
+        int base = f.nlocals;
+        List<Node> out = new ArrayList<>(code.size());
+        int[] at = new int[code.size() + 1];
+        boolean changed = false;
+        for (int pc = 0; pc < code.size(); pc++) {
+            at[pc] = out.size();
+            Instr in = code.get(pc);
+            if ((in.op == CALL || in.op == TAIL_CALL) && qualifies(f, in)) {
+                Function g = mod.funcs.get(in.a);
+                expand(g, base, in.op == TAIL_CALL, out);
+                f.nlocals = Math.max(f.nlocals, base + g.nlocals);
+                sites.add(f.name + ":" + pc + " " + g.name);
+                changed = true;
+                continue;
+            }
+            boolean jump = in.op == JMP || in.op == JMP_IF_FALSE;
+            out.add(new Node(in.op, jump ? pc + 1 + in.a : in.a, in.b, true));
+        }
+        if (!changed) return;
+        at[code.size()] = out.size();
+        code.clear();
+        for (int i = 0; i < out.size(); i++) {
+            Node n = out.get(i);
+            if (n.op == JMP || n.op == JMP_IF_FALSE) {
+                int target = n.inCaller ? at[n.a] : n.a;
+                code.add(new Instr(n.op, target - (i + 1)));
+            } else {
+                code.add(new Instr(n.op, n.a, n.b));
+            }
+        }
+    }
+
+    // Appends g's body, with the arguments on the stack and its result left there
+    private void expand(Function g, int base, boolean tail, List<Node> out) {
+        for (int i = g.arity - 1; i >= 0; i--) out.add(new Node(STORE, base + i, 0, false));
+        BitSet reset = readBeforeWrite(g);
+        for (int s = reset.nextSetBit(0); s >= 0; s = reset.nextSetBit(s + 1)) {
+            out.add(new Node(CONST, mod.addConst(null), 0, false));
+            out.add(new Node(STORE, base + s, 0, false));
+        }
+        List<Instr> body = g.code;
+        int[] depth = Verifier.stackDepths(g);
+        int[] pos = new int[body.size() + 1];
+        int p = out.size();
+        for (int pc = 0; pc < body.size(); pc++) {
+            pos[pc] = p;
+            Opcode op = body.get(pc).op;
+            if (op == RET && !tail && depth[pc] == 0) p += 2;
+            else if (op != ENTER && op != LEAVE) p++;
+        }
+        pos[body.size()] = p;
+        for (int pc = 0; pc < body.size(); pc++) {
+            Instr in = body.get(pc);
+            switch (in.op) {
+                case ENTER, LEAVE -> {}
+                case RET -> {
+                    if (tail) {
+                        out.add(new Node(RET, 0, 0, false));
+                    } else {
+                        // A RET with nothing on the stack returns nil
+                        if (depth[pc] == 0) out.add(new Node(CONST, mod.addConst(null), 0, false));
+                        out.add(new Node(JMP, p, 0, false));
+                    }
+                }
+                case LOAD, STORE -> out.add(new Node(in.op, base + in.a, 0, false));
+                case JMP, JMP_IF_FALSE -> out.add(new Node(in.op, pos[pc + 1 + in.a], 0, false));
+                default -> out.add(new Node(in.op, in.a, in.b, false));
+            }
+        }
+    }
+
+    // Non-parameter locals that some path may LOAD before any STORE to them
+    private static BitSet readBeforeWrite(Function g) {
+        List<Instr> code = g.code;
+        int n = code.size();
+        BitSet[] stored = new BitSet[n + 1];
+        stored[0] = new BitSet();
+        stored[0].set(0, g.arity);
+        int[] work = new int[n + 1];
+        boolean[] queued = new boolean[n + 1];
+        int top = 0;
+        work[top++] = 0;
+        queued[0] = true;
+        while (top > 0) {
+            int pc = work[--top];
+            queued[pc] = false;
+            if (pc == n) continue;
+            Instr in = code.get(pc);
+            BitSet after = (BitSet) stored[pc].clone();
+            if (in.op == STORE) after.set(in.a);
+            int[] succ = switch (in.op) {
+                case RET -> new int[0];
+                case JMP -> new int[] { pc + 1 + in.a };
+                case JMP_IF_FALSE -> new int[] { pc + 1, pc + 1 + in.a };
+                default -> new int[] { pc + 1 };
+            };
+            for (int s : succ) {
+                BitSet old = stored[s];
+                BitSet meet = old == null ? after : (BitSet) old.clone();
+                if (old != null) meet.and(after);
+                if (meet.equals(old)) continue;
+                stored[s] = meet;
+                if (!queued[s]) {
+                    queued[s] = true;
+                    work[top++] = s;
+                }
+            }
+        }
+        BitSet reset = new BitSet();
+        for (int pc = 0; pc < n; pc++) {
+            Instr in = code.get(pc);
+            if (in.op == LOAD && stored[pc] != null && !stored[pc].get(in.a)) reset.set(in.a);
+        }
+        return reset;
+    }
+}
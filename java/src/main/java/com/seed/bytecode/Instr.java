@@ -4,16 +4,26 @@ public final class Instr {
     public final Opcode op;
     public final int a;
     public final int b;
+    public final int c;
 
     public Instr(Opcode op) { this(op, 0, 0); }
     public Instr(Opcode op, int a) { this(op, a, 0); }
-    public Instr(Opcode op, int a, int b) { this.op = op; this.a = a; this.b = b; }
+    public Instr(Opcode op, int a, int b) { this(op, a, b, 0); }
+    public Instr(Opcode op, int a, int b, int c) { this.op = op; this.a = a; this.b = b; this.c = c; }
+
+    // Relative offset of a jump (see Opcode.isJump): the last operand
+    public int offset() {
+        return op == Opcode.JMP || op == Opcode.JMP_IF_FALSE ? a : c;
+    }
 
     @Override public String toString() {
         return switch (op) {
-            case ENTER, LEAVE, ADD, SUB, MUL, DIV, NOT, EQ, NE, LT, LE, GT, GE, POP, DUP, RET, PRINT -> op.name();
+            case ENTER, LEAVE, ADD, SUB, MUL, DIV, NOT, EQ, NE, LT, LE, GT, GE, POP, DUP, RET, PRINT,
+                    IADD, ISUB, IMUL, IDIV, BNOT, IEQ, INE, ILT, ILE, IGT, IGE -> op.name();
             case CONST, LOAD, STORE, JMP, JMP_IF_FALSE -> op.name() + " " + a;
-            case CALL -> op.name() + " " + a + " " + b; // funcIndex argc
+            case CALL, TAIL_CALL -> op.name() + " " + a + " " + b; // funcIndex argc
+            case LOAD_LOAD_ADD -> op.name() + " " + a + " " + b;
+            case LOAD_CONST_ADD_STORE, LOAD_CONST_LT_JMP_IF_FALSE, LOAD_LOAD_LT_JMP_IF_FALSE -> op.name() + " " + a + " " + b + " " + c;
         };
     }
 }
@@ -1,15 +1,63 @@
 package com.seed.bytecode;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public final class Module {
-    public final List<Object> consts = new ArrayList<>();
+    // Constant tags; ints are stored sign-extended in the value array, bools as 0/1, nil as 0
+    public static final byte INT = 0, BOOL = 1, NIL = 2;
+
     public final List<Function> funcs = new ArrayList<>();
 
+    // Interned constant pool: each distinct (tag, value) pair is stored once
+    private long[] kval = new long[8];
+    private byte[] ktag = new byte[8];
+    private int nconsts;
+    private final Map<Long, Integer> constIndex = new HashMap<>();
+
+    // Index of the constant for an Integer, Boolean or null literal
     public int addConst(Object o) {
-        consts.add(o);
-        return consts.size() - 1;
+        if (o == null) return intern(NIL, 0);
+        if (o instanceof Integer i) return intern(INT, i);
+        if (o instanceof Boolean b) return intern(BOOL, b ? 1 : 0);
+        throw new IllegalArgumentException("Unsupported constant: " + o);
+    }
+
+    private int intern(byte tag, int value) {
+        long key = ((long) tag << 32) | (value & 0xFFFFFFFFL);
+        Integer k = constIndex.get(key);
+        if (k != null) return k;
+        if (nconsts == kval.length) {
+            kval = Arrays.copyOf(kval, nconsts * 2);
+            ktag = Arrays.copyOf(ktag, nconsts * 2);
+        }
+        kval[nconsts] = value;
+        ktag[nconsts] = tag;
+        constIndex.put(key, nconsts);
+        return nconsts++;
+    }
+
+    public int constCount() { return nconsts; }
+
+    public byte constTag(int i) { return ktag[checkConst(i)]; }
+
+    public long constValue(int i) { return kval[checkConst(i)]; }
+
+    // The constant as the Integer, Boolean or null it was added as
+    public Object constant(int i) {
+        return switch (constTag(i)) {
+            case INT -> (int) kval[i];
+            case BOOL -> kval[i] != 0;
+            default -> null;
+        };
+    }
+
+    private int checkConst(int i) {
+        if (i < 0 || i >= nconsts) throw new IndexOutOfBoundsException("Constant " + i + " out of range");
+        return i;
     }
 
     public int addFunction(Function f) {
@@ -31,4 +79,11 @@ public final class Module {
         }
         return -1;
     }
+
+    // Whether any function uses typed opcodes, whose operand types the Verifier proved only
+    // for code entered through functions without parameters
+    public boolean hasTypedOps() {
+        for (Function f : funcs) for (Instr in : f.code) if (in.op.isTyped()) return true;
+        return false;
+    }
 }
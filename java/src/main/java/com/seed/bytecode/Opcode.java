@@ -18,7 +18,44 @@ public enum Opcode {
     JMP_IF_FALSE,  // JMP_IF_FALSE relOffset
     // Calls and return
     CALL,      // CALL funcIndex argc
+    TAIL_CALL, // TAIL_CALL funcIndex argc (replaces the current frame; only operands are the args)
     RET,       // RET
     // IO / runtime
-    PRINT      // PRINT (pops one)
+    PRINT,     // PRINT (pops one)
+    // Typed forms of ADD..DIV, NOT and EQ..GE, which the Compiler selects where the Resolver
+    // proved the operands int (bool for BNOT); the Verifier checks that they are, so a backend
+    // may skip the tag checks
+    IADD, ISUB, IMUL, IDIV,
+    BNOT,
+    IEQ, INE, ILT, ILE, IGT, IGE,
+    // Superinstructions, selected by bytecode.opt.Superinstructions; each does the work of the
+    // sequence it is named after (kIndex must be an int constant)
+    LOAD_LOAD_ADD,               // LOAD_LOAD_ADD localA localB
+    LOAD_CONST_ADD_STORE,        // LOAD_CONST_ADD_STORE localSrc kIndex localDst
+    LOAD_CONST_LT_JMP_IF_FALSE,  // LOAD_CONST_LT_JMP_IF_FALSE local kIndex relOffset
+    LOAD_LOAD_LT_JMP_IF_FALSE;   // LOAD_LOAD_LT_JMP_IF_FALSE localA localB relOffset
+
+    // The untyped opcode a typed one specializes; the opcode itself otherwise
+    public Opcode generic() {
+        return switch (this) {
+            case IADD -> ADD;
+            case ISUB -> SUB;
+            case IMUL -> MUL;
+            case IDIV -> DIV;
+            case BNOT -> NOT;
+            case IEQ -> EQ;
+            case INE -> NE;
+            case ILT -> LT;
+            case ILE -> LE;
+            case IGT -> GT;
+            case IGE -> GE;
+            default -> this;
+        };
+    }
+
+    public boolean isTyped() { return generic() != this; }
+
+    public boolean isJump() {
+        return this == JMP || this == JMP_IF_FALSE || this == LOAD_CONST_LT_JMP_IF_FALSE || this == LOAD_LOAD_LT_JMP_IF_FALSE;
+    }
 }
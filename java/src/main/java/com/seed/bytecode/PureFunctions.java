@@ -0,0 +1,35 @@
+package com.seed.bytecode;
+
+import java.util.Arrays;
+
+import static com.seed.bytecode.Opcode.*;
+
+// Functions whose result depends only on their arguments: no PRINT and calls only to other
+// pure functions. Bytecode functions cannot read another frame, so that is all it takes.
+// (The AST-level counterpart is sema.Purity.)
+public final class PureFunctions {
+    private PureFunctions() {}
+
+    public static boolean[] of(Module m) {
+        int n = m.funcs.size();
+        boolean[] pure = new boolean[n];
+        Arrays.fill(pure, true);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = 0; i < n; i++) {
+                if (!pure[i]) continue;
+                for (Instr in : m.funcs.get(i).code) {
+                    boolean bad = in.op == PRINT
+                            || ((in.op == CALL || in.op == TAIL_CALL) && (in.a < 0 || in.a >= n || !pure[in.a]));
+                    if (bad) {
+                        pure[i] = false;
+                        changed = true;
+                        break;
+                    }
+                }
+            }
+        }
+        return pure;
+    }
+}
@@ -0,0 +1,103 @@
+package com.seed.bytecode;
+
+import java.util.BitSet;
+import java.util.List;
+
+import static com.seed.bytecode.Opcode.*;
+
+// Renumbers a function's locals so that variables which are never live at the same time share
+// a slot, and sets nlocals to the slots that takes. The Compiler gives every name one slot for
+// the whole function (a later let of a name assigns it), so a block's lets stay allocated after
+// the block; liveness over the code recovers that reuse and more. Parameters keep the slots
+// the caller fills. A local that some path reads before writing is live from the entry, so
+// nothing else writes its slot first and it still reads nil, as in a fresh frame.
+final class SlotAllocator {
+    private SlotAllocator() {}
+
+    static void allocate(Function f) {
+        List<Instr> code = f.code;
+        int n = code.size();
+        int nvars = f.nlocals;
+        for (int pc = 0; pc < n; pc++) {
+            Instr in = code.get(pc);
+            switch (in.op) {
+                case LOAD, STORE -> { if (in.a < 0 || in.a >= nvars) return; }
+                case LOAD_LOAD_ADD, LOAD_CONST_ADD_STORE, LOAD_CONST_LT_JMP_IF_FALSE, LOAD_LOAD_LT_JMP_IF_FALSE -> { return; }
+                default -> {}
+            }
+        }
+
+        // Live-in set of each pc, to a fixed point
+        BitSet[] live = new BitSet[n + 1];
+        for (int pc = 0; pc <= n; pc++) live[pc] = new BitSet(nvars);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int pc = n - 1; pc >= 0; pc--) {
+                BitSet in = liveOut(code, live, pc);
+                Instr ins = code.get(pc);
+                if (ins.op == STORE) in.clear(ins.a);
+                if (ins.op == LOAD) in.set(ins.a);
+                if (!in.equals(live[pc])) {
+                    live[pc] = in;
+                    changed = true;
+                }
+            }
+        }
+
+        // A STORE interferes with everything live after it; the parameters, written on entry,
+        // with each other and with everything live at the start
+        BitSet[] adj = new BitSet[nvars];
+        for (int v = 0; v < nvars; v++) adj[v] = new BitSet(nvars);
+        for (int pc = 0; pc < n; pc++) {
+            Instr ins = code.get(pc);
+            if (ins.op == STORE) interfere(adj, ins.a, liveOut(code, live, pc));
+        }
+        BitSet entry = (BitSet) live[0].clone();
+        entry.set(0, f.arity);
+        for (int p = 0; p < f.arity; p++) interfere(adj, p, entry);
+
+        // Greedy, in slot order: each variable takes the lowest slot none of its neighbours has
+        int[] slot = new int[nvars];
+        for (int v = 0; v < nvars; v++) {
+            if (v < f.arity) {
+                slot[v] = v;
+                continue;
+            }
+            BitSet taken = new BitSet();
+            for (int u = adj[v].nextSetBit(0); u >= 0 && u < v; u = adj[v].nextSetBit(u + 1)) taken.set(slot[u]);
+            slot[v] = taken.nextClearBit(0);
+        }
+        int slots = f.arity;
+        for (int pc = 0; pc < n; pc++) {
+            Instr in = code.get(pc);
+            if (in.op != LOAD && in.op != STORE) continue;
+            code.set(pc, new Instr(in.op, slot[in.a]));
+            slots = Math.max(slots, slot[in.a] + 1);
+        }
+        f.nlocals = slots;
+    }
+
+    private static BitSet liveOut(List<Instr> code, BitSet[] live, int pc) {
+        Instr in = code.get(pc);
+        BitSet out = new BitSet();
+        switch (in.op) {
+            case RET, TAIL_CALL -> {}
+            case JMP -> out.or(live[pc + 1 + in.a]);
+            case JMP_IF_FALSE -> {
+                out.or(live[pc + 1]);
+                out.or(live[pc + 1 + in.a]);
+            }
+            default -> out.or(live[pc + 1]);
+        }
+        return out;
+    }
+
+    private static void interfere(BitSet[] adj, int v, BitSet with) {
+        for (int u = with.nextSetBit(0); u >= 0; u = with.nextSetBit(u + 1)) {
+            if (u == v) continue;
+            adj[v].set(u);
+            adj[u].set(v);
+        }
+    }
+}
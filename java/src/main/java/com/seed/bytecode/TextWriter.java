@@ -3,14 +3,15 @@ package com.seed.bytecode;
 import java.util.stream.Collectors;
 
 public final class TextWriter {
+    public static final String HEADER = "; Seed Bytecode (textual)";
+
     public static String write(Module m) {
         StringBuilder sb = new StringBuilder();
-        sb.append("; Seed Bytecode (textual)\n");
+        sb.append(HEADER).append("\n");
         // Consts
-        sb.append(".consts ").append(m.consts.size()).append("\n");
-        for (int i = 0; i < m.consts.size(); i++) {
-            Object c = m.consts.get(i);
-            sb.append("  ").append(i).append(": ").append(String.valueOf(c)).append("\n");
+        sb.append(".consts ").append(m.constCount()).append("\n");
+        for (int i = 0; i < m.constCount(); i++) {
+            sb.append("  ").append(i).append(": ").append(constText(m, i)).append("\n");
         }
         // Functions
         sb.append(".funcs ").append(m.funcs.size()).append("\n");
@@ -25,4 +26,13 @@ public final class TextWriter {
         }
         return sb.toString();
     }
+
+    // Ints as digits, bools as true/false, nil as nil, which is also how the C++ loader tells them apart
+    private static String constText(Module m, int i) {
+        return switch (m.constTag(i)) {
+            case Module.INT -> Long.toString(m.constValue(i));
+            case Module.BOOL -> m.constValue(i) != 0 ? "true" : "false";
+            default -> "nil";
+        };
+    }
 }
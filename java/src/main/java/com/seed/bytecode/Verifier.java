@@ -1,8 +1,11 @@
 package com.seed.bytecode;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
+import static com.seed.bytecode.Opcode.*;
+
 public final class Verifier {
     public static final class Problem {
         public final String where;
@@ -15,27 +18,215 @@ public final class Verifier {
         List<Problem> probs = new ArrayList<>();
         for (int i = 0; i < m.funcs.size(); i++) {
             Function f = m.funcs.get(i);
+            int before = probs.size();
             // Minimal checks: CALL indices in range; JMP targets in range (approximate)
             for (int pc = 0; pc < f.code.size(); pc++) {
                 Instr ins = f.code.get(pc);
                 switch (ins.op) {
-                    case CALL -> {
+                    case CALL, TAIL_CALL -> {
                         if (ins.a < 0 || ins.a >= m.funcs.size()) {
-                            probs.add(new Problem(site(f, pc), "CALL funcIndex out of range"));
+                            probs.add(new Problem(site(f, pc), ins.op + " funcIndex out of range"));
                         }
                     }
-                    case JMP, JMP_IF_FALSE -> {
-                        int tgt = pc + 1 + ins.a;
+                    case JMP, JMP_IF_FALSE, LOAD_CONST_LT_JMP_IF_FALSE, LOAD_LOAD_LT_JMP_IF_FALSE -> {
+                        int tgt = pc + 1 + ins.offset();
                         if (tgt < 0 || tgt > f.code.size()) {
                             probs.add(new Problem(site(f, pc), "Jump target out of range"));
                         }
                     }
                     default -> {}
                 }
+                if ((ins.op == LOAD_CONST_ADD_STORE || ins.op == LOAD_CONST_LT_JMP_IF_FALSE)
+                        && (ins.b < 0 || ins.b >= m.constCount() || m.constTag(ins.b) != Module.INT)) {
+                    probs.add(new Problem(site(f, pc), ins.op + " needs an int constant"));
+                }
+            }
+            if (probs.size() == before) {
+                try {
+                    stackDepths(f);
+                } catch (VerificationError e) {
+                    probs.add(new Problem(e.where, e.getMessage()));
+                }
             }
         }
+        if (probs.isEmpty() && m.hasTypedOps()) checkTypes(m, probs);
         return probs;
     }
 
-    private String site(Function f, int pc) { return f.name + ":" + pc; }
+    // Value types for checking typed opcodes: the Module constant tags, ANY, and NONE for no
+    // value at all (as on a path nothing reaches)
+    private static final byte NONE = -1, ANY = 3;
+
+    // Typed opcodes must only ever see the operand types they assume. Only functions without
+    // parameters can be entered from outside, so a parameter's type is the join of what the
+    // CALLs and TAIL_CALLs of its function pass; that and the types of every function's locals
+    // and operands are found together, as a least fixed point. Locals other than the
+    // parameters start out nil.
+    private static void checkTypes(Module m, List<Problem> probs) {
+        int nf = m.funcs.size();
+        byte[][] params = new byte[nf][];
+        for (int i = 0; i < nf; i++) {
+            params[i] = new byte[m.funcs.get(i).arity];
+            Arrays.fill(params[i], NONE);
+        }
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = 0; i < nf; i++) changed |= types(m, i, params, null);
+        }
+        for (int i = 0; i < nf; i++) types(m, i, params, probs);
+    }
+
+    // Runs the type dataflow over function fi, joining the argument types of its calls into params;
+    // returns whether that changed any. With probs set, reports typed opcodes whose operands
+    // may have another type.
+    private static boolean types(Module m, int fi, byte[][] params, List<Problem> probs) {
+        Function f = m.funcs.get(fi);
+        List<Instr> code = f.code;
+        int n = code.size();
+        int nl = Math.max(f.nlocals, f.arity);
+        byte[][] state = new byte[n + 1][];
+        state[0] = new byte[nl];
+        Arrays.fill(state[0], Module.NIL);
+        System.arraycopy(params[fi], 0, state[0], 0, f.arity);
+        int[] work = new int[n + 1];
+        boolean[] queued = new boolean[n + 1];
+        int top = 0;
+        work[top++] = 0;
+        queued[0] = true;
+        boolean changed = false;
+        while (top > 0) {
+            int pc = work[--top];
+            queued[pc] = false;
+            if (pc == n) continue;
+            Instr in = code.get(pc);
+            byte[] t = Arrays.copyOf(state[pc], state[pc].length + 2);
+            int sp = state[pc].length;
+            if (probs != null && in.op.isTyped()) {
+                byte want = in.op == BNOT ? Module.BOOL : Module.INT;
+                boolean ok = (t[sp - 1] == want || t[sp - 1] == NONE)
+                        && (in.op == BNOT || t[sp - 2] == want || t[sp - 2] == NONE);
+                if (!ok) probs.add(new Problem(site(f, pc), in.op + (in.op == BNOT ? " needs a bool operand" : " needs int operands")));
+            }
+            switch (in.op.generic()) {
+                case CONST -> t[sp++] = in.a >= 0 && in.a < m.constCount() ? m.constTag(in.a) : ANY;
+                case LOAD -> t[sp++] = in.a >= 0 && in.a < nl ? t[in.a] : ANY;
+                case STORE -> {
+                    sp--;
+                    if (in.a >= 0 && in.a < nl) t[in.a] = t[sp];
+                }
+                case POP, JMP_IF_FALSE, PRINT -> sp--;
+                case DUP -> { t[sp] = t[sp - 1]; sp++; }
+                case ADD, SUB, MUL, DIV -> t[--sp - 1] = Module.INT;
+                case EQ, NE, LT, LE, GT, GE -> t[--sp - 1] = Module.BOOL;
+                case NOT -> t[sp - 1] = Module.BOOL;
+                case CALL, TAIL_CALL -> {
+                    sp -= in.b;
+                    byte[] p = params[in.a];
+                    if (p.length == in.b) {
+                        for (int i = 0; i < in.b; i++) {
+                            byte j = join(p[i], t[sp + i]);
+                            if (j != p[i]) { p[i] = j; changed = true; }
+                        }
+                    }
+                    if (in.op == CALL) t[sp++] = ANY;
+                }
+                case LOAD_LOAD_ADD -> t[sp++] = Module.INT;
+                case LOAD_CONST_ADD_STORE -> { if (in.c >= 0 && in.c < nl) t[in.c] = Module.INT; }
+                default -> {}
+            }
+            byte[] after = Arrays.copyOf(t, sp);
+            for (int s : successors(in, pc)) {
+                byte[] old = state[s];
+                byte[] merged = after;
+                if (old != null) {
+                    merged = old.clone();
+                    for (int i = 0; i < merged.length; i++) merged[i] = join(old[i], after[i]);
+                    if (Arrays.equals(merged, old)) continue;
+                }
+                state[s] = merged;
+                if (!queued[s]) {
+                    queued[s] = true;
+                    work[top++] = s;
+                }
+            }
+        }
+        return changed;
+    }
+
+    private static byte join(byte a, byte b) {
+        if (a == NONE) return b;
+        if (b == NONE || a == b) return a;
+        return ANY;
+    }
+
+    public static final class VerificationError extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        public final String where;
+        VerificationError(String where, String msg) { super(msg); this.where = where; }
+    }
+
+    // Operand stack depth before each pc (-1 = unreachable). Index code.size() is the
+    // fall-off-the-end point. Throws VerificationError on underflow, a jump out of range, or
+    // paths that reach the same pc with different depths.
+    public static int[] stackDepths(Function f) {
+        List<Instr> code = f.code;
+        int n = code.size();
+        int[] depth = new int[n + 1];
+        Arrays.fill(depth, -1);
+        int[] work = new int[n + 1];
+        int top = 0;
+        depth[0] = 0;
+        work[top++] = 0;
+        while (top > 0) {
+            int pc = work[--top];
+            if (pc == n) continue;
+            Instr in = code.get(pc);
+            int d = depth[pc];
+            if (d < pops(in)) throw new VerificationError(site(f, pc), "Stack underflow");
+            if (in.op == TAIL_CALL && d != in.b) {
+                throw new VerificationError(site(f, pc), "TAIL_CALL with operands below its arguments");
+            }
+            int after = d - pops(in) + pushes(in);
+            for (int s : successors(in, pc)) {
+                if (s < 0 || s > n) throw new VerificationError(site(f, pc), "Jump target out of range");
+                if (depth[s] < 0) {
+                    depth[s] = after;
+                    work[top++] = s;
+                } else if (depth[s] != after) {
+                    throw new VerificationError(site(f, s), "Inconsistent stack depth (" + depth[s] + " vs " + after + ")");
+                }
+            }
+        }
+        return depth;
+    }
+
+    private static int[] successors(Instr in, int pc) {
+        return switch (in.op) {
+            case RET, TAIL_CALL -> new int[0];
+            case JMP -> new int[] { pc + 1 + in.a };
+            case JMP_IF_FALSE, LOAD_CONST_LT_JMP_IF_FALSE, LOAD_LOAD_LT_JMP_IF_FALSE -> new int[] { pc + 1, pc + 1 + in.offset() };
+            default -> new int[] { pc + 1 };
+        };
+    }
+
+    public static int pops(Instr in) {
+        return switch (in.op.generic()) {
+            case STORE, POP, DUP, NOT, JMP_IF_FALSE, PRINT -> 1;
+            case ADD, SUB, MUL, DIV, EQ, NE, LT, LE, GT, GE -> 2;
+            case CALL, TAIL_CALL -> in.b;
+            default -> 0;
+        };
+    }
+
+    public static int pushes(Instr in) {
+        return switch (in.op.generic()) {
+            case CONST, LOAD, NOT, CALL, LOAD_LOAD_ADD -> 1;
+            case DUP -> 2;
+            case ADD, SUB, MUL, DIV, EQ, NE, LT, LE, GT, GE -> 1;
+            default -> 0;
+        };
+    }
+
+    private static String site(Function f, int pc) { return f.name + ":" + pc; }
 }
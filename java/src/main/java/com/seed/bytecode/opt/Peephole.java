@@ -0,0 +1,241 @@
+package com.seed.bytecode.opt;
+
+import com.seed.bytecode.Function;
+import com.seed.bytecode.Instr;
+import com.seed.bytecode.Module;
+import com.seed.bytecode.Opcode;
+import com.seed.bytecode.Verifier;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.seed.bytecode.Opcode.*;
+
+// Peephole optimizer over compiled bytecode, meant to run between Compiler.compile and
+// Verifier.verify. Each function is decoded to nodes with absolute jump targets, rewritten
+// until nothing applies, then re-encoded with relative offsets. The rewrites:
+//  - drop ENTER/LEAVE (no-ops in every backend) and jumps to the next instruction
+//  - fold CONST operands of arithmetic, comparisons, NOT (typed forms too) and JMP_IF_FALSE
+//  - thread jumps through JMP chains; a JMP to RET becomes RET
+//  - remove unreachable code
+//  - remove LOAD/CONST/DUP followed by POP and LOAD x; STORE x; turn STORE x; LOAD x into DUP; STORE x
+// A rewrite never covers a jump target past its first instruction, so every path into the
+// window still sees equivalent code. Folding skips anything that would fail or overflow at
+// run time, leaving the error (and the C++ VM's 64-bit arithmetic) to the backend.
+public final class Peephole {
+
+    public static final class Stats {
+        public final int before;
+        public final int after;
+
+        Stats(int before, int after) { this.before = before; this.after = after; }
+
+        @Override public String toString() {
+            return "peephole: " + before + " -> " + after + " instructions";
+        }
+    }
+
+    // Mutable instruction; for JMP and JMP_IF_FALSE, a is the absolute target index
+    private static final class Node {
+        Opcode op;
+        int a, b;
+
+        Node(Opcode op, int a, int b) { this.op = op; this.a = a; this.b = b; }
+    }
+
+    private Module mod;
+    private List<Node> code;
+
+    public Stats optimize(Module m) {
+        int before = 0, after = 0;
+        for (Function f : m.funcs) {
+            before += f.code.size();
+            optimize(m, f);
+            after += f.code.size();
+        }
+        return new Stats(before, after);
+    }
+
+    // Leaves f unchanged if it does not verify, so the Verifier reports the original code, or
+    // if superinstructions were already selected
+    public void optimize(Module m, Function f) {
+        for (Instr in : f.code) if (Superinstructions.fused(in.op)) return;
+        try {
+            Verifier.stackDepths(f);
+        } catch (Verifier.VerificationError e) {
+            return;
+        }
+        mod = m;
+        code = new ArrayList<>(f.code.size());
+        for (int pc = 0; pc < f.code.size(); pc++) {
+            Instr in = f.code.get(pc);
+            code.add(new Node(in.op, isJump(in.op) ? pc + 1 + in.a : in.a, in.b));
+        }
+        while (removeUnreachable() || rewriteOnce()) { }
+        f.code.clear();
+        for (int pc = 0; pc < code.size(); pc++) {
+            Node n = code.get(pc);
+            f.code.add(new Instr(n.op, isJump(n.op) ? n.a - (pc + 1) : n.a, n.b));
+        }
+    }
+
+    // Applies the first rewrite that matches, compacting the code if it removed anything
+    private boolean rewriteOnce() {
+        boolean[] target = targets();
+        int n = code.size();
+        for (int i = 0; i < n; i++) {
+            Node c0 = code.get(i);
+            Node c1 = i + 1 < n && !target[i + 1] ? code.get(i + 1) : null;
+            Node c2 = c1 != null && i + 2 < n && !target[i + 2] ? code.get(i + 2) : null;
+            switch (c0.op) {
+                case ENTER, LEAVE -> { remove(c0); return compact(); }
+                case JMP -> {
+                    if (c0.a == i + 1) { remove(c0); return compact(); }
+                    if (c0.a < n && code.get(c0.a).op == RET) { c0.op = RET; c0.a = 0; return true; }
+                    if (thread(c0)) return true;
+                }
+                case JMP_IF_FALSE -> { if (thread(c0)) return true; }
+                case CONST -> {
+                    if (c1 == null) break;
+                    if (c1.op == POP) { remove(c0); remove(c1); return compact(); }
+                    if (c1.op == NOT || c1.op == BNOT) {
+                        c0.a = mod.addConst(!truthy(c0.a));
+                        remove(c1);
+                        return compact();
+                    }
+                    if (c1.op == JMP_IF_FALSE) {
+                        if (truthy(c0.a)) remove(c0);
+                        else { c0.op = JMP; c0.a = c1.a; }
+                        remove(c1);
+                        return compact();
+                    }
+                    if (c1.op == CONST && c2 != null) {
+                        Object r = fold(c2.op, c0.a, c1.a);
+                        if (r != NO_FOLD) {
+                            c0.a = mod.addConst(r);
+                            remove(c1);
+                            remove(c2);
+                            return compact();
+                        }
+                    }
+                }
+                case LOAD, DUP -> {
+                    if (c1 == null) break;
+                    if (c1.op == POP || (c0.op == LOAD && c1.op == STORE && c1.a == c0.a)) {
+                        remove(c0);
+                        remove(c1);
+                        return compact();
+                    }
+                }
+                case STORE -> {
+                    if (c1 != null && c1.op == LOAD && c1.a == c0.a) {
+                        c1.op = STORE;
+                        c0.op = DUP;
+                        c0.a = 0;
+                        return true;
+                    }
+                }
+                default -> {}
+            }
+        }
+        return false;
+    }
+
+    // Points a jump at the end of the JMP chain it lands on
+    private boolean thread(Node jump) {
+        int t = jump.a;
+        for (int hops = 0; t < code.size() && code.get(t).op == JMP; hops++) {
+            if (hops == code.size()) return false; // a cycle of jumps, i.e. an empty infinite loop
+            t = code.get(t).a;
+        }
+        if (t == jump.a) return false;
+        jump.a = t;
+        return true;
+    }
+
+    private static final Object NO_FOLD = new Object();
+
+    // The constant a `op` b evaluates to, or NO_FOLD if it must be left to run time
+    private Object fold(Opcode op, int ka, int kb) {
+        op = op.generic();
+        byte ta = mod.constTag(ka), tb = mod.constTag(kb);
+        long a = mod.constValue(ka), b = mod.constValue(kb);
+        if (op == EQ || op == NE) {
+            if (ta != tb) return NO_FOLD;
+            return (a == b) == (op == EQ);
+        }
+        if (ta != Module.INT || tb != Module.INT) return NO_FOLD;
+        long r;
+        switch (op) {
+            case ADD -> r = a + b;
+            case SUB -> r = a - b;
+            case MUL -> r = a * b;
+            case DIV -> {
+                if (b == 0) return NO_FOLD;
+                r = a / b;
+            }
+            case LT -> { return a < b; }
+            case LE -> { return a <= b; }
+            case GT -> { return a > b; }
+            case GE -> { return a >= b; }
+            default -> { return NO_FOLD; }
+        }
+        return r == (int) r ? (Object) (int) r : NO_FOLD;
+    }
+
+    private boolean truthy(int k) {
+        return mod.constTag(k) != Module.NIL && mod.constValue(k) != 0;
+    }
+
+    private boolean removeUnreachable() {
+        int n = code.size();
+        boolean[] live = new boolean[n + 1];
+        int[] work = new int[n + 1];
+        int top = 0;
+        live[0] = true;
+        work[top++] = 0;
+        while (top > 0) {
+            int pc = work[--top];
+            if (pc >= n) continue;
+            Node in = code.get(pc);
+            int fall = in.op == JMP || in.op == RET || in.op == TAIL_CALL ? -1 : pc + 1;
+            int jump = isJump(in.op) ? in.a : -1;
+            for (int s : new int[] { fall, jump }) {
+                if (s >= 0 && s <= n && !live[s]) {
+                    live[s] = true;
+                    work[top++] = s;
+                }
+            }
+        }
+        boolean any = false;
+        for (int pc = 0; pc < n; pc++) {
+            if (!live[pc]) { remove(code.get(pc)); any = true; }
+        }
+        return any && compact();
+    }
+
+    private boolean[] targets() {
+        boolean[] t = new boolean[code.size() + 1];
+        for (Node n : code) if (isJump(n.op) && n.a >= 0 && n.a <= code.size()) t[n.a] = true;
+        return t;
+    }
+
+    private static void remove(Node n) { n.op = null; }
+
+    // Drops removed nodes; a jump to one now lands on the next instruction that is kept
+    private boolean compact() {
+        int n = code.size();
+        int[] map = new int[n + 1];
+        List<Node> kept = new ArrayList<>(n);
+        for (int pc = 0; pc < n; pc++) {
+            map[pc] = kept.size();
+            if (code.get(pc).op != null) kept.add(code.get(pc));
+        }
+        map[n] = kept.size();
+        for (Node in : kept) if (isJump(in.op)) in.a = map[in.a];
+        code = kept;
+        return true;
+    }
+
+    private static boolean isJump(Opcode op) { return op == JMP || op == JMP_IF_FALSE; }
+}
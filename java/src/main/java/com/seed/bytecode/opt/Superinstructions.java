@@ -0,0 +1,120 @@
+package com.seed.bytecode.opt;
+
+import com.seed.bytecode.Function;
+import com.seed.bytecode.Instr;
+import com.seed.bytecode.Module;
+import com.seed.bytecode.Opcode;
+import com.seed.bytecode.Verifier;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.seed.bytecode.Opcode.*;
+
+// Replaces the sequences that dominate loops with one fused instruction each, so the VMs
+// dispatch once where they used to dispatch three or four times:
+//  - LOAD a; LOAD b; ADD                        -> LOAD_LOAD_ADD a b
+//  - LOAD a; CONST k; ADD; STORE b              -> LOAD_CONST_ADD_STORE a k b
+//  - LOAD a; CONST k; ADD; DUP; STORE b         -> LOAD_CONST_ADD_STORE a k b; LOAD b
+//  - LOAD a; CONST k; LT; JMP_IF_FALSE t        -> LOAD_CONST_LT_JMP_IF_FALSE a k t
+//  - LOAD a; LOAD b; LT; JMP_IF_FALSE t         -> LOAD_LOAD_LT_JMP_IF_FALSE a b t
+// Meant to run last, after Peephole (which leaves fused code alone) and before
+// Verifier.verify. As there, a sequence is only fused when no jump lands inside it, and k
+// must be an int constant. IADD and ILT fuse like ADD and LT; the fused opcodes check tags.
+public final class Superinstructions {
+
+    public static final class Stats {
+        public final int before;
+        public final int after;
+
+        Stats(int before, int after) { this.before = before; this.after = after; }
+
+        @Override public String toString() {
+            return "superinstructions: " + before + " -> " + after + " instructions";
+        }
+    }
+
+    public Stats optimize(Module m) {
+        int before = 0, after = 0;
+        for (Function f : m.funcs) {
+            before += f.code.size();
+            optimize(m, f);
+            after += f.code.size();
+        }
+        return new Stats(before, after);
+    }
+
+    // Leaves f unchanged if it does not verify, so the Verifier reports the original code
+    public void optimize(Module m, Function f) {
+        try {
+            Verifier.stackDepths(f);
+        } catch (Verifier.VerificationError e) {
+            return;
+        }
+        List<Instr> code = f.code;
+        int n = code.size();
+        boolean[] target = new boolean[n + 1];
+        for (int pc = 0; pc < n; pc++) {
+            Instr in = code.get(pc);
+            if (in.op.isJump()) target[pc + 1 + in.offset()] = true;
+        }
+        // New index of each old pc (a fused-away pc is never a target); jumps keep their old
+        // absolute target in the offset operand until they are re-encoded below
+        int[] map = new int[n + 1];
+        List<Instr> out = new ArrayList<>(n);
+        for (int pc = 0; pc < n; ) {
+            int len = 1;
+            Instr fused = null;
+            Instr i0 = code.get(pc);
+            Instr i1 = at(code, pc + 1, target), i2 = at(code, pc + 2, target), i3 = at(code, pc + 3, target);
+            Instr i4 = at(code, pc + 4, target);
+            Instr reload = null;
+            if (i0.op == LOAD && i1 != null && i2 != null) {
+                boolean constInt = i1.op == CONST && i1.a >= 0 && i1.a < m.constCount() && m.constTag(i1.a) == Module.INT;
+                if ((constInt || i1.op == LOAD) && i2.op.generic() == LT && i3 != null && i3.op == JMP_IF_FALSE) {
+                    fused = new Instr(constInt ? LOAD_CONST_LT_JMP_IF_FALSE : LOAD_LOAD_LT_JMP_IF_FALSE, i0.a, i1.a, pc + 4 + i3.a);
+                    len = 4;
+                } else if (constInt && i2.op.generic() == ADD && i3 != null && i3.op == STORE) {
+                    fused = new Instr(LOAD_CONST_ADD_STORE, i0.a, i1.a, i3.a);
+                    len = 4;
+                } else if (constInt && i2.op.generic() == ADD && i3 != null && i3.op == DUP && i4 != null && i4.op == STORE) {
+                    // What Peephole makes of STORE b; LOAD b
+                    fused = new Instr(LOAD_CONST_ADD_STORE, i0.a, i1.a, i4.a);
+                    reload = new Instr(LOAD, i4.a);
+                    len = 5;
+                } else if (i1.op == LOAD && i2.op.generic() == ADD) {
+                    fused = new Instr(LOAD_LOAD_ADD, i0.a, i1.a);
+                    len = 3;
+                }
+            }
+            for (int k = 0; k < len; k++) map[pc + k] = out.size();
+            if (fused != null) {
+                out.add(fused);
+                if (reload != null) out.add(reload);
+            } else if (i0.op.isJump()) out.add(retarget(i0, pc + 1 + i0.offset()));
+            else out.add(i0);
+            pc += len;
+        }
+        map[n] = out.size();
+        for (int pc = 0; pc < out.size(); pc++) {
+            Instr in = out.get(pc);
+            if (in.op.isJump()) out.set(pc, retarget(in, map[in.offset()] - (pc + 1)));
+        }
+        code.clear();
+        code.addAll(out);
+    }
+
+    // The instruction at pc if it can be part of a fused sequence, i.e. exists and is not a jump target
+    private static Instr at(List<Instr> code, int pc, boolean[] target) {
+        return pc < code.size() && !target[pc] ? code.get(pc) : null;
+    }
+
+    private static Instr retarget(Instr in, int offset) {
+        return in.op == JMP || in.op == JMP_IF_FALSE ? new Instr(in.op, offset) : new Instr(in.op, in.a, in.b, offset);
+    }
+
+    // True for the opcodes this pass introduces
+    public static boolean fused(Opcode op) {
+        return op == LOAD_LOAD_ADD || op == LOAD_CONST_ADD_STORE || op == LOAD_CONST_LT_JMP_IF_FALSE || op == LOAD_LOAD_LT_JMP_IF_FALSE;
+    }
+}
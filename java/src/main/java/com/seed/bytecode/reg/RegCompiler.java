@@ -0,0 +1,260 @@
+package com.seed.bytecode.reg;
+
+import com.seed.ast.Expr;
+import com.seed.ast.Stmt;
+import com.seed.lexer.TokenType;
+
+import java.util.*;
+
+import static com.seed.bytecode.reg.RegOpcode.*;
+
+// Lowers the AST to register code, with the same scoping rules as the stack Compiler: locals
+// are frame registers keyed by name, parameters first. Temporaries sit above the locals and
+// are released at the end of each statement; a variable operand is read in place, so a + b
+// is one ADD where the stack code needs LOAD, LOAD, ADD.
+public final class RegCompiler {
+    private final RegModule mod = new RegModule();
+
+    private static final class FuncCtx {
+        final RegFunction fn;
+        final Map<String, Integer> locals = new HashMap<>();
+        int nextLocal = 0;
+        int top = 0; // first free temporary
+        FuncCtx(RegFunction fn) { this.fn = fn; }
+    }
+
+    private FuncCtx cur;
+
+    public RegModule compile(List<Stmt> program) {
+        List<Stmt.Fun> funs = new ArrayList<>();
+        for (Stmt s : program) if (s instanceof Stmt.Fun f) funs.add(f);
+        RegFunction main = new RegFunction("main", 0, 0);
+        mod.addFunction(main);
+        for (Stmt.Fun f : funs) mod.addFunction(new RegFunction(f.name.lexeme, f.params.size(), 0));
+        cur = new FuncCtx(main);
+        for (Stmt s : program) {
+            if (!(s instanceof Stmt.Fun)) stmt(s);
+        }
+        returnNil();
+        for (Stmt.Fun f : funs) {
+            cur = new FuncCtx(mod.funcs.get(mod.findFunctionByName(f.name.lexeme)));
+            for (var p : f.params) allocLocal(p.lexeme); // parameters occupy the first registers
+            for (Stmt st : f.body) stmt(st);
+            returnNil();
+        }
+        return mod;
+    }
+
+    private int allocLocal(String name) {
+        Integer idx = cur.locals.get(name);
+        if (idx != null) return idx;
+        int n = cur.nextLocal++;
+        cur.locals.put(name, n);
+        cur.fn.nregs = Math.max(cur.fn.nregs, cur.nextLocal);
+        return n;
+    }
+
+    private int temp() {
+        int r = cur.top++;
+        cur.fn.nregs = Math.max(cur.fn.nregs, cur.top);
+        return r;
+    }
+
+    private int emit(RegOpcode op, int a, int b, int c) {
+        cur.fn.code.add(new RegInstr(op, a, b, c));
+        return cur.fn.code.size() - 1;
+    }
+
+    private int emit(RegOpcode op, int a, int b) { return emit(op, a, b, 0); }
+
+    private int emit(RegOpcode op, int a) { return emit(op, a, 0, 0); }
+
+    // Points the jump at `at` to the next instruction to be emitted
+    private void patch(int at) {
+        RegInstr j = cur.fn.code.get(at);
+        int rel = cur.fn.code.size() - (at + 1);
+        cur.fn.code.set(at, j.op == JMP ? new RegInstr(JMP, rel) : new RegInstr(j.op, j.a, rel));
+    }
+
+    private void returnNil() {
+        cur.top = cur.nextLocal;
+        int r = temp();
+        emit(LOADK, r, mod.addConst(null));
+        emit(RET, r);
+    }
+
+    // Statements
+    private void stmt(Stmt s) {
+        cur.top = cur.nextLocal;
+        if (s instanceof Stmt.Let v) {
+            int slot = allocLocal(v.name.lexeme);
+            cur.top = cur.nextLocal;
+            if (v.init != null) into(v.init, slot);
+            return;
+        }
+        if (s instanceof Stmt.ExprStmt es) {
+            expr(es.expr);
+            return;
+        }
+        if (s instanceof Stmt.Print p) {
+            emit(PRINT, expr(p.value));
+            return;
+        }
+        if (s instanceof Stmt.Block b) {
+            for (Stmt st : b.stmts) stmt(st);
+            return;
+        }
+        if (s instanceof Stmt.If iff) {
+            int jmpFalseAt = emit(JMPF, expr(iff.cond), 0);
+            stmt(iff.thenBranch);
+            if (iff.elseBranch != null) {
+                int jmpEndAt = emit(JMP, 0);
+                patch(jmpFalseAt);
+                stmt(iff.elseBranch);
+                patch(jmpEndAt);
+            } else {
+                patch(jmpFalseAt);
+            }
+            return;
+        }
+        if (s instanceof Stmt.While w) {
+            int loopStart = cur.fn.code.size();
+            int jmpOutAt = emit(JMPF, expr(w.cond), 0);
+            stmt(w.body);
+            emit(JMP, loopStart - (cur.fn.code.size() + 1));
+            patch(jmpOutAt);
+            return;
+        }
+        if (s instanceof Stmt.Return r) {
+            // As in the stack code, return f(...) hands this frame to the callee
+            Expr value = r.value;
+            while (value instanceof Expr.Grouping g) value = g.expr;
+            if (value instanceof Expr.Call c) {
+                call(c, TAILCALL);
+                return;
+            }
+            if (r.value == null) {
+                returnNil();
+                return;
+            }
+            emit(RET, expr(r.value));
+            return;
+        }
+        if (s instanceof Stmt.Fun) return; // compiled separately
+        throw new IllegalArgumentException("Unknown Stmt: " + s.getClass());
+    }
+
+    // Expressions
+
+    // A register holding the value of e: the variable's own register, a call's base register,
+    // or a new temporary
+    private int expr(Expr e) {
+        Expr u = e;
+        while (u instanceof Expr.Grouping g) u = g.expr;
+        if (u instanceof Expr.Variable v && cur.locals.containsKey(v.name.lexeme)) return cur.locals.get(v.name.lexeme);
+        if (u instanceof Expr.Call c) return call(c, CALL);
+        int d = temp();
+        into(u, d);
+        return d;
+    }
+
+    // Evaluates e into register d; operands are read before d is written, so d may be one of them
+    private void into(Expr e, int d) {
+        if (e instanceof Expr.Literal l) {
+            emit(LOADK, d, mod.addConst(l.value));
+            return;
+        }
+        if (e instanceof Expr.Variable v) {
+            Integer idx = cur.locals.get(v.name.lexeme);
+            // Not a local of this function: nil, as in the stack code
+            if (idx == null) emit(LOADK, d, mod.addConst(null));
+            else if (idx != d) emit(MOV, d, idx);
+            return;
+        }
+        if (e instanceof Expr.Grouping g) {
+            into(g.expr, d);
+            return;
+        }
+        if (e instanceof Expr.Unary u) {
+            int mark = cur.top;
+            int s = expr(u.right);
+            cur.top = mark;
+            switch (u.op.type) {
+                case BANG -> emit(NOT, d, s);
+                case MINUS -> emit(NEG, d, s);
+                default -> throw new RuntimeException("Unsupported unary: " + u.op.lexeme);
+            }
+            return;
+        }
+        if (e instanceof Expr.Binary b) {
+            if (b.op.type == TokenType.AND_AND || b.op.type == TokenType.OR_OR) {
+                logical(b.op.type == TokenType.AND_AND, b.left, b.right, d);
+                return;
+            }
+            int mark = cur.top;
+            int l = expr(b.left);
+            int r = expr(b.right);
+            cur.top = mark;
+            switch (b.op.type) {
+                case PLUS -> emit(ADD, d, l, r);
+                case MINUS -> emit(SUB, d, l, r);
+                case STAR -> emit(MUL, d, l, r);
+                case SLASH -> emit(DIV, d, l, r);
+                case EQUAL_EQUAL -> emit(EQ, d, l, r);
+                case BANG_EQUAL -> emit(NE, d, l, r);
+                case LESS -> emit(LT, d, l, r);
+                case LESS_EQUAL -> emit(LE, d, l, r);
+                case GREATER -> emit(GT, d, l, r);
+                case GREATER_EQUAL -> emit(GE, d, l, r);
+                default -> throw new RuntimeException("Unsupported binary: " + b.op.lexeme);
+            }
+            return;
+        }
+        if (e instanceof Expr.Call c) {
+            int base = call(c, CALL);
+            if (base != d) emit(MOV, d, base);
+            return;
+        }
+        throw new IllegalArgumentException("Unknown Expr: " + e.getClass());
+    }
+
+    // d becomes the bool of left && right (or left || right) by truthiness; right is only
+    // evaluated when left does not decide, as in the Interpreter
+    private void logical(boolean and, Expr left, Expr right, int d) {
+        int mark = cur.top;
+        int l = expr(left);
+        cur.top = mark;
+        int skipL = emit(JMPF, l, 0);
+        int toTrue = and ? -1 : emit(JMP, 0);
+        if (!and) patch(skipL);
+        int r = expr(right);
+        cur.top = mark;
+        int skipR = emit(JMPF, r, 0);
+        if (toTrue >= 0) patch(toTrue);
+        emit(LOADK, d, mod.addConst(true));
+        int end = emit(JMP, 0);
+        if (and) patch(skipL);
+        patch(skipR);
+        emit(LOADK, d, mod.addConst(false));
+        patch(end);
+    }
+
+    // CALL or TAILCALL with the arguments in consecutive temporaries; returns the base register
+    private int call(Expr.Call c, RegOpcode op) {
+        if (!(c.callee instanceof Expr.Variable v)) {
+            throw new RuntimeException("Only direct calls by name are supported in bytecode compiler");
+        }
+        int fidx = mod.findFunctionByName(v.name.lexeme);
+        if (fidx < 0) throw new RuntimeException("Unknown function '" + v.name.lexeme + "'");
+        int base = cur.top;
+        for (Expr a : c.args) {
+            int r = temp();
+            into(a, r);
+            cur.top = r + 1;
+        }
+        if (c.args.isEmpty()) temp(); // room for the result
+        emit(op, base, fidx, c.args.size());
+        cur.top = base + 1;
+        return base;
+    }
+}
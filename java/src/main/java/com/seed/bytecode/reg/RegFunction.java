@@ -0,0 +1,17 @@
+package com.seed.bytecode.reg;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public final class RegFunction {
+    public final String name;
+    public final int arity;
+    public int nregs;
+    public final List<RegInstr> code = new ArrayList<>();
+
+    public RegFunction(String name, int arity, int nregs) {
+        this.name = name;
+        this.arity = arity;
+        this.nregs = nregs;
+    }
+}
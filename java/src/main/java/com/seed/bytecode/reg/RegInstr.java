@@ -0,0 +1,29 @@
+package com.seed.bytecode.reg;
+
+public final class RegInstr {
+    public final RegOpcode op;
+    public final int a;
+    public final int b;
+    public final int c;
+
+    public RegInstr(RegOpcode op, int a) { this(op, a, 0, 0); }
+    public RegInstr(RegOpcode op, int a, int b) { this(op, a, b, 0); }
+    public RegInstr(RegOpcode op, int a, int b, int c) { this.op = op; this.a = a; this.b = b; this.c = c; }
+
+    // Number of operands op takes
+    public static int arity(RegOpcode op) {
+        return switch (op) {
+            case JMP, RET, PRINT -> 1;
+            case MOV, LOADK, NEG, NOT, JMPF -> 2;
+            case ADD, SUB, MUL, DIV, EQ, NE, LT, LE, GT, GE, CALL, TAILCALL -> 3;
+        };
+    }
+
+    @Override public String toString() {
+        return switch (arity(op)) {
+            case 1 -> op.name() + " " + a;
+            case 2 -> op.name() + " " + a + " " + b;
+            default -> op.name() + " " + a + " " + b + " " + c;
+        };
+    }
+}
@@ -0,0 +1,31 @@
+package com.seed.bytecode.reg;
+
+import com.seed.bytecode.Module;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Register-code counterpart of Module. The constant pool is the same interned, typed pool
+// (and uses the same tags), so both lowerings of a program agree on constant indices.
+public final class RegModule {
+    public final List<RegFunction> funcs = new ArrayList<>();
+    private final Module pool = new Module();
+
+    public int addConst(Object o) { return pool.addConst(o); }
+
+    public int constCount() { return pool.constCount(); }
+
+    public byte constTag(int i) { return pool.constTag(i); }
+
+    public long constValue(int i) { return pool.constValue(i); }
+
+    public int addFunction(RegFunction f) {
+        funcs.add(f);
+        return funcs.size() - 1;
+    }
+
+    public int findFunctionByName(String name) {
+        for (int i = 0; i < funcs.size(); i++) if (funcs.get(i).name.equals(name)) return i;
+        return -1;
+    }
+}
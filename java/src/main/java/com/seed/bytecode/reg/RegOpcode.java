@@ -0,0 +1,18 @@
+package com.seed.bytecode.reg;
+
+// Three-address instructions over the registers of a frame. Registers 0..arity-1 hold the
+// parameters, then come the named locals and the temporaries.
+public enum RegOpcode {
+    MOV,       // MOV d s
+    LOADK,     // LOADK d kIndex
+    ADD, SUB, MUL, DIV,            // ADD d a b
+    EQ, NE, LT, LE, GT, GE,        // LT d a b
+    NEG,       // NEG d s
+    NOT,       // NOT d s
+    JMP,       // JMP relOffset
+    JMPF,      // JMPF s relOffset (jumps when s is falsy)
+    CALL,      // CALL base funcIndex argc (arguments in base.., result in base)
+    TAILCALL,  // TAILCALL base funcIndex argc (replaces the current frame)
+    RET,       // RET s
+    PRINT      // PRINT s
+}
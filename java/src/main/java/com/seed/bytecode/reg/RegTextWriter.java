@@ -0,0 +1,36 @@
+package com.seed.bytecode.reg;
+
+import com.seed.bytecode.Module;
+
+// Same layout as the stack TextWriter, marked with a .format line so seedvm picks the
+// register interpreter, and with regs= in place of locals=
+public final class RegTextWriter {
+    public static String write(RegModule m) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("; Seed Register Bytecode (textual)\n");
+        sb.append(".format registers\n");
+        sb.append(".consts ").append(m.constCount()).append("\n");
+        for (int i = 0; i < m.constCount(); i++) {
+            sb.append("  ").append(i).append(": ").append(constText(m, i)).append("\n");
+        }
+        sb.append(".funcs ").append(m.funcs.size()).append("\n");
+        for (int i = 0; i < m.funcs.size(); i++) {
+            RegFunction f = m.funcs.get(i);
+            sb.append("\n.func ").append(i).append(" ").append(f.name)
+              .append(" arity=").append(f.arity).append(" regs=").append(f.nregs).append("\n");
+            for (int pc = 0; pc < f.code.size(); pc++) {
+                sb.append(String.format("%4d  %s\n", pc, f.code.get(pc).toString()));
+            }
+            sb.append(".end\n");
+        }
+        return sb.toString();
+    }
+
+    private static String constText(RegModule m, int i) {
+        return switch (m.constTag(i)) {
+            case Module.INT -> Long.toString(m.constValue(i));
+            case Module.BOOL -> m.constValue(i) != 0 ? "true" : "false";
+            default -> "nil";
+        };
+    }
+}
@@ -0,0 +1,67 @@
+package com.seed.bytecode.reg;
+
+import com.seed.bytecode.Verifier.Problem;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Checks that register code only names registers of its own frame, existing constants and
+// functions, and jump targets inside the function, that calls pass the callee's arity, and
+// that control cannot run off the end of a function.
+public final class RegVerifier {
+    public List<Problem> verify(RegModule m) {
+        List<Problem> probs = new ArrayList<>();
+        for (RegFunction f : m.funcs) {
+            if (f.nregs < f.arity) probs.add(new Problem(f.name, "fewer registers than parameters"));
+            int n = f.code.size();
+            if (n == 0 || !ends(f.code.get(n - 1).op)) probs.add(new Problem(f.name, "code can run off the end"));
+            for (int pc = 0; pc < n; pc++) {
+                RegInstr in = f.code.get(pc);
+                String where = f.name + ":" + pc;
+                switch (in.op) {
+                    case MOV, NEG, NOT -> regs(probs, where, f, in.a, in.b);
+                    case LOADK -> {
+                        regs(probs, where, f, in.a);
+                        if (in.b < 0 || in.b >= m.constCount()) probs.add(new Problem(where, "LOADK constant out of range"));
+                    }
+                    case ADD, SUB, MUL, DIV, EQ, NE, LT, LE, GT, GE -> regs(probs, where, f, in.a, in.b, in.c);
+                    case JMP -> jump(probs, where, n, pc + 1 + in.a);
+                    case JMPF -> {
+                        regs(probs, where, f, in.a);
+                        jump(probs, where, n, pc + 1 + in.b);
+                    }
+                    case CALL, TAILCALL -> {
+                        if (in.b < 0 || in.b >= m.funcs.size()) {
+                            probs.add(new Problem(where, in.op + " funcIndex out of range"));
+                        } else if (m.funcs.get(in.b).arity != in.c) {
+                            probs.add(new Problem(where, in.op + " arity mismatch"));
+                        }
+                        // Arguments in base..base+argc-1; CALL also writes its result to base
+                        regs(probs, where, f, in.a);
+                        if (in.c > 0) regs(probs, where, f, in.a + in.c - 1);
+                    }
+                    case RET, PRINT -> regs(probs, where, f, in.a);
+                }
+            }
+        }
+        return probs;
+    }
+
+    private static boolean ends(RegOpcode op) {
+        return op == RegOpcode.RET || op == RegOpcode.TAILCALL || op == RegOpcode.JMP;
+    }
+
+    private static void regs(List<Problem> probs, String where, RegFunction f, int... rs) {
+        for (int r : rs) {
+            if (r < 0 || r >= f.nregs) {
+                probs.add(new Problem(where, "register " + r + " out of range"));
+                return;
+            }
+        }
+    }
+
+    // A jump may not land on the end of the code: there is no implicit return
+    private static void jump(List<Problem> probs, String where, int n, int target) {
+        if (target < 0 || target >= n) probs.add(new Problem(where, "Jump target out of range"));
+    }
+}
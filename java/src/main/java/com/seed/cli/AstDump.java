@@ -3,21 +3,24 @@ package com.seed.cli;
 import com.seed.lexer.*;
 import com.seed.parser.*;
 import com.seed.ast.*;
+import com.seed.opt.Pipeline;
 
 import java.nio.file.*;
 import java.util.*;
 
 public class AstDump {
     public static void main(String[] args) throws Exception {
-        if (args.length != 1) {
-            System.err.println("usage: ast-dump <file.seed>");
+        boolean opt = args.length == 2 && args[0].equals("--opt");
+        if (args.length != (opt ? 2 : 1)) {
+            System.err.println("usage: ast-dump [--opt] <file.seed>");
             System.exit(1);
         }
-        String src = Files.readString(Path.of(args[0]));
+        String src = Files.readString(Path.of(args[args.length - 1]));
         Lexer lexer = new Lexer(src);
         List<Token> tokens = lexer.scanTokens();
         Parser parser = new Parser(tokens);
         List<Stmt> program = parser.parseProgram();
+        if (opt) program = Pipeline.standard().run(program);
 
         AstPrinter printer = new AstPrinter();
         System.out.println(printer.print(program));
@@ -0,0 +1,41 @@
+package com.seed.cli;
+
+import com.seed.engine.SeedEngine;
+
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+// Runs scripts many times concurrently through SeedEngine and prints throughput and latency
+public class Bench {
+    public static void main(String[] args) throws Exception {
+        SeedEngine.Mode mode = SeedEngine.Mode.AST;
+        int runs = 1000;
+        long fuel = Long.MAX_VALUE;
+        long timeLimitMs = 0;
+        List<String> files = new ArrayList<>();
+        for (String a : args) {
+            if (a.startsWith("--mode=")) mode = SeedEngine.Mode.valueOf(a.substring("--mode=".length()).toUpperCase());
+            else if (a.startsWith("--runs=")) runs = Integer.parseInt(a.substring("--runs=".length()));
+            else if (a.startsWith("--fuel=")) fuel = Long.parseLong(a.substring("--fuel=".length()));
+            else if (a.startsWith("--time-limit-ms=")) timeLimitMs = Long.parseLong(a.substring("--time-limit-ms=".length()));
+            else files.add(a);
+        }
+        if (files.isEmpty()) {
+            System.err.println("usage: bench [--mode=ast|vm] [--runs=N] [--fuel=N] [--time-limit-ms=N] <file.seed>...");
+            System.exit(1);
+        }
+        try (SeedEngine engine = new SeedEngine()) {
+            engine.setLimits(fuel, timeLimitMs * 1_000_000);
+            List<SeedEngine.Script> scripts = new ArrayList<>();
+            for (String f : files) scripts.add(engine.compile(f, Files.readString(Path.of(f)), mode));
+            List<CompletableFuture<SeedEngine.Result>> pending = new ArrayList<>();
+            for (int i = 0; i < runs; i++) pending.add(engine.submit(scripts.get(i % scripts.size())));
+            for (var p : pending) {
+                SeedEngine.Result r = p.join();
+                if (!r.ok()) System.err.println(r.script.name + ": " + r.error);
+            }
+            System.out.println((engine.usesVirtualThreads() ? "virtual threads: " : "thread pool: ") + engine.stats());
+        }
+    }
+}
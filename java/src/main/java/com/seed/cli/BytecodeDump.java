@@ -11,9 +11,14 @@ import java.util.*;
 public class BytecodeDump {
     public static void main(String[] args) throws Exception {
         if (args.length != 1) {
-            System.err.println("usage: bytecode-dump <file.seed>");
+            System.err.println("usage: bytecode-dump <file.seed | file.sbc>");
             System.exit(2);
         }
+        // A binary .sbc is printed in the text form
+        if (BinaryReader.isBinary(Path.of(args[0]))) {
+            System.out.println(TextWriter.write(BinaryReader.read(Path.of(args[0]))));
+            return;
+        }
         String src = Files.readString(Path.of(args[0]));
         Lexer lexer = new Lexer(src);
         List<Token> tokens = lexer.scanTokens();
@@ -4,25 +4,80 @@ import com.seed.lexer.*;
 import com.seed.parser.*;
 import com.seed.ast.*;
 import com.seed.bytecode.*;
+import com.seed.bytecode.opt.Peephole;
+import com.seed.bytecode.opt.Superinstructions;
+import com.seed.bytecode.reg.RegCompiler;
+import com.seed.bytecode.reg.RegModule;
+import com.seed.bytecode.reg.RegTextWriter;
+import com.seed.bytecode.reg.RegVerifier;
+import com.seed.ir.IrBuilder;
+import com.seed.ir.IrModule;
+import com.seed.ir.Lowering;
+import com.seed.ir.Optimizer;
+import com.seed.sema.Resolver;
 
 import java.nio.file.*;
 import java.util.*;
 
 public class Compile {
     public static void main(String[] args) throws Exception {
-        if (args.length != 2) {
-            System.err.println("usage: compile <file.seed> <out.sbc>");
+        boolean peephole = false, superinstructions = false, registers = false, ssa = false, typed = false, binary = false;
+        int inline = 0;
+        List<String> files = new ArrayList<>();
+        for (String a : args) {
+            if (a.equals("--peephole")) peephole = true;
+            else if (a.equals("--superinstructions")) superinstructions = true;
+            else if (a.equals("--registers")) registers = true;
+            else if (a.equals("--ssa")) ssa = true;
+            else if (a.equals("--typed")) typed = true;
+            else if (a.equals("--binary")) binary = true;
+            else if (a.startsWith("--inline=")) inline = Integer.parseInt(a.substring("--inline=".length()));
+            else files.add(a);
+        }
+        if (files.size() != 2 || (registers && (peephole || superinstructions || ssa || inline > 0 || typed || binary)) || (ssa && (inline > 0 || typed))) {
+            System.err.println("usage: compile [--ssa | [--inline=N] [--typed]] [--peephole] [--superinstructions] [--binary] | [--registers] <file.seed> <out.sbc>");
             System.exit(2);
         }
-        String src = Files.readString(Path.of(args[0]));
-        Path out = Path.of(args[1]);
+        String src = Files.readString(Path.of(files.get(0)));
+        Path out = Path.of(files.get(1));
         Lexer lexer = new Lexer(src);
         List<Token> tokens = lexer.scanTokens();
         Parser parser = new Parser(tokens);
         List<Stmt> program = parser.parseProgram();
 
-        com.seed.bytecode.Compiler c = new com.seed.bytecode.Compiler();
-        com.seed.bytecode.Module m = c.compile(program);
+        if (registers) {
+            // Register code instead of stack code, for seedvm's register interpreter
+            RegModule rm = new RegCompiler().compile(program);
+            var probs = new RegVerifier().verify(rm);
+            if (!probs.isEmpty()) {
+                System.err.println("Verification problems:");
+                for (var p : probs) System.err.println(p);
+                System.exit(1);
+            }
+            write(out, RegTextWriter.write(rm));
+            return;
+        }
+
+        com.seed.bytecode.Module m;
+        if (ssa) {
+            // Through the SSA optimizer instead of straight from the AST
+            IrModule ir = new IrBuilder().build(program);
+            System.err.println(Optimizer.standard().run(ir));
+            m = new Lowering().lower(ir);
+        } else {
+            com.seed.bytecode.Compiler c = new com.seed.bytecode.Compiler();
+            c.setInlineBudget(inline);
+            if (typed) {
+                // Typed opcodes where the Resolver proves the operand types
+                Resolver r = new Resolver();
+                r.resolve(program);
+                c.setTypes(r);
+            }
+            m = c.compile(program);
+            if (inline > 0) System.err.println("inline: " + (c.inlined().isEmpty() ? "no call sites" : String.join(", ", c.inlined())));
+        }
+        if (peephole) System.err.println(new Peephole().optimize(m));
+        if (superinstructions) System.err.println(new Superinstructions().optimize(m));
         Verifier v = new Verifier();
         var probs = v.verify(m);
         if (!probs.isEmpty()) {
@@ -30,9 +85,18 @@ public class Compile {
             for (var p : probs) System.err.println(p);
             System.exit(1);
         }
-        String text = TextWriter.write(m);
-        Files.createDirectories(out.getParent());
-        Files.writeString(out, text);
+        // The binary form loads without parsing; seedvm and Run tell the two apart by the magic
+        if (binary) write(out, BinaryWriter.write(m));
+        else write(out, TextWriter.write(m));
+    }
+
+    private static void write(Path out, String text) throws Exception {
+        write(out, text.getBytes(java.nio.charset.StandardCharsets.UTF_8));
+    }
+
+    private static void write(Path out, byte[] bytes) throws Exception {
+        if (out.toAbsolutePath().getParent() != null) Files.createDirectories(out.toAbsolutePath().getParent());
+        Files.write(out, bytes);
         System.out.println("Wrote " + out.toAbsolutePath());
     }
 }
@@ -3,24 +3,194 @@ package com.seed.cli;
 import com.seed.lexer.*;
 import com.seed.parser.*;
 import com.seed.ast.*;
+import com.seed.bytecode.*;
+import com.seed.bytecode.opt.Peephole;
+import com.seed.bytecode.opt.Superinstructions;
+import com.seed.bytecode.reg.RegCompiler;
+import com.seed.bytecode.reg.RegModule;
+import com.seed.bytecode.reg.RegVerifier;
 import com.seed.interp.*;
+import com.seed.ir.IrBuilder;
+import com.seed.ir.IrModule;
+import com.seed.ir.Lowering;
+import com.seed.ir.Optimizer;
+import com.seed.jvm.JvmBackend;
+import com.seed.opt.Pipeline;
+import com.seed.sema.Resolver;
+import com.seed.vm.Image;
+import com.seed.vm.RegVM;
+import com.seed.vm.VM;
 
 import java.nio.file.*;
 import java.util.*;
 
 public class Run {
     public static void main(String[] args) throws Exception {
-        if (args.length != 1) {
-            System.err.println("usage: run <file.seed>");
+        String mode = "ast";
+        String jit = null;
+        String file = null;
+        int memo = 0;
+        int tierCalls = 1000;
+        int tierLoops = 10000;
+        boolean tierReport = false;
+        boolean peephole = false;
+        boolean superinstructions = false;
+        boolean ssa = false;
+        boolean typed = false;
+        int inline = 0;
+        boolean opt = false;
+        int maxDepth = VM.DEFAULT_MAX_DEPTH;
+        long fuel = Long.MAX_VALUE;
+        long timeLimitMs = 0;
+        for (String a : args) {
+            if (a.startsWith("--mode=")) mode = a.substring("--mode=".length());
+            else if (a.startsWith("--memo=")) memo = Integer.parseInt(a.substring("--memo=".length()));
+            else if (a.startsWith("--tier-calls=")) tierCalls = Integer.parseInt(a.substring("--tier-calls=".length()));
+            else if (a.startsWith("--tier-loops=")) tierLoops = Integer.parseInt(a.substring("--tier-loops=".length()));
+            else if (a.equals("--tier-report")) tierReport = true;
+            else if (a.equals("--peephole")) peephole = true;
+            else if (a.equals("--superinstructions")) superinstructions = true;
+            else if (a.equals("--ssa")) ssa = true;
+            else if (a.equals("--typed")) typed = true;
+            else if (a.startsWith("--inline=")) inline = Integer.parseInt(a.substring("--inline=".length()));
+            else if (a.equals("--opt")) opt = true;
+            else if (a.startsWith("--max-depth=")) maxDepth = Integer.parseInt(a.substring("--max-depth=".length()));
+            else if (a.startsWith("--fuel=")) fuel = Long.parseLong(a.substring("--fuel=".length()));
+            else if (a.startsWith("--time-limit-ms=")) timeLimitMs = Long.parseLong(a.substring("--time-limit-ms=".length()));
+            else if (a.startsWith("--jit=")) jit = a.substring("--jit=".length());
+            else if (file == null) file = a;
+            else { file = null; break; }
+        }
+        if (file == null || (ssa && (inline > 0 || typed))) {
+            System.err.println("usage: run [--mode=ast|nodes|vm|reg|tiered] [--jit=jvm] [--memo=N] [--tier-calls=N] [--tier-loops=N] [--tier-report] [--opt] [--ssa | [--inline=N] [--typed]] [--peephole] [--superinstructions] [--max-depth=N] [--fuel=N] [--time-limit-ms=N] <file.seed | binary file.sbc>");
             System.exit(1);
         }
-        String src = Files.readString(Path.of(args[0]));
-        Lexer lexer = new Lexer(src);
-        List<Token> tokens = lexer.scanTokens();
-        Parser parser = new Parser(tokens);
-        List<Stmt> program = parser.parseProgram();
+        // A binary .sbc (Compile --binary) is already compiled: it runs as is on the bytecode paths
+        com.seed.bytecode.Module loaded = null;
+        List<Stmt> program = null;
+        if (BinaryReader.isBinary(Path.of(file))) {
+            if (!(jit != null || mode.equals("vm")) || opt || ssa || inline > 0 || typed || peephole || superinstructions) {
+                System.err.println("a binary .sbc runs with --mode=vm or --jit=jvm only, without compile options");
+                System.exit(1);
+            }
+            loaded = BinaryReader.read(Path.of(file));
+            verify(loaded);
+        } else {
+            String src = Files.readString(Path.of(file));
+            if (src.startsWith(TextWriter.HEADER)) {
+                // Only the C++ tools parse text bytecode
+                System.err.println("a text .sbc runs on seedvm; run the source, or compile it with Compile --binary");
+                System.exit(1);
+            }
+            Lexer lexer = new Lexer(src);
+            List<Token> tokens = lexer.scanTokens();
+            Parser parser = new Parser(tokens);
+            program = parser.parseProgram();
+            if (opt) program = Pipeline.standard().run(program);
+        }
 
-        Interpreter interp = new Interpreter(System.out);
-        interp.interpret(program);
+        if (memo > 0 && (jit != null || mode.equals("nodes") || mode.equals("reg"))) {
+            System.err.println("--memo is supported with --mode=ast, tiered and vm only");
+            System.exit(1);
+        }
+        boolean limited = fuel != Long.MAX_VALUE || timeLimitMs != 0;
+        if (limited && (jit != null || !(mode.equals("ast") || mode.equals("vm")))) {
+            System.err.println("--fuel and --time-limit-ms are supported with --mode=ast and vm only");
+            System.exit(1);
+        }
+        if (maxDepth != VM.DEFAULT_MAX_DEPTH && (jit != null || !(mode.equals("vm") || mode.equals("reg")))) {
+            System.err.println("--max-depth is supported with --mode=vm and reg only");
+            System.exit(1);
+        }
+        long timeLimit = timeLimitMs * 1_000_000;
+        if (jit != null) {
+            if (!jit.equals("jvm")) {
+                System.err.println("unknown jit '" + jit + "' (expected jvm)");
+                System.exit(1);
+            }
+            com.seed.bytecode.Module m = loaded != null ? loaded : compile(program, ssa, inline, typed, peephole, superinstructions);
+            new JvmBackend().compile(m).run(System.out);
+            return;
+        }
+        switch (mode) {
+            case "ast" -> {
+                Interpreter interp = new Interpreter(System.out);
+                if (memo > 0) interp.enableMemo(memo);
+                interp.setFuel(fuel);
+                interp.setTimeLimit(timeLimit);
+                interp.interpret(program);
+                if (memo > 0) System.err.println(interp.memoTable());
+            }
+            case "tiered" -> {
+                Interpreter interp = new Interpreter(System.out);
+                if (memo > 0) interp.enableMemo(memo);
+                interp.enableTiering(new Tiering(tierCalls, tierLoops, true));
+                interp.interpret(program);
+                if (memo > 0) System.err.println(interp.memoTable());
+                if (tierReport) System.err.print(interp.tiering().report());
+            }
+            case "nodes" -> new NodeInterpreter(System.out).interpret(program);
+            case "reg" -> {
+                RegModule m = new RegCompiler().compile(program);
+                var probs = new RegVerifier().verify(m);
+                if (!probs.isEmpty()) {
+                    System.err.println("Verification problems:");
+                    for (var p : probs) System.err.println(p);
+                    System.exit(1);
+                }
+                RegVM vm = new RegVM(m, System.out);
+                vm.setMaxDepth(maxDepth);
+                vm.run();
+            }
+            case "vm" -> {
+                com.seed.bytecode.Module m = loaded != null ? loaded : compile(program, ssa, inline, typed, peephole, superinstructions);
+                VM vm = new VM(Image.decode(m), System.out);
+                if (memo > 0) vm.enableMemo(memo);
+                vm.setMaxDepth(maxDepth);
+                vm.setFuel(fuel);
+                vm.setTimeLimit(timeLimit);
+                VM.Status st = vm.run();
+                if (memo > 0) System.err.println(vm.memoTable());
+                if (st == VM.Status.OUT_OF_FUEL) throw new RuntimeException("Out of fuel (limit " + fuel + ")");
+                if (st == VM.Status.DEADLINE) throw new RuntimeException("Time limit exceeded (" + timeLimitMs + " ms)");
+            }
+            default -> {
+                System.err.println("unknown mode '" + mode + "' (expected ast, nodes, vm, reg or tiered)");
+                System.exit(1);
+            }
+        }
+    }
+
+    // AST -> verified bytecode, for the bytecode-based execution paths
+    private static com.seed.bytecode.Module compile(List<Stmt> program, boolean ssa, int inline, boolean typed, boolean peephole, boolean superinstructions) {
+        com.seed.bytecode.Module m;
+        if (ssa) {
+            IrModule ir = new IrBuilder().build(program);
+            System.err.println(Optimizer.standard().run(ir));
+            m = new Lowering().lower(ir);
+        } else {
+            com.seed.bytecode.Compiler c = new com.seed.bytecode.Compiler();
+            c.setInlineBudget(inline);
+            if (typed) {
+                Resolver r = new Resolver();
+                r.resolve(program);
+                c.setTypes(r);
+            }
+            m = c.compile(program);
+            if (inline > 0) System.err.println("inline: " + (c.inlined().isEmpty() ? "no call sites" : String.join(", ", c.inlined())));
+        }
+        if (peephole) System.err.println(new Peephole().optimize(m));
+        if (superinstructions) System.err.println(new Superinstructions().optimize(m));
+        verify(m);
+        return m;
+    }
+
+    private static void verify(com.seed.bytecode.Module m) {
+        var probs = new Verifier().verify(m);
+        if (!probs.isEmpty()) {
+            System.err.println("Verification problems:");
+            for (var p : probs) System.err.println(p);
+            System.exit(1);
+        }
     }
 }
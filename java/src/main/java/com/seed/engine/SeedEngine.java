@@ -0,0 +1,286 @@
+package com.seed.engine;
+
+import com.seed.ast.Stmt;
+import com.seed.bytecode.Compiler;
+import com.seed.bytecode.Module;
+import com.seed.bytecode.Verifier;
+import com.seed.interp.Interpreter;
+import com.seed.lexer.Lexer;
+import com.seed.parser.Parser;
+import com.seed.sema.Resolver;
+import com.seed.vm.Image;
+import com.seed.vm.VM;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+// Runs many Seed programs concurrently inside one JVM. A Script is compiled once (parsed and
+// resolved AST, or a decoded VM Image) and runs only read it: the AST has no mutable fields,
+// the Resolver's side tables are complete after compile(), and call-site caches and purity live
+// in each run's Interpreter. So any number of runs can share a Script; every run gets its own
+// Interpreter or VM, globals and captured output. Runs go on virtual
+// threads when the JDK has them (21+), otherwise on a fixed pool with one thread per CPU.
+//
+// With setLimits() every run gets a fuel budget (calls plus loop back-edges) and a wall-clock
+// limit, and VM runs become preemptible: submit() runs them SLICE units at a time and puts the
+// suspended VM back on the executor between slices, so a long script cannot hold a thread
+// while short ones wait.
+public final class SeedEngine implements AutoCloseable {
+    public enum Mode { AST, VM }
+
+    static final long SLICE = 1 << 16;
+
+    public static final class Script {
+        public final String name;
+        public final Mode mode;
+        private final List<Stmt> program;
+        private final Resolver resolver;
+        private final Image image;
+
+        private Script(String name, Mode mode, List<Stmt> program, Resolver resolver, Image image) {
+            this.name = name; this.mode = mode; this.program = program; this.resolver = resolver; this.image = image;
+        }
+    }
+
+    public static final class Result {
+        public final Script script;
+        public final String output;
+        public final String error;  // null on success
+        public final long nanos;
+
+        Result(Script script, String output, String error, long nanos) {
+            this.script = script; this.output = output; this.error = error; this.nanos = nanos;
+        }
+
+        public boolean ok() { return error == null; }
+    }
+
+    public static final class Stats {
+        public final long runs;
+        public final long failures;
+        public final double runsPerSecond;
+        public final long p50Nanos, p90Nanos, p99Nanos, maxNanos;
+
+        Stats(long runs, long failures, double runsPerSecond, long p50, long p90, long p99, long max) {
+            this.runs = runs; this.failures = failures; this.runsPerSecond = runsPerSecond;
+            this.p50Nanos = p50; this.p90Nanos = p90; this.p99Nanos = p99; this.maxNanos = max;
+        }
+
+        @Override public String toString() {
+            return String.format("runs=%d failures=%d throughput=%.1f/s latency p50=%.3fms p90=%.3fms p99=%.3fms max=%.3fms",
+                    runs, failures, runsPerSecond, p50Nanos / 1e6, p90Nanos / 1e6, p99Nanos / 1e6, maxNanos / 1e6);
+        }
+    }
+
+    private final ExecutorService executor;
+    private final boolean virtual;
+    private final long startNanos = System.nanoTime();
+    // Latencies of completed runs (guarded by this): a log-linear histogram with 2^SUB_BITS
+    // buckets per power of two, so memory and stats() cost stay fixed however many runs complete
+    // and a percentile is at most 1/8 above the true value
+    private static final int SUB_BITS = 3;
+    private final long[] buckets = new long[64 << SUB_BITS];
+    private long count;
+    private long maxNanos;
+    private long failures;
+    private volatile long fuel = Long.MAX_VALUE;
+    private volatile long timeLimit;
+
+    public SeedEngine() {
+        ExecutorService vt = virtualThreadExecutor();
+        this.virtual = vt != null;
+        this.executor = vt != null ? vt : Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), r -> {
+            Thread t = new Thread(r, "seed-engine");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public boolean usesVirtualThreads() { return virtual; }
+
+    public Script compile(String name, String source, Mode mode) {
+        List<Stmt> program = new Parser(new Lexer(source).scanTokens()).parseProgram();
+        Resolver resolver = new Resolver();
+        resolver.resolve(program);
+        Image image = null;
+        if (mode == Mode.VM) {
+            Compiler c = new Compiler();
+            c.setTypes(resolver);
+            Module m = c.compile(program);
+            var probs = new Verifier().verify(m);
+            if (!probs.isEmpty()) throw new RuntimeException(name + ": verification failed: " + probs.get(0));
+            image = Image.decode(m);
+        }
+        return new Script(name, mode, program, resolver, image);
+    }
+
+    // Per-run fuel (Long.MAX_VALUE for none) and wall-clock limit in nanos (0 for none), for runs
+    // started after the call
+    public void setLimits(long fuel, long timeLimitNanos) {
+        if (fuel < 0 || timeLimitNanos < 0) throw new IllegalArgumentException("limits must not be negative");
+        this.fuel = fuel;
+        this.timeLimit = timeLimitNanos;
+    }
+
+    public CompletableFuture<Result> submit(Script script) {
+        if (script.mode == Mode.AST || !limited()) return CompletableFuture.supplyAsync(() -> execute(script), executor);
+        VmRun run = new VmRun(script);
+        executor.execute(() -> slice(run));
+        return run.done;
+    }
+
+    private boolean limited() { return fuel != Long.MAX_VALUE || timeLimit != 0; }
+
+    private void slice(VmRun run) {
+        if (!run.step()) return;
+        try {
+            executor.execute(() -> slice(run));
+        } catch (RejectedExecutionException e) {
+            // The engine is closing: finish here rather than drop the run
+            while (run.step()) { }
+        }
+    }
+
+    // Runs on the calling thread, VM runs included, without yielding between slices
+    public Result execute(Script script) {
+        if (script.mode == Mode.VM) {
+            VmRun run = new VmRun(script);
+            while (run.step()) { }
+            return run.done.join();
+        }
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(buf, false, StandardCharsets.UTF_8);
+        String error = null;
+        long t0 = System.nanoTime();
+        try {
+            Interpreter interp = new Interpreter(out);
+            interp.setFuel(fuel);
+            interp.setTimeLimit(timeLimit);
+            interp.interpret(script.program, script.resolver);
+        } catch (RuntimeException e) {
+            error = message(e);
+        }
+        return finish(script, buf, out, error, System.nanoTime() - t0);
+    }
+
+    // One VM run, advanced a slice at a time; latency and the time limit count from the first
+    // slice, including the waits between slices
+    private final class VmRun {
+        final Script script;
+        final ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        final PrintStream out = new PrintStream(buf, false, StandardCharsets.UTF_8);
+        final VM vm;
+        long t0;
+        final long limit = timeLimit;
+        final long budget = fuel;
+        long left = budget;
+        final CompletableFuture<Result> done = new CompletableFuture<>();
+
+        VmRun(Script script) {
+            this.script = script;
+            this.vm = new VM(script.image, out);
+        }
+
+        // Runs one slice; true if the run should be continued
+        boolean step() {
+            String error = null;
+            if (!vm.suspended()) t0 = System.nanoTime();
+            try {
+                long slice = Math.min(left, SLICE);
+                vm.setFuel(slice);
+                if (limit != 0) {
+                    long remaining = limit - (System.nanoTime() - t0);
+                    if (remaining <= 0) remaining = 1;
+                    vm.setTimeLimit(remaining);
+                }
+                VM.Status st = vm.suspended() ? vm.resume() : vm.run();
+                left -= slice - vm.fuel();
+                if (st == VM.Status.OUT_OF_FUEL && left > 0) return true;
+                if (st == VM.Status.OUT_OF_FUEL) error = "Out of fuel (limit " + budget + ")";
+                else if (st == VM.Status.DEADLINE) error = "Time limit exceeded (" + limit / 1_000_000 + " ms)";
+            } catch (RuntimeException e) {
+                error = message(e);
+            }
+            done.complete(finish(script, buf, out, error, System.nanoTime() - t0));
+            return false;
+        }
+    }
+
+    private Result finish(Script script, ByteArrayOutputStream buf, PrintStream out, String error, long nanos) {
+        out.flush();
+        record(nanos, error != null);
+        return new Result(script, buf.toString(StandardCharsets.UTF_8), error, nanos);
+    }
+
+    private static String message(RuntimeException e) {
+        return e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage();
+    }
+
+    private synchronized void record(long nanos, boolean failed) {
+        buckets[bucket(Math.max(0, nanos))]++;
+        count++;
+        maxNanos = Math.max(maxNanos, nanos);
+        if (failed) failures++;
+    }
+
+    public synchronized Stats stats() {
+        double secs = (System.nanoTime() - startNanos) / 1e9;
+        return new Stats(count, failures, secs > 0 ? count / secs : 0,
+                percentile(0.50), percentile(0.90), percentile(0.99), maxNanos);
+    }
+
+    // Upper end of the bucket holding the q-quantile, capped at the largest latency seen
+    private long percentile(double q) {
+        if (count == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(q * count));
+        long seen = 0;
+        for (int b = 0; b < buckets.length; b++) {
+            seen += buckets[b];
+            if (seen >= rank) return Math.min(upper(b), maxNanos);
+        }
+        return maxNanos;
+    }
+
+    // Values below 2^SUB_BITS have a bucket each; above that, each power of two is split into
+    // 2^SUB_BITS equal buckets
+    static int bucket(long v) {
+        if (v < (1 << SUB_BITS)) return (int) v;
+        int msb = 63 - Long.numberOfLeadingZeros(v);
+        int sub = (int) (v >>> (msb - SUB_BITS)) & ((1 << SUB_BITS) - 1);
+        return ((msb - SUB_BITS + 1) << SUB_BITS) + sub;
+    }
+
+    // Largest value that falls in bucket b
+    static long upper(int b) {
+        if (b < (1 << SUB_BITS)) return b;
+        int msb = (b >> SUB_BITS) + SUB_BITS - 1;
+        long low = (1L << msb) | ((long) (b & ((1 << SUB_BITS) - 1)) << (msb - SUB_BITS));
+        return low + (1L << (msb - SUB_BITS)) - 1;
+    }
+
+    @Override public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Executors.newVirtualThreadPerTaskExecutor() on JDK 21+, looked up reflectively so the
+    // engine still builds and runs on 17
+    private static ExecutorService virtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
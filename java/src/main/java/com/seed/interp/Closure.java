@@ -0,0 +1,14 @@
+package com.seed.interp;
+
+// Function value of the node engine (the AST Interpreter uses Value.FunVal).
+public final class Closure implements Value {
+    public final FunctionNode fn;
+    public final Environment closure;
+
+    public Closure(FunctionNode fn, Environment closure) {
+        this.fn = fn;
+        this.closure = closure;
+    }
+
+    @Override public String toString() { return "<fn " + fn.name + "/" + fn.arity + ">"; }
+}
@@ -1,28 +1,20 @@
 package com.seed.interp;
 
-import java.util.HashMap;
-import java.util.Map;
-
+// Array-backed frame: one per function activation (plus one for globals).
+// Slots are assigned by the Resolver; block locals share their function's frame.
 public class Environment {
-    private final Map<String, Value> values = new HashMap<>();
+    public final Value[] slots;
     public final Environment parent;
 
-    public Environment() { this.parent = null; }
-    public Environment(Environment parent) { this.parent = parent; }
-
-    public void define(String name, Value value) {
-        values.put(name, value);
-    }
-
-    public boolean assignIfExists(String name, Value value) {
-        if (values.containsKey(name)) { values.put(name, value); return true; }
-        if (parent != null) return parent.assignIfExists(name, value);
-        return false;
+    public Environment(int size) { this(size, null); }
+    public Environment(int size, Environment parent) {
+        this.slots = new Value[size];
+        this.parent = parent;
     }
 
-    public Value get(String name) {
-        if (values.containsKey(name)) return values.get(name);
-        if (parent != null) return parent.get(name);
-        throw new RuntimeException("Undefined variable '" + name + "'");
+    public Environment ancestor(int depth) {
+        Environment e = this;
+        for (int i = 0; i < depth; i++) e = e.parent;
+        return e;
     }
 }
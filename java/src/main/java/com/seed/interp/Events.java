@@ -0,0 +1,56 @@
+package com.seed.interp;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// JFR events emitted by the Interpreter. Whether any of them is enabled is sampled once per
+// interpret() call, so a run without a recording only pays for a null check per call and loop.
+final class Events {
+    private Events() {}
+
+    private static final EventType CALL = EventType.getEventType(FunctionCall.class);
+    private static final EventType LOOP = EventType.getEventType(Loop.class);
+    private static final EventType ALLOCATIONS = EventType.getEventType(Allocations.class);
+
+    static boolean anyEnabled() {
+        return CALL.isEnabled() || LOOP.isEnabled() || ALLOCATIONS.isEnabled();
+    }
+
+    @Name("seed.FunctionCall")
+    @Label("Seed Function Call")
+    @Description("One execution of a Seed function body, from entry to return")
+    @Category({ "Seed", "Interpreter" })
+    @StackTrace(false)
+    static final class FunctionCall extends Event {
+        @Label("Function") String function;
+        @Label("Arity") int arity;
+        @Label("Line") int line;
+    }
+
+    @Name("seed.Loop")
+    @Label("Seed While Loop")
+    @Description("One execution of a while statement, with its iteration count")
+    @Category({ "Seed", "Interpreter" })
+    @StackTrace(false)
+    static final class Loop extends Event {
+        @Label("Line") int line;
+        @Label("Column") int column;
+        @Label("Iterations") long iterations;
+    }
+
+    @Name("seed.Allocations")
+    @Label("Seed Value Allocations")
+    @Description("Runtime objects allocated by one interpret() call, per kind")
+    @Category({ "Seed", "Interpreter" })
+    @StackTrace(false)
+    static final class Allocations extends Event {
+        @Label("Boxed Ints") long ints;
+        @Label("Closures") long closures;
+        @Label("Frames") long frames;
+    }
+}
@@ -0,0 +1,276 @@
+package com.seed.interp;
+
+import com.seed.lexer.Token;
+
+// Executable expression tree built once by NodeCompiler. Every operator, literal kind and
+// variable shape has its own final class, so each eval() site sees a single receiver type.
+public abstract class ExprNode {
+    public abstract Value eval(Environment env);
+
+    // Primitive entry points: int-typed and bool-typed nodes override these so operands and
+    // conditions never box; the defaults unbox a Value like the reference Interpreter does.
+    public int evalInt(Environment env, Token site) { return Value.asInt(eval(env), site); }
+    public boolean evalBool(Environment env) { return Value.truthy(eval(env)); }
+    // True when evalInt can never fail its type check (static type INT)
+    boolean isInt() { return false; }
+
+    // Literals
+    static final class IntLit extends ExprNode {
+        private final Value.IntVal value;
+        IntLit(int v) { this.value = new Value.IntVal(v); }
+        @Override public Value eval(Environment env) { return value; }
+        @Override public int evalInt(Environment env, Token site) { return value.v; }
+        @Override boolean isInt() { return true; }
+    }
+
+    static final class BoolLit extends ExprNode {
+        private final Value.BoolVal value;
+        BoolLit(boolean v) { this.value = Value.BoolVal.of(v); }
+        @Override public Value eval(Environment env) { return value; }
+        @Override public boolean evalBool(Environment env) { return value.v; }
+    }
+
+    static final class NilLit extends ExprNode {
+        @Override public Value eval(Environment env) { return Value.Nil.INSTANCE; }
+    }
+
+    // Variables
+    static final class Local extends ExprNode {
+        private final String name;
+        private final int slot;
+        Local(String name, int slot) { this.name = name; this.slot = slot; }
+        @Override public Value eval(Environment env) {
+            Value v = env.slots[slot];
+            if (v == null) throw undefined(name);
+            return v;
+        }
+    }
+
+    static final class Outer extends ExprNode {
+        private final String name;
+        private final int depth;
+        private final int slot;
+        Outer(String name, int depth, int slot) { this.name = name; this.depth = depth; this.slot = slot; }
+        @Override public Value eval(Environment env) {
+            Value v = env.ancestor(depth).slots[slot];
+            if (v == null) throw undefined(name);
+            return v;
+        }
+    }
+
+    // Unresolved name: looked up in the global frame at run time (forward reference to a global)
+    static final class Global extends ExprNode {
+        private final String name;
+        private final Environment globals;
+        private final int slot;
+        Global(String name, Environment globals, int slot) { this.name = name; this.globals = globals; this.slot = slot; }
+        @Override public Value eval(Environment env) {
+            Value v = slot < 0 ? null : globals.slots[slot];
+            if (v == null) throw undefined(name);
+            return v;
+        }
+    }
+
+    // Unary
+    static final class Neg extends ExprNode {
+        private final Token op;
+        private final ExprNode right;
+        Neg(Token op, ExprNode right) { this.op = op; this.right = right; }
+        @Override public Value eval(Environment env) { return Value.IntVal.of(evalInt(env, op)); }
+        @Override public int evalInt(Environment env, Token site) { return -right.evalInt(env, op); }
+        @Override boolean isInt() { return true; }
+    }
+
+    static final class Not extends ExprNode {
+        private final ExprNode right;
+        Not(ExprNode right) { this.right = right; }
+        @Override public Value eval(Environment env) { return Value.BoolVal.of(evalBool(env)); }
+        @Override public boolean evalBool(Environment env) { return !right.evalBool(env); }
+    }
+
+    // Binary operators
+    abstract static class Binary extends ExprNode {
+        final Token op;
+        final ExprNode left;
+        final ExprNode right;
+        // When the left operand may not be an int, both sides are evaluated before it is checked
+        final boolean leftInt;
+        Binary(Token op, ExprNode left, ExprNode right) {
+            this.op = op; this.left = left; this.right = right; this.leftInt = left.isInt();
+        }
+    }
+
+    static final class Add extends Binary {
+        Add(Token op, ExprNode l, ExprNode r) { super(op, l, r); }
+        @Override public Value eval(Environment env) { return Value.IntVal.of(evalInt(env, op)); }
+        @Override public int evalInt(Environment env, Token site) {
+            if (leftInt) { int a = left.evalInt(env, op); return a + right.evalInt(env, op); }
+            Value a = left.eval(env); int b = right.evalInt(env, op);
+            return Value.asInt(a, op) + b;
+        }
+        @Override boolean isInt() { return true; }
+    }
+
+    static final class Sub extends Binary {
+        Sub(Token op, ExprNode l, ExprNode r) { super(op, l, r); }
+        @Override public Value eval(Environment env) { return Value.IntVal.of(evalInt(env, op)); }
+        @Override public int evalInt(Environment env, Token site) {
+            if (leftInt) { int a = left.evalInt(env, op); return a - right.evalInt(env, op); }
+            Value a = left.eval(env); int b = right.evalInt(env, op);
+            return Value.asInt(a, op) - b;
+        }
+        @Override boolean isInt() { return true; }
+    }
+
+    static final class Mul extends Binary {
+        Mul(Token op, ExprNode l, ExprNode r) { super(op, l, r); }
+        @Override public Value eval(Environment env) { return Value.IntVal.of(evalInt(env, op)); }
+        @Override public int evalInt(Environment env, Token site) {
+            if (leftInt) { int a = left.evalInt(env, op); return a * right.evalInt(env, op); }
+            Value a = left.eval(env); int b = right.evalInt(env, op);
+            return Value.asInt(a, op) * b;
+        }
+        @Override boolean isInt() { return true; }
+    }
+
+    static final class Div extends Binary {
+        Div(Token op, ExprNode l, ExprNode r) { super(op, l, r); }
+        @Override public Value eval(Environment env) { return Value.IntVal.of(evalInt(env, op)); }
+        @Override public int evalInt(Environment env, Token site) {
+            if (leftInt) { int a = left.evalInt(env, op); return a / right.evalInt(env, op); }
+            Value a = left.eval(env); int b = right.evalInt(env, op);
+            return Value.asInt(a, op) / b;
+        }
+        @Override boolean isInt() { return true; }
+    }
+
+    static final class Lt extends Binary {
+        Lt(Token op, ExprNode l, ExprNode r) { super(op, l, r); }
+        @Override public Value eval(Environment env) { return Value.BoolVal.of(evalBool(env)); }
+        @Override public boolean evalBool(Environment env) {
+            if (leftInt) { int a = left.evalInt(env, op); return a < right.evalInt(env, op); }
+            Value a = left.eval(env); int b = right.evalInt(env, op);
+            return Value.asInt(a, op) < b;
+        }
+    }
+
+    static final class Le extends Binary {
+        Le(Token op, ExprNode l, ExprNode r) { super(op, l, r); }
+        @Override public Value eval(Environment env) { return Value.BoolVal.of(evalBool(env)); }
+        @Override public boolean evalBool(Environment env) {
+            if (leftInt) { int a = left.evalInt(env, op); return a <= right.evalInt(env, op); }
+            Value a = left.eval(env); int b = right.evalInt(env, op);
+            return Value.asInt(a, op) <= b;
+        }
+    }
+
+    static final class Gt extends Binary {
+        Gt(Token op, ExprNode l, ExprNode r) { super(op, l, r); }
+        @Override public Value eval(Environment env) { return Value.BoolVal.of(evalBool(env)); }
+        @Override public boolean evalBool(Environment env) {
+            if (leftInt) { int a = left.evalInt(env, op); return a > right.evalInt(env, op); }
+            Value a = left.eval(env); int b = right.evalInt(env, op);
+            return Value.asInt(a, op) > b;
+        }
+    }
+
+    static final class Ge extends Binary {
+        Ge(Token op, ExprNode l, ExprNode r) { super(op, l, r); }
+        @Override public Value eval(Environment env) { return Value.BoolVal.of(evalBool(env)); }
+        @Override public boolean evalBool(Environment env) {
+            if (leftInt) { int a = left.evalInt(env, op); return a >= right.evalInt(env, op); }
+            Value a = left.eval(env); int b = right.evalInt(env, op);
+            return Value.asInt(a, op) >= b;
+        }
+    }
+
+    static final class Eq extends Binary {
+        Eq(Token op, ExprNode l, ExprNode r) { super(op, l, r); }
+        @Override public Value eval(Environment env) { return Value.BoolVal.of(evalBool(env)); }
+        @Override public boolean evalBool(Environment env) {
+            if (leftInt && right.isInt()) { int a = left.evalInt(env, op); return a == right.evalInt(env, op); }
+            Value a = left.eval(env);
+            return Value.same(a, right.eval(env));
+        }
+    }
+
+    static final class Ne extends Binary {
+        Ne(Token op, ExprNode l, ExprNode r) { super(op, l, r); }
+        @Override public Value eval(Environment env) { return Value.BoolVal.of(evalBool(env)); }
+        @Override public boolean evalBool(Environment env) {
+            if (leftInt && right.isInt()) { int a = left.evalInt(env, op); return a != right.evalInt(env, op); }
+            Value a = left.eval(env);
+            return !Value.same(a, right.eval(env));
+        }
+    }
+
+    // As in the reference Interpreter: the right side only runs when the left does not decide
+    static final class And extends Binary {
+        And(Token op, ExprNode l, ExprNode r) { super(op, l, r); }
+        @Override public Value eval(Environment env) { return Value.BoolVal.of(evalBool(env)); }
+        @Override public boolean evalBool(Environment env) {
+            return left.evalBool(env) && right.evalBool(env);
+        }
+    }
+
+    static final class Or extends Binary {
+        Or(Token op, ExprNode l, ExprNode r) { super(op, l, r); }
+        @Override public Value eval(Environment env) { return Value.BoolVal.of(evalBool(env)); }
+        @Override public boolean evalBool(Environment env) {
+            return left.evalBool(env) || right.evalBool(env);
+        }
+    }
+
+    // Arithmetic node whose boxed results are counted, used while profiling
+    static final class CountedInt extends ExprNode {
+        private final ExprNode arith;
+        private final Events.Allocations allocs;
+        CountedInt(ExprNode arith, Events.Allocations allocs) { this.arith = arith; this.allocs = allocs; }
+        @Override public Value eval(Environment env) {
+            int v = arith.evalInt(env, null);
+            if (!Value.IntVal.cached(v)) allocs.ints++;
+            return Value.IntVal.of(v);
+        }
+        @Override public int evalInt(Environment env, Token site) { return arith.evalInt(env, site); }
+        @Override boolean isInt() { return true; }
+    }
+
+    // Calls
+    static final class Call extends ExprNode {
+        private final ExprNode callee;
+        private final ExprNode[] args;
+        private final Events.Allocations allocs; // null unless profiling
+        Call(ExprNode callee, ExprNode[] args, Events.Allocations allocs) { this.callee = callee; this.args = args; this.allocs = allocs; }
+        @Override public Value eval(Environment env) {
+            Closure f = closure(env);
+            return f.fn.invoke(frame(f, env));
+        }
+        // Same call in tail position, left to the caller's invoke loop (see TailCall)
+        TailCall tail(Environment env) {
+            Closure f = closure(env);
+            return new TailCall(f.fn, frame(f, env));
+        }
+        private Closure closure(Environment env) {
+            Value cv = callee.eval(env);
+            if (!(cv instanceof Closure f)) {
+                throw new RuntimeException("Attempting to call non-function");
+            }
+            if (args.length != f.fn.arity) {
+                throw new RuntimeException("Arity mismatch: expected " + f.fn.arity + " got " + args.length);
+            }
+            return f;
+        }
+        private Environment frame(Closure f, Environment env) {
+            if (allocs != null) allocs.frames++;
+            Environment callEnv = new Environment(f.fn.frameSize, f.closure);
+            for (int i = 0; i < args.length; i++) {
+                callEnv.slots[i] = args[i].eval(env);
+            }
+            return callEnv;
+        }
+    }
+
+    static RuntimeException undefined(String name) {
+        return new RuntimeException("Undefined variable '" + name + "'");
+    }
+}
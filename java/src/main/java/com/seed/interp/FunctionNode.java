@@ -0,0 +1,56 @@
+package com.seed.interp;
+
+// Compiled body of a Stmt.Fun; shared by every Closure created from the same declaration.
+public final class FunctionNode {
+    public final String name;
+    public final int arity;
+    public final int frameSize;
+    private final int line;
+    private final boolean profiled; // emit an Events.FunctionCall per invocation
+    StmtNode[] body;
+
+    FunctionNode(String name, int arity, int frameSize, int line, boolean profiled) {
+        this.name = name;
+        this.arity = arity;
+        this.frameSize = frameSize;
+        this.line = line;
+        this.profiled = profiled;
+    }
+
+    // Runs the body, then any tail calls it ends with, in this Java frame
+    Value invoke(Environment callEnv) {
+        FunctionNode fn = this;
+        while (true) {
+            try {
+                return fn.profiled ? fn.runProfiled(callEnv) : fn.run(callEnv);
+            } catch (TailCall t) {
+                fn = t.fn;
+                callEnv = t.env;
+            }
+        }
+    }
+
+    private Value run(Environment callEnv) {
+        try {
+            for (StmtNode s : body) s.exec(callEnv);
+        } catch (Return r) {
+            return r.value;
+        }
+        return Value.Nil.INSTANCE;
+    }
+
+    private Value runProfiled(Environment callEnv) {
+        Events.FunctionCall ev = new Events.FunctionCall();
+        ev.begin();
+        try {
+            return run(callEnv);
+        } finally {
+            if (ev.shouldCommit()) {
+                ev.function = name;
+                ev.arity = arity;
+                ev.line = line;
+                ev.commit();
+            }
+        }
+    }
+}
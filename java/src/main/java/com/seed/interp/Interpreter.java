@@ -4,71 +4,197 @@ import com.seed.ast.Expr;
 import com.seed.ast.Stmt;
 import com.seed.lexer.Token;
 import com.seed.lexer.TokenType;
+import com.seed.sema.Purity;
+import com.seed.sema.Resolver;
 
 import java.io.PrintStream;
+import java.lang.invoke.MethodHandle;
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import static com.seed.lexer.TokenType.*;
 
 public class Interpreter {
     private final PrintStream out;
-    private final Environment globals;
+    private Environment globals;
+    private Resolver resolver;
+
+    // Completion of `return f(...)`: the call has been set up in tailFn/tailEnv and is run by
+    // the enclosing invoke loop after the returning frame is gone, so tail calls use no stack.
+    private static final Value TAIL_CALL = new Value() {};
+    private Value.FunVal tailFn;
+    private Environment tailEnv;
+    private MemoTable memo;
+    private Set<Stmt.Fun> pure = Set.of(); // memoizable functions of the current run
+    // Inline caches of the current run, per call site; the AST is shared, so they live here
+    private final Map<Expr.Call, CallCache> callCaches = new IdentityHashMap<>();
+    // JFR (see Events): sampled once per interpret(); allocs is non-null only while profiling
+    private boolean profiling;
+    private Events.Allocations allocs;
+    private Tiering tiering;
+    private Tiering.Profile current; // profile of the function whose body is running, if tiered
+    // Fuel: one unit per call and per loop iteration, handed out in grants so the hot paths only
+    // decrement budget; the deadline is checked when a grant runs out
+    private static final int FUEL_GRANT = 1 << 12;
+    private long fuelLimit = Long.MAX_VALUE;
+    private long timeLimit;
+    private long fuel;
+    private long deadline;
+    private int granted;
+    private int budget;
 
     public Interpreter(PrintStream out) {
         this.out = out;
-        this.globals = new Environment();
+        this.globals = new Environment(0);
+    }
+
+    // Opt-in memoization of pure functions (see Purity), bounded to capacity entries
+    public void enableMemo(int capacity) { this.memo = new MemoTable(capacity); }
+
+    public MemoTable memoTable() { return memo; }
+
+    // Opt-in promotion of hot functions to JVM bytecode (see Tiering). Not with a fuel or time
+    // budget: promoted code runs whole loops without checking either.
+    public void enableTiering(Tiering tiering) {
+        this.tiering = tiering;
+        checkBudgetWithoutTiering();
+    }
+
+    public Tiering tiering() { return tiering; }
+
+    // Calls plus loop iterations allowed per interpret(); running out is a Seed error
+    public void setFuel(long fuel) {
+        if (fuel < 0) throw new IllegalArgumentException("fuel must not be negative");
+        this.fuelLimit = fuel;
+        checkBudgetWithoutTiering();
+    }
+
+    // Wall-clock budget per interpret(), 0 for none
+    public void setTimeLimit(long nanos) {
+        if (nanos < 0) throw new IllegalArgumentException("time limit must not be negative");
+        this.timeLimit = nanos;
+        checkBudgetWithoutTiering();
+    }
+
+    private void checkBudgetWithoutTiering() {
+        if (tiering != null && (fuelLimit != Long.MAX_VALUE || timeLimit != 0)) {
+            throw new IllegalStateException("fuel and time limits cannot be combined with tiering");
+        }
     }
 
     public void interpret(List<Stmt> program) {
-        // Execute top-level in globals
-        for (Stmt s : program) {
-            exec(s, globals);
+        // Resolve variables to (depth, slot); diagnostics are the Check CLI's job
+        Resolver r = new Resolver();
+        r.resolve(program);
+        interpret(program, r);
+    }
+
+    // Runs a program that has already been through resolver.resolve()
+    public void interpret(List<Stmt> program, Resolver resolver) {
+        this.resolver = resolver;
+        pure = memo != null ? Purity.analyze(program, resolver) : Set.of();
+        if (tiering != null) tiering.attach(program, resolver, out);
+        current = null;
+        callCaches.clear();
+        globals = new Environment(resolver.globalFrameSize());
+        fuel = fuelLimit;
+        deadline = System.nanoTime() + timeLimit;
+        granted = 0;
+        budget = 0;
+        profiling = Events.anyEnabled();
+        allocs = null;
+        if (profiling) {
+            allocs = new Events.Allocations();
+            allocs.begin();
+        }
+        try {
+            // Execute top-level in globals
+            for (Stmt s : program) {
+                Value c = exec(s, globals);
+                if (c == TAIL_CALL) c = invoke(tailFn, tailEnv);
+                // A return outside any function still escapes as it always has
+                if (c != null) throw new Return(c);
+            }
+        } catch (StackOverflowError e) {
+            // Java stack exhausted: a Seed error, not a JVM one (--mode=vm has a heap-allocated stack)
+            throw new RuntimeException("Stack overflow");
+        } finally {
+            // The cached functions hold this run's globals
+            callCaches.clear();
+            if (allocs != null) allocs.commit();
         }
     }
 
-    private void exec(Stmt s, Environment env) {
+    // Returns null when s completes normally, or the value of a return executed inside it;
+    // statements that contain others pass a non-null completion straight up to the call.
+    private Value exec(Stmt s, Environment env) {
         if (s instanceof Stmt.Let v) {
             Value init = (v.init == null) ? Value.Nil.INSTANCE : eval(v.init, env);
-            env.define(v.name.lexeme, init);
-            return;
+            env.slots[resolver.slot(v)] = init;
+            return null;
         }
         if (s instanceof Stmt.ExprStmt es) {
             eval(es.expr, env);
-            return;
+            return null;
         }
         if (s instanceof Stmt.Print p) {
             Value val = eval(p.value, env);
             out.println(Value.show(val));
-            return;
+            return null;
         }
         if (s instanceof Stmt.Block b) {
-            Environment inner = new Environment(env);
-            for (Stmt st : b.stmts) exec(st, inner);
-            return;
+            // Block locals live in the enclosing frame; the Resolver gave them their own slots
+            for (Stmt st : b.stmts) {
+                Value c = exec(st, env);
+                if (c != null) return c;
+            }
+            return null;
         }
         if (s instanceof Stmt.If iff) {
-            if (truthy(eval(iff.cond, env))) {
-                exec(iff.thenBranch, env);
+            if (evalBool(iff.cond, env)) {
+                return exec(iff.thenBranch, env);
             } else if (iff.elseBranch != null) {
-                exec(iff.elseBranch, env);
+                return exec(iff.elseBranch, env);
             }
-            return;
+            return null;
         }
         if (s instanceof Stmt.While w) {
-            while (truthy(eval(w.cond, env))) {
-                exec(w.body, env);
+            Events.Loop ev = null;
+            if (profiling) {
+                ev = new Events.Loop();
+                ev.begin();
+            }
+            long iterations = 0;
+            while (evalBool(w.cond, env)) {
+                iterations++;
+                if (--budget < 0) refuel();
+                Value c = exec(w.body, env);
+                if (c != null) {
+                    if (ev != null) endLoop(ev, w, iterations);
+                    if (current != null) tiering.onBackEdges(current, iterations);
+                    return c;
+                }
             }
-            return;
+            if (ev != null) endLoop(ev, w, iterations);
+            if (current != null) tiering.onBackEdges(current, iterations);
+            return null;
         }
         if (s instanceof Stmt.Return r) {
-            Value v = (r.value == null) ? Value.Nil.INSTANCE : eval(r.value, env);
-            throw new Return(v);
+            Expr value = r.value;
+            while (value instanceof Expr.Grouping g) value = g.expr;
+            if (value instanceof Expr.Call c) {
+                prepareCall(c, env);
+                return TAIL_CALL;
+            }
+            return (r.value == null) ? Value.Nil.INSTANCE : eval(r.value, env);
         }
         if (s instanceof Stmt.Fun f) {
-            Value.FunVal fn = new Value.FunVal(f.name, f.params, f.body, env);
-            env.define(f.name.lexeme, fn);
-            return;
+            if (profiling) allocs.closures++;
+            env.slots[resolver.slot(f)] = new Value.FunVal(f, resolver.frameSize(f), env);
+            return null;
         }
         throw new IllegalArgumentException("Unknown Stmt: " + s.getClass());
     }
@@ -76,91 +202,260 @@ public class Interpreter {
     private Value eval(Expr e, Environment env) {
         if (e instanceof Expr.Literal l) {
             if (l.value == null) return Value.Nil.INSTANCE;
-            if (l.value instanceof Integer i) return new Value.IntVal(i);
-            if (l.value instanceof Boolean b) return new Value.BoolVal(b);
+            if (l.value instanceof Integer i) return boxInt(i);
+            if (l.value instanceof Boolean b) return Value.BoolVal.of(b);
             throw new RuntimeException("Unsupported literal: " + l.value);
         }
         if (e instanceof Expr.Variable v) {
-            return env.get(v.name.lexeme);
+            Resolver.Ref r = resolver.ref(v);
+            Value val = (r.depth() >= 0) ? env.ancestor(r.depth()).slots[r.slot()] : global(v.name.lexeme);
+            if (val == null) throw new RuntimeException("Undefined variable '" + v.name.lexeme + "'");
+            return val;
         }
         if (e instanceof Expr.Unary u) {
-            Value rv = eval(u.right, env);
-            if (u.op.type == BANG) return new Value.BoolVal(!truthy(rv));
-            if (u.op.type == MINUS) return new Value.IntVal(-asInt(rv, u.op));
+            if (u.op.type == BANG) return Value.BoolVal.of(evalBool(e, env));
+            if (u.op.type == MINUS) return boxInt(evalInt(e, env));
             throw opError("unary", u.op);
         }
         if (e instanceof Expr.Binary b) {
-            Value lv = eval(b.left, env);
-            Value rv = eval(b.right, env);
             TokenType op = b.op.type;
-            // arithmetic
-            if (op == PLUS) return new Value.IntVal(asInt(lv, b.op) + asInt(rv, b.op));
-            if (op == MINUS) return new Value.IntVal(asInt(lv, b.op) - asInt(rv, b.op));
-            if (op == STAR) return new Value.IntVal(asInt(lv, b.op) * asInt(rv, b.op));
-            if (op == SLASH) return new Value.IntVal(asInt(lv, b.op) / asInt(rv, b.op));
-            // comparison
-            if (op == LESS) return new Value.BoolVal(asInt(lv, b.op) < asInt(rv, b.op));
-            if (op == LESS_EQUAL) return new Value.BoolVal(asInt(lv, b.op) <= asInt(rv, b.op));
-            if (op == GREATER) return new Value.BoolVal(asInt(lv, b.op) > asInt(rv, b.op));
-            if (op == GREATER_EQUAL) return new Value.BoolVal(asInt(lv, b.op) >= asInt(rv, b.op));
-            // equality
-            if (op == EQUAL_EQUAL) return new Value.BoolVal(equalsVal(lv, rv));
-            if (op == BANG_EQUAL) return new Value.BoolVal(!equalsVal(lv, rv));
-            // logical short-circuit
-            if (op == OR_OR) {
-                boolean ltb = truthy(lv);
-                return new Value.BoolVal(ltb || truthy(rv));
-            }
-            if (op == AND_AND) {
-                boolean ltb = truthy(lv);
-                return new Value.BoolVal(ltb && truthy(rv));
-            }
-            throw opError("binary", b.op);
+            if (op == PLUS || op == MINUS || op == STAR || op == SLASH) return boxInt(evalInt(e, env));
+            return Value.BoolVal.of(evalBool(e, env));
         }
         if (e instanceof Expr.Grouping g) {
             return eval(g.expr, env);
         }
         if (e instanceof Expr.Call c) {
-            Value callee = eval(c.callee, env);
-            if (!(callee instanceof Value.FunVal f)) {
-                throw new RuntimeException("Attempting to call non-function");
+            prepareCall(c, env);
+            return invoke(tailFn, tailEnv);
+        }
+        throw new IllegalArgumentException("Unknown Expr: " + e.getClass());
+    }
+
+    // Evaluates callee and arguments into a new frame, left in tailFn/tailEnv
+    private void prepareCall(Expr.Call c, Environment env) {
+        Value.FunVal f = callee(c, env);
+        // Prepare call frame: params occupy the first slots
+        if (profiling) allocs.frames++;
+        Environment callEnv = new Environment(f.frameSize, f.closure);
+        for (int i = 0; i < c.args.size(); i++) {
+            callEnv.slots[i] = eval(c.args.get(i), env);
+        }
+        tailFn = f;
+        tailEnv = callEnv;
+    }
+
+    // Inline cache entry: the function last called from a site whose callee is a global name,
+    // already checked against the site's argument count, and the global slot it was loaded from.
+    // Other callees are evaluated anyway, so a cache would not save anything for them.
+    private static final class CallCache {
+        final Value.FunVal fn;
+        final int globalSlot;
+        CallCache(Value.FunVal fn, int globalSlot) { this.fn = fn; this.globalSlot = globalSlot; }
+    }
+
+    private Value.FunVal callee(Expr.Call c, Environment env) {
+        CallCache ic = callCaches.get(c);
+        // Guard: the name must still be bound to the same function object; a rebinding misses
+        // and refills the cache below
+        if (ic != null && globals.slots[ic.globalSlot] == ic.fn) return ic.fn;
+        return fill(c, eval(c.callee, env), env);
+    }
+
+    private Value.FunVal fill(Expr.Call c, Value callee, Environment env) {
+        if (!(callee instanceof Value.FunVal f)) {
+            throw new RuntimeException("Attempting to call non-function");
+        }
+        if (c.args.size() != f.params.size()) {
+            throw new RuntimeException("Arity mismatch: expected " + f.params.size() + " got " + c.args.size());
+        }
+        int globalSlot = -1;
+        if (c.callee instanceof Expr.Variable v) {
+            Resolver.Ref r = resolver.ref(v);
+            if (r.depth() < 0) globalSlot = resolver.globalSlot(v.name.lexeme);
+            else if (env.ancestor(r.depth()) == globals) globalSlot = r.slot();
+        }
+        if (globalSlot >= 0) callCaches.put(c, new CallCache(f, globalSlot));
+        return f;
+    }
+
+    private Value invoke(Value.FunVal f, Environment callEnv) {
+        if (memo == null || !pure.contains(f.decl)) return run(f, callEnv);
+        int n = f.params.size();
+        long[] key = new long[n];
+        for (int i = 0; i < n; i++) {
+            key[i] = MemoTable.encode(callEnv.slots[i]);
+            if (key[i] == MemoTable.MISS) return run(f, callEnv);
+        }
+        long hit = memo.get(f.decl, key);
+        if (hit != MemoTable.MISS) return MemoTable.decode(hit);
+        Value result = run(f, callEnv);
+        long enc = MemoTable.encode(result);
+        if (enc != MemoTable.MISS) memo.put(f.decl, key, enc);
+        return result;
+    }
+
+    // Runs f's body in callEnv, then any tail calls it ends with, in this Java frame
+    private Value run(Value.FunVal f, Environment callEnv) {
+        Tiering.Profile caller = current;
+        while (true) {
+            if (--budget < 0) refuel();
+            if (tiering != null) {
+                current = tiering.profile(f.decl);
+                if (current != null) {
+                    MethodHandle code = tiering.onCall(current);
+                    if (code != null) {
+                        Value r = Tiering.call(code, callEnv.slots, f.params.size());
+                        if (r != null) {
+                            current = caller;
+                            return r;
+                        }
+                    }
+                }
             }
-            if (c.args.size() != f.params.size()) {
-                throw new RuntimeException("Arity mismatch: expected " + f.params.size() + " got " + c.args.size());
+            Events.FunctionCall ev = null;
+            if (profiling) {
+                ev = new Events.FunctionCall();
+                ev.begin();
             }
-            // Prepare call env
-            Environment callEnv = new Environment(f.closure);
-            for (int i = 0; i < c.args.size(); i++) {
-                Value av = eval(c.args.get(i), env);
-                callEnv.define(f.params.get(i).lexeme, av);
+            Value ret = Value.Nil.INSTANCE;
+            for (Stmt s : f.body) {
+                Value c = exec(s, callEnv);
+                if (c != null) { ret = c; break; }
             }
-            try {
-                for (Stmt s : f.body) exec(s, callEnv);
-            } catch (Return r) {
-                return r.value;
+            if (ev != null && ev.shouldCommit()) {
+                ev.function = f.name.lexeme;
+                ev.arity = f.params.size();
+                ev.line = f.name.line;
+                ev.commit();
             }
-            return Value.Nil.INSTANCE;
+            if (ret != TAIL_CALL) {
+                current = caller;
+                return ret;
+            }
+            f = tailFn;
+            callEnv = tailEnv;
         }
-        throw new IllegalArgumentException("Unknown Expr: " + e.getClass());
     }
 
-    private boolean truthy(Value v) {
-        if (v instanceof Value.BoolVal b) return b.v;
-        if (v instanceof Value.IntVal i) return i.v != 0;
-        return v != Value.Nil.INSTANCE; // functions are truthy, nil is falsey
+    // Primitive paths: expressions whose static type is INT (int literals, unary minus, arithmetic)
+    // or BOOL (bool literals, !, comparisons, equality, logic) are evaluated without boxing;
+    // only the final result is boxed, and then through the IntVal/BoolVal caches.
+    private static boolean isIntExpr(Expr e) {
+        if (e instanceof Expr.Literal l) return l.value instanceof Integer;
+        if (e instanceof Expr.Grouping g) return isIntExpr(g.expr);
+        if (e instanceof Expr.Unary u) return u.op.type == MINUS;
+        if (e instanceof Expr.Binary b) {
+            TokenType op = b.op.type;
+            return op == PLUS || op == MINUS || op == STAR || op == SLASH;
+        }
+        return false;
     }
 
-    private int asInt(Value v, Token opSite) {
-        if (v instanceof Value.IntVal i) return i.v;
-        throw new RuntimeException("Expected int at " + opSite.line + ":" + opSite.col);
+    // Precondition: isIntExpr(e)
+    private int evalInt(Expr e, Environment env) {
+        if (e instanceof Expr.Literal l) return (Integer) l.value;
+        if (e instanceof Expr.Grouping g) return evalInt(g.expr, env);
+        if (e instanceof Expr.Unary u) return -operand(u.right, env, u.op);
+        Expr.Binary b = (Expr.Binary) e;
+        int lv, rv;
+        if (isIntExpr(b.left)) {
+            lv = evalInt(b.left, env);
+            rv = operand(b.right, env, b.op);
+        } else {
+            // Evaluate both sides before checking the left one, like the boxed path did
+            Value boxed = eval(b.left, env);
+            rv = operand(b.right, env, b.op);
+            lv = asInt(boxed, b.op);
+        }
+        switch (b.op.type) {
+            case PLUS: return lv + rv;
+            case MINUS: return lv - rv;
+            case STAR: return lv * rv;
+            default: return lv / rv;
+        }
     }
 
-    private boolean equalsVal(Value a, Value b) {
-        if (a instanceof Value.IntVal ai && b instanceof Value.IntVal bi) return ai.v == bi.v;
-        if (a instanceof Value.BoolVal ab && b instanceof Value.BoolVal bb) return ab.v == bb.v;
-        return a == b; // nil equality and same function object
+    private int operand(Expr e, Environment env, Token site) {
+        return isIntExpr(e) ? evalInt(e, env) : asInt(eval(e, env), site);
     }
 
+    // Truthiness of e, computed without boxing for boolean-shaped expressions
+    private boolean evalBool(Expr e, Environment env) {
+        if (e instanceof Expr.Literal l && l.value instanceof Boolean b) return b;
+        if (e instanceof Expr.Grouping g) return evalBool(g.expr, env);
+        if (e instanceof Expr.Unary u && u.op.type == BANG) return !evalBool(u.right, env);
+        if (e instanceof Expr.Binary b) {
+            TokenType op = b.op.type;
+            if (op == LESS || op == LESS_EQUAL || op == GREATER || op == GREATER_EQUAL) {
+                int lv, rv;
+                if (isIntExpr(b.left)) {
+                    lv = evalInt(b.left, env);
+                    rv = operand(b.right, env, b.op);
+                } else {
+                    Value boxed = eval(b.left, env);
+                    rv = operand(b.right, env, b.op);
+                    lv = asInt(boxed, b.op);
+                }
+                if (op == LESS) return lv < rv;
+                if (op == LESS_EQUAL) return lv <= rv;
+                if (op == GREATER) return lv > rv;
+                return lv >= rv;
+            }
+            if (op == EQUAL_EQUAL || op == BANG_EQUAL) {
+                boolean same;
+                if (isIntExpr(b.left) && isIntExpr(b.right)) {
+                    int lv = evalInt(b.left, env);
+                    same = lv == evalInt(b.right, env);
+                } else {
+                    Value lv = eval(b.left, env);
+                    same = equalsVal(lv, eval(b.right, env));
+                }
+                return (op == EQUAL_EQUAL) == same;
+            }
+            // The right side only runs when the left does not decide
+            if (op == OR_OR) return evalBool(b.left, env) || evalBool(b.right, env);
+            if (op == AND_AND) return evalBool(b.left, env) && evalBool(b.right, env);
+        }
+        return truthy(eval(e, env));
+    }
+
+    private Value boxInt(int v) {
+        if (profiling && !Value.IntVal.cached(v)) allocs.ints++;
+        return Value.IntVal.of(v);
+    }
+
+    private void refuel() {
+        fuel -= granted;
+        granted = 0;
+        if (fuel == 0) throw new RuntimeException("Out of fuel (limit " + fuelLimit + ")");
+        if (timeLimit != 0 && System.nanoTime() - deadline >= 0) {
+            throw new RuntimeException("Time limit exceeded (" + timeLimit / 1_000_000 + " ms)");
+        }
+        granted = (int) Math.min(fuel, FUEL_GRANT);
+        budget = granted - 1;
+    }
+
+    private static void endLoop(Events.Loop ev, Stmt.While w, long iterations) {
+        if (!ev.shouldCommit()) return;
+        ev.line = w.keyword.line;
+        ev.column = w.keyword.col;
+        ev.iterations = iterations;
+        ev.commit();
+    }
+
+    // Unresolved names (e.g. a global used before its declaration) fall back to a lookup by name
+    private Value global(String name) {
+        int slot = resolver.globalSlot(name);
+        return slot < 0 ? null : globals.slots[slot];
+    }
+
+    private boolean truthy(Value v) { return Value.truthy(v); }
+
+    private int asInt(Value v, Token opSite) { return Value.asInt(v, opSite); }
+
+    private boolean equalsVal(Value a, Value b) { return Value.same(a, b); }
+
     private RuntimeException opError(String kind, Token op) {
         return new RuntimeException("Unsupported " + kind + " op '" + op.lexeme + "' at " + op.line + ":" + op.col);
     }
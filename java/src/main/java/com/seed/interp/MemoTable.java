@@ -0,0 +1,81 @@
+package com.seed.interp;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Bounded LRU table of results of pure functions. Arguments and results are primitive Seed
+// values encoded as tagged longs (tag in the high 32 bits: 0 int, 1 bool, 2 nil, as in
+// JvmRuntime); the owner distinguishes functions (a Stmt.Fun, or a bytecode function index).
+public final class MemoTable {
+    // Never a valid encoding (tags are 0..2)
+    public static final long MISS = Long.MIN_VALUE;
+
+    private final int capacity;
+    private final LinkedHashMap<Key, Long> map;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public MemoTable(int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("memo capacity must be positive");
+        this.capacity = capacity;
+        this.map = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override protected boolean removeEldestEntry(Map.Entry<Key, Long> eldest) {
+                if (size() <= MemoTable.this.capacity) return false;
+                evictions++;
+                return true;
+            }
+        };
+    }
+
+    public long get(Object owner, long[] args) {
+        Long r = map.get(new Key(owner, args));
+        if (r == null) { misses++; return MISS; }
+        hits++;
+        return r;
+    }
+
+    public void put(Object owner, long[] args, long result) {
+        map.put(new Key(owner, args), result);
+    }
+
+    public long hits() { return hits; }
+    public long misses() { return misses; }
+    public long evictions() { return evictions; }
+    public int size() { return map.size(); }
+    public int capacity() { return capacity; }
+
+    @Override public String toString() {
+        return "memo: hits=" + hits + " misses=" + misses + " evictions=" + evictions + " size=" + map.size();
+    }
+
+    public static long encode(Value v) {
+        if (v instanceof Value.IntVal i) return i.v & 0xFFFFFFFFL;
+        if (v instanceof Value.BoolVal b) return (1L << 32) | (b.v ? 1 : 0);
+        if (v == Value.Nil.INSTANCE) return 2L << 32;
+        return MISS; // functions are not memoizable
+    }
+
+    public static Value decode(long v) {
+        int tag = (int) (v >>> 32);
+        if (tag == 0) return Value.IntVal.of((int) v);
+        if (tag == 1) return Value.BoolVal.of((int) v != 0);
+        return Value.Nil.INSTANCE;
+    }
+
+    private static final class Key {
+        final Object owner;
+        final long[] args;
+        final int hash;
+        Key(Object owner, long[] args) {
+            this.owner = owner;
+            this.args = args;
+            this.hash = 31 * owner.hashCode() + Arrays.hashCode(args);
+        }
+        @Override public int hashCode() { return hash; }
+        @Override public boolean equals(Object o) {
+            return o instanceof Key k && k.owner.equals(owner) && Arrays.equals(k.args, args);
+        }
+    }
+}
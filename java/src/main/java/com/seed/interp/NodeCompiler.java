@@ -0,0 +1,136 @@
+package com.seed.interp;
+
+import com.seed.ast.Expr;
+import com.seed.ast.Stmt;
+import com.seed.sema.Resolver;
+
+import java.io.PrintStream;
+import java.util.List;
+
+// Translates a resolved AST into ExprNode/StmtNode trees. All dispatch on AST shape and
+// operator token happens here, once, instead of on every evaluation.
+public final class NodeCompiler {
+    private final PrintStream out;
+    private final Resolver resolver;
+    private final Environment globals;
+    // Non-null while profiling: the nodes that emit Events and count allocations are used
+    private final Events.Allocations allocs;
+
+    public NodeCompiler(PrintStream out, Resolver resolver, Environment globals) {
+        this(out, resolver, globals, null);
+    }
+
+    NodeCompiler(PrintStream out, Resolver resolver, Environment globals, Events.Allocations allocs) {
+        this.out = out;
+        this.resolver = resolver;
+        this.globals = globals;
+        this.allocs = allocs;
+    }
+
+    public StmtNode[] compile(List<Stmt> stmts) {
+        StmtNode[] nodes = new StmtNode[stmts.size()];
+        for (int i = 0; i < nodes.length; i++) nodes[i] = stmt(stmts.get(i));
+        return nodes;
+    }
+
+    private StmtNode stmt(Stmt s) {
+        if (s instanceof Stmt.Let v) {
+            int slot = resolver.slot(v);
+            return v.init == null ? new StmtNode.LetNil(slot) : new StmtNode.Let(slot, expr(v.init));
+        }
+        if (s instanceof Stmt.ExprStmt es) {
+            return new StmtNode.ExprStmt(expr(es.expr));
+        }
+        if (s instanceof Stmt.Print p) {
+            return new StmtNode.Print(out, expr(p.value));
+        }
+        if (s instanceof Stmt.Block b) {
+            return new StmtNode.Block(compile(b.stmts));
+        }
+        if (s instanceof Stmt.If iff) {
+            if (iff.elseBranch == null) return new StmtNode.If(expr(iff.cond), stmt(iff.thenBranch));
+            return new StmtNode.IfElse(expr(iff.cond), stmt(iff.thenBranch), stmt(iff.elseBranch));
+        }
+        if (s instanceof Stmt.While w) {
+            if (allocs != null) return new StmtNode.ProfiledWhile(expr(w.cond), stmt(w.body), w.keyword.line, w.keyword.col);
+            return new StmtNode.While(expr(w.cond), stmt(w.body));
+        }
+        if (s instanceof Stmt.Return r) {
+            Expr value = r.value;
+            while (value instanceof Expr.Grouping g) value = g.expr;
+            if (value instanceof Expr.Call c) return new StmtNode.TailReturn(call(c));
+            return new StmtNode.Return(r.value == null ? new ExprNode.NilLit() : expr(r.value));
+        }
+        if (s instanceof Stmt.Fun f) {
+            FunctionNode fn = new FunctionNode(f.name.lexeme, f.params.size(), resolver.frameSize(f), f.name.line, allocs != null);
+            fn.body = compile(f.body);
+            return new StmtNode.FunDecl(resolver.slot(f), fn, allocs);
+        }
+        throw new IllegalArgumentException("Unknown Stmt: " + s.getClass());
+    }
+
+    private ExprNode expr(Expr e) {
+        if (e instanceof Expr.Literal l) {
+            if (l.value == null) return new ExprNode.NilLit();
+            if (l.value instanceof Integer i) return new ExprNode.IntLit(i);
+            if (l.value instanceof Boolean b) return new ExprNode.BoolLit(b);
+            throw new RuntimeException("Unsupported literal: " + l.value);
+        }
+        if (e instanceof Expr.Variable v) {
+            String name = v.name.lexeme;
+            Resolver.Ref r = resolver.ref(v);
+            if (r.depth() == 0) return new ExprNode.Local(name, r.slot());
+            if (r.depth() > 0) return new ExprNode.Outer(name, r.depth(), r.slot());
+            return new ExprNode.Global(name, globals, resolver.globalSlot(name));
+        }
+        if (e instanceof Expr.Unary u) {
+            ExprNode r = expr(u.right);
+            return switch (u.op.type) {
+                case BANG -> new ExprNode.Not(r);
+                case MINUS -> counted(new ExprNode.Neg(u.op, r));
+                default -> throw opError("unary", u.op);
+            };
+        }
+        if (e instanceof Expr.Binary b) {
+            ExprNode l = expr(b.left);
+            ExprNode r = expr(b.right);
+            return switch (b.op.type) {
+                case PLUS -> counted(new ExprNode.Add(b.op, l, r));
+                case MINUS -> counted(new ExprNode.Sub(b.op, l, r));
+                case STAR -> counted(new ExprNode.Mul(b.op, l, r));
+                case SLASH -> counted(new ExprNode.Div(b.op, l, r));
+                case LESS -> new ExprNode.Lt(b.op, l, r);
+                case LESS_EQUAL -> new ExprNode.Le(b.op, l, r);
+                case GREATER -> new ExprNode.Gt(b.op, l, r);
+                case GREATER_EQUAL -> new ExprNode.Ge(b.op, l, r);
+                case EQUAL_EQUAL -> new ExprNode.Eq(b.op, l, r);
+                case BANG_EQUAL -> new ExprNode.Ne(b.op, l, r);
+                case AND_AND -> new ExprNode.And(b.op, l, r);
+                case OR_OR -> new ExprNode.Or(b.op, l, r);
+                default -> throw opError("binary", b.op);
+            };
+        }
+        if (e instanceof Expr.Grouping g) {
+            return expr(g.expr);
+        }
+        if (e instanceof Expr.Call c) {
+            return call(c);
+        }
+        throw new IllegalArgumentException("Unknown Expr: " + e.getClass());
+    }
+
+    private ExprNode.Call call(Expr.Call c) {
+        ExprNode[] args = new ExprNode[c.args.size()];
+        for (int i = 0; i < args.length; i++) args[i] = expr(c.args.get(i));
+        return new ExprNode.Call(expr(c.callee), args, allocs);
+    }
+
+    // Arithmetic boxes its result only when a parent asks for a Value; that is what gets counted
+    private ExprNode counted(ExprNode arith) {
+        return allocs == null ? arith : new ExprNode.CountedInt(arith, allocs);
+    }
+
+    private RuntimeException opError(String kind, com.seed.lexer.Token op) {
+        return new RuntimeException("Unsupported " + kind + " op '" + op.lexeme + "' at " + op.line + ":" + op.col);
+    }
+}
@@ -0,0 +1,46 @@
+package com.seed.interp;
+
+import com.seed.ast.Stmt;
+import com.seed.sema.Resolver;
+
+import java.io.PrintStream;
+import java.util.List;
+
+// Executes a program by first translating it into specialized nodes (NodeCompiler).
+// Same semantics as Interpreter, which stays the reference implementation.
+public class NodeInterpreter {
+    private final PrintStream out;
+
+    public NodeInterpreter(PrintStream out) {
+        this.out = out;
+    }
+
+    public void interpret(List<Stmt> program) {
+        Resolver resolver = new Resolver();
+        resolver.resolve(program);
+        Environment globals = new Environment(resolver.globalFrameSize());
+        // JFR (see Events): as in Interpreter, sampled once per run; without a recording the
+        // compiled nodes carry no instrumentation at all
+        Events.Allocations allocs = null;
+        if (Events.anyEnabled()) {
+            allocs = new Events.Allocations();
+            allocs.begin();
+        }
+        try {
+            StmtNode[] code = new NodeCompiler(out, resolver, globals, allocs).compile(program);
+            for (StmtNode s : code) {
+                try {
+                    s.exec(globals);
+                } catch (TailCall t) {
+                    // A return outside any function still escapes as it always has
+                    throw new Return(t.fn.invoke(t.env));
+                }
+            }
+        } catch (StackOverflowError e) {
+            // Java stack exhausted: a Seed error, as in Interpreter
+            throw new RuntimeException("Stack overflow");
+        } finally {
+            if (allocs != null) allocs.commit();
+        }
+    }
+}
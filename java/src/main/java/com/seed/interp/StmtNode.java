@@ -0,0 +1,128 @@
+package com.seed.interp;
+
+import java.io.PrintStream;
+
+// Executable statement tree built once by NodeCompiler (see ExprNode).
+public abstract class StmtNode {
+    public abstract void exec(Environment env);
+
+    static final class Let extends StmtNode {
+        private final int slot;
+        private final ExprNode init;
+        Let(int slot, ExprNode init) { this.slot = slot; this.init = init; }
+        @Override public void exec(Environment env) { env.slots[slot] = init.eval(env); }
+    }
+
+    static final class LetNil extends StmtNode {
+        private final int slot;
+        LetNil(int slot) { this.slot = slot; }
+        @Override public void exec(Environment env) { env.slots[slot] = Value.Nil.INSTANCE; }
+    }
+
+    static final class ExprStmt extends StmtNode {
+        private final ExprNode expr;
+        ExprStmt(ExprNode expr) { this.expr = expr; }
+        @Override public void exec(Environment env) { expr.eval(env); }
+    }
+
+    static final class Print extends StmtNode {
+        private final PrintStream out;
+        private final ExprNode value;
+        Print(PrintStream out, ExprNode value) { this.out = out; this.value = value; }
+        @Override public void exec(Environment env) { out.println(Value.show(value.eval(env))); }
+    }
+
+    static final class Block extends StmtNode {
+        private final StmtNode[] stmts;
+        Block(StmtNode[] stmts) { this.stmts = stmts; }
+        @Override public void exec(Environment env) {
+            for (StmtNode s : stmts) s.exec(env);
+        }
+    }
+
+    static final class If extends StmtNode {
+        private final ExprNode cond;
+        private final StmtNode thenBranch;
+        If(ExprNode cond, StmtNode thenBranch) { this.cond = cond; this.thenBranch = thenBranch; }
+        @Override public void exec(Environment env) {
+            if (cond.evalBool(env)) thenBranch.exec(env);
+        }
+    }
+
+    static final class IfElse extends StmtNode {
+        private final ExprNode cond;
+        private final StmtNode thenBranch;
+        private final StmtNode elseBranch;
+        IfElse(ExprNode cond, StmtNode thenBranch, StmtNode elseBranch) {
+            this.cond = cond; this.thenBranch = thenBranch; this.elseBranch = elseBranch;
+        }
+        @Override public void exec(Environment env) {
+            if (cond.evalBool(env)) thenBranch.exec(env); else elseBranch.exec(env);
+        }
+    }
+
+    static final class While extends StmtNode {
+        private final ExprNode cond;
+        private final StmtNode body;
+        While(ExprNode cond, StmtNode body) { this.cond = cond; this.body = body; }
+        @Override public void exec(Environment env) {
+            while (cond.evalBool(env)) body.exec(env);
+        }
+    }
+
+    // While with an Events.Loop per execution, used while profiling
+    static final class ProfiledWhile extends StmtNode {
+        private final ExprNode cond;
+        private final StmtNode body;
+        private final int line, column;
+        ProfiledWhile(ExprNode cond, StmtNode body, int line, int column) {
+            this.cond = cond; this.body = body; this.line = line; this.column = column;
+        }
+        @Override public void exec(Environment env) {
+            Events.Loop ev = new Events.Loop();
+            ev.begin();
+            long iterations = 0;
+            try {
+                while (cond.evalBool(env)) {
+                    iterations++;
+                    body.exec(env);
+                }
+            } catch (com.seed.interp.Return | TailCall r) { // the exception, not the StmtNode.Return below
+                commit(ev, iterations);
+                throw r;
+            }
+            commit(ev, iterations);
+        }
+        private void commit(Events.Loop ev, long iterations) {
+            if (!ev.shouldCommit()) return;
+            ev.line = line;
+            ev.column = column;
+            ev.iterations = iterations;
+            ev.commit();
+        }
+    }
+
+    static final class Return extends StmtNode {
+        private final ExprNode value;
+        Return(ExprNode value) { this.value = value; }
+        @Override public void exec(Environment env) { throw new com.seed.interp.Return(value.eval(env)); }
+    }
+
+    // `return f(...)`: hands the callee's frame to the invoke loop instead of calling it here
+    static final class TailReturn extends StmtNode {
+        private final ExprNode.Call call;
+        TailReturn(ExprNode.Call call) { this.call = call; }
+        @Override public void exec(Environment env) { throw call.tail(env); }
+    }
+
+    static final class FunDecl extends StmtNode {
+        private final int slot;
+        private final FunctionNode fn;
+        private final Events.Allocations allocs; // null unless profiling
+        FunDecl(int slot, FunctionNode fn, Events.Allocations allocs) { this.slot = slot; this.fn = fn; this.allocs = allocs; }
+        @Override public void exec(Environment env) {
+            if (allocs != null) allocs.closures++;
+            env.slots[slot] = new Closure(fn, env);
+        }
+    }
+}
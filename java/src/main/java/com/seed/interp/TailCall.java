@@ -0,0 +1,9 @@
+package com.seed.interp;
+
+// Completion of `return f(...)` in the node engine: the callee's frame, run by the enclosing
+// FunctionNode.invoke loop after the returning body has unwound, so tail calls use no stack.
+final class TailCall extends RuntimeException {
+    final FunctionNode fn;
+    final Environment env;
+    TailCall(FunctionNode fn, Environment env) { super(null, null, false, false); this.fn = fn; this.env = env; }
+}
@@ -0,0 +1,255 @@
+package com.seed.interp;
+
+import com.seed.ast.Expr;
+import com.seed.ast.Stmt;
+import com.seed.bytecode.Compiler;
+import com.seed.bytecode.Module;
+import com.seed.bytecode.Verifier;
+import com.seed.jvm.JvmBackend;
+import com.seed.sema.Resolver;
+
+import java.io.PrintStream;
+import java.lang.invoke.MethodHandle;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Second execution tier for the Interpreter. Each top-level function has a Profile with call
+// and loop back-edge counters; when either crosses its threshold the function (plus the
+// functions it calls) goes through the bytecode Compiler and the JVM backend, and calls made
+// after the compiled code is installed run it instead of the AST.
+//
+// Only functions whose compiled form behaves exactly like the interpreted one are promoted:
+// they read nothing outside their own frame, declare each name once, initialize every let and
+// call only other such functions (see eligible()). Type errors raised in
+// compiled code read "Expected int" without the source position.
+public final class Tiering {
+    public enum Tier { INTERPRETED, QUEUED, COMPILED, INELIGIBLE, FAILED }
+
+    private static final ExecutorService COMPILER = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "seed-tier-compiler");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public static final class Profile {
+        public final Stmt.Fun fn;
+        long calls;
+        long backEdges;
+        volatile Tier tier = Tier.INTERPRETED;
+        volatile MethodHandle code; // (long[])long once COMPILED
+        volatile String reason;     // why INELIGIBLE or FAILED
+        final Set<String> callees = new HashSet<>();
+
+        Profile(Stmt.Fun fn) { this.fn = fn; }
+
+        public long calls() { return calls; }
+        public long backEdges() { return backEdges; }
+        public Tier tier() { return tier; }
+        public String reason() { return reason; }
+    }
+
+    private final int callThreshold;
+    private final int backEdgeThreshold;
+    private final boolean background;
+    private final Map<Stmt.Fun, Profile> profiles = new IdentityHashMap<>();
+    private final Map<String, Profile> byName = new LinkedHashMap<>();
+    private PrintStream out;
+    private Resolver resolver;
+
+    // background=false compiles on the interpreter thread, which makes promotion deterministic
+    public Tiering(int callThreshold, int backEdgeThreshold, boolean background) {
+        if (callThreshold <= 0 || backEdgeThreshold <= 0) throw new IllegalArgumentException("tier thresholds must be positive");
+        this.callThreshold = callThreshold;
+        this.backEdgeThreshold = backEdgeThreshold;
+        this.background = background;
+    }
+
+    public int callThreshold() { return callThreshold; }
+    public int backEdgeThreshold() { return backEdgeThreshold; }
+
+    // Called by the Interpreter before running a resolved program
+    void attach(List<Stmt> program, Resolver resolver, PrintStream out) {
+        this.out = out;
+        this.resolver = resolver;
+        profiles.clear();
+        byName.clear();
+        Set<String> rebound = new HashSet<>();
+        for (Stmt s : program) {
+            if (s instanceof Stmt.Fun f) {
+                Profile p = new Profile(f);
+                if (byName.put(f.name.lexeme, p) != null) rebound.add(f.name.lexeme);
+                profiles.put(f, p);
+            } else if (s instanceof Stmt.Let v) {
+                rebound.add(v.name.lexeme);
+            }
+        }
+        for (Profile p : profiles.values()) {
+            if (rebound.contains(p.fn.name.lexeme)) ineligible(p, "name is rebound at top level");
+            else eligible(p);
+        }
+        // A function is only as compilable as everything it calls
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Profile p : profiles.values()) {
+                if (p.tier != Tier.INTERPRETED) continue;
+                for (String c : p.callees) {
+                    Profile q = byName.get(c);
+                    if (q == null || q.tier == Tier.INELIGIBLE) {
+                        ineligible(p, "calls " + c + ", which cannot be compiled");
+                        changed = true;
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    // Counts a call of fn and returns its compiled code, if installed
+    MethodHandle onCall(Profile p) {
+        p.calls++;
+        MethodHandle code = p.code;
+        if (code == null && p.tier == Tier.INTERPRETED && p.calls >= callThreshold) promote(p);
+        return code;
+    }
+
+    void onBackEdges(Profile p, long n) {
+        p.backEdges += n;
+        if (p.tier == Tier.INTERPRETED && p.backEdges >= backEdgeThreshold) promote(p);
+    }
+
+    Profile profile(Stmt.Fun fn) { return profiles.get(fn); }
+
+    public Profile profile(String name) { return byName.get(name); }
+
+    public List<Profile> profiles() { return List.copyOf(byName.values()); }
+
+    public String report() {
+        StringBuilder sb = new StringBuilder();
+        for (Profile p : byName.values()) {
+            sb.append(p.fn.name.lexeme).append(": calls=").append(p.calls).append(" backEdges=").append(p.backEdges)
+              .append(" tier=").append(p.tier);
+            if (p.reason != null) sb.append(" (").append(p.reason).append(')');
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    // Runs compiled code on the arguments in slots 0..n-1; null if an argument is a function
+    static Value call(MethodHandle code, Value[] slots, int n) {
+        long[] args = new long[n];
+        for (int i = 0; i < n; i++) {
+            args[i] = MemoTable.encode(slots[i]);
+            if (args[i] == MemoTable.MISS) return null;
+        }
+        try {
+            return MemoTable.decode((long) code.invokeExact(args));
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new RuntimeException(t);
+        }
+    }
+
+    private void promote(Profile p) {
+        p.tier = Tier.QUEUED;
+        List<Stmt> unit = new ArrayList<>();
+        Deque<Profile> work = new ArrayDeque<>(List.of(p));
+        Set<Profile> seen = new HashSet<>();
+        while (!work.isEmpty()) {
+            Profile q = work.pop();
+            if (!seen.add(q)) continue;
+            unit.add(q.fn);
+            for (String c : q.callees) work.push(byName.get(c));
+        }
+        PrintStream sink = out;
+        Runnable task = () -> compile(p, unit, sink);
+        if (background) COMPILER.execute(task); else task.run();
+    }
+
+    private static void compile(Profile p, List<Stmt> unit, PrintStream sink) {
+        try {
+            Module m = new Compiler().compile(unit);
+            var probs = new Verifier().verify(m);
+            if (!probs.isEmpty()) throw new RuntimeException("verification failed: " + probs.get(0));
+            JvmBackend.Program prog = new JvmBackend().compile(m);
+            prog.setOut(sink);
+            MethodHandle mh = prog.function(p.fn.name.lexeme);
+            p.code = mh.asSpreader(long[].class, p.fn.params.size());
+            p.tier = Tier.COMPILED;
+        } catch (RuntimeException | LinkageError e) {
+            // A class the JVM rejects (VerifyError, ClassFormatError) fails the function, not the run
+            p.reason = e.getMessage() != null ? e.getMessage() : e.toString();
+            p.tier = Tier.FAILED;
+        }
+    }
+
+    private static void ineligible(Profile p, String why) {
+        p.tier = Tier.INELIGIBLE;
+        p.reason = why;
+    }
+
+    // Static checks that the bytecode Compiler reproduces the interpreter's behaviour for fn
+    private void eligible(Profile p) {
+        Set<String> names = new HashSet<>();
+        for (var t : p.fn.params) {
+            if (!names.add(t.lexeme)) { ineligible(p, "duplicate parameter"); return; }
+        }
+        String why = body(p.fn.body, names, p.callees);
+        if (why != null) ineligible(p, why);
+    }
+
+    private String body(List<Stmt> stmts, Set<String> names, Set<String> calls) {
+        for (Stmt s : stmts) {
+            String why = stmt(s, names, calls);
+            if (why != null) return why;
+        }
+        return null;
+    }
+
+    private String stmt(Stmt s, Set<String> names, Set<String> calls) {
+        if (s instanceof Stmt.Let v) {
+            // The compiler keeps one slot per name, so shadowing and re-declaration would alias
+            if (!names.add(v.name.lexeme)) return "redeclares " + v.name.lexeme;
+            if (v.init == null) return "let without initializer";
+            return expr(v.init, calls);
+        }
+        if (s instanceof Stmt.ExprStmt es) return expr(es.expr, calls);
+        if (s instanceof Stmt.Print pr) return expr(pr.value, calls);
+        if (s instanceof Stmt.Block b) return body(b.stmts, names, calls);
+        if (s instanceof Stmt.If iff) {
+            String why = expr(iff.cond, calls);
+            if (why == null) why = stmt(iff.thenBranch, names, calls);
+            if (why == null && iff.elseBranch != null) why = stmt(iff.elseBranch, names, calls);
+            return why;
+        }
+        if (s instanceof Stmt.While w) {
+            String why = expr(w.cond, calls);
+            return why != null ? why : stmt(w.body, names, calls);
+        }
+        if (s instanceof Stmt.Return r) return r.value == null ? null : expr(r.value, calls);
+        return "nested function";
+    }
+
+    private String expr(Expr e, Set<String> calls) {
+        if (e instanceof Expr.Literal) return null;
+        if (e instanceof Expr.Variable v) return resolver.ref(v).depth() == 0 ? null : "reads " + v.name.lexeme + " outside its frame";
+        if (e instanceof Expr.Unary u) return expr(u.right, calls);
+        if (e instanceof Expr.Binary b) {
+            String why = expr(b.left, calls);
+            return why != null ? why : expr(b.right, calls);
+        }
+        if (e instanceof Expr.Grouping g) return expr(g.expr, calls);
+        if (e instanceof Expr.Call c) {
+            if (!(c.callee instanceof Expr.Variable v) || resolver.ref(v).depth() == 0) return "calls a function value";
+            calls.add(v.name.lexeme);
+            for (Expr a : c.args) {
+                String why = expr(a, calls);
+                if (why != null) return why;
+            }
+            return null;
+        }
+        return "unsupported expression";
+    }
+}
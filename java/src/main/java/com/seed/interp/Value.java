@@ -2,23 +2,44 @@ package com.seed.interp;
 
 public interface Value {
     final class IntVal implements Value {
+        private static final int CACHE_LOW = -128;
+        private static final int CACHE_HIGH = 1024;
+        private static final IntVal[] CACHE = new IntVal[CACHE_HIGH - CACHE_LOW + 1];
+        static {
+            for (int i = 0; i < CACHE.length; i++) CACHE[i] = new IntVal(CACHE_LOW + i);
+        }
+
         public final int v;
         public IntVal(int v) { this.v = v; }
+
+        public static boolean cached(int v) { return v >= CACHE_LOW && v <= CACHE_HIGH; }
+
+        // Small ints (loop counters, flags, indices) are shared instead of allocated
+        public static IntVal of(int v) {
+            if (v >= CACHE_LOW && v <= CACHE_HIGH) return CACHE[v - CACHE_LOW];
+            return new IntVal(v);
+        }
     }
     final class BoolVal implements Value {
+        public static final BoolVal TRUE = new BoolVal(true);
+        public static final BoolVal FALSE = new BoolVal(false);
+
         public final boolean v;
-        public BoolVal(boolean v) { this.v = v; }
+        private BoolVal(boolean v) { this.v = v; }
+
+        public static BoolVal of(boolean v) { return v ? TRUE : FALSE; }
     }
     final class FunVal implements Value {
         public final com.seed.lexer.Token name; // may be null for anon
         public final java.util.List<com.seed.lexer.Token> params;
         public final java.util.List<com.seed.ast.Stmt> body;
+        public final int frameSize;
         public final Environment closure;
-        public FunVal(com.seed.lexer.Token name,
-                      java.util.List<com.seed.lexer.Token> params,
-                      java.util.List<com.seed.ast.Stmt> body,
-                      Environment closure) {
-            this.name = name; this.params = params; this.body = body; this.closure = closure;
+        public final com.seed.ast.Stmt.Fun decl;
+        public FunVal(com.seed.ast.Stmt.Fun decl, int frameSize, Environment closure) {
+            this.decl = decl;
+            this.name = decl.name; this.params = decl.params; this.body = decl.body;
+            this.frameSize = frameSize; this.closure = closure;
         }
     }
     final class Nil implements Value {
@@ -26,6 +47,24 @@ public interface Value {
         private Nil() {}
     }
 
+    // Truthiness: booleans by value, ints when non-zero; functions are truthy, nil is falsey
+    static boolean truthy(Value v) {
+        if (v instanceof BoolVal b) return b.v;
+        if (v instanceof IntVal i) return i.v != 0;
+        return v != Nil.INSTANCE;
+    }
+
+    static int asInt(Value v, com.seed.lexer.Token opSite) {
+        if (v instanceof IntVal i) return i.v;
+        throw new RuntimeException("Expected int at " + opSite.line + ":" + opSite.col);
+    }
+
+    static boolean same(Value a, Value b) {
+        if (a instanceof IntVal ai && b instanceof IntVal bi) return ai.v == bi.v;
+        if (a instanceof BoolVal ab && b instanceof BoolVal bb) return ab.v == bb.v;
+        return a == b; // nil equality and same function object
+    }
+
     static String show(Value v) {
         if (v instanceof IntVal i) return Integer.toString(i.v);
         if (v instanceof BoolVal b) return Boolean.toString(b.v);
@@ -34,6 +73,6 @@ public interface Value {
             return "<fn " + n + "/" + f.params.size() + ">";
         }
         if (v instanceof Nil) return "nil";
-        return "<unknown>";
+        return v.toString();
     }
 }
@@ -0,0 +1,40 @@
+package com.seed.ir;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// A basic block: phis first, then straight-line code, then exactly one terminator
+public final class Block {
+    public final int id;
+    public final List<Insn> insns = new ArrayList<>();
+    public final List<Block> preds = new ArrayList<>();
+
+    Block(int id) { this.id = id; }
+
+    public Insn terminator() {
+        Insn last = insns.isEmpty() ? null : insns.get(insns.size() - 1);
+        return last != null && last.op.isTerminator() ? last : null;
+    }
+
+    public List<Block> succs() {
+        Insn t = terminator();
+        return t == null ? List.of() : t.targets;
+    }
+
+    public List<Insn> phis() {
+        List<Insn> out = new ArrayList<>();
+        for (Insn in : insns) {
+            if (in.op != Op.PHI) break;
+            out.add(in);
+        }
+        return out;
+    }
+
+    // Appends before the terminator, if there is one
+    public void addBeforeTerminator(Insn in) {
+        in.block = this;
+        insns.add(terminator() == null ? insns.size() : insns.size() - 1, in);
+    }
+
+    public String name() { return "b" + id; }
+}
@@ -0,0 +1,38 @@
+package com.seed.ir;
+
+import java.util.*;
+
+// Removes instructions whose values are never used, including cycles of phis that only feed
+// each other. Calls, output, control flow and anything that may fail at run time stay.
+public final class Dce implements IrPass {
+    @Override public String name() { return "dce"; }
+
+    @Override public int run(IrFunction f) {
+        Types types = new Types(f);
+        Set<Insn> live = new HashSet<>();
+        Deque<Insn> work = new ArrayDeque<>();
+        for (Block b : f.blocks) {
+            for (Insn in : b.insns) {
+                if (in.hasEffects() || types.mayFail(in)) {
+                    live.add(in);
+                    work.add(in);
+                }
+            }
+        }
+        while (!work.isEmpty()) {
+            for (Insn a : work.poll().args) {
+                if (live.add(a)) work.add(a);
+            }
+        }
+        int removed = 0;
+        for (Block b : f.blocks) {
+            for (Iterator<Insn> it = b.insns.iterator(); it.hasNext(); ) {
+                Insn in = it.next();
+                if (live.contains(in)) continue;
+                it.remove();
+                if (in.op != Op.CONST && in.op != Op.PARAM) removed++;
+            }
+        }
+        return removed;
+    }
+}
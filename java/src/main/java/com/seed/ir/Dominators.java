@@ -0,0 +1,61 @@
+package com.seed.ir;
+
+import java.util.*;
+
+// The dominator tree of a function's reachable blocks, computed with the iterative algorithm
+// of Cooper, Harvey and Kennedy over reverse postorder
+public final class Dominators {
+    private final List<Block> rpo;
+    private final Map<Block, Integer> order = new HashMap<>();
+    private final Map<Block, Block> idom = new HashMap<>();
+    private final Map<Block, List<Block>> children = new HashMap<>();
+
+    public Dominators(IrFunction f) {
+        rpo = f.reversePostorder();
+        for (int i = 0; i < rpo.size(); i++) order.put(rpo.get(i), i);
+        Block entry = rpo.get(0);
+        idom.put(entry, entry);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Block b : rpo.subList(1, rpo.size())) {
+                Block d = null;
+                for (Block p : b.preds) {
+                    if (!idom.containsKey(p)) continue; // not processed yet, or unreachable
+                    d = d == null ? p : intersect(p, d);
+                }
+                if (d != idom.get(b)) {
+                    idom.put(b, d);
+                    changed = true;
+                }
+            }
+        }
+        for (Block b : rpo) children.put(b, new ArrayList<>());
+        for (Block b : rpo.subList(1, rpo.size())) children.get(idom.get(b)).add(b);
+    }
+
+    private Block intersect(Block a, Block b) {
+        while (a != b) {
+            while (order.get(a) > order.get(b)) a = idom.get(a);
+            while (order.get(b) > order.get(a)) b = idom.get(b);
+        }
+        return a;
+    }
+
+    public List<Block> reversePostorder() { return rpo; }
+
+    // The immediate dominator; null for the entry block
+    public Block idom(Block b) {
+        Block d = idom.get(b);
+        return d == b ? null : d;
+    }
+
+    public List<Block> children(Block b) { return children.getOrDefault(b, List.of()); }
+
+    public boolean dominates(Block a, Block b) {
+        for (Block x = b; x != null; x = idom(x)) {
+            if (x == a) return true;
+        }
+        return false;
+    }
+}
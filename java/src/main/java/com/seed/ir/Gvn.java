@@ -0,0 +1,47 @@
+package com.seed.ir;
+
+import java.util.*;
+
+// Global value numbering over the dominator tree: an instruction that computes what a
+// dominating one already computed (same operation on the same values; operands in either order
+// for commutative ones) is replaced by it. Calls and output are never merged. Merging a
+// failing instruction is safe: the dominating copy fails first.
+public final class Gvn implements IrPass {
+    @Override public String name() { return "gvn"; }
+
+    @Override public int run(IrFunction f) {
+        Dominators dom = new Dominators(f);
+        return walk(f, dom, f.entry(), new HashMap<>());
+    }
+
+    private int walk(IrFunction f, Dominators dom, Block b, Map<String, Insn> table) {
+        int changes = 0;
+        List<String> added = new ArrayList<>();
+        for (Insn in : new ArrayList<>(b.insns)) {
+            if (in.hasEffects() || in.op == Op.PARAM) continue;
+            String key = key(in);
+            Insn seen = table.get(key);
+            if (seen != null) {
+                f.replaceAllUses(in, seen);
+                f.remove(in);
+                changes++;
+            } else {
+                table.put(key, in);
+                added.add(key);
+            }
+        }
+        for (Block c : dom.children(b)) changes += walk(f, dom, c, table);
+        for (String k : added) table.remove(k);
+        return changes;
+    }
+
+    private static String key(Insn in) {
+        if (in.op == Op.CONST) return in.value == null ? "nil" : in.value.getClass().getSimpleName() + " " + in.value;
+        StringBuilder sb = new StringBuilder(in.op.name());
+        if (in.op == Op.PHI) sb.append(' ').append(in.block.name());
+        List<Insn> args = in.args;
+        if (in.op.isCommutative() && args.get(0).id > args.get(1).id) args = List.of(args.get(1), args.get(0));
+        for (Insn a : args) sb.append(' ').append(a.id);
+        return sb.toString();
+    }
+}
@@ -0,0 +1,43 @@
+package com.seed.ir;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// An SSA instruction; instructions that produce a value are the value
+public final class Insn {
+    public final Op op;
+    public final int id;
+    public final List<Insn> args = new ArrayList<>();
+    public final List<Block> targets = new ArrayList<>();
+    public Block block;
+    public Object value;   // CONST: an Integer, Boolean or null
+    public int index;      // PARAM: parameter number; CALL: function index
+    public boolean tail;   // CALL: the operand of a RET that follows it, lowered to TAIL_CALL
+
+    Insn(Op op, int id) {
+        this.op = op;
+        this.id = id;
+    }
+
+    public boolean hasValue() { return op != Op.PRINT && !op.isTerminator(); }
+
+    // Calls, output and control flow stay where they are and are never removed as unused
+    public boolean hasEffects() { return op == Op.CALL || op == Op.PRINT || op.isTerminator(); }
+
+    public String name() { return "v" + id; }
+
+    @Override public String toString() {
+        StringBuilder sb = new StringBuilder();
+        if (hasValue()) sb.append(name()).append(" = ");
+        sb.append(op.name().toLowerCase());
+        switch (op) {
+            case CONST -> sb.append(' ').append(value);
+            case PARAM -> sb.append(' ').append(index);
+            case CALL -> sb.append(tail ? " tail f" : " f").append(index);
+            default -> {}
+        }
+        for (Insn a : args) sb.append(' ').append(a.name());
+        for (Block t : targets) sb.append(' ').append(t.name());
+        return sb.toString();
+    }
+}
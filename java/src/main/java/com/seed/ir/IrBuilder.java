@@ -0,0 +1,282 @@
+package com.seed.ir;
+
+import com.seed.ast.Expr;
+import com.seed.ast.Stmt;
+import com.seed.lexer.TokenType;
+
+import java.util.*;
+
+// Builds SSA straight from the AST, with the meaning the stack Compiler gives the program:
+// every name a function declares is one variable, nil until first assigned, and a name read
+// before its first textual let is nil. Loop headers get a phi for every variable and joins a
+// phi for every variable the branches disagree on; simplifyPhis() then drops the ones that
+// turn out to be redundant.
+public final class IrBuilder {
+    private final IrModule mod = new IrModule();
+    private final Map<String, Integer> funcIndex = new HashMap<>();
+
+    private IrFunction fn;
+    private Block cur;                  // null after a return: the rest of the block is dead
+    private Map<String, Insn> env;      // current value of each variable
+    private Set<String> declared;       // names a let has been seen for so far
+    private List<String> names;         // every variable of the function
+
+    public IrModule build(List<Stmt> program) {
+        List<Stmt.Fun> funs = new ArrayList<>();
+        for (Stmt s : program) if (s instanceof Stmt.Fun f) funs.add(f);
+        funcIndex.put("main", 0);
+        for (int i = 0; i < funs.size(); i++) funcIndex.put(funs.get(i).name.lexeme, i + 1);
+        List<Stmt> top = new ArrayList<>();
+        for (Stmt s : program) if (!(s instanceof Stmt.Fun)) top.add(s);
+        function("main", List.of(), top);
+        for (Stmt.Fun f : funs) function(f.name.lexeme, f.params.stream().map(p -> p.lexeme).toList(), f.body);
+        return mod;
+    }
+
+    private void function(String name, List<String> params, List<Stmt> body) {
+        fn = new IrFunction(name, params.size());
+        mod.funcs.add(fn);
+        cur = fn.newBlock();
+        env = new HashMap<>();
+        declared = new HashSet<>(params);
+        Set<String> all = new LinkedHashSet<>(params);
+        for (Stmt s : body) collectLets(s, all);
+        names = new ArrayList<>(all);
+        for (int i = 0; i < params.size(); i++) {
+            Insn p = add(fn.insn(Op.PARAM));
+            p.index = i;
+            env.put(params.get(i), p);
+        }
+        if (names.size() > params.size()) {
+            Insn nil = add(fn.constant(null));
+            for (String n : names) env.putIfAbsent(n, nil);
+        }
+        for (Stmt s : body) stmt(s);
+        if (cur != null) add(fn.insn(Op.RET, add(fn.constant(null))));
+        fn.simplifyPhis();
+        fn.removeUnreachable();
+        fn.mergeBlocks();
+    }
+
+    private static void collectLets(Stmt s, Set<String> out) {
+        if (s instanceof Stmt.Let v) out.add(v.name.lexeme);
+        else if (s instanceof Stmt.Block b) for (Stmt st : b.stmts) collectLets(st, out);
+        else if (s instanceof Stmt.If iff) {
+            collectLets(iff.thenBranch, out);
+            if (iff.elseBranch != null) collectLets(iff.elseBranch, out);
+        } else if (s instanceof Stmt.While w) collectLets(w.body, out);
+    }
+
+    private Insn add(Insn in) {
+        in.block = cur;
+        cur.insns.add(in);
+        return in;
+    }
+
+    private void jump(Block to) {
+        Insn j = add(fn.insn(Op.JMP));
+        j.targets.add(to);
+        to.preds.add(cur);
+    }
+
+    private void branch(Insn cond, Block then, Block otherwise) {
+        Insn br = add(fn.insn(Op.BR, cond));
+        br.targets.add(then);
+        br.targets.add(otherwise);
+        then.preds.add(cur);
+        otherwise.preds.add(cur);
+    }
+
+    // Statements
+    private void stmt(Stmt s) {
+        if (cur == null) {
+            // Unreachable, but its lets still declare names, as they do for the Compiler
+            collectDeclared(s);
+            return;
+        }
+        if (s instanceof Stmt.Let v) {
+            declared.add(v.name.lexeme);
+            if (v.init != null) env.put(v.name.lexeme, expr(v.init));
+            return;
+        }
+        if (s instanceof Stmt.ExprStmt es) {
+            expr(es.expr);
+            return;
+        }
+        if (s instanceof Stmt.Print p) {
+            add(fn.insn(Op.PRINT, expr(p.value)));
+            return;
+        }
+        if (s instanceof Stmt.Block b) {
+            for (Stmt st : b.stmts) stmt(st);
+            return;
+        }
+        if (s instanceof Stmt.If iff) {
+            Insn cond = expr(iff.cond);
+            Block then = fn.newBlock(), otherwise = fn.newBlock();
+            branch(cond, then, otherwise);
+            Map<String, Insn> before = env;
+            List<Block> ends = new ArrayList<>();
+            List<Map<String, Insn>> envs = new ArrayList<>();
+            for (Block b : List.of(then, otherwise)) {
+                cur = b;
+                env = new HashMap<>(before);
+                Stmt arm = b == then ? iff.thenBranch : iff.elseBranch;
+                if (arm != null) stmt(arm);
+                if (cur != null) {
+                    ends.add(cur);
+                    envs.add(env);
+                }
+            }
+            join(ends, envs);
+            return;
+        }
+        if (s instanceof Stmt.While w) {
+            Block header = fn.newBlock();
+            jump(header);
+            cur = header;
+            Map<String, Insn> phis = new HashMap<>();
+            for (String n : names) {
+                Insn phi = add(fn.insn(Op.PHI, env.get(n)));
+                phis.put(n, phi);
+            }
+            env = new HashMap<>(phis);
+            Insn cond = expr(w.cond);
+            Map<String, Insn> exitEnv = env;
+            Block body = fn.newBlock(), exit = fn.newBlock();
+            branch(cond, body, exit);
+            cur = body;
+            env = new HashMap<>(exitEnv);
+            stmt(w.body);
+            if (cur != null) {
+                jump(header);
+                for (String n : names) phis.get(n).args.add(env.get(n));
+            }
+            cur = exit;
+            env = exitEnv;
+            return;
+        }
+        if (s instanceof Stmt.Return r) {
+            Expr value = r.value;
+            while (value instanceof Expr.Grouping g) value = g.expr;
+            Insn v;
+            if (value instanceof Expr.Call c) {
+                v = call(c);
+                v.tail = true;
+            } else {
+                v = value != null ? expr(value) : add(fn.constant(null));
+            }
+            add(fn.insn(Op.RET, v));
+            cur = null;
+            return;
+        }
+        if (s instanceof Stmt.Fun) return; // compiled separately
+        throw new IllegalArgumentException("Unknown Stmt: " + s.getClass());
+    }
+
+    private void collectDeclared(Stmt s) {
+        Set<String> lets = new HashSet<>();
+        collectLets(s, lets);
+        declared.addAll(lets);
+    }
+
+    // Continues in a new block that the given branch ends jump to, with a phi for every
+    // variable they disagree on; no ends means the code that follows is dead
+    private void join(List<Block> ends, List<Map<String, Insn>> envs) {
+        if (ends.isEmpty()) {
+            cur = null;
+            return;
+        }
+        Block join = fn.newBlock();
+        for (Block e : ends) {
+            cur = e;
+            jump(join);
+        }
+        cur = join;
+        env = new HashMap<>(envs.get(0));
+        for (String n : names) {
+            boolean same = true;
+            for (Map<String, Insn> e : envs) same &= e.get(n) == envs.get(0).get(n);
+            if (same) continue;
+            Insn phi = add(fn.insn(Op.PHI));
+            for (Map<String, Insn> e : envs) phi.args.add(e.get(n));
+            env.put(n, phi);
+        }
+    }
+
+    // Expressions
+    private Insn expr(Expr e) {
+        if (e instanceof Expr.Literal l) return add(fn.constant(l.value));
+        if (e instanceof Expr.Variable v) {
+            String n = v.name.lexeme;
+            // Not declared (yet): nil, as in the stack code
+            return declared.contains(n) ? env.get(n) : add(fn.constant(null));
+        }
+        if (e instanceof Expr.Grouping g) return expr(g.expr);
+        if (e instanceof Expr.Unary u) {
+            switch (u.op.type) {
+                case BANG -> { return add(fn.insn(Op.NOT, expr(u.right))); }
+                case MINUS -> {
+                    Insn zero = add(fn.constant(0));
+                    return add(fn.insn(Op.SUB, zero, expr(u.right))); // 0 - x
+                }
+                default -> throw new RuntimeException("Unsupported unary: " + u.op.lexeme);
+            }
+        }
+        if (e instanceof Expr.Binary b) {
+            if (b.op.type == TokenType.AND_AND || b.op.type == TokenType.OR_OR) {
+                return logical(b.op.type == TokenType.AND_AND, b.left, b.right);
+            }
+            Insn l = expr(b.left);
+            Insn r = expr(b.right);
+            Op op = switch (b.op.type) {
+                case PLUS -> Op.ADD;
+                case MINUS -> Op.SUB;
+                case STAR -> Op.MUL;
+                case SLASH -> Op.DIV;
+                case EQUAL_EQUAL -> Op.EQ;
+                case BANG_EQUAL -> Op.NE;
+                case LESS -> Op.LT;
+                case LESS_EQUAL -> Op.LE;
+                case GREATER -> Op.GT;
+                case GREATER_EQUAL -> Op.GE;
+                default -> throw new RuntimeException("Unsupported binary: " + b.op.lexeme);
+            };
+            return add(fn.insn(op, l, r));
+        }
+        if (e instanceof Expr.Call c) return call(c);
+        throw new IllegalArgumentException("Unknown Expr: " + e.getClass());
+    }
+
+    // The bool of left && right (or left || right) by truthiness; right is only evaluated
+    // when left does not decide, as in the Interpreter
+    private Insn logical(boolean and, Expr left, Expr rightExpr) {
+        Insn l = expr(left);
+        Block right = fn.newBlock(), fixed = fn.newBlock();
+        if (and) branch(l, right, fixed); else branch(l, fixed, right);
+        Map<String, Insn> saved = env;
+        cur = right;
+        Insn truth = add(fn.insn(Op.NOT, add(fn.insn(Op.NOT, expr(rightExpr)))));
+        Block rightEnd = cur;
+        cur = fixed;
+        Insn k = add(fn.constant(!and));
+        join(List.of(rightEnd, fixed), List.of(saved, saved));
+        Insn phi = fn.insn(Op.PHI, truth, k);
+        phi.block = cur;
+        cur.insns.add(0, phi);
+        return phi;
+    }
+
+    private Insn call(Expr.Call c) {
+        if (!(c.callee instanceof Expr.Variable v)) {
+            throw new RuntimeException("Only direct calls by name are supported in bytecode compiler");
+        }
+        Integer fidx = funcIndex.get(v.name.lexeme);
+        if (fidx == null) throw new RuntimeException("Unknown function '" + v.name.lexeme + "'");
+        List<Insn> args = new ArrayList<>();
+        for (Expr a : c.args) args.add(expr(a));
+        Insn call = add(fn.insn(Op.CALL, args.toArray(new Insn[0])));
+        call.index = fidx;
+        return call;
+    }
+}
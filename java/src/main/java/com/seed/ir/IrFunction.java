@@ -0,0 +1,201 @@
+package com.seed.ir;
+
+import java.util.*;
+
+// A function in SSA form. blocks.get(0) is the entry block; PARAMs sit at its start.
+public final class IrFunction {
+    public final String name;
+    public final int arity;
+    public final List<Block> blocks = new ArrayList<>();
+    private int nextInsn, nextBlock;
+
+    public IrFunction(String name, int arity) {
+        this.name = name;
+        this.arity = arity;
+    }
+
+    public Block entry() { return blocks.get(0); }
+
+    public Block newBlock() {
+        Block b = new Block(nextBlock++);
+        blocks.add(b);
+        return b;
+    }
+
+    // A new instruction, not yet placed in a block
+    public Insn insn(Op op, Insn... args) {
+        Insn in = new Insn(op, nextInsn++);
+        in.args.addAll(Arrays.asList(args));
+        return in;
+    }
+
+    public Insn constant(Object value) {
+        Insn k = insn(Op.CONST);
+        k.value = value;
+        return k;
+    }
+
+    // Blocks reachable from the entry, each after all of its predecessors except along back edges
+    public List<Block> reversePostorder() {
+        List<Block> post = new ArrayList<>();
+        Set<Block> seen = new HashSet<>();
+        Deque<Block> stack = new ArrayDeque<>();
+        Deque<Integer> next = new ArrayDeque<>();
+        stack.push(entry());
+        next.push(0);
+        seen.add(entry());
+        while (!stack.isEmpty()) {
+            Block b = stack.peek();
+            int i = next.pop();
+            List<Block> succs = b.succs();
+            if (i < succs.size()) {
+                next.push(i + 1);
+                // Last successor first, so a branch's then-block ends up right after it
+                Block s = succs.get(succs.size() - 1 - i);
+                if (seen.add(s)) {
+                    stack.push(s);
+                    next.push(0);
+                }
+            } else {
+                stack.pop();
+                post.add(b);
+            }
+        }
+        Collections.reverse(post);
+        return post;
+    }
+
+    // Every instruction that uses a value, once per use
+    public Map<Insn, List<Insn>> users() {
+        Map<Insn, List<Insn>> users = new HashMap<>();
+        for (Block b : blocks) {
+            for (Insn in : b.insns) {
+                for (Insn a : in.args) users.computeIfAbsent(a, k -> new ArrayList<>()).add(in);
+            }
+        }
+        return users;
+    }
+
+    public void replaceAllUses(Insn old, Insn with) {
+        for (Block b : blocks) {
+            for (Insn in : b.insns) in.args.replaceAll(a -> a == old ? with : a);
+        }
+    }
+
+    public void remove(Insn in) {
+        in.block.insns.remove(in);
+    }
+
+    // Drops the edge from -> to, along with the matching phi arguments in `to`
+    public void removeEdge(Block from, Block to) {
+        int i = to.preds.indexOf(from);
+        if (i < 0) return;
+        to.preds.remove(i);
+        for (Insn phi : to.phis()) phi.args.remove(i);
+    }
+
+    // Removes blocks the entry cannot reach; returns how many
+    public int removeUnreachable() {
+        Set<Block> live = new HashSet<>(reversePostorder());
+        int removed = 0;
+        for (Iterator<Block> it = blocks.iterator(); it.hasNext(); ) {
+            Block b = it.next();
+            if (live.contains(b)) continue;
+            for (Block s : b.succs()) removeEdge(b, s);
+            it.remove();
+            removed++;
+        }
+        return removed;
+    }
+
+    // Replaces phis whose arguments are all one value (or the phi itself) by that value, until
+    // none are left; a phi with no arguments left reads nil
+    public void simplifyPhis() {
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Block b : blocks) {
+                for (Insn phi : b.phis()) {
+                    Insn same = null;
+                    boolean trivial = true;
+                    for (Insn a : phi.args) {
+                        if (a == phi || a == same) continue;
+                        if (same != null) { trivial = false; break; }
+                        same = a;
+                    }
+                    if (!trivial) continue;
+                    if (same == null) {
+                        same = constant(null);
+                        b.insns.add(b.phis().size(), same);
+                        same.block = b;
+                    }
+                    replaceAllUses(phi, same);
+                    remove(phi);
+                    changed = true;
+                }
+            }
+        }
+    }
+
+    // Folds a block into its only predecessor when that predecessor jumps straight to it
+    public void mergeBlocks() {
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Block b : blocks) {
+                if (b == entry() || b.preds.size() != 1) continue;
+                Block p = b.preds.get(0);
+                Insn t = p.terminator();
+                if (p == b || t.op != Op.JMP) continue;
+                for (Insn phi : b.phis()) {
+                    replaceAllUses(phi, phi.args.get(0));
+                    remove(phi);
+                }
+                p.insns.remove(t);
+                for (Insn in : b.insns) in.block = p;
+                p.insns.addAll(b.insns);
+                for (Block s : b.succs()) s.preds.replaceAll(x -> x == b ? p : x);
+                blocks.remove(b);
+                changed = true;
+                break;
+            }
+        }
+    }
+
+    // Phis, CFG edges and operand placement agree; returns the problems found
+    public List<String> check() {
+        List<String> probs = new ArrayList<>();
+        Set<Insn> placed = new HashSet<>();
+        for (Block b : blocks) placed.addAll(b.insns);
+        for (Block b : blocks) {
+            if (b.terminator() == null) probs.add(name + ":" + b.name() + ": no terminator");
+            for (Block s : b.succs()) {
+                if (!s.preds.contains(b)) probs.add(name + ":" + b.name() + ": not a predecessor of " + s.name());
+            }
+            for (Insn in : b.insns) {
+                if (in.block != b) probs.add(name + ":" + in.name() + ": wrong block");
+                if (in.op == Op.PHI && in.args.size() != b.preds.size()) {
+                    probs.add(name + ":" + in.name() + ": phi arguments do not match predecessors");
+                }
+                for (Insn a : in.args) {
+                    if (!placed.contains(a)) probs.add(name + ":" + in.name() + ": operand " + a.name() + " is not placed");
+                }
+            }
+        }
+        return probs;
+    }
+
+    @Override public String toString() {
+        StringBuilder sb = new StringBuilder("fn ").append(name).append('/').append(arity).append('\n');
+        for (Block b : blocks) {
+            sb.append(b.name()).append(':');
+            if (!b.preds.isEmpty()) {
+                sb.append(" <-");
+                for (Block p : b.preds) sb.append(' ').append(p.name());
+            }
+            sb.append('\n');
+            for (Insn in : b.insns) sb.append("  ").append(in).append('\n');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,15 @@
+package com.seed.ir;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// The functions of a program in bytecode Module order: main first, then declaration order
+public final class IrModule {
+    public final List<IrFunction> funcs = new ArrayList<>();
+
+    @Override public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (IrFunction f : funcs) sb.append(f);
+        return sb.toString();
+    }
+}
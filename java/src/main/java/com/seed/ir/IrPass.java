@@ -0,0 +1,8 @@
+package com.seed.ir;
+
+// One SSA-to-SSA transformation of a function, in place; returns how many changes it made
+public interface IrPass {
+    String name();
+
+    int run(IrFunction f);
+}
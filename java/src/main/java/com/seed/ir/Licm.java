@@ -0,0 +1,94 @@
+package com.seed.ir;
+
+import java.util.*;
+
+// Loop-invariant code motion: an instruction inside a loop whose operands are all defined
+// outside it moves to the loop's preheader, so it runs once per entry instead of once per
+// iteration. Only instructions that cannot fail move (Types.mayFail), because the preheader
+// also runs when the loop body does not. Inner loops go first, so invariants can climb out
+// of a nest one level at a time.
+public final class Licm implements IrPass {
+    @Override public String name() { return "licm"; }
+
+    @Override public int run(IrFunction f) {
+        Dominators before = new Dominators(f);
+        for (Block h : loops(f, before).keySet()) preheader(f, h, before);
+        Dominators dom = new Dominators(f);
+        Map<Block, Set<Block>> loops = loops(f, dom);
+        List<Block> headers = new ArrayList<>(loops.keySet());
+        headers.sort(Comparator.comparingInt(h -> loops.get(h).size()));
+        Types types = new Types(f);
+        int hoisted = 0;
+        for (Block h : headers) {
+            Set<Block> body = loops.get(h);
+            Block pre = outside(h, body);
+            if (pre == null || pre.succs().size() != 1) continue;
+            boolean moved = true;
+            while (moved) {
+                moved = false;
+                for (Block b : dom.reversePostorder()) {
+                    if (!body.contains(b)) continue;
+                    for (Insn in : new ArrayList<>(b.insns)) {
+                        if (!invariant(in, body, types)) continue;
+                        b.insns.remove(in);
+                        pre.addBeforeTerminator(in);
+                        if (in.op != Op.CONST) hoisted++;
+                        moved = true;
+                    }
+                }
+            }
+        }
+        return hoisted;
+    }
+
+    private static boolean invariant(Insn in, Set<Block> body, Types types) {
+        if (in.hasEffects() || in.op == Op.PHI || in.op == Op.PARAM || types.mayFail(in)) return false;
+        for (Insn a : in.args) if (body.contains(a.block)) return false;
+        return true;
+    }
+
+    // Natural loops by header: the blocks that reach a back edge's source without passing
+    // through the header it jumps to
+    private static Map<Block, Set<Block>> loops(IrFunction f, Dominators dom) {
+        Map<Block, Set<Block>> loops = new LinkedHashMap<>();
+        for (Block b : dom.reversePostorder()) {
+            for (Block h : b.succs()) {
+                if (!dom.dominates(h, b)) continue;
+                Set<Block> body = loops.computeIfAbsent(h, k -> new HashSet<>(List.of(k)));
+                Deque<Block> work = new ArrayDeque<>();
+                if (body.add(b)) work.add(b);
+                while (!work.isEmpty()) {
+                    for (Block p : work.poll().preds) if (body.add(p)) work.add(p);
+                }
+            }
+        }
+        return loops;
+    }
+
+    // The only predecessor of h from outside the loop, or null if there are several
+    private static Block outside(Block h, Set<Block> body) {
+        Block pre = null;
+        for (Block p : h.preds) {
+            if (body.contains(p)) continue;
+            if (pre != null) return null;
+            pre = p;
+        }
+        return pre;
+    }
+
+    // Gives h a block of its own to hoist into when its one entry edge comes from a branch
+    private static void preheader(IrFunction f, Block h, Dominators dom) {
+        Set<Block> body = new HashSet<>();
+        for (Block p : h.preds) if (dom.dominates(h, p)) body.add(p);
+        Block p = outside(h, body);
+        if (p == null || p.succs().size() == 1) return;
+        Block pre = f.newBlock();
+        Insn j = f.insn(Op.JMP);
+        j.targets.add(h);
+        j.block = pre;
+        pre.insns.add(j);
+        pre.preds.add(p);
+        p.terminator().targets.replaceAll(t -> t == h ? pre : t);
+        h.preds.replaceAll(x -> x == p ? pre : x);
+    }
+}
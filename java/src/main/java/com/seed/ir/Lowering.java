@@ -0,0 +1,434 @@
+package com.seed.ir;
+
+import com.seed.bytecode.Function;
+import com.seed.bytecode.Instr;
+import com.seed.bytecode.Module;
+import com.seed.bytecode.Opcode;
+
+import java.util.*;
+
+// Turns SSA back into stack bytecode that Verifier accepts:
+//  - A value used once, later in its own block and not by a phi, stays on the operand stack;
+//    its user finds it there, with any other operands loaded around it. If the stack order does
+//    not fit, the values in the way are parked in scratch locals.
+//  - Constants used elsewhere are re-emitted at each use.
+//  - Everything else (phis, parameters, values used twice or across blocks) gets a local.
+//    Locals are assigned by interference over SSA liveness, parameters keep their slots, and a
+//    phi shares its local with an input whenever they do not interfere, so the usual
+//    `let i = i + 1` needs no copy.
+//  - Phi copies run on the incoming edges (critical edges are split first), loading all
+//    sources before storing any, which makes them a parallel copy.
+// Instructions are emitted in IR order, so calls, output and run-time errors happen in the
+// order the IR has them.
+public final class Lowering {
+
+    public Module lower(IrModule ir) {
+        Module m = new Module();
+        for (IrFunction f : ir.funcs) m.addFunction(new Function(f.name, f.arity, 0));
+        for (int i = 0; i < ir.funcs.size(); i++) new FunctionLowering(m, ir.funcs.get(i), m.funcs.get(i)).run();
+        return m;
+    }
+
+    private enum Kind { STACK, SLOT, REMAT, DROP, SKIP }
+
+    private record Pending(Insn value, int start) {}
+
+    private static final class FunctionLowering {
+        final Module mod;
+        final IrFunction f;
+        final Function out;
+        final List<Instr> code;
+        final Map<Insn, Kind> kinds = new HashMap<>();
+        final Map<Insn, List<Insn>> users;
+        final Map<Insn, Integer> slot = new HashMap<>();
+        int scratchBase, scratchCount;
+        final Deque<Integer> freeScratch = new ArrayDeque<>();
+
+        // Per block while emitting
+        final List<Pending> pending = new ArrayList<>();
+        final Map<Insn, Integer> storedAt = new HashMap<>(); // pc just after the value's STORE
+        final Map<Insn, Integer> spilled = new HashMap<>();
+        Block block;
+
+        FunctionLowering(Module mod, IrFunction f, Function out) {
+            this.mod = mod;
+            this.f = f;
+            this.out = out;
+            this.code = out.code;
+            splitCriticalEdges();
+            this.users = f.users();
+        }
+
+        void run() {
+            List<Block> layout = f.reversePostorder();
+            classify(layout);
+            assignSlots(layout);
+            Map<Block, Integer> label = new HashMap<>();
+            List<Map.Entry<Integer, Block>> fixups = new ArrayList<>();
+            code.add(new Instr(Opcode.ENTER, 0));
+            for (int bi = 0; bi < layout.size(); bi++) {
+                block = layout.get(bi);
+                Block next = bi + 1 < layout.size() ? layout.get(bi + 1) : null;
+                label.put(block, code.size());
+                pending.clear();
+                storedAt.clear();
+                List<Insn> insns = block.insns;
+                for (int i = 0; i < insns.size(); i++) {
+                    Insn in = insns.get(i);
+                    Kind kind = kinds.get(in);
+                    switch (in.op) {
+                        case PHI, PARAM -> {}
+                        case CONST -> {
+                            if (kind == Kind.STACK) {
+                                pending.add(new Pending(in, code.size()));
+                                code.add(new Instr(Opcode.CONST, mod.addConst(in.value)));
+                            }
+                        }
+                        case RET -> {
+                            operands(in.args);
+                            code.add(new Instr(Opcode.LEAVE));
+                            code.add(new Instr(Opcode.RET));
+                        }
+                        case BR -> {
+                            operands(in.args);
+                            fixups.add(Map.entry(code.size(), in.targets.get(1)));
+                            code.add(new Instr(Opcode.JMP_IF_FALSE, 0));
+                            if (in.targets.get(0) != next) {
+                                fixups.add(Map.entry(code.size(), in.targets.get(0)));
+                                code.add(new Instr(Opcode.JMP, 0));
+                            }
+                        }
+                        case JMP -> {
+                            Block to = in.targets.get(0);
+                            phiCopies(to);
+                            if (to != next) {
+                                fixups.add(Map.entry(code.size(), to));
+                                code.add(new Instr(Opcode.JMP, 0));
+                            }
+                        }
+                        case CALL -> {
+                            int start = operands(in.args);
+                            Insn after = i + 1 < insns.size() ? insns.get(i + 1) : null;
+                            if (in.tail && after != null && after.op == Op.RET && after.args.get(0) == in) {
+                                code.add(new Instr(Opcode.LEAVE));
+                                code.add(new Instr(Opcode.TAIL_CALL, in.index, in.args.size()));
+                                i++;
+                                continue;
+                            }
+                            code.add(new Instr(Opcode.CALL, in.index, in.args.size()));
+                            result(in, kind, start);
+                        }
+                        case PRINT -> {
+                            operands(in.args);
+                            code.add(new Instr(Opcode.PRINT));
+                        }
+                        default -> {
+                            int start = operands(in.args);
+                            code.add(new Instr(opcode(in.op)));
+                            result(in, kind, start);
+                        }
+                    }
+                }
+                if (!pending.isEmpty()) throw new IllegalStateException(f.name + ":" + block.name() + ": values left on the stack");
+            }
+            for (var fx : fixups) {
+                int pc = fx.getKey();
+                code.set(pc, new Instr(code.get(pc).op, label.get(fx.getValue()) - (pc + 1)));
+            }
+            out.nlocals = scratchBase + scratchCount;
+        }
+
+        private static Opcode opcode(Op op) {
+            return switch (op) {
+                case ADD -> Opcode.ADD;
+                case SUB -> Opcode.SUB;
+                case MUL -> Opcode.MUL;
+                case DIV -> Opcode.DIV;
+                case EQ -> Opcode.EQ;
+                case NE -> Opcode.NE;
+                case LT -> Opcode.LT;
+                case LE -> Opcode.LE;
+                case GT -> Opcode.GT;
+                case GE -> Opcode.GE;
+                case NOT -> Opcode.NOT;
+                default -> throw new IllegalArgumentException("No opcode for " + op);
+            };
+        }
+
+        private void result(Insn in, Kind kind, int start) {
+            switch (kind) {
+                case STACK -> pending.add(new Pending(in, start));
+                case SLOT -> {
+                    code.add(new Instr(Opcode.STORE, slot.get(in)));
+                    storedAt.put(in, code.size());
+                }
+                default -> code.add(new Instr(Opcode.POP));
+            }
+        }
+
+        // Puts ops on the stack in order for the instruction about to be emitted; returns the pc
+        // where the code computing them begins
+        private int operands(List<Insn> ops) {
+            int k = 0;
+            for (Insn o : ops) if (isPending(o)) k++;
+            if (k == 0) {
+                int start = code.size();
+                for (Insn o : ops) code.add(load(o));
+                return start;
+            }
+            if (fits(ops, k)) {
+                int first = pending.size() - k;
+                int start = pending.get(first).start;
+                int pos = code.size();
+                int pi = pending.size() - 1;
+                for (int j = ops.size() - 1; j >= 0; j--) {
+                    Insn o = ops.get(j);
+                    if (isPending(o)) {
+                        pos = pending.get(pi--).start;
+                        continue;
+                    }
+                    insert(pos, load(o));
+                }
+                pending.subList(first, pending.size()).clear();
+                return start;
+            }
+            // Park everything from the deepest operand up, then load in order
+            int deepest = pending.size();
+            for (Insn o : ops) {
+                for (int i = 0; i < pending.size(); i++) if (pending.get(i).value == o) deepest = Math.min(deepest, i);
+            }
+            while (pending.size() > deepest) {
+                Pending p = pending.remove(pending.size() - 1);
+                int s = scratch();
+                code.add(new Instr(Opcode.STORE, s));
+                spilled.put(p.value, s);
+                storedAt.put(p.value, code.size());
+            }
+            int start = code.size();
+            for (Insn o : ops) code.add(load(o));
+            return start;
+        }
+
+        private boolean isPending(Insn o) {
+            for (Pending p : pending) if (p.value == o) return true;
+            return false;
+        }
+
+        // The pending operands are the top of the stack in operand order, and every other
+        // operand can be loaded where it has to go
+        private boolean fits(List<Insn> ops, int k) {
+            int pi = pending.size() - k;
+            List<Integer> starts = new ArrayList<>();
+            for (Insn o : ops) {
+                if (!isPending(o)) continue;
+                if (pending.get(pi).value != o) return false;
+                starts.add(pending.get(pi++).start);
+            }
+            int si = 0;
+            for (Insn o : ops) {
+                if (isPending(o)) {
+                    si++;
+                    continue;
+                }
+                if (si < starts.size() && !availableAt(o, starts.get(si))) return false;
+            }
+            return true;
+        }
+
+        private boolean availableAt(Insn o, int pc) {
+            if (kinds.get(o) == Kind.REMAT) return true;
+            if (spilled.containsKey(o) || o.block == block && o.op != Op.PHI && o.op != Op.PARAM) {
+                Integer at = storedAt.get(o);
+                return at != null && at <= pc;
+            }
+            return true;
+        }
+
+        private void insert(int pos, Instr in) {
+            code.add(pos, in);
+            storedAt.replaceAll((v, at) -> at > pos ? at + 1 : at);
+        }
+
+        private Instr load(Insn o) {
+            if (kinds.get(o) == Kind.REMAT) return new Instr(Opcode.CONST, mod.addConst(o.value));
+            Integer s = spilled.remove(o);
+            if (s != null) {
+                freeScratch.push(s);
+                return new Instr(Opcode.LOAD, s);
+            }
+            Integer sl = slot.get(o);
+            if (sl == null) throw new IllegalStateException(f.name + ": " + o.name() + " has no local");
+            return new Instr(Opcode.LOAD, sl);
+        }
+
+        private int scratch() {
+            if (!freeScratch.isEmpty()) return freeScratch.pop();
+            return scratchBase + scratchCount++;
+        }
+
+        private void phiCopies(Block to) {
+            int pi = to.preds.indexOf(block);
+            List<Insn> dsts = new ArrayList<>();
+            for (Insn phi : to.phis()) {
+                Insn src = phi.args.get(pi);
+                if (kinds.get(src) != Kind.REMAT && Objects.equals(slot.get(src), slot.get(phi))) continue;
+                code.add(load(src));
+                dsts.add(phi);
+            }
+            for (int i = dsts.size() - 1; i >= 0; i--) code.add(new Instr(Opcode.STORE, slot.get(dsts.get(i))));
+        }
+
+        // So that phi copies always have an edge of their own
+        private void splitCriticalEdges() {
+            for (Block b : new ArrayList<>(f.blocks)) {
+                if (b.succs().size() < 2) continue;
+                List<Block> targets = b.terminator().targets;
+                for (int i = 0; i < targets.size(); i++) {
+                    Block s = targets.get(i);
+                    if (s.phis().isEmpty()) continue;
+                    Block mid = f.newBlock();
+                    Insn j = f.insn(Op.JMP);
+                    j.targets.add(s);
+                    j.block = mid;
+                    mid.insns.add(j);
+                    mid.preds.add(b);
+                    targets.set(i, mid);
+                    s.preds.set(s.preds.indexOf(b), mid);
+                }
+            }
+        }
+
+        private void classify(List<Block> layout) {
+            for (Block b : layout) {
+                for (Insn in : b.insns) {
+                    if (!in.hasValue()) continue;
+                    List<Insn> us = users.getOrDefault(in, List.of());
+                    boolean local = us.size() == 1 && us.get(0).block == b && us.get(0).op != Op.PHI;
+                    Kind k;
+                    if (in.op == Op.CONST) k = us.isEmpty() ? Kind.SKIP : local ? Kind.STACK : Kind.REMAT;
+                    else if (in.op == Op.PARAM) k = us.isEmpty() ? Kind.SKIP : Kind.SLOT;
+                    else if (in.op == Op.PHI) k = Kind.SLOT;
+                    else if (local) k = Kind.STACK;
+                    else if (us.isEmpty()) k = Kind.DROP;
+                    else k = Kind.SLOT;
+                    kinds.put(in, k);
+                }
+            }
+        }
+
+        // Liveness of the values that live in locals, then interference, coalescing and colouring
+        private void assignSlots(List<Block> layout) {
+            Map<Block, Set<Insn>> liveIn = new HashMap<>(), liveOut = new HashMap<>();
+            for (Block b : layout) {
+                liveIn.put(b, new HashSet<>());
+                liveOut.put(b, new HashSet<>());
+            }
+            boolean changed = true;
+            while (changed) {
+                changed = false;
+                for (int i = layout.size() - 1; i >= 0; i--) {
+                    Block b = layout.get(i);
+                    Set<Insn> live = new HashSet<>();
+                    for (Block s : b.succs()) {
+                        live.addAll(liveIn.get(s));
+                        int pi = s.preds.indexOf(b);
+                        for (Insn phi : s.phis()) addIfSlot(live, phi.args.get(pi));
+                    }
+                    liveOut.get(b).addAll(live);
+                    for (int j = b.insns.size() - 1; j >= 0; j--) {
+                        Insn in = b.insns.get(j);
+                        live.remove(in);
+                        if (in.op != Op.PHI) for (Insn a : in.args) addIfSlot(live, a);
+                    }
+                    if (liveIn.get(b).addAll(live)) changed = true;
+                }
+            }
+
+            Map<Insn, Set<Insn>> interferes = new HashMap<>();
+            List<Insn> values = new ArrayList<>();
+            for (Block b : layout) {
+                for (Insn in : b.insns) {
+                    if (kinds.get(in) == Kind.SLOT) {
+                        values.add(in);
+                        interferes.put(in, new HashSet<>());
+                    }
+                }
+            }
+            for (Block b : layout) {
+                Set<Insn> live = new HashSet<>(liveOut.get(b));
+                for (int j = b.insns.size() - 1; j >= 0; j--) {
+                    Insn in = b.insns.get(j);
+                    if (in.op == Op.PHI) break;
+                    if (kinds.get(in) == Kind.SLOT) {
+                        for (Insn x : live) edge(interferes, in, x);
+                        live.remove(in);
+                    }
+                    for (Insn a : in.args) addIfSlot(live, a);
+                }
+                List<Insn> phis = b.phis();
+                for (Insn p : phis) {
+                    live.remove(p);
+                    for (Insn x : live) edge(interferes, p, x);
+                    for (Insn q : phis) edge(interferes, p, q);
+                }
+            }
+
+            // Coalesce phis with their inputs
+            Map<Insn, List<Insn>> classOf = new HashMap<>();
+            for (Insn v : values) classOf.put(v, new ArrayList<>(List.of(v)));
+            for (Block b : layout) {
+                for (Insn phi : b.phis()) {
+                    for (Insn a : phi.args) {
+                        if (kinds.get(a) != Kind.SLOT) continue;
+                        List<Insn> pc = classOf.get(phi), ac = classOf.get(a);
+                        if (pc == ac || param(pc) >= 0 && param(ac) >= 0) continue;
+                        boolean clash = false;
+                        for (Insn x : pc) for (Insn y : ac) clash |= interferes.get(x).contains(y);
+                        if (clash) continue;
+                        pc.addAll(ac);
+                        for (Insn y : ac) classOf.put(y, pc);
+                    }
+                }
+            }
+
+            // Colour: parameters first, in their own slots
+            Map<List<Insn>, Integer> colour = new IdentityHashMap<>();
+            Set<List<Insn>> classes = Collections.newSetFromMap(new IdentityHashMap<>());
+            List<List<Insn>> order = new ArrayList<>();
+            for (Insn v : values) if (classes.add(classOf.get(v))) order.add(classOf.get(v));
+            int n = f.arity;
+            for (List<Insn> c : order) if (param(c) >= 0) colour.put(c, param(c));
+            for (List<Insn> c : order) {
+                if (colour.containsKey(c)) continue;
+                Set<Integer> taken = new HashSet<>();
+                for (Insn x : c) {
+                    for (Insn y : interferes.get(x)) {
+                        Integer t = colour.get(classOf.get(y));
+                        if (t != null) taken.add(t);
+                    }
+                }
+                int s = 0;
+                while (taken.contains(s)) s++;
+                colour.put(c, s);
+                n = Math.max(n, s + 1);
+            }
+            for (Insn v : values) slot.put(v, colour.get(classOf.get(v)));
+            scratchBase = n;
+        }
+
+        private static int param(List<Insn> c) {
+            for (Insn x : c) if (x.op == Op.PARAM) return x.index;
+            return -1;
+        }
+
+        private void addIfSlot(Set<Insn> live, Insn v) {
+            if (kinds.get(v) == Kind.SLOT) live.add(v);
+        }
+
+        private static void edge(Map<Insn, Set<Insn>> g, Insn a, Insn b) {
+            if (a == b) return;
+            g.get(a).add(b);
+            g.get(b).add(a);
+        }
+    }
+}
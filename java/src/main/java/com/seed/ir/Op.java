@@ -0,0 +1,25 @@
+package com.seed.ir;
+
+public enum Op {
+    CONST,     // value
+    PARAM,     // index
+    PHI,       // one argument per predecessor, in Block.preds order
+    ADD, SUB, MUL, DIV,
+    EQ, NE, LT, LE, GT, GE,
+    NOT,
+    CALL,      // index = function index; args are the call arguments
+    PRINT,
+    // Terminators, last in their block
+    JMP,       // targets = [to]
+    BR,        // args = [cond]; targets = [then, else]
+    RET;       // args = [value]
+
+    public boolean isTerminator() { return this == JMP || this == BR || this == RET; }
+
+    public boolean isArith() { return this == ADD || this == SUB || this == MUL || this == DIV; }
+
+    public boolean isCompare() { return this == EQ || this == NE || this == LT || this == LE || this == GT || this == GE; }
+
+    // Operands are swappable, so GVN can match a + b with b + a
+    public boolean isCommutative() { return this == ADD || this == MUL || this == EQ || this == NE; }
+}
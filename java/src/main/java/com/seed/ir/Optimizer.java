@@ -0,0 +1,54 @@
+package com.seed.ir;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Runs SSA passes over every function, repeating the sequence until a round changes nothing
+// (constant propagation exposes common subexpressions, which expose invariants, and so on)
+public final class Optimizer {
+    private static final int MAX_ROUNDS = 4;
+
+    private final List<IrPass> passes = new ArrayList<>();
+
+    public static final class Stats {
+        public final Map<String, Integer> changes = new LinkedHashMap<>();
+
+        @Override public String toString() {
+            StringBuilder sb = new StringBuilder("ssa:");
+            String sep = " ";
+            for (var e : changes.entrySet()) {
+                sb.append(sep).append(e.getKey()).append(' ').append(e.getValue());
+                sep = ", ";
+            }
+            return sb.toString();
+        }
+    }
+
+    public static Optimizer standard() {
+        return new Optimizer().add(new Sccp()).add(new Gvn()).add(new Licm()).add(new Dce());
+    }
+
+    public Optimizer add(IrPass pass) {
+        passes.add(pass);
+        return this;
+    }
+
+    public Stats run(IrModule m) {
+        Stats stats = new Stats();
+        for (IrPass p : passes) stats.changes.put(p.name(), 0);
+        for (IrFunction f : m.funcs) {
+            for (int round = 0; round < MAX_ROUNDS; round++) {
+                int changed = 0;
+                for (IrPass p : passes) {
+                    int n = p.run(f);
+                    stats.changes.merge(p.name(), n, Integer::sum);
+                    changed += n;
+                }
+                if (changed == 0) break;
+            }
+        }
+        return stats;
+    }
+}
@@ -0,0 +1,155 @@
+package com.seed.ir;
+
+import java.util.*;
+
+// Sparse conditional constant propagation (Wegman and Zadeck): values and CFG edges start out
+// unknown and unreached, and only edges a branch can take carry values into phis. Constant
+// values are replaced by CONSTs, branches on constants by jumps, and the blocks that leaves
+// unreachable are dropped. As in opt.ConstantFolder, nothing that would fail or overflow at run
+// time is folded, nor is mixed-type equality.
+public final class Sccp implements IrPass {
+    private static final Object VARYING = new Object();
+
+    private record Const(Object value) {}
+
+    private record Edge(Block from, Block to) {}
+
+    @Override public String name() { return "sccp"; }
+
+    @Override public int run(IrFunction f) {
+        Map<Insn, Object> lattice = new HashMap<>(); // absent: not known yet
+        Set<Block> reached = new HashSet<>();
+        Set<Edge> taken = new HashSet<>();
+        Map<Insn, List<Insn>> users = f.users();
+        Deque<Edge> flow = new ArrayDeque<>();
+        Deque<Insn> ssa = new ArrayDeque<>();
+        flow.add(new Edge(null, f.entry()));
+        while (!flow.isEmpty() || !ssa.isEmpty()) {
+            List<Insn> visit;
+            if (!flow.isEmpty()) {
+                Edge e = flow.poll();
+                if (!taken.add(e)) continue;
+                visit = reached.add(e.to) ? e.to.insns : e.to.phis();
+            } else {
+                Insn in = ssa.poll();
+                if (!reached.contains(in.block)) continue;
+                visit = List.of(in);
+            }
+            for (Insn in : visit) {
+                Block b = in.block;
+                switch (in.op) {
+                    case JMP -> flow.add(new Edge(b, in.targets.get(0)));
+                    case BR -> {
+                        Object c = lattice.get(in.args.get(0));
+                        if (c instanceof Const k) flow.add(new Edge(b, in.targets.get(truthy(k.value) ? 0 : 1)));
+                        else if (c == VARYING) {
+                            flow.add(new Edge(b, in.targets.get(0)));
+                            flow.add(new Edge(b, in.targets.get(1)));
+                        }
+                    }
+                    case RET, PRINT -> {}
+                    default -> {
+                        Object v = evaluate(in, lattice, taken);
+                        if (v != null && !v.equals(lattice.get(in))) {
+                            lattice.put(in, v);
+                            ssa.addAll(users.getOrDefault(in, List.of()));
+                        }
+                    }
+                }
+            }
+        }
+
+        int changes = 0;
+        for (Block b : f.blocks) {
+            if (!reached.contains(b)) continue;
+            for (Insn in : new ArrayList<>(b.insns)) {
+                if (in.op == Op.CONST || in.hasEffects() || !(lattice.get(in) instanceof Const k)) continue;
+                Insn c = f.constant(k.value);
+                c.block = b;
+                b.insns.add(in.op == Op.PHI ? b.phis().size() : b.insns.indexOf(in), c);
+                f.replaceAllUses(in, c);
+                f.remove(in);
+                changes++;
+            }
+            Insn t = b.terminator();
+            if (t.op == Op.BR && lattice.get(t.args.get(0)) instanceof Const k) {
+                Block to = t.targets.get(truthy(k.value) ? 0 : 1);
+                Block other = t.targets.get(truthy(k.value) ? 1 : 0);
+                f.removeEdge(b, other);
+                Insn j = f.insn(Op.JMP);
+                j.targets.add(to);
+                j.block = b;
+                b.insns.set(b.insns.size() - 1, j);
+                changes++;
+            }
+        }
+        changes += f.removeUnreachable();
+        f.simplifyPhis();
+        f.mergeBlocks();
+        return changes;
+    }
+
+    private static Object evaluate(Insn in, Map<Insn, Object> lattice, Set<Edge> taken) {
+        switch (in.op) {
+            case CONST -> { return new Const(in.value); }
+            case PARAM, CALL -> { return VARYING; }
+            case PHI -> {
+                Object result = null;
+                for (int i = 0; i < in.args.size(); i++) {
+                    if (!taken.contains(new Edge(in.block.preds.get(i), in.block))) continue;
+                    Object a = lattice.get(in.args.get(i));
+                    if (a == null) continue;
+                    if (result == null) result = a;
+                    else if (!result.equals(a)) return VARYING;
+                }
+                return result;
+            }
+            default -> {
+                List<Object> vals = new ArrayList<>();
+                boolean varying = false;
+                for (Insn a : in.args) {
+                    Object v = lattice.get(a);
+                    if (v == null) return null;
+                    if (v instanceof Const k) vals.add(k.value); else varying = true;
+                }
+                if (varying) return VARYING;
+                Object[] folded = fold(in.op, vals);
+                return folded != null ? new Const(folded[0]) : VARYING;
+            }
+        }
+    }
+
+    // The result of op on constant operands as a one-element array (its value may be null),
+    // or null if it is left to run time
+    static Object[] fold(Op op, List<Object> v) {
+        if (op == Op.NOT) return new Object[] { !truthy(v.get(0)) };
+        Object l = v.get(0), r = v.get(1);
+        if (op == Op.EQ || op == Op.NE) {
+            boolean sameKind = (l instanceof Integer && r instanceof Integer) || (l instanceof Boolean && r instanceof Boolean);
+            return sameKind ? new Object[] { l.equals(r) == (op == Op.EQ) } : null;
+        }
+        if (!(l instanceof Integer a) || !(r instanceof Integer b)) return null;
+        long x;
+        switch (op) {
+            case ADD -> x = (long) a + b;
+            case SUB -> x = (long) a - b;
+            case MUL -> x = (long) a * b;
+            case DIV -> {
+                if (b == 0) return null;
+                x = (long) a / b;
+            }
+            case LT -> { return new Object[] { a < b }; }
+            case LE -> { return new Object[] { a <= b }; }
+            case GT -> { return new Object[] { a > b }; }
+            case GE -> { return new Object[] { a >= b }; }
+            default -> { return null; }
+        }
+        return x == (int) x ? new Object[] { (int) x } : null;
+    }
+
+    static boolean truthy(Object v) {
+        if (v instanceof Boolean b) return b;
+        if (v instanceof Integer i) return i != 0;
+        return v != null;
+    }
+}
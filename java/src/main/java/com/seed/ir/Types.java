@@ -0,0 +1,44 @@
+package com.seed.ir;
+
+import java.util.HashSet;
+import java.util.Set;
+
+// What the IR can prove about run-time values, for passes that must not move or drop an
+// instruction that could fail: arithmetic and ordering fail on anything but ints.
+public final class Types {
+    private final Set<Insn> ints = new HashSet<>();
+
+    // Arithmetic always yields an int (or fails); a phi is an int if all its inputs are,
+    // assumed optimistically around loops and withdrawn until nothing changes
+    public Types(IrFunction f) {
+        for (Block b : f.blocks) {
+            for (Insn in : b.insns) {
+                if (in.op.isArith() || in.op == Op.PHI || (in.op == Op.CONST && in.value instanceof Integer)) ints.add(in);
+            }
+        }
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Block b : f.blocks) {
+                for (Insn phi : b.phis()) {
+                    if (ints.contains(phi) && !ints.containsAll(phi.args)) {
+                        ints.remove(phi);
+                        changed = true;
+                    }
+                }
+            }
+        }
+    }
+
+    public boolean isInt(Insn v) { return ints.contains(v); }
+
+    // False only if the instruction is sure to complete without a run-time error
+    public boolean mayFail(Insn in) {
+        return switch (in.op) {
+            case ADD, SUB, MUL, LT, LE, GT, GE -> !isInt(in.args.get(0)) || !isInt(in.args.get(1));
+            case DIV -> !isInt(in.args.get(0)) || !(in.args.get(1).value instanceof Integer d && d != 0);
+            case CALL -> true;
+            default -> false;
+        };
+    }
+}
@@ -0,0 +1,128 @@
+package com.seed.jvm;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Minimal class file writer: constant pool, fields and methods with a Code attribute.
+// Emits version 49 class files so no StackMapTable is needed (the JVM verifies them by
+// type inference), which keeps code generation a single forward pass.
+final class ClassWriter {
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_PRIVATE = 0x0002;
+    static final int ACC_STATIC = 0x0008;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+
+    private static final int CLASS_VERSION = 49;
+
+    private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+    private final DataOutputStream poolOut = new DataOutputStream(pool);
+    private final Map<String, Integer> poolIndex = new HashMap<>();
+    private int poolCount = 1;
+    private final List<byte[]> fields = new ArrayList<>();
+    private final List<byte[]> methods = new ArrayList<>();
+
+    int utf8(String s) {
+        return entry("U" + s, out -> { out.writeByte(1); out.writeUTF(s); }, 1);
+    }
+
+    int cls(String internalName) {
+        int name = utf8(internalName);
+        return entry("C" + internalName, out -> { out.writeByte(7); out.writeShort(name); }, 1);
+    }
+
+    int nameAndType(String name, String desc) {
+        int n = utf8(name), d = utf8(desc);
+        return entry("N" + name + ":" + desc, out -> { out.writeByte(12); out.writeShort(n); out.writeShort(d); }, 1);
+    }
+
+    int methodRef(String owner, String name, String desc) {
+        int c = cls(owner), nt = nameAndType(name, desc);
+        return entry("M" + owner + "." + name + desc, out -> { out.writeByte(10); out.writeShort(c); out.writeShort(nt); }, 1);
+    }
+
+    int fieldRef(String owner, String name, String desc) {
+        int c = cls(owner), nt = nameAndType(name, desc);
+        return entry("F" + owner + "." + name + desc, out -> { out.writeByte(9); out.writeShort(c); out.writeShort(nt); }, 1);
+    }
+
+    int longConst(long v) {
+        // Long entries take two constant pool slots
+        return entry("J" + v, out -> { out.writeByte(5); out.writeLong(v); }, 2);
+    }
+
+    void field(int access, String name, String desc) {
+        int n = utf8(name), d = utf8(desc);
+        fields.add(bytes(out -> {
+            out.writeShort(access); out.writeShort(n); out.writeShort(d); out.writeShort(0);
+        }));
+    }
+
+    void method(int access, String name, String desc, byte[] code, int maxStack, int maxLocals) {
+        int n = utf8(name), d = utf8(desc), codeAttr = utf8("Code");
+        methods.add(bytes(out -> {
+            out.writeShort(access); out.writeShort(n); out.writeShort(d);
+            out.writeShort(1); // attributes
+            out.writeShort(codeAttr);
+            out.writeInt(2 + 2 + 4 + code.length + 2 + 2);
+            out.writeShort(maxStack);
+            out.writeShort(maxLocals);
+            out.writeInt(code.length);
+            out.write(code);
+            out.writeShort(0); // exception table
+            out.writeShort(0); // code attributes
+        }));
+    }
+
+    byte[] toBytes(String thisName, String superName) {
+        int thisIdx = cls(thisName), superIdx = cls(superName);
+        return bytes(out -> {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(CLASS_VERSION);
+            out.writeShort(poolCount);
+            out.write(pool.toByteArray());
+            out.writeShort(ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisIdx);
+            out.writeShort(superIdx);
+            out.writeShort(0); // interfaces
+            out.writeShort(fields.size());
+            for (byte[] f : fields) out.write(f);
+            out.writeShort(methods.size());
+            for (byte[] m : methods) out.write(m);
+            out.writeShort(0); // class attributes
+        });
+    }
+
+    private interface Emit { void to(DataOutputStream out) throws IOException; }
+
+    private int entry(String key, Emit e, int size) {
+        Integer idx = poolIndex.get(key);
+        if (idx != null) return idx;
+        try {
+            e.to(poolOut);
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+        int i = poolCount;
+        poolCount += size;
+        if (poolCount > 0xFFFF) throw new IllegalStateException("Constant pool overflow");
+        poolIndex.put(key, i);
+        return i;
+    }
+
+    private static byte[] bytes(Emit e) {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try {
+            e.to(new DataOutputStream(bos));
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+        return bos.toByteArray();
+    }
+}
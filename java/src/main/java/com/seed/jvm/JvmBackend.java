@@ -0,0 +1,306 @@
+package com.seed.jvm;
+
+import com.seed.bytecode.Function;
+import com.seed.bytecode.Instr;
+import com.seed.bytecode.Module;
+import com.seed.bytecode.Opcode;
+import com.seed.bytecode.Verifier;
+import com.seed.bytecode.opt.Superinstructions;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// Compiles a verified bytecode Module into a hidden JVM class: one static method per Function,
+// Seed locals as JVM long locals, CALL as a direct invokestatic. HotSpot then tiers the
+// generated methods up to C2 like any other Java code.
+public final class JvmBackend {
+    private static final String CLASS_NAME = "com/seed/jvm/SeedCode";
+    private static final String RT = "com/seed/jvm/JvmRuntime";
+    private static final String PRINT_STREAM = "Ljava/io/PrintStream;";
+
+    // JVM opcodes used by the generator
+    private static final int LCONST_0 = 0x09, LCONST_1 = 0x0a, LDC2_W = 0x14;
+    private static final int LLOAD = 0x16, LSTORE = 0x37, POP2 = 0x58, DUP2 = 0x5c;
+    private static final int IFEQ = 0x99, GOTO = 0xa7, LRETURN = 0xad;
+    private static final int GETSTATIC = 0xb2, INVOKESTATIC = 0xb8, WIDE = 0xc4;
+
+    public static final class Program {
+        private final MethodHandles.Lookup lookup;
+        private final Module module;
+        private final MethodHandle entry;
+        private final VarHandle out;
+
+        private Program(MethodHandles.Lookup lookup, Module module, MethodHandle entry, VarHandle out) {
+            this.lookup = lookup;
+            this.module = module;
+            this.entry = entry;
+            this.out = out;
+        }
+
+        // Where PRINT writes, for code entered through function() rather than run()
+        public void setOut(PrintStream ps) { out.set(ps); }
+
+        // The compiled function as a (J...J)J handle over JvmRuntime value encodings. A typed
+        // module only offers functions without parameters: the Verifier took the others'
+        // parameter types from the module's own calls, which a caller of the handle bypasses.
+        public MethodHandle function(String name) {
+            int idx = module.findFunctionByName(name);
+            if (idx < 0) throw new RuntimeException("Function '" + name + "' not found");
+            if (module.funcs.get(idx).arity > 0 && module.hasTypedOps()) {
+                throw new IllegalArgumentException("Function '" + name + "' takes parameters and the module has typed opcodes");
+            }
+            try {
+                return lookup.findStatic(lookup.lookupClass(), methodNames(module)[idx], descriptorType(module.funcs.get(idx).arity));
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Cannot find generated method", e);
+            }
+        }
+
+        public void run(PrintStream ps) {
+            out.set(ps);
+            try {
+                long ignored = (long) entry.invokeExact();
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new RuntimeException(t);
+            }
+        }
+    }
+
+    public Program compile(Module m) {
+        return compile(m, "main");
+    }
+
+    public Program compile(Module m, String entry) {
+        int entryIdx = m.findFunctionByName(entry);
+        if (entryIdx < 0) throw new RuntimeException("Entry function '" + entry + "' not found");
+        if (m.funcs.get(entryIdx).arity != 0) throw new RuntimeException("Entry function '" + entry + "' must take no arguments");
+        byte[] bytes = generate(m);
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+            Class<?> cls = lookup.lookupClass();
+            MethodHandle mh = lookup.findStatic(cls, methodNames(m)[entryIdx], descriptorType(0));
+            return new Program(lookup, m, mh, lookup.findStaticVarHandle(cls, "out", PrintStream.class));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot load generated class", e);
+        }
+    }
+
+    // Class file bytes for the module (exposed for dumping and tests)
+    public byte[] generate(Module m) {
+        ClassWriter cw = new ClassWriter();
+        cw.field(ClassWriter.ACC_PRIVATE | ClassWriter.ACC_STATIC, "out", PRINT_STREAM);
+        String[] names = methodNames(m);
+        for (int i = 0; i < m.funcs.size(); i++) {
+            new MethodGen(cw, m, names, m.funcs.get(i)).emit(names[i]);
+        }
+        return cw.toBytes(CLASS_NAME, "java/lang/Object");
+    }
+
+    private static String[] methodNames(Module m) {
+        String[] names = new String[m.funcs.size()];
+        Set<String> used = new HashSet<>();
+        for (int i = 0; i < names.length; i++) {
+            String n = m.funcs.get(i).name;
+            names[i] = used.add(n) ? n : n + "$" + i;
+        }
+        return names;
+    }
+
+    private static String descriptor(int arity) {
+        return "(" + "J".repeat(arity) + ")J";
+    }
+
+    private static MethodType descriptorType(int arity) {
+        Class<?>[] params = new Class<?>[arity];
+        Arrays.fill(params, long.class);
+        return MethodType.methodType(long.class, params);
+    }
+
+    private static final class MethodGen {
+        private final ClassWriter cw;
+        private final Module mod;
+        private final String[] names;
+        private final Function fn;
+        private final ByteArrayOutputStream code = new ByteArrayOutputStream();
+        private final List<int[]> fixups = new ArrayList<>(); // {opcode position, target pc}
+
+        MethodGen(ClassWriter cw, Module mod, String[] names, Function fn) {
+            this.cw = cw;
+            this.mod = mod;
+            this.names = names;
+            this.fn = fn;
+        }
+
+        void emit(String name) {
+            List<Instr> ins = fn.code;
+            int n = ins.size();
+            if (fn.arity > 127) throw new RuntimeException(fn.name + ": too many parameters for the JVM backend");
+            int[] depth = Verifier.stackDepths(fn);
+            int nlocals = Math.max(fn.nlocals, fn.arity);
+            // Non-parameter locals start out nil, as in the VM
+            for (int i = fn.arity; i < nlocals; i++) {
+                pushConst(JvmRuntime.NIL);
+                local(LSTORE, i);
+            }
+            int[] offsets = new int[n + 1];
+            int maxDepth = 0;
+            for (int pc = 0; pc < n; pc++) {
+                offsets[pc] = code.size();
+                if (depth[pc] < 0) continue; // unreachable
+                // A superinstruction holds up to two values of its own while it runs
+                maxDepth = Math.max(maxDepth, depth[pc] + (Superinstructions.fused(ins.get(pc).op) ? 2 : 0));
+                instr(ins.get(pc), pc, depth[pc]);
+            }
+            offsets[n] = code.size();
+            if (depth[n] >= 0) {
+                // Falling off the end (or jumping there) returns nil
+                pushConst(JvmRuntime.NIL);
+                u1(LRETURN);
+            }
+            byte[] bytes = code.toByteArray();
+            for (int[] f : fixups) {
+                int rel = offsets[f[1]] - f[0];
+                if (rel < Short.MIN_VALUE || rel > Short.MAX_VALUE) {
+                    throw new RuntimeException(fn.name + ": function too large for the JVM backend");
+                }
+                bytes[f[0] + 1] = (byte) (rel >> 8);
+                bytes[f[0] + 2] = (byte) rel;
+            }
+            int maxStack = 2 * (maxDepth + 1) + 1; // +1 value for RET's implicit nil, +1 ref for PRINT
+            cw.method(ClassWriter.ACC_STATIC, name, descriptor(fn.arity), bytes, maxStack, 2 * nlocals);
+        }
+
+        private void instr(Instr in, int pc, int depth) {
+            switch (in.op) {
+                case ENTER, LEAVE -> {}
+                case CONST -> pushConst(JvmRuntime.ofConst(mod.constant(in.a)));
+                case LOAD -> local(LLOAD, in.a);
+                case STORE -> local(LSTORE, in.a);
+                case POP -> u1(POP2);
+                case DUP -> u1(DUP2);
+                case ADD -> rt("add", "(JJ)J");
+                case SUB -> rt("sub", "(JJ)J");
+                case MUL -> rt("mul", "(JJ)J");
+                case DIV -> rt("div", "(JJ)J");
+                case NOT -> rt("not", "(J)J");
+                case EQ -> rt("eq", "(JJ)J");
+                case NE -> rt("ne", "(JJ)J");
+                case LT -> rt("lt", "(JJ)J");
+                case LE -> rt("le", "(JJ)J");
+                case GT -> rt("gt", "(JJ)J");
+                case GE -> rt("ge", "(JJ)J");
+                case IADD -> rt("iadd", "(JJ)J");
+                case ISUB -> rt("isub", "(JJ)J");
+                case IMUL -> rt("imul", "(JJ)J");
+                case IDIV -> rt("idiv", "(JJ)J");
+                case BNOT -> rt("bnot", "(J)J");
+                case IEQ -> rt("eq", "(JJ)J");
+                case INE -> rt("ne", "(JJ)J");
+                case ILT -> rt("ilt", "(JJ)J");
+                case ILE -> rt("ile", "(JJ)J");
+                case IGT -> rt("igt", "(JJ)J");
+                case IGE -> rt("ige", "(JJ)J");
+                case JMP -> branch(GOTO, pc + 1 + in.a);
+                case JMP_IF_FALSE -> {
+                    rt("truthy", "(J)Z");
+                    branch(IFEQ, pc + 1 + in.a);
+                }
+                case CALL -> {
+                    Function callee = mod.funcs.get(in.a);
+                    if (callee.arity != in.b) throw new RuntimeException(fn.name + ":" + pc + ": CALL arity mismatch");
+                    u1(INVOKESTATIC);
+                    u2(cw.methodRef(CLASS_NAME, names[in.a], descriptor(callee.arity)));
+                }
+                case TAIL_CALL -> {
+                    Function callee = mod.funcs.get(in.a);
+                    if (callee.arity != in.b) throw new RuntimeException(fn.name + ":" + pc + ": TAIL_CALL arity mismatch");
+                    if (callee == fn) {
+                        // Self tail call: rebind the parameters and restart, which re-nils the other locals
+                        for (int i = in.b - 1; i >= 0; i--) local(LSTORE, i);
+                        int rel = -code.size();
+                        if (rel < Short.MIN_VALUE) throw new RuntimeException(fn.name + ": function too large for the JVM backend");
+                        u1(GOTO);
+                        u2(rel);
+                    } else {
+                        u1(INVOKESTATIC);
+                        u2(cw.methodRef(CLASS_NAME, names[in.a], descriptor(callee.arity)));
+                        u1(LRETURN);
+                    }
+                }
+                case RET -> {
+                    if (depth == 0) pushConst(JvmRuntime.NIL);
+                    u1(LRETURN);
+                }
+                // Superinstructions run as the sequences they stand for
+                case LOAD_LOAD_ADD -> {
+                    local(LLOAD, in.a);
+                    local(LLOAD, in.b);
+                    rt("add", "(JJ)J");
+                }
+                case LOAD_CONST_ADD_STORE -> {
+                    local(LLOAD, in.a);
+                    pushConst(JvmRuntime.ofConst(mod.constant(in.b)));
+                    rt("add", "(JJ)J");
+                    local(LSTORE, in.c);
+                }
+                case LOAD_CONST_LT_JMP_IF_FALSE, LOAD_LOAD_LT_JMP_IF_FALSE -> {
+                    local(LLOAD, in.a);
+                    if (in.op == Opcode.LOAD_CONST_LT_JMP_IF_FALSE) pushConst(JvmRuntime.ofConst(mod.constant(in.b)));
+                    else local(LLOAD, in.b);
+                    rt("lt", "(JJ)J");
+                    rt("truthy", "(J)Z");
+                    branch(IFEQ, pc + 1 + in.c);
+                }
+                case PRINT -> {
+                    u1(GETSTATIC);
+                    u2(cw.fieldRef(CLASS_NAME, "out", PRINT_STREAM));
+                    rt("print", "(J" + PRINT_STREAM + ")V");
+                }
+            }
+        }
+
+        private void pushConst(long v) {
+            if (v == 0) { u1(LCONST_0); return; }
+            if (v == 1) { u1(LCONST_1); return; }
+            u1(LDC2_W);
+            u2(cw.longConst(v));
+        }
+
+        private void local(int op, int slot) {
+            int idx = 2 * slot;
+            if (idx <= 0xFF) {
+                u1(op);
+                u1(idx);
+            } else {
+                u1(WIDE);
+                u1(op);
+                u2(idx);
+            }
+        }
+
+        private void rt(String name, String desc) {
+            u1(INVOKESTATIC);
+            u2(cw.methodRef(RT, name, desc));
+        }
+
+        private void branch(int op, int targetPc) {
+            fixups.add(new int[] { code.size(), targetPc });
+            u1(op);
+            u2(0);
+        }
+
+        private void u1(int v) { code.write(v); }
+        private void u2(int v) { code.write(v >> 8); code.write(v); }
+    }
+}
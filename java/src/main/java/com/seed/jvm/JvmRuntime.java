@@ -0,0 +1,73 @@
+package com.seed.jvm;
+
+import java.io.PrintStream;
+
+// Value encoding and helpers called from generated code. A Seed value is a long: the high
+// 32 bits are the tag, the low 32 bits the payload. The helpers are tiny static methods so
+// C2 inlines them into the generated methods.
+public final class JvmRuntime {
+    public static final long TAG_INT = 0;
+    public static final long TAG_BOOL = 1;
+    public static final long TAG_NIL = 2;
+
+    public static final long NIL = TAG_NIL << 32;
+    public static final long FALSE = TAG_BOOL << 32;
+    public static final long TRUE = (TAG_BOOL << 32) | 1;
+
+    private JvmRuntime() {}
+
+    public static long ofInt(int v) { return v & 0xFFFFFFFFL; }
+    public static long ofBool(boolean b) { return b ? TRUE : FALSE; }
+
+    // Encodes a Module constant (Integer, Boolean or null)
+    public static long ofConst(Object c) {
+        if (c == null) return NIL;
+        if (c instanceof Integer i) return ofInt(i);
+        if (c instanceof Boolean b) return ofBool(b);
+        throw new IllegalArgumentException("Unsupported constant: " + c);
+    }
+
+    public static int asInt(long v) {
+        if ((v >>> 32) != TAG_INT) throw new RuntimeException("Expected int");
+        return (int) v;
+    }
+
+    public static boolean truthy(long v) {
+        long tag = v >>> 32;
+        if (tag == TAG_NIL) return false;
+        return (int) v != 0; // ints when non-zero, bools by value
+    }
+
+    public static long add(long a, long b) { return ofInt(asInt(a) + asInt(b)); }
+    public static long sub(long a, long b) { return ofInt(asInt(a) - asInt(b)); }
+    public static long mul(long a, long b) { return ofInt(asInt(a) * asInt(b)); }
+    public static long div(long a, long b) { return ofInt(asInt(a) / asInt(b)); }
+    public static long not(long a) { return ofBool(!truthy(a)); }
+    // Same tag and payload: ints and bools compare by value, nil equals nil
+    public static long eq(long a, long b) { return ofBool(a == b); }
+    public static long ne(long a, long b) { return ofBool(a != b); }
+    public static long lt(long a, long b) { return ofBool(asInt(a) < asInt(b)); }
+    public static long le(long a, long b) { return ofBool(asInt(a) <= asInt(b)); }
+    public static long gt(long a, long b) { return ofBool(asInt(a) > asInt(b)); }
+    public static long ge(long a, long b) { return ofBool(asInt(a) >= asInt(b)); }
+
+    // Typed forms, for operands the Verifier proved int (bool for bnot); ints compare by payload
+    public static long iadd(long a, long b) { return ofInt((int) a + (int) b); }
+    public static long isub(long a, long b) { return ofInt((int) a - (int) b); }
+    public static long imul(long a, long b) { return ofInt((int) a * (int) b); }
+    public static long idiv(long a, long b) { return ofInt((int) a / (int) b); }
+    public static long bnot(long a) { return a ^ 1; }
+    public static long ilt(long a, long b) { return ofBool((int) a < (int) b); }
+    public static long ile(long a, long b) { return ofBool((int) a <= (int) b); }
+    public static long igt(long a, long b) { return ofBool((int) a > (int) b); }
+    public static long ige(long a, long b) { return ofBool((int) a >= (int) b); }
+
+    public static void print(long v, PrintStream out) { out.println(show(v)); }
+
+    public static String show(long v) {
+        long tag = v >>> 32;
+        if (tag == TAG_INT) return Integer.toString((int) v);
+        if (tag == TAG_BOOL) return Boolean.toString((int) v != 0);
+        return "nil";
+    }
+}
@@ -0,0 +1,92 @@
+package com.seed.opt;
+
+import com.seed.ast.Expr;
+import com.seed.lexer.Token;
+import com.seed.lexer.TokenType;
+import com.seed.sema.Symbol;
+
+import static com.seed.lexer.TokenType.*;
+
+// Identities that hold once the Resolver knows an operand's type: x + 0, x * 1, x / 1, -(-x),
+// !!b, b == true, b && true and friends reduce to the operand. An operand is only dropped
+// entirely (x * 0, x - x, b && false) when it is a literal or a trusted variable read, which
+// can neither fail nor have effects.
+public final class AlgebraicSimplifier extends Rewriter {
+    @Override public String name() { return "simplify"; }
+
+    @Override protected Expr rewrite(Expr e) {
+        if (e instanceof Expr.Unary u) {
+            Expr inner = unwrap(u.right);
+            if (inner instanceof Expr.Unary v && v.op.type == u.op.type) {
+                Symbol.Type want = u.op.type == MINUS ? Symbol.Type.INT : Symbol.Type.BOOL;
+                if (typeOf(v.right) == want) return v.right;
+            }
+            return e;
+        }
+        if (!(e instanceof Expr.Binary b)) return e;
+        Expr l = b.left, r = b.right;
+        TokenType op = b.op.type;
+        switch (op) {
+            case PLUS -> {
+                if (isInt(r, 0) && typeOf(l) == Symbol.Type.INT) return l;
+                if (isInt(l, 0) && typeOf(r) == Symbol.Type.INT) return r;
+            }
+            case MINUS -> {
+                if (isInt(r, 0) && typeOf(l) == Symbol.Type.INT) return l;
+                if (sameVariable(l, r) && typeOf(l) == Symbol.Type.INT) return literal(0);
+            }
+            case STAR -> {
+                if (isInt(r, 1) && typeOf(l) == Symbol.Type.INT) return l;
+                if (isInt(l, 1) && typeOf(r) == Symbol.Type.INT) return r;
+                if (isInt(r, 0) && inert(l, Symbol.Type.INT)) return literal(0);
+                if (isInt(l, 0) && inert(r, Symbol.Type.INT)) return literal(0);
+            }
+            case SLASH -> {
+                if (isInt(r, 1) && typeOf(l) == Symbol.Type.INT) return l;
+            }
+            case EQUAL_EQUAL, BANG_EQUAL -> {
+                // b == true, b != false -> b; b == false, b != true -> !b
+                Expr operand = isBoolLiteral(r) ? l : isBoolLiteral(l) ? r : null;
+                if (operand != null && typeOf(operand) == Symbol.Type.BOOL) {
+                    boolean lit = (Boolean) ((Expr.Literal) unwrap(operand == l ? r : l)).value;
+                    if (lit == (op == EQUAL_EQUAL)) return operand;
+                    return not(operand, b.op);
+                }
+            }
+            case AND_AND, OR_OR -> {
+                // A deciding literal on the left means the right side never runs; on the right,
+                // it only absorbs an inert operand
+                Expr operand = isBoolLiteral(r) ? l : isBoolLiteral(l) ? r : null;
+                if (operand == null) return e;
+                boolean lit = (Boolean) ((Expr.Literal) unwrap(operand == l ? r : l)).value;
+                boolean identity = op == AND_AND ? lit : !lit;
+                if (identity && typeOf(operand) == Symbol.Type.BOOL) return operand;
+                if (!identity && (operand == r || inert(operand, Symbol.Type.BOOL))) return literal(lit);
+            }
+            default -> {}
+        }
+        return e;
+    }
+
+    private Expr not(Expr operand, Token site) {
+        return new Expr.Unary(new Token(BANG, "!", site.line, site.col), operand);
+    }
+
+    private static boolean isInt(Expr e, int v) {
+        return unwrap(e) instanceof Expr.Literal l && l.value instanceof Integer i && i == v;
+    }
+
+    private static boolean isBoolLiteral(Expr e) {
+        return unwrap(e) instanceof Expr.Literal l && l.value instanceof Boolean;
+    }
+
+    private static boolean sameVariable(Expr a, Expr b) {
+        return unwrap(a) instanceof Expr.Variable x && unwrap(b) instanceof Expr.Variable y && x.name.lexeme.equals(y.name.lexeme);
+    }
+
+    // Evaluating e cannot fail or have effects, and yields a value of type t
+    private boolean inert(Expr e, Symbol.Type t) {
+        Expr u = unwrap(e);
+        return (u instanceof Expr.Literal || u instanceof Expr.Variable) && typeOf(e) == t;
+    }
+}
@@ -0,0 +1,61 @@
+package com.seed.opt;
+
+import com.seed.ast.Expr;
+import com.seed.lexer.TokenType;
+
+import static com.seed.lexer.TokenType.*;
+
+// Evaluates operators whose operands are literals. Anything that would fail or overflow at run
+// time (type errors, division by zero, int overflow) is left alone so every backend still
+// reports it the way it does today; so is mixed-type equality, which the C++ VM compares by
+// payload.
+public final class ConstantFolder extends Rewriter {
+    @Override public String name() { return "fold"; }
+
+    @Override protected Expr rewrite(Expr e) {
+        // The tree already encodes precedence, so parentheses carry nothing
+        if (e instanceof Expr.Grouping g) return g.expr;
+        if (e instanceof Expr.Unary u && unwrap(u.right) instanceof Expr.Literal l) {
+            if (u.op.type == BANG) return literal(!truthy(l.value));
+            if (u.op.type == MINUS && l.value instanceof Integer i && i != Integer.MIN_VALUE) return literal(-i);
+            return e;
+        }
+        if (e instanceof Expr.Binary b && unwrap(b.left) instanceof Expr.Literal l && unwrap(b.right) instanceof Expr.Literal r) {
+            Object v = fold(b.op.type, l.value, r.value);
+            return v != null ? literal(v) : e;
+        }
+        return e;
+    }
+
+    private static Object fold(TokenType op, Object l, Object r) {
+        if (op == AND_AND) return truthy(l) && truthy(r);
+        if (op == OR_OR) return truthy(l) || truthy(r);
+        if (op == EQUAL_EQUAL || op == BANG_EQUAL) {
+            boolean sameKind = (l instanceof Integer && r instanceof Integer) || (l instanceof Boolean && r instanceof Boolean);
+            return sameKind ? l.equals(r) == (op == EQUAL_EQUAL) : null;
+        }
+        if (!(l instanceof Integer a) || !(r instanceof Integer b)) return null;
+        long v;
+        switch (op) {
+            case PLUS -> v = (long) a + b;
+            case MINUS -> v = (long) a - b;
+            case STAR -> v = (long) a * b;
+            case SLASH -> {
+                if (b == 0) return null;
+                v = (long) a / b;
+            }
+            case LESS -> { return a < b; }
+            case LESS_EQUAL -> { return a <= b; }
+            case GREATER -> { return a > b; }
+            case GREATER_EQUAL -> { return a >= b; }
+            default -> { return null; }
+        }
+        return v == (int) v ? (Object) (int) v : null;
+    }
+
+    static boolean truthy(Object v) {
+        if (v instanceof Boolean b) return b;
+        if (v instanceof Integer i) return i != 0;
+        return v != null;
+    }
+}
@@ -0,0 +1,62 @@
+package com.seed.opt;
+
+import com.seed.ast.Expr;
+import com.seed.ast.Stmt;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Removes code that can never run or has no effect: the untaken side of an if on a literal,
+// loops whose condition is a falsy literal, statements after a return in a function body or
+// block, empty blocks and literal expression statements. Blocks that declare nothing are
+// spliced into the enclosing statement list.
+public final class DeadBranchEliminator extends Rewriter {
+    private int functionDepth;
+
+    @Override public String name() { return "dead-branches"; }
+
+    @Override protected Stmt stmt(Stmt s) {
+        if (!(s instanceof Stmt.Fun)) return super.stmt(s);
+        functionDepth++;
+        try {
+            return super.stmt(s);
+        } finally {
+            functionDepth--;
+        }
+    }
+
+    @Override protected List<Stmt> stmts(List<Stmt> in) {
+        List<Stmt> out = new ArrayList<>();
+        for (Stmt s : super.stmts(in)) {
+            if (s instanceof Stmt.Block b && b.stmts.stream().noneMatch(t -> t instanceof Stmt.Let || t instanceof Stmt.Fun))
+                out.addAll(b.stmts);
+            else out.add(s);
+        }
+        return out;
+    }
+
+    @Override protected Stmt rewrite(Stmt s) {
+        if (s instanceof Stmt.If iff && unwrap(iff.cond) instanceof Expr.Literal l)
+            return ConstantFolder.truthy(l.value) ? iff.thenBranch : iff.elseBranch;
+        if (s instanceof Stmt.While w && unwrap(w.cond) instanceof Expr.Literal l && !ConstantFolder.truthy(l.value))
+            return null;
+        if (s instanceof Stmt.ExprStmt es && unwrap(es.expr) instanceof Expr.Literal) return null;
+        if (s instanceof Stmt.Block b) {
+            List<Stmt> body = reachable(b.stmts);
+            if (body.isEmpty()) return null;
+            return body == b.stmts ? b : new Stmt.Block(body);
+        }
+        if (s instanceof Stmt.Fun f) {
+            List<Stmt> body = reachable(f.body);
+            return body == f.body ? f : new Stmt.Fun(f.name, f.params, body);
+        }
+        return s;
+    }
+
+    private List<Stmt> reachable(List<Stmt> stmts) {
+        if (functionDepth == 0) return stmts;
+        for (int i = 0; i < stmts.size() - 1; i++)
+            if (stmts.get(i) instanceof Stmt.Return) return List.copyOf(stmts.subList(0, i + 1));
+        return stmts;
+    }
+}
@@ -0,0 +1,14 @@
+package com.seed.opt;
+
+import com.seed.ast.Stmt;
+import com.seed.sema.Resolver;
+
+import java.util.List;
+
+// One AST-to-AST rewrite. A pass gets a program that has just been through resolver.resolve()
+// and returns a new tree; it must not modify the nodes it was given.
+public interface Pass {
+    String name();
+
+    List<Stmt> run(List<Stmt> program, Resolver resolver);
+}
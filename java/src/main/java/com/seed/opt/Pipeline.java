@@ -0,0 +1,49 @@
+package com.seed.opt;
+
+import com.seed.ast.AstPrinter;
+import com.seed.ast.Stmt;
+import com.seed.sema.Resolver;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Runs AST passes ahead of every backend. The program is re-resolved before each pass so it
+// sees fresh type facts, and the whole sequence repeats until the printed tree stops changing
+// (one pass often exposes work for another: a folded condition becomes a dead branch).
+public final class Pipeline {
+    private static final int MAX_ROUNDS = 4;
+
+    private final List<Pass> passes = new ArrayList<>();
+    private Resolver resolver;
+
+    public static Pipeline standard() {
+        return new Pipeline().add(new ConstantFolder()).add(new AlgebraicSimplifier()).add(new DeadBranchEliminator());
+    }
+
+    public Pipeline add(Pass pass) {
+        passes.add(pass);
+        return this;
+    }
+
+    public List<Stmt> run(List<Stmt> program) {
+        AstPrinter printer = new AstPrinter();
+        String before = printer.print(program);
+        for (int round = 0; round < MAX_ROUNDS; round++) {
+            for (Pass p : passes) program = p.run(program, resolve(program));
+            String after = printer.print(program);
+            if (after.equals(before)) break;
+            before = after;
+        }
+        resolve(program);
+        return program;
+    }
+
+    // The resolver left over from run(), already applied to the returned program
+    public Resolver resolver() { return resolver; }
+
+    private Resolver resolve(List<Stmt> program) {
+        resolver = new Resolver();
+        resolver.resolve(program);
+        return resolver;
+    }
+}
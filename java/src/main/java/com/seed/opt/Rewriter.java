@@ -0,0 +1,107 @@
+package com.seed.opt;
+
+import com.seed.ast.Expr;
+import com.seed.ast.Stmt;
+import com.seed.sema.Resolver;
+import com.seed.sema.Symbol;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Base for passes: copies the tree bottom-up, offering each rebuilt node to rewrite(). Copying
+// keeps the input untouched, so it and the Resolver facts about it stay valid.
+//
+// typeOf() carries the Resolver's facts over to the copies. Variable types are only trusted
+// for reads in the declaring frame (depth 0) of a program that resolved without diagnostics:
+// a global read from a function body may run before the global's let, and a duplicate let
+// can rebind a name to a value of another type.
+public abstract class Rewriter implements Pass {
+    private Resolver resolver;
+    private boolean trustVariables;
+    private final Map<Expr, Symbol.Type> types = new IdentityHashMap<>();
+
+    @Override public List<Stmt> run(List<Stmt> program, Resolver resolver) {
+        this.resolver = resolver;
+        this.trustVariables = resolver.diagnostics().isEmpty();
+        types.clear();
+        return stmts(program);
+    }
+
+    // Return the replacement for a node whose children have already been rewritten; a null
+    // statement removes it
+    protected Expr rewrite(Expr e) { return e; }
+
+    protected Stmt rewrite(Stmt s) { return s; }
+
+    protected Symbol.Type typeOf(Expr e) { return types.getOrDefault(e, Symbol.Type.UNKNOWN); }
+
+    protected List<Stmt> stmts(List<Stmt> in) {
+        List<Stmt> out = new ArrayList<>(in.size());
+        for (Stmt s : in) {
+            Stmt r = stmt(s);
+            if (r != null) out.add(r);
+        }
+        return out;
+    }
+
+    protected Stmt stmt(Stmt s) {
+        Stmt copy;
+        if (s instanceof Stmt.Let v) copy = new Stmt.Let(v.name, v.init == null ? null : expr(v.init));
+        else if (s instanceof Stmt.ExprStmt es) copy = new Stmt.ExprStmt(expr(es.expr));
+        else if (s instanceof Stmt.Print p) copy = new Stmt.Print(expr(p.value));
+        else if (s instanceof Stmt.Block b) copy = new Stmt.Block(stmts(b.stmts));
+        else if (s instanceof Stmt.If iff) {
+            Expr cond = expr(iff.cond);
+            Stmt then = branch(iff.thenBranch);
+            copy = new Stmt.If(cond, then, iff.elseBranch == null ? null : branch(iff.elseBranch));
+        } else if (s instanceof Stmt.While w) copy = new Stmt.While(w.keyword, expr(w.cond), branch(w.body));
+        else if (s instanceof Stmt.Return r) copy = new Stmt.Return(r.keyword, r.value == null ? null : expr(r.value));
+        else if (s instanceof Stmt.Fun f) copy = new Stmt.Fun(f.name, f.params, stmts(f.body));
+        else throw new IllegalArgumentException("Unknown Stmt: " + s.getClass());
+        return rewrite(copy);
+    }
+
+    // A removed branch becomes an empty block, which has no scope of its own to lose
+    private Stmt branch(Stmt s) {
+        Stmt r = stmt(s);
+        return r != null ? r : new Stmt.Block(List.of());
+    }
+
+    protected Expr expr(Expr e) {
+        Expr copy;
+        if (e instanceof Expr.Literal l) copy = new Expr.Literal(l.value);
+        else if (e instanceof Expr.Variable v) copy = new Expr.Variable(v.name);
+        else if (e instanceof Expr.Unary u) copy = new Expr.Unary(u.op, expr(u.right));
+        else if (e instanceof Expr.Binary b) {
+            Expr left = expr(b.left);
+            copy = new Expr.Binary(left, b.op, expr(b.right));
+        } else if (e instanceof Expr.Grouping g) copy = new Expr.Grouping(expr(g.expr));
+        else if (e instanceof Expr.Call c) {
+            Expr callee = expr(c.callee);
+            List<Expr> args = new ArrayList<>(c.args.size());
+            for (Expr a : c.args) args.add(expr(a));
+            copy = new Expr.Call(callee, c.paren, args);
+        } else throw new IllegalArgumentException("Unknown Expr: " + e.getClass());
+        Symbol.Type t = resolver.typeOf(e);
+        if (e instanceof Expr.Variable v && !(trustVariables && resolver.ref(v).depth() == 0)) t = Symbol.Type.UNKNOWN;
+        types.put(copy, t);
+        Expr r = rewrite(copy);
+        types.putIfAbsent(r, t);
+        return r;
+    }
+
+    // Helpers for passes
+
+    protected static Expr unwrap(Expr e) {
+        while (e instanceof Expr.Grouping g) e = g.expr;
+        return e;
+    }
+
+    protected Expr literal(Object v) {
+        Expr.Literal l = new Expr.Literal(v);
+        types.put(l, v instanceof Integer ? Symbol.Type.INT : v instanceof Boolean ? Symbol.Type.BOOL : Symbol.Type.NIL);
+        return l;
+    }
+}
@@ -84,11 +84,12 @@ public class Parser {
     }
 
     private Stmt whileStmt() {
+        Token keyword = previous();
         consume(LEFT_PAREN, "Expect '(' after 'while'.");
         Expr cond = expression();
         consume(RIGHT_PAREN, "Expect ')' after condition.");
         Stmt body = statement();
-        return new Stmt.While(cond, body);
+        return new Stmt.While(keyword, cond, body);
     }
 
     private Stmt returnStmt() {
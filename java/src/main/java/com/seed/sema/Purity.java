@@ -0,0 +1,95 @@
+package com.seed.sema;
+
+import com.seed.ast.Expr;
+import com.seed.ast.Stmt;
+
+import java.util.*;
+
+// Finds the top-level functions whose result depends only on their arguments:
+// no print, no nested functions, no reads outside their own frame, and calls only to other
+// pure top-level functions. Runs after the Resolver, whose variable depths it relies on.
+public final class Purity {
+    private final Resolver resolver;
+
+    private Purity(Resolver resolver) { this.resolver = resolver; }
+
+    // The pure functions of program, as an identity set; the AST is not modified
+    public static Set<Stmt.Fun> analyze(List<Stmt> program, Resolver resolver) {
+        return new Purity(resolver).run(program);
+    }
+
+    private Set<Stmt.Fun> run(List<Stmt> program) {
+        Map<String, Stmt.Fun> funs = new HashMap<>();
+        Set<String> rebound = new HashSet<>();
+        for (Stmt s : program) {
+            if (s instanceof Stmt.Fun f) {
+                if (funs.put(f.name.lexeme, f) != null) rebound.add(f.name.lexeme);
+            } else if (s instanceof Stmt.Let v) {
+                rebound.add(v.name.lexeme);
+            }
+        }
+        // Candidates: names bound exactly once, to a function; a call to anything else is impure
+        for (String n : rebound) funs.remove(n);
+        Map<Stmt.Fun, Set<String>> callees = new IdentityHashMap<>();
+        for (Stmt s : program) {
+            if (s instanceof Stmt.Fun f) {
+                if (!funs.containsKey(f.name.lexeme)) continue;
+                Set<String> calls = new HashSet<>();
+                if (body(f.body, calls)) callees.put(f, calls);
+            }
+        }
+        // Greatest fixpoint: drop functions that call a non-candidate until nothing changes
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Iterator<Map.Entry<Stmt.Fun, Set<String>>> it = callees.entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry<Stmt.Fun, Set<String>> e = it.next();
+                for (String c : e.getValue()) {
+                    Stmt.Fun target = funs.get(c);
+                    if (target == null || !callees.containsKey(target)) {
+                        it.remove();
+                        changed = true;
+                        break;
+                    }
+                }
+            }
+        }
+        Set<Stmt.Fun> pure = Collections.newSetFromMap(new IdentityHashMap<>());
+        pure.addAll(callees.keySet());
+        return pure;
+    }
+
+    private boolean body(List<Stmt> stmts, Set<String> calls) {
+        for (Stmt s : stmts) if (!stmt(s, calls)) return false;
+        return true;
+    }
+
+    private boolean stmt(Stmt s, Set<String> calls) {
+        if (s instanceof Stmt.Let v) return v.init == null || expr(v.init, calls);
+        if (s instanceof Stmt.ExprStmt es) return expr(es.expr, calls);
+        if (s instanceof Stmt.Block b) return body(b.stmts, calls);
+        if (s instanceof Stmt.If iff) {
+            return expr(iff.cond, calls) && stmt(iff.thenBranch, calls)
+                    && (iff.elseBranch == null || stmt(iff.elseBranch, calls));
+        }
+        if (s instanceof Stmt.While w) return expr(w.cond, calls) && stmt(w.body, calls);
+        if (s instanceof Stmt.Return r) return r.value == null || expr(r.value, calls);
+        return false; // print, nested fun
+    }
+
+    private boolean expr(Expr e, Set<String> calls) {
+        if (e instanceof Expr.Literal) return true;
+        if (e instanceof Expr.Variable v) return resolver.ref(v).depth() == 0; // params and locals only
+        if (e instanceof Expr.Unary u) return expr(u.right, calls);
+        if (e instanceof Expr.Binary b) return expr(b.left, calls) && expr(b.right, calls);
+        if (e instanceof Expr.Grouping g) return expr(g.expr, calls);
+        if (e instanceof Expr.Call c) {
+            // Callee must name a global (not a local of this frame)
+            if (!(c.callee instanceof Expr.Variable v) || resolver.ref(v).depth() == 0) return false;
+            calls.add(v.name.lexeme);
+            for (Expr a : c.args) if (!expr(a, calls)) return false;
+            return true;
+        }
+        return false;
+    }
+}
@@ -12,15 +12,132 @@ import static com.seed.lexer.TokenType.*;
 public class Resolver {
     private final List<Diagnostic> diags = new ArrayList<>();
     private final Deque<Map<String, Symbol>> scopes = new ArrayDeque<>();
+    // One entry per function being resolved (the outermost one is the global frame)
+    private final Deque<Frame> frames = new ArrayDeque<>();
+    private Map<String, Symbol> globalScope = new HashMap<>();
+    // Best-effort static type of every expression resolved (see typeOf)
+    private final Map<Expr, Symbol.Type> types = new IdentityHashMap<>();
+    private int globalFrameSize = 0;
+    // Where each variable read, let and function resolved to. Kept here rather than on the AST,
+    // so one resolved program can be run by any number of engines at once.
+    private final Map<Expr.Variable, Ref> refs = new IdentityHashMap<>();
+    private final Map<Stmt, Integer> slots = new IdentityHashMap<>();
+    private final Map<Stmt.Fun, Integer> frameSizes = new IdentityHashMap<>();
+    // Reads of names not declared yet, looked up again in the same scopes once the pass is done
+    private final List<Pending> pending = new ArrayList<>();
+    // Their names: a later declaration of one takes a slot no closed block used (see declare)
+    private final Set<String> pendingNames = new HashSet<>();
+    // Parameter types assumed while resolving; a missing entry or null element is "no value
+    // seen yet" (see inferParams), and with `assumeNothing` set every parameter is UNKNOWN
+    private Map<Stmt.Fun, Symbol.Type[]> assumed = new IdentityHashMap<>();
+    private boolean assumeNothing;
+    // What the current pass saw of each function: its symbols, how often its name is read and
+    // how often that read is the callee of a call with the right arity, and the join of the
+    // argument types of those calls
+    private final Map<Symbol, Stmt.Fun> funOf = new IdentityHashMap<>();
+    private final Map<Stmt.Fun, int[]> uses = new IdentityHashMap<>();
+    private final Map<Stmt.Fun, Symbol.Type[]> argTypes = new IdentityHashMap<>();
+    private final Map<Stmt.Fun, List<Symbol.Type>> paramTypes = new IdentityHashMap<>();
 
+    // Frames to walk outwards from the reading function, then the slot in that frame
+    public record Ref(int depth, int slot) {}
+
+    public static final Ref UNRESOLVED = new Ref(-1, -1);
+
+    private record Pending(Expr.Variable v, List<Map<String, Symbol>> scopes, int level) {}
+
+    private static final class Frame {
+        int next = 0; // next free slot
+        int size = 0; // high-water mark
+        final Deque<Integer> marks = new ArrayDeque<>(); // block scope entry points
+        Set<String> aliased = Set.of(); // names declared more than once in this function
+    }
+
+    // Resolves the program, then resolves it again with parameter types inferred from the
+    // calls until they are stable; the diagnostics are those of the first pass, which assumes
+    // nothing about parameters
     public List<Diagnostic> resolve(List<Stmt> program) {
+        assumeNothing = true;
+        pass(program);
+        if (!diags.isEmpty()) return diags;
+        List<Diagnostic> first = new ArrayList<>(diags);
+        assumeNothing = false;
+        assumed = new IdentityHashMap<>();
+        while (true) {
+            pass(program);
+            Map<Stmt.Fun, Symbol.Type[]> next = inferParams();
+            if (next == assumed) break;
+            assumed = next;
+        }
+        diags.clear();
+        diags.addAll(first);
+        return diags;
+    }
+
+    // The assumptions joined with what the last pass saw at the calls; a function that is
+    // never called, or whose name is used other than as a callee, gets UNKNOWN parameters.
+    // Once nothing changes, parameters still without a value (only passed along a cycle of
+    // calls nothing enters) become UNKNOWN too.
+    private Map<Stmt.Fun, Symbol.Type[]> inferParams() {
+        Map<Stmt.Fun, Symbol.Type[]> next = new IdentityHashMap<>();
+        boolean changed = false;
+        for (Stmt.Fun f : uses.keySet()) {
+            int[] u = uses.get(f);
+            Symbol.Type[] seen = argTypes.get(f);
+            Symbol.Type[] old = assumed.get(f);
+            Symbol.Type[] t = new Symbol.Type[f.params.size()];
+            for (int i = 0; i < t.length; i++) {
+                Symbol.Type s = u[1] == 0 || u[0] > u[1] ? Symbol.Type.UNKNOWN : seen[i];
+                t[i] = join(old == null ? null : old[i], s);
+                changed |= old == null ? t[i] != null : t[i] != old[i];
+            }
+            next.put(f, t);
+        }
+        if (changed) return next;
+        for (Symbol.Type[] t : next.values()) {
+            for (int i = 0; i < t.length; i++) if (t[i] == null) t[i] = Symbol.Type.UNKNOWN;
+        }
+        return sameTypes(next, assumed) ? assumed : next;
+    }
+
+    private static boolean sameTypes(Map<Stmt.Fun, Symbol.Type[]> a, Map<Stmt.Fun, Symbol.Type[]> b) {
+        if (a.size() != b.size()) return false;
+        for (Map.Entry<Stmt.Fun, Symbol.Type[]> e : a.entrySet()) {
+            if (!Arrays.equals(e.getValue(), b.get(e.getKey()))) return false;
+        }
+        return true;
+    }
+
+    // Least upper bound, with null below every type
+    private static Symbol.Type join(Symbol.Type a, Symbol.Type b) {
+        if (a == null) return b;
+        if (b == null || a == b) return a;
+        return Symbol.Type.UNKNOWN;
+    }
+
+    private void pass(List<Stmt> program) {
         scopes.clear();
+        frames.clear();
         diags.clear();
+        types.clear();
+        funOf.clear();
+        uses.clear();
+        argTypes.clear();
+        paramTypes.clear();
+        refs.clear();
+        slots.clear();
+        frameSizes.clear();
+        pending.clear();
+        pendingNames.clear();
+        Frame global = new Frame();
+        global.aliased = aliased(List.of(), program);
+        frames.push(global);
         beginScope(); // global
+        globalScope = scopes.peek();
         // First pass: predeclare all top-level functions so calls can see arity
         for (Stmt s : program) {
             if (s instanceof Stmt.Fun f) {
-                declare(sloc(f.name), f.name.lexeme, Symbol.fun(f.params.size()));
+                slots.put(f, declareFun(f).slot);
             }
         }
         // Full pass
@@ -28,24 +145,134 @@ public class Resolver {
             stmt(s);
         }
         endScope();
-        return diags;
+        globalFrameSize = frames.pop().size;
+        // A name declared later in an enclosing scope (say a sibling function further down the
+        // same body) is in that scope's map by now; the read is still reported as undefined
+        for (Pending p : pending) {
+            for (Map<String, Symbol> m : p.scopes) {
+                Symbol sym = m.get(p.v.name.lexeme);
+                if (sym == null) continue;
+                refs.put(p.v, new Ref(p.level - sym.level, sym.slot));
+                break;
+            }
+        }
+    }
+
+    // What the last resolve() returned
+    public List<Diagnostic> diagnostics() { return List.copyOf(diags); }
+
+    // Number of slots the top-level frame needs after resolve()
+    public int globalFrameSize() { return globalFrameSize; }
+
+    // Slot of a global name, or -1; used as a fallback for names that resolved nowhere
+    public int globalSlot(String name) {
+        Symbol s = globalScope.get(name);
+        return s == null ? -1 : s.slot;
+    }
+
+    // Where a variable read resolved to, or UNRESOLVED
+    public Ref ref(Expr.Variable v) { return refs.getOrDefault(v, UNRESOLVED); }
+
+    // Frame slot of a let or of a function's name, or -1 if it was not resolved
+    public int slot(Stmt.Let v) { return slots.getOrDefault(v, -1); }
+
+    public int slot(Stmt.Fun f) { return slots.getOrDefault(f, -1); }
+
+    // Slots a call of f needs: parameters, then locals
+    public int frameSize(Stmt.Fun f) { return frameSizes.getOrDefault(f, f.params.size()); }
+
+    // Static type inferred for e during resolve(): for operators, the type of the result if
+    // evaluating it succeeds; for variables, the type of the declaration's initializer, or for
+    // a parameter the type every call passes (see paramTypes). UNKNOWN for reads of an
+    // enclosing function's variables, for names declared more than once in one function (the
+    // bytecode Compiler gives them one slot, so a later declaration assigns the earlier one),
+    // and for expressions that were not part of the resolved program.
+    public Symbol.Type typeOf(Expr e) {
+        Symbol.Type t = types.get(e);
+        return t == null ? Symbol.Type.UNKNOWN : t;
+    }
+
+    // The types f's parameters were resolved with: what every call of f passes, if f is only
+    // ever called directly by name and is called at all, and UNKNOWN otherwise
+    public List<Symbol.Type> paramTypes(Stmt.Fun f) {
+        List<Symbol.Type> t = paramTypes.get(f);
+        return t != null ? t : Collections.nCopies(f.params.size(), Symbol.Type.UNKNOWN);
     }
 
     private record SLoc(int line, int col) {}
     private SLoc sloc(Token t) { return new SLoc(t.line, t.col); }
     private void error(SLoc sl, String msg) { diags.add(new Diagnostic(sl.line, sl.col, msg)); }
 
-    private void beginScope() { scopes.push(new HashMap<>()); }
-    private void endScope() { scopes.pop(); }
+    private void beginScope() {
+        scopes.push(new HashMap<>());
+        frames.peek().marks.push(frames.peek().next);
+    }
 
-    private boolean declare(SLoc where, String name, Symbol sym) {
+    private void endScope() {
+        scopes.pop();
+        // Block locals are dead once the block ends, so their slots can be reused
+        Frame fr = frames.peek();
+        fr.next = fr.marks.pop();
+    }
+
+    private int level() { return frames.size() - 1; }
+
+    private int allocSlot() {
+        Frame fr = frames.peek();
+        int slot = fr.next++;
+        fr.size = Math.max(fr.size, fr.next);
+        return slot;
+    }
+
+    // Declares name in the current scope and returns its symbol; a duplicate keeps the existing slot
+    private Symbol declare(SLoc where, String name, Symbol.Kind kind, Symbol.Type t, int arity) {
         Map<String, Symbol> cur = scopes.peek();
-        if (cur.containsKey(name)) {
+        Symbol old = cur.get(name);
+        if (old != null) {
             error(where, "Duplicate declaration: '" + name + "'");
-            return false;
+            return old;
         }
+        // A read resolved to this declaration after the pass runs before it; a slot an earlier
+        // block used would hand that read the block's stale value instead of "undefined"
+        if (pendingNames.contains(name)) frames.peek().next = frames.peek().size;
+        int slot = allocSlot();
+        Symbol sym = kind == Symbol.Kind.FUN ? Symbol.fun(arity, level(), slot) : Symbol.var(t, level(), slot);
         cur.put(name, sym);
-        return true;
+        return sym;
+    }
+
+    private Symbol declareFun(Stmt.Fun f) {
+        Symbol s = declare(sloc(f.name), f.name.lexeme, Symbol.Kind.FUN, Symbol.Type.FUNCTION, f.params.size());
+        if (s.kind == Symbol.Kind.FUN && !funOf.containsKey(s)) {
+            funOf.put(s, f);
+            uses.put(f, new int[2]);
+            argTypes.put(f, new Symbol.Type[f.params.size()]);
+        }
+        return s;
+    }
+
+    // Names declared more than once in a function body, counting its parameters and the lets
+    // of its nested blocks but not those of its nested functions
+    private static Set<String> aliased(List<Token> params, List<Stmt> body) {
+        Map<String, Integer> count = new HashMap<>();
+        for (Token p : params) count.merge(p.lexeme, 1, Integer::sum);
+        countLets(body, count);
+        Set<String> out = new HashSet<>();
+        count.forEach((name, n) -> { if (n > 1) out.add(name); });
+        return out;
+    }
+
+    private static void countLets(List<Stmt> stmts, Map<String, Integer> count) {
+        for (Stmt s : stmts) countLets(s, count);
+    }
+
+    private static void countLets(Stmt s, Map<String, Integer> count) {
+        if (s instanceof Stmt.Let v) count.merge(v.name.lexeme, 1, Integer::sum);
+        else if (s instanceof Stmt.Block b) countLets(b.stmts, count);
+        else if (s instanceof Stmt.If iff) {
+            countLets(iff.thenBranch, count);
+            if (iff.elseBranch != null) countLets(iff.elseBranch, count);
+        } else if (s instanceof Stmt.While w) countLets(w.body, count);
     }
 
     private Symbol lookup(String name) {
@@ -64,7 +291,8 @@ public class Resolver {
             if (v.init != null) {
                 t = expr(v.init);
             }
-            declare(new SLoc(v.name.line, v.name.col), v.name.lexeme, Symbol.var(t));
+            if (frames.peek().aliased.contains(v.name.lexeme)) t = Symbol.Type.UNKNOWN;
+            slots.put(v, declare(new SLoc(v.name.line, v.name.col), v.name.lexeme, Symbol.Kind.VAR, t, -1).slot);
             return;
         }
         if (s instanceof Stmt.ExprStmt es) {
@@ -99,18 +327,33 @@ public class Resolver {
             return;
         }
         if (s instanceof Stmt.Fun f) {
-            // Function body scope with params
+            // Top-level functions were predeclared; nested ones bind their name before the body (recursion)
+            if (scopes.peek() != globalScope) {
+                slots.put(f, declareFun(f).slot);
+            }
+            // Function body scope with params; params occupy the first slots of the new frame
+            Frame fr = new Frame();
+            fr.aliased = aliased(f.params, f.body);
+            frames.push(fr);
             beginScope();
             Set<String> seen = new HashSet<>();
-            for (Token p : f.params) {
+            Symbol.Type[] pt = assumed.get(f);
+            List<Symbol.Type> declared = new ArrayList<>(f.params.size());
+            for (int i = 0; i < f.params.size(); i++) {
+                Token p = f.params.get(i);
                 if (seen.contains(p.lexeme)) {
                     error(sloc(p), "Duplicate parameter: '" + p.lexeme + "'");
                 }
                 seen.add(p.lexeme);
-                declare(sloc(p), p.lexeme, Symbol.var(Symbol.Type.UNKNOWN));
+                Symbol.Type t = assumeNothing || fr.aliased.contains(p.lexeme) ? Symbol.Type.UNKNOWN
+                        : pt == null ? null : pt[i];
+                declared.add(t == null ? Symbol.Type.UNKNOWN : t);
+                scopes.peek().put(p.lexeme, Symbol.var(t, level(), allocSlot()));
             }
+            paramTypes.put(f, List.copyOf(declared));
             for (Stmt st : f.body) stmt(st);
             endScope();
+            frameSizes.put(f, frames.pop().size);
             return;
         }
         throw new IllegalArgumentException("Unknown Stmt: " + s.getClass());
@@ -129,8 +372,14 @@ public class Resolver {
         }
     }
 
-    // Expressions: return a best-effort static type
     private Symbol.Type expr(Expr e) {
+        Symbol.Type t = infer(e);
+        types.put(e, t);
+        return t;
+    }
+
+    // Expressions: return a best-effort static type
+    private Symbol.Type infer(Expr e) {
         if (e instanceof Expr.Literal l) {
             if (l.value instanceof Integer) return Symbol.Type.INT;
             if (l.value instanceof Boolean) return Symbol.Type.BOOL;
@@ -141,9 +390,20 @@ public class Resolver {
             Symbol s = lookup(v.name.lexeme);
             if (s == null) {
                 error(sloc(v.name), "Undefined identifier: '" + v.name.lexeme + "'");
+                pending.add(new Pending(v, List.copyOf(scopes), level()));
+                pendingNames.add(v.name.lexeme);
                 return Symbol.Type.UNKNOWN;
             }
-            return s.kind == Symbol.Kind.FUN ? Symbol.Type.FUNCTION : s.type;
+            int depth = level() - s.level;
+            refs.put(v, new Ref(depth, s.slot));
+            if (s.kind == Symbol.Kind.FUN) {
+                Stmt.Fun f = funOf.get(s);
+                if (f != null) uses.get(f)[0]++;
+                return Symbol.Type.FUNCTION;
+            }
+            // An enclosing function's variable may not have been assigned yet, or (in the
+            // bytecode) not be visible at all
+            return depth == 0 ? s.type : Symbol.Type.UNKNOWN;
         }
         if (e instanceof Expr.Unary u) {
             Symbol.Type rt = expr(u.right);
@@ -200,14 +460,21 @@ public class Resolver {
             return expr(g.expr);
         }
         if (e instanceof Expr.Call c) {
+            expr(c.callee);
             // If callee is a bare variable referring to a known function, check arity
             if (c.callee instanceof Expr.Variable v) {
                 Symbol s = lookup(v.name.lexeme);
                 if (s == null) {
-                    // will be reported by variable lookup
+                    // reported by the variable lookup above
                 } else if (s.kind == Symbol.Kind.FUN) {
                     if (c.args.size() != s.arity) {
                         error(sloc(v.name), "Arity mismatch for function '" + v.name.lexeme + "': expected " + s.arity + " got " + c.args.size());
+                    } else if (funOf.containsKey(s)) {
+                        Stmt.Fun f = funOf.get(s);
+                        uses.get(f)[1]++;
+                        Symbol.Type[] seen = argTypes.get(f);
+                        for (int i = 0; i < c.args.size(); i++) seen[i] = join(seen[i], expr(c.args.get(i)));
+                        return Symbol.Type.UNKNOWN;
                     }
                 }
             }
@@ -7,12 +7,16 @@ public class Symbol {
     public final Kind kind;
     public final Type type;   // For VAR: static type if known; For FUN: FUNCTION
     public final int arity;   // For FUN
-    public Symbol(Kind kind, Type type, int arity) {
+    public final int level;   // function nesting level of the declaring frame (0 = globals)
+    public final int slot;    // index in the declaring frame
+    public Symbol(Kind kind, Type type, int arity, int level, int slot) {
         this.kind = kind;
         this.type = type;
         this.arity = arity;
+        this.level = level;
+        this.slot = slot;
     }
 
-    public static Symbol var(Type t) { return new Symbol(Kind.VAR, t, -1); }
-    public static Symbol fun(int arity) { return new Symbol(Kind.FUN, Type.FUNCTION, arity); }
+    public static Symbol var(Type t, int level, int slot) { return new Symbol(Kind.VAR, t, -1, level, slot); }
+    public static Symbol fun(int arity, int level, int slot) { return new Symbol(Kind.FUN, Type.FUNCTION, arity, level, slot); }
 }
@@ -0,0 +1,181 @@
+package com.seed.vm;
+
+import com.seed.bytecode.Function;
+import com.seed.bytecode.Instr;
+import com.seed.bytecode.Module;
+import com.seed.bytecode.PureFunctions;
+import com.seed.bytecode.Verifier;
+
+import java.util.Arrays;
+
+// A Module decoded for the VM: all functions in one flat int[] (opcode followed by its
+// operands), jumps as absolute code positions, constants split into value and tag arrays.
+// Immutable once built, so one Image can be shared by any number of runs.
+public final class Image {
+    // Decoded opcodes (ENTER/LEAVE are no-ops and are dropped)
+    static final int CONST = 0, LOAD = 1, STORE = 2, POP = 3, DUP = 4;
+    static final int ADD = 5, SUB = 6, MUL = 7, DIV = 8, NOT = 9;
+    static final int EQ = 10, NE = 11, LT = 12, LE = 13, GT = 14, GE = 15;
+    static final int JMP = 16, JMP_IF_FALSE = 17, CALL = 18, RET = 19, PRINT = 20, TAIL_CALL = 21;
+    static final int LOAD_LOAD_ADD = 22, LOAD_CONST_ADD_STORE = 23, LOAD_CONST_LT_JMP_IF_FALSE = 24, LOAD_LOAD_LT_JMP_IF_FALSE = 25;
+    static final int IADD = 26, ISUB = 27, IMUL = 28, IDIV = 29, BNOT = 30;
+    static final int IEQ = 31, INE = 32, ILT = 33, ILE = 34, IGT = 35, IGE = 36;
+
+    // Value tags
+    static final byte INT = Module.INT, BOOL = Module.BOOL, NIL = Module.NIL;
+
+    final int[] code;
+    final int[] entry;     // code position of each function
+    final int[] arity;
+    final int[] nlocals;   // at least arity
+    final int[] maxStack;  // operand stack high-water mark per function
+    final boolean[] pure;  // memoizable, see PureFunctions
+    final String[] names;
+    final long[] kval;
+    final byte[] ktag;
+
+    private Image(int[] code, int[] entry, int[] arity, int[] nlocals, int[] maxStack, boolean[] pure,
+                  String[] names, long[] kval, byte[] ktag) {
+        this.code = code; this.entry = entry; this.arity = arity; this.nlocals = nlocals;
+        this.maxStack = maxStack; this.pure = pure; this.names = names; this.kval = kval; this.ktag = ktag;
+    }
+
+    public int function(String name) {
+        for (int i = 0; i < names.length; i++) if (names[i].equals(name)) return i;
+        return -1;
+    }
+
+    public int functionCount() { return names.length; }
+
+    public static Image decode(Module m) {
+        int nf = m.funcs.size();
+        // Module's pool already has this layout and uses the same tags
+        long[] kval = new long[m.constCount()];
+        byte[] ktag = new byte[kval.length];
+        for (int i = 0; i < kval.length; i++) {
+            kval[i] = m.constValue(i);
+            ktag[i] = m.constTag(i);
+        }
+        int[] entry = new int[nf], arity = new int[nf], nlocals = new int[nf], maxStack = new int[nf];
+        String[] names = new String[nf];
+        int[] code = new int[64];
+        int len = 0;
+        for (int fi = 0; fi < nf; fi++) {
+            Function f = m.funcs.get(fi);
+            int[] depth = Verifier.stackDepths(f);
+            int n = f.code.size();
+            names[fi] = f.name;
+            arity[fi] = f.arity;
+            nlocals[fi] = Math.max(f.nlocals, f.arity);
+            maxStack[fi] = Arrays.stream(depth).max().orElse(0) + 1; // +1: RET may push nil
+            entry[fi] = len;
+            // First pass: position of each instruction; pc == n is an implicit RET
+            int[] pos = new int[n + 1];
+            int p = len;
+            for (int pc = 0; pc < n; pc++) {
+                pos[pc] = p;
+                p += size(f.code.get(pc));
+            }
+            pos[n] = p;
+            code = ensure(code, p + 1);
+            for (int pc = 0; pc < n; pc++) {
+                Instr in = f.code.get(pc);
+                switch (in.op) {
+                    case ENTER, LEAVE -> {}
+                    case CONST -> {
+                        if (in.a < 0 || in.a >= kval.length) throw new IllegalArgumentException(site(f, pc) + ": CONST out of range");
+                        code[len++] = CONST; code[len++] = in.a;
+                    }
+                    case LOAD, STORE -> {
+                        if (in.a < 0 || in.a >= nlocals[fi]) throw new IllegalArgumentException(site(f, pc) + ": local out of range");
+                        code[len++] = in.op == com.seed.bytecode.Opcode.LOAD ? LOAD : STORE; code[len++] = in.a;
+                    }
+                    case JMP, JMP_IF_FALSE -> {
+                        code[len++] = in.op == com.seed.bytecode.Opcode.JMP ? JMP : JMP_IF_FALSE;
+                        code[len++] = pos[pc + 1 + in.a];
+                    }
+                    case LOAD_LOAD_ADD -> {
+                        code[len++] = LOAD_LOAD_ADD; code[len++] = local(f, fi, pc, nlocals, in.a); code[len++] = local(f, fi, pc, nlocals, in.b);
+                    }
+                    case LOAD_CONST_ADD_STORE -> {
+                        code[len++] = LOAD_CONST_ADD_STORE; code[len++] = local(f, fi, pc, nlocals, in.a);
+                        code[len++] = intConst(f, pc, ktag, in.b); code[len++] = local(f, fi, pc, nlocals, in.c);
+                    }
+                    case LOAD_CONST_LT_JMP_IF_FALSE, LOAD_LOAD_LT_JMP_IF_FALSE -> {
+                        boolean k = in.op == com.seed.bytecode.Opcode.LOAD_CONST_LT_JMP_IF_FALSE;
+                        code[len++] = k ? LOAD_CONST_LT_JMP_IF_FALSE : LOAD_LOAD_LT_JMP_IF_FALSE;
+                        code[len++] = local(f, fi, pc, nlocals, in.a);
+                        code[len++] = k ? intConst(f, pc, ktag, in.b) : local(f, fi, pc, nlocals, in.b);
+                        code[len++] = pos[pc + 1 + in.c];
+                    }
+                    case CALL, TAIL_CALL -> {
+                        if (m.funcs.get(in.a).arity != in.b) throw new IllegalArgumentException(site(f, pc) + ": " + in.op + " arity mismatch");
+                        code[len++] = in.op == com.seed.bytecode.Opcode.CALL ? CALL : TAIL_CALL; code[len++] = in.a; code[len++] = in.b;
+                    }
+                    default -> code[len++] = simple(in);
+                }
+            }
+            code[len++] = RET;
+        }
+        return new Image(Arrays.copyOf(code, len), entry, arity, nlocals, maxStack, PureFunctions.of(m),
+                names, kval, ktag);
+    }
+
+    private static int size(Instr in) {
+        return switch (in.op) {
+            case ENTER, LEAVE -> 0;
+            case CONST, LOAD, STORE, JMP, JMP_IF_FALSE -> 2;
+            case CALL, TAIL_CALL, LOAD_LOAD_ADD -> 3;
+            case LOAD_CONST_ADD_STORE, LOAD_CONST_LT_JMP_IF_FALSE, LOAD_LOAD_LT_JMP_IF_FALSE -> 4;
+            default -> 1;
+        };
+    }
+
+    private static int local(Function f, int fi, int pc, int[] nlocals, int slot) {
+        if (slot < 0 || slot >= nlocals[fi]) throw new IllegalArgumentException(site(f, pc) + ": local out of range");
+        return slot;
+    }
+
+    private static int intConst(Function f, int pc, byte[] ktag, int k) {
+        if (k < 0 || k >= ktag.length || ktag[k] != INT) throw new IllegalArgumentException(site(f, pc) + ": int constant expected");
+        return k;
+    }
+
+    private static int simple(Instr in) {
+        return switch (in.op) {
+            case POP -> POP;
+            case DUP -> DUP;
+            case ADD -> ADD;
+            case SUB -> SUB;
+            case MUL -> MUL;
+            case DIV -> DIV;
+            case NOT -> NOT;
+            case EQ -> EQ;
+            case NE -> NE;
+            case LT -> LT;
+            case LE -> LE;
+            case GT -> GT;
+            case GE -> GE;
+            case IADD -> IADD;
+            case ISUB -> ISUB;
+            case IMUL -> IMUL;
+            case IDIV -> IDIV;
+            case BNOT -> BNOT;
+            case IEQ -> IEQ;
+            case INE -> INE;
+            case ILT -> ILT;
+            case ILE -> ILE;
+            case IGT -> IGT;
+            case IGE -> IGE;
+            case RET -> RET;
+            case PRINT -> PRINT;
+            default -> throw new IllegalArgumentException("Unexpected opcode " + in.op);
+        };
+    }
+
+    private static int[] ensure(int[] a, int n) {
+        return n <= a.length ? a : Arrays.copyOf(a, Math.max(n, a.length * 2));
+    }
+
+    private static String site(Function f, int pc) { return f.name + ":" + pc; }
+}
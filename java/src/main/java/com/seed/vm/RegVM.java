@@ -0,0 +1,173 @@
+package com.seed.vm;
+
+import com.seed.bytecode.reg.RegFunction;
+import com.seed.bytecode.reg.RegInstr;
+import com.seed.bytecode.reg.RegModule;
+import com.seed.bytecode.reg.RegOpcode;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+
+import static com.seed.vm.Image.INT;
+import static com.seed.vm.Image.BOOL;
+import static com.seed.vm.Image.NIL;
+
+// Interpreter for register code, with the same value layout and error messages as VM. Each
+// frame is a window of nregs registers; a callee's window starts right above its caller's.
+// Expects code that RegVerifier accepts.
+public final class RegVM {
+    private final int[][] code;   // per function: op, a, b, c per instruction; jumps absolute
+    private final int[] arity;
+    private final int[] nregs;
+    private final String[] names;
+    private final long[] kval;
+    private final byte[] ktag;
+    private final PrintStream out;
+    private int maxDepth = VM.DEFAULT_MAX_DEPTH;
+
+    private static final RegOpcode[] OPS = RegOpcode.values();
+
+    public RegVM(RegModule m, PrintStream out) {
+        int nf = m.funcs.size();
+        code = new int[nf][];
+        arity = new int[nf];
+        nregs = new int[nf];
+        names = new String[nf];
+        for (int fi = 0; fi < nf; fi++) {
+            RegFunction f = m.funcs.get(fi);
+            arity[fi] = f.arity;
+            nregs[fi] = Math.max(f.nregs, 1);
+            names[fi] = f.name;
+            int[] c = new int[4 * f.code.size()];
+            for (int pc = 0; pc < f.code.size(); pc++) {
+                RegInstr in = f.code.get(pc);
+                c[4 * pc] = in.op.ordinal();
+                c[4 * pc + 1] = in.op == RegOpcode.JMP ? 4 * (pc + 1 + in.a) : in.a;
+                c[4 * pc + 2] = in.op == RegOpcode.JMPF ? 4 * (pc + 1 + in.b) : in.b;
+                c[4 * pc + 3] = in.c;
+            }
+            code[fi] = c;
+        }
+        kval = new long[m.constCount()];
+        ktag = new byte[kval.length];
+        for (int i = 0; i < kval.length; i++) {
+            kval[i] = m.constValue(i);
+            ktag[i] = m.constTag(i);
+        }
+        this.out = out;
+    }
+
+    public void setMaxDepth(int maxDepth) {
+        if (maxDepth <= 0) throw new IllegalArgumentException("max depth must be positive");
+        this.maxDepth = maxDepth;
+    }
+
+    public void run() { run("main"); }
+
+    public void run(String entryName) {
+        int fn = -1;
+        for (int i = 0; i < names.length; i++) if (names[i].equals(entryName)) { fn = i; break; }
+        if (fn < 0) throw new RuntimeException("Entry function '" + entryName + "' not found");
+        if (arity[fn] != 0) throw new RuntimeException("Entry function '" + entryName + "' must take no arguments");
+        long[] vals = new long[Math.max(VM.INITIAL_SLOTS, nregs[fn])];
+        byte[] tags = new byte[vals.length];
+        Arrays.fill(tags, 0, nregs[fn], NIL);
+        // (function, return pc, base, result register) per active call
+        // Sized so the depth check, which runs when the frame stack is full, also covers small limits
+        int[] frames = new int[4 * Math.min(VM.INITIAL_FRAMES, maxDepth)];
+        int fsp = 0, base = 0, pc = 0;
+        int[] c = code[fn];
+        while (true) {
+            int a = c[pc + 1], b = c[pc + 2], d = c[pc + 3];
+            switch (OPS[c[pc]]) {
+                case MOV -> { vals[base + a] = vals[base + b]; tags[base + a] = tags[base + b]; }
+                case LOADK -> { vals[base + a] = kval[b]; tags[base + a] = ktag[b]; }
+                case ADD -> set(vals, tags, base + a, asInt(vals, tags, base + b) + asInt(vals, tags, base + d));
+                case SUB -> set(vals, tags, base + a, asInt(vals, tags, base + b) - asInt(vals, tags, base + d));
+                case MUL -> set(vals, tags, base + a, asInt(vals, tags, base + b) * asInt(vals, tags, base + d));
+                case DIV -> set(vals, tags, base + a, asInt(vals, tags, base + b) / asInt(vals, tags, base + d));
+                case EQ -> bool(vals, tags, base + a, same(vals, tags, base + b, base + d));
+                case NE -> bool(vals, tags, base + a, !same(vals, tags, base + b, base + d));
+                case LT -> bool(vals, tags, base + a, asInt(vals, tags, base + b) < asInt(vals, tags, base + d));
+                case LE -> bool(vals, tags, base + a, asInt(vals, tags, base + b) <= asInt(vals, tags, base + d));
+                case GT -> bool(vals, tags, base + a, asInt(vals, tags, base + b) > asInt(vals, tags, base + d));
+                case GE -> bool(vals, tags, base + a, asInt(vals, tags, base + b) >= asInt(vals, tags, base + d));
+                case NEG -> set(vals, tags, base + a, -asInt(vals, tags, base + b));
+                case NOT -> bool(vals, tags, base + a, !truthy(vals, tags, base + b));
+                case JMP -> { pc = a; continue; }
+                case JMPF -> {
+                    if (!truthy(vals, tags, base + a)) { pc = b; continue; }
+                }
+                case CALL -> {
+                    int nbase = base + nregs[fn];
+                    if (fsp == frames.length) {
+                        if ((fsp >> 2) >= maxDepth) throw overflow();
+                        frames = Arrays.copyOf(frames, (int) Math.min(2L * fsp, 4L * maxDepth));
+                    }
+                    if (nbase + nregs[b] > vals.length) {
+                        vals = Arrays.copyOf(vals, grow(vals.length, nbase + nregs[b]));
+                        tags = Arrays.copyOf(tags, vals.length);
+                    }
+                    System.arraycopy(vals, base + a, vals, nbase, d);
+                    System.arraycopy(tags, base + a, tags, nbase, d);
+                    Arrays.fill(vals, nbase + d, nbase + nregs[b], 0);
+                    Arrays.fill(tags, nbase + d, nbase + nregs[b], NIL);
+                    frames[fsp] = fn; frames[fsp + 1] = pc + 4; frames[fsp + 2] = base; frames[fsp + 3] = base + a;
+                    fsp += 4;
+                    fn = b; base = nbase; pc = 0; c = code[fn];
+                    continue;
+                }
+                case TAILCALL -> {
+                    if (base + nregs[b] > vals.length) {
+                        vals = Arrays.copyOf(vals, grow(vals.length, base + nregs[b]));
+                        tags = Arrays.copyOf(tags, vals.length);
+                    }
+                    System.arraycopy(vals, base + a, vals, base, d);
+                    System.arraycopy(tags, base + a, tags, base, d);
+                    Arrays.fill(vals, base + d, base + nregs[b], 0);
+                    Arrays.fill(tags, base + d, base + nregs[b], NIL);
+                    fn = b; pc = 0; c = code[fn];
+                    continue;
+                }
+                case RET -> {
+                    long rv = vals[base + a];
+                    byte rt = tags[base + a];
+                    if (fsp == 0) return;
+                    fsp -= 4;
+                    fn = frames[fsp]; pc = frames[fsp + 1]; base = frames[fsp + 2];
+                    vals[frames[fsp + 3]] = rv; tags[frames[fsp + 3]] = rt;
+                    c = code[fn];
+                    continue;
+                }
+                case PRINT -> out.println(VM.show(vals[base + a], tags[base + a]));
+            }
+            pc += 4;
+        }
+    }
+
+    private RuntimeException overflow() {
+        return new RuntimeException("Stack overflow (call depth limit " + maxDepth + ")");
+    }
+
+    private int grow(int have, long need) {
+        if (need > VM.MAX_SLOTS) throw overflow();
+        return (int) Math.min(VM.MAX_SLOTS, Math.max(need, 2L * have));
+    }
+
+    private static void set(long[] vals, byte[] tags, int i, int v) { vals[i] = v; tags[i] = INT; }
+
+    private static void bool(long[] vals, byte[] tags, int i, boolean v) { vals[i] = v ? 1 : 0; tags[i] = BOOL; }
+
+    private static int asInt(long[] vals, byte[] tags, int i) {
+        if (tags[i] != INT) throw new RuntimeException("Expected int");
+        return (int) vals[i];
+    }
+
+    private static boolean truthy(long[] vals, byte[] tags, int i) {
+        return tags[i] != NIL && vals[i] != 0;
+    }
+
+    private static boolean same(long[] vals, byte[] tags, int a, int b) {
+        return tags[a] == tags[b] && vals[a] == vals[b];
+    }
+}
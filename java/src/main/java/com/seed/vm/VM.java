@@ -0,0 +1,315 @@
+package com.seed.vm;
+
+import com.seed.interp.MemoTable;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+
+import static com.seed.vm.Image.*;
+
+// Stack VM over a decoded Image. Values live in two parallel arrays (payload and tag), so
+// executing an instruction never allocates. A call frame is a window of the value stack:
+// the callee's locals start at the caller's argument slots and its operands sit above them.
+public final class VM {
+    // Both stacks start small and double on demand, so call depth is bounded by maxDepth (and
+    // the heap), not by the Java thread stack
+    static final int INITIAL_SLOTS = 1 << 10;
+    static final int INITIAL_FRAMES = 1 << 8;
+    static final int MAX_SLOTS = 1 << 30;
+    public static final int DEFAULT_MAX_DEPTH = 1 << 20;
+    // Fuel is handed to the dispatch loop in grants of at most this many units; the deadline
+    // is only looked at when a grant runs out
+    static final int FUEL_GRANT = 1 << 12;
+
+    // Why run() or resume() returned
+    public enum Status { DONE, OUT_OF_FUEL, DEADLINE }
+
+    private final Image image;
+    private final PrintStream out;
+    private MemoTable memo;
+    private int maxDepth = DEFAULT_MAX_DEPTH;
+    // One unit of fuel per loop back-edge (backward JMP) and per CALL/TAIL_CALL
+    private long fuel = Long.MAX_VALUE;
+    private long timeLimit;  // nanos per run()/resume(), 0 for none
+    private long deadline;
+    private int granted;
+    private Status stop;
+
+    // Execution state, kept here so a run that stops for fuel or time can be resumed
+    private long[] vals;
+    private byte[] tags;
+    private int[] frames;
+    private long[][] memoKeys;
+    private int fsp, fp, base, sp, pc;
+    private boolean suspended;
+
+    public VM(Image image, PrintStream out) {
+        this.image = image;
+        this.out = out;
+    }
+
+    // Opt-in memoization of pure functions, bounded to capacity entries
+    public void enableMemo(int capacity) { this.memo = new MemoTable(capacity); }
+
+    public MemoTable memoTable() { return memo; }
+
+    // Active calls allowed before the run fails with a Seed "Stack overflow" error
+    public void setMaxDepth(int maxDepth) {
+        if (maxDepth <= 0) throw new IllegalArgumentException("max depth must be positive");
+        this.maxDepth = maxDepth;
+    }
+
+    // Fuel left for this VM; run() and resume() stop with OUT_OF_FUEL when it is used up
+    public void setFuel(long fuel) {
+        if (fuel < 0) throw new IllegalArgumentException("fuel must not be negative");
+        this.fuel = fuel;
+    }
+
+    public long fuel() { return fuel; }
+
+    // Wall-clock budget for each run() or resume() call, 0 for none
+    public void setTimeLimit(long nanos) {
+        if (nanos < 0) throw new IllegalArgumentException("time limit must not be negative");
+        this.timeLimit = nanos;
+    }
+
+    // True after run() or resume() returned OUT_OF_FUEL or DEADLINE
+    public boolean suspended() { return suspended; }
+
+    public Status run() { return run("main"); }
+
+    public Status run(String entryName) {
+        int f = image.function(entryName);
+        if (f < 0) throw new RuntimeException("Entry function '" + entryName + "' not found");
+        if (image.arity[f] != 0) throw new RuntimeException("Entry function '" + entryName + "' must take no arguments");
+        vals = new long[INITIAL_SLOTS];
+        tags = new byte[INITIAL_SLOTS];
+        // (return pc, fp, operand base, memoized function or -1) per active call
+        // The depth check runs only when the frame stack is full, so it never starts above maxDepth
+        int nframes = Math.min(INITIAL_FRAMES, maxDepth);
+        frames = new int[4 * nframes];
+        memoKeys = memo == null ? null : new long[nframes][];
+        fsp = 0;
+        fp = 0;
+        base = image.nlocals[f];
+        if (base + image.maxStack[f] > vals.length) {
+            vals = new long[slots(vals.length, base + image.maxStack[f])];
+            tags = new byte[vals.length];
+        }
+        for (int i = 0; i < base; i++) tags[i] = NIL;
+        sp = base;
+        pc = image.entry[f];
+        return execute();
+    }
+
+    // Continues a suspended run where it stopped, with the fuel now set
+    public Status resume() {
+        if (!suspended) throw new IllegalStateException("VM is not suspended");
+        return execute();
+    }
+
+    private Status execute() {
+        final int[] code = image.code;
+        final long[] kval = image.kval;
+        final byte[] ktag = image.ktag;
+        long[] vals = this.vals;
+        byte[] tags = this.tags;
+        int[] frames = this.frames;
+        long[][] memoKeys = this.memoKeys;
+        int fsp = this.fsp, fp = this.fp, base = this.base, sp = this.sp, pc = this.pc;
+        suspended = false;
+        deadline = System.nanoTime() + timeLimit;
+        granted = 0;
+        int budget = 0;
+        try {
+            loop:
+            while (true) {
+                switch (code[pc++]) {
+                    case CONST -> {
+                        int k = code[pc++];
+                        vals[sp] = kval[k]; tags[sp] = ktag[k]; sp++;
+                    }
+                    case LOAD -> {
+                        int s = fp + code[pc++];
+                        vals[sp] = vals[s]; tags[sp] = tags[s]; sp++;
+                    }
+                    case STORE -> {
+                        int s = fp + code[pc++];
+                        sp--; vals[s] = vals[sp]; tags[s] = tags[sp];
+                    }
+                    case POP -> sp--;
+                    case DUP -> { vals[sp] = vals[sp - 1]; tags[sp] = tags[sp - 1]; sp++; }
+                    case ADD -> { sp--; vals[sp - 1] = asInt(vals, tags, sp - 1) + asInt(vals, tags, sp); tags[sp - 1] = INT; }
+                    case SUB -> { sp--; vals[sp - 1] = asInt(vals, tags, sp - 1) - asInt(vals, tags, sp); tags[sp - 1] = INT; }
+                    case MUL -> { sp--; vals[sp - 1] = asInt(vals, tags, sp - 1) * asInt(vals, tags, sp); tags[sp - 1] = INT; }
+                    case DIV -> { sp--; vals[sp - 1] = asInt(vals, tags, sp - 1) / asInt(vals, tags, sp); tags[sp - 1] = INT; }
+                    case NOT -> { vals[sp - 1] = truthy(vals, tags, sp - 1) ? 0 : 1; tags[sp - 1] = BOOL; }
+                    case EQ -> { sp--; vals[sp - 1] = same(vals, tags, sp - 1, sp) ? 1 : 0; tags[sp - 1] = BOOL; }
+                    case NE -> { sp--; vals[sp - 1] = same(vals, tags, sp - 1, sp) ? 0 : 1; tags[sp - 1] = BOOL; }
+                    case LT -> { sp--; vals[sp - 1] = asInt(vals, tags, sp - 1) < asInt(vals, tags, sp) ? 1 : 0; tags[sp - 1] = BOOL; }
+                    case LE -> { sp--; vals[sp - 1] = asInt(vals, tags, sp - 1) <= asInt(vals, tags, sp) ? 1 : 0; tags[sp - 1] = BOOL; }
+                    case GT -> { sp--; vals[sp - 1] = asInt(vals, tags, sp - 1) > asInt(vals, tags, sp) ? 1 : 0; tags[sp - 1] = BOOL; }
+                    case GE -> { sp--; vals[sp - 1] = asInt(vals, tags, sp - 1) >= asInt(vals, tags, sp) ? 1 : 0; tags[sp - 1] = BOOL; }
+                    // Typed forms: the Verifier proved the tags, and an int result keeps its left operand's tag
+                    case IADD -> { sp--; vals[sp - 1] = (int) vals[sp - 1] + (int) vals[sp]; }
+                    case ISUB -> { sp--; vals[sp - 1] = (int) vals[sp - 1] - (int) vals[sp]; }
+                    case IMUL -> { sp--; vals[sp - 1] = (int) vals[sp - 1] * (int) vals[sp]; }
+                    case IDIV -> { sp--; vals[sp - 1] = (int) vals[sp - 1] / (int) vals[sp]; }
+                    case BNOT -> vals[sp - 1] ^= 1;
+                    case IEQ -> { sp--; vals[sp - 1] = vals[sp - 1] == vals[sp] ? 1 : 0; tags[sp - 1] = BOOL; }
+                    case INE -> { sp--; vals[sp - 1] = vals[sp - 1] != vals[sp] ? 1 : 0; tags[sp - 1] = BOOL; }
+                    case ILT -> { sp--; vals[sp - 1] = vals[sp - 1] < vals[sp] ? 1 : 0; tags[sp - 1] = BOOL; }
+                    case ILE -> { sp--; vals[sp - 1] = vals[sp - 1] <= vals[sp] ? 1 : 0; tags[sp - 1] = BOOL; }
+                    case IGT -> { sp--; vals[sp - 1] = vals[sp - 1] > vals[sp] ? 1 : 0; tags[sp - 1] = BOOL; }
+                    case IGE -> { sp--; vals[sp - 1] = vals[sp - 1] >= vals[sp] ? 1 : 0; tags[sp - 1] = BOOL; }
+                    case JMP -> {
+                        int target = code[pc];
+                        if (target < pc && --budget < 0 && (budget = refuel()) < 0) { pc--; break loop; }
+                        pc = target;
+                    }
+                    case JMP_IF_FALSE -> {
+                        sp--;
+                        pc = truthy(vals, tags, sp) ? pc + 1 : code[pc];
+                    }
+                    case LOAD_LOAD_ADD -> {
+                        int a = fp + code[pc], b = fp + code[pc + 1];
+                        pc += 2;
+                        vals[sp] = asInt(vals, tags, a) + asInt(vals, tags, b); tags[sp] = INT; sp++;
+                    }
+                    case LOAD_CONST_ADD_STORE -> {
+                        int a = fp + code[pc], d = fp + code[pc + 2];
+                        vals[d] = asInt(vals, tags, a) + (int) kval[code[pc + 1]]; tags[d] = INT;
+                        pc += 3;
+                    }
+                    case LOAD_CONST_LT_JMP_IF_FALSE -> {
+                        int a = fp + code[pc];
+                        pc = asInt(vals, tags, a) < (int) kval[code[pc + 1]] ? pc + 3 : code[pc + 2];
+                    }
+                    case LOAD_LOAD_LT_JMP_IF_FALSE -> {
+                        int a = fp + code[pc], b = fp + code[pc + 1];
+                        pc = asInt(vals, tags, a) < asInt(vals, tags, b) ? pc + 3 : code[pc + 2];
+                    }
+                    case CALL -> {
+                        if (--budget < 0 && (budget = refuel()) < 0) { pc--; break loop; }
+                        int callee = code[pc], argc = code[pc + 1];
+                        pc += 2;
+                        int nfp = sp - argc;
+                        long[] key = null;
+                        if (memo != null && image.pure[callee]) {
+                            key = new long[argc];
+                            for (int i = 0; i < argc; i++) key[i] = ((long) tags[nfp + i] << 32) | (vals[nfp + i] & 0xFFFFFFFFL);
+                            long hit = memo.get(callee, key);
+                            if (hit != MemoTable.MISS) {
+                                sp = nfp;
+                                vals[sp] = (int) hit; tags[sp] = (byte) (hit >>> 32); sp++;
+                                continue;
+                            }
+                        }
+                        int nbase = nfp + image.nlocals[callee];
+                        if (fsp == frames.length) {
+                            if ((fsp >> 2) >= maxDepth) throw overflow();
+                            int n = (int) Math.min(2L * (fsp >> 2), maxDepth);
+                            frames = Arrays.copyOf(frames, 4 * n);
+                            if (memoKeys != null) memoKeys = Arrays.copyOf(memoKeys, n);
+                        }
+                        if (nbase + image.maxStack[callee] > vals.length) {
+                            int n = slots(vals.length, nbase + image.maxStack[callee]);
+                            vals = Arrays.copyOf(vals, n);
+                            tags = Arrays.copyOf(tags, n);
+                        }
+                        for (int i = sp; i < nbase; i++) { vals[i] = 0; tags[i] = NIL; }
+                        frames[fsp] = pc; frames[fsp + 1] = fp; frames[fsp + 2] = base;
+                        frames[fsp + 3] = key == null ? -1 : callee;
+                        if (key != null) memoKeys[fsp >> 2] = key;
+                        fsp += 4;
+                        fp = nfp; base = nbase; sp = nbase;
+                        pc = image.entry[callee];
+                    }
+                    case TAIL_CALL -> {
+                        // The verifier guarantees only the arguments are on the operand stack:
+                        // move them down to the locals and run the callee in this frame
+                        if (--budget < 0 && (budget = refuel()) < 0) { pc--; break loop; }
+                        int callee = code[pc], argc = code[pc + 1];
+                        int nbase = fp + image.nlocals[callee];
+                        if (nbase + image.maxStack[callee] > vals.length) {
+                            int n = slots(vals.length, nbase + image.maxStack[callee]);
+                            vals = Arrays.copyOf(vals, n);
+                            tags = Arrays.copyOf(tags, n);
+                        }
+                        System.arraycopy(vals, sp - argc, vals, fp, argc);
+                        System.arraycopy(tags, sp - argc, tags, fp, argc);
+                        for (int i = fp + argc; i < nbase; i++) { vals[i] = 0; tags[i] = NIL; }
+                        base = nbase; sp = nbase;
+                        pc = image.entry[callee];
+                    }
+                    case RET -> {
+                        long rv = 0;
+                        byte rt = NIL;
+                        if (sp > base) { sp--; rv = vals[sp]; rt = tags[sp]; }
+                        if (fsp == 0) return Status.DONE;
+                        // The result replaces the callee's frame, i.e. lands where its first argument was
+                        sp = fp;
+                        vals[sp] = rv; tags[sp] = rt; sp++;
+                        fsp -= 4;
+                        pc = frames[fsp]; fp = frames[fsp + 1]; base = frames[fsp + 2];
+                        if (frames[fsp + 3] >= 0) {
+                            // A tail call keeps the frame, so this is still the result for the original key
+                            memo.put(frames[fsp + 3], memoKeys[fsp >> 2], ((long) rt << 32) | (rv & 0xFFFFFFFFL));
+                            memoKeys[fsp >> 2] = null;
+                        }
+                    }
+                    case PRINT -> { sp--; out.println(show(vals[sp], tags[sp])); }
+                    default -> throw new IllegalStateException("Bad opcode " + code[pc - 1] + " at " + (pc - 1));
+                }
+            }
+            // Stopped before the instruction at pc, which runs again on resume()
+            budget = 0;
+            this.vals = vals; this.tags = tags; this.frames = frames; this.memoKeys = memoKeys;
+            this.fsp = fsp; this.fp = fp; this.base = base; this.sp = sp; this.pc = pc;
+            suspended = true;
+            return stop;
+        } finally {
+            fuel -= granted - budget;
+            granted = 0;
+        }
+    }
+
+    // Settles the used-up grant and hands out the next one (minus the unit being charged),
+    // or returns -1 with stop set when the fuel or the time is gone
+    private int refuel() {
+        fuel -= granted;
+        granted = 0;
+        if (fuel == 0) { stop = Status.OUT_OF_FUEL; return -1; }
+        if (timeLimit != 0 && System.nanoTime() - deadline >= 0) { stop = Status.DEADLINE; return -1; }
+        granted = (int) Math.min(fuel, FUEL_GRANT);
+        return granted - 1;
+    }
+
+    private RuntimeException overflow() {
+        return new RuntimeException("Stack overflow (call depth limit " + maxDepth + ")");
+    }
+
+    private int slots(int have, long need) {
+        if (need > MAX_SLOTS) throw overflow();
+        return (int) Math.min(MAX_SLOTS, Math.max(need, 2L * have));
+    }
+
+    private static int asInt(long[] vals, byte[] tags, int i) {
+        if (tags[i] != INT) throw new RuntimeException("Expected int");
+        return (int) vals[i];
+    }
+
+    private static boolean truthy(long[] vals, byte[] tags, int i) {
+        return tags[i] != NIL && vals[i] != 0;
+    }
+
+    private static boolean same(long[] vals, byte[] tags, int a, int b) {
+        return tags[a] == tags[b] && vals[a] == vals[b];
+    }
+
+    static String show(long v, byte tag) {
+        if (tag == INT) return Integer.toString((int) v);
+        if (tag == BOOL) return Boolean.toString(v != 0);
+        return "nil";
+    }
+}
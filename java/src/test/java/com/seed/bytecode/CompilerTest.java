@@ -4,8 +4,18 @@ import com.seed.ast.Stmt;
 import com.seed.lexer.Lexer;
 import com.seed.lexer.Token;
 import com.seed.parser.Parser;
+import com.seed.bytecode.opt.Superinstructions;
+import com.seed.sema.Resolver;
+import com.seed.vm.Image;
+import com.seed.vm.VM;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -13,14 +23,92 @@ import static org.junit.jupiter.api.Assertions.*;
 class CompilerTest {
 
     private Module compile(String src) {
+        return compile(src, new Compiler());
+    }
+
+    private Module compile(String src, Compiler c) {
         Lexer lx = new Lexer(src);
         List<Token> toks = lx.scanTokens();
         Parser p = new Parser(toks);
         List<Stmt> prog = p.parseProgram();
-        Compiler c = new Compiler();
         return c.compile(prog);
     }
 
+    private Module compileTyped(String src, Compiler c) {
+        List<Stmt> prog = new Parser(new Lexer(src).scanTokens()).parseProgram();
+        Resolver r = new Resolver();
+        r.resolve(prog);
+        c.setTypes(r);
+        return c.compile(prog);
+    }
+
+    private static Compiler inlining(int budget) {
+        Compiler c = new Compiler();
+        c.setInlineBudget(budget);
+        return c;
+    }
+
+    private static String run(Module m) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        new VM(Image.decode(m), new PrintStream(baos)).run();
+        return baos.toString();
+    }
+
+    private static final String[] INLINE_PROGRAMS = {
+        "fn add(a, b) { return a + b; } let i = 0; let s = 0; while (i < 10) { let s = add(s, i); let i = i + 1; } print(s);",
+        "fn sq(x) { return x * x; } fn dist(a, b) { return sq(a) + sq(b); } print(dist(3, 4)); print(sq(dist(1, 2)));",
+        "fn max(a, b) { if (a > b) { return a; } return b; } print(max(3, 9)); print(max(max(1, 7), 2));",
+        "fn sum(n) { let t; let i = 0; while (i < n) { if (i > 2) { let t = i; } let i = i + 1; } return t; } print(sum(5)); print(sum(2)); print(sum(6));",
+        "fn neg(x) { return -x; } fn f(x) { return neg(x + 1); } print(f(4)); print(f(f(1)));",
+        "fn id(x) { return x; } fn noop() { } print(id(true)); print(noop()); print(id(id(7)) + 1);",
+        "fn fact(n) { if (n < 2) { return 1; } return n * fact(n - 1); } print(fact(10));",
+        "fn shout(x) { print(x); return x; } print(shout(1) + shout(2));",
+    };
+
+    @Test
+    void inlining_keepsOutput() {
+        for (String src : INLINE_PROGRAMS) {
+            Module m = compile(src, inlining(40));
+            assertTrue(new Verifier().verify(m).isEmpty(), src + "\n" + new Verifier().verify(m));
+            assertEquals(run(compile(src)), run(m), src);
+        }
+    }
+
+    @Test
+    void inlining_reportsSitesAndRemovesCalls() {
+        Compiler c = inlining(40);
+        Module m = compile(INLINE_PROGRAMS[1], c);
+        // sq into dist first, then the call-free dist and sq into main
+        assertEquals(List.of("dist:2 sq", "dist:4 sq", "main:3 dist", "main:7 dist", "main:8 sq"), c.inlined());
+        List<Instr> main = m.funcs.get(0).code;
+        assertTrue(main.stream().noneMatch(i -> i.op == Opcode.CALL || i.op == Opcode.TAIL_CALL), main.toString());
+        assertEquals(2, m.funcs.get(0).nlocals); // dist's a and b; sq's x reuses a slot once read
+    }
+
+    @Test
+    void inlining_skipsRecursionEffectsAndBigCallees() {
+        Compiler c = inlining(40);
+        compile(INLINE_PROGRAMS[6] + INLINE_PROGRAMS[7], c);
+        assertTrue(c.inlined().isEmpty(), c.inlined().toString());
+        // add is LOAD LOAD ADD RET plus the implicit return nil
+        c = inlining(4);
+        compile(INLINE_PROGRAMS[0], c);
+        assertTrue(c.inlined().isEmpty(), c.inlined().toString());
+        c = inlining(5);
+        compile(INLINE_PROGRAMS[0], c);
+        assertEquals(List.of("main:11 add"), c.inlined());
+    }
+
+    @Test
+    void inlining_resetsLocalsReadBeforeWritten() {
+        Module m = compile(INLINE_PROGRAMS[3], inlining(40));
+        assertEquals("4\nnil\n5\n", run(m));
+        List<Instr> main = m.funcs.get(0).code;
+        // t is reset to nil at every site; the parameter and i are stored before any read
+        long resets = main.stream().filter(i -> i.op == Opcode.CONST && m.constant(i.a) == null).count();
+        assertEquals(3, resets, main.toString());
+    }
+
     @Test
     void helloCompiles_andVerifies() {
         String src = ""
@@ -50,4 +138,200 @@ class CompilerTest {
         assertEquals(2, f.arity);
         assertTrue(f.nlocals >= 2);
     }
+
+    @Test
+    void constantPool_isInterned() {
+        Module m = compile("fn f(a) { if (a) { return; } return -a + -1 + 1; } print(f(1)); print(f(true)); print(true);");
+        // 1, 0 (unary minus), nil (bare return), true
+        assertEquals(4, m.constCount());
+        assertEquals(m.addConst(1), m.addConst(1));
+        assertNotEquals(m.addConst(1), m.addConst(true));
+        assertNotEquals(m.addConst(0), m.addConst(false));
+        assertNotEquals(m.addConst(0), m.addConst(null));
+        assertEquals(5, m.constCount()); // + false
+        int k = m.addConst(-7);
+        assertEquals(Module.INT, m.constTag(k));
+        assertEquals(-7L, m.constValue(k));
+        assertEquals(-7, m.constant(k));
+        assertEquals(Boolean.TRUE, m.constant(m.addConst(true)));
+        assertNull(m.constant(m.addConst(null)));
+        String text = TextWriter.write(m);
+        assertTrue(text.contains(".consts 6\n"), text);
+        assertTrue(text.contains(": true\n") && text.contains(": false\n") && text.contains(": nil\n") && text.contains(": -7\n"), text);
+    }
+
+    @Test
+    void returnOfCall_isTailCall() {
+        String src = "fn count(n, acc) { if (n == 0) { return acc; } return (count(n - 1, acc + 1)); }\n"
+                + "fn twice(n) { return count(n, 0) * 2; }";
+        Module m = compile(src);
+        assertTrue(new Verifier().verify(m).isEmpty());
+        List<Instr> count = m.funcs.get(m.findFunctionByName("count")).code;
+        assertTrue(count.stream().anyMatch(i -> i.op == Opcode.TAIL_CALL), count.toString());
+        List<Instr> twice = m.funcs.get(m.findFunctionByName("twice")).code;
+        assertTrue(twice.stream().noneMatch(i -> i.op == Opcode.TAIL_CALL), twice.toString());
+    }
+
+    @Test
+    void tailCallWithExtraOperands_isRejected() {
+        Module m = new Module();
+        Function f = new Function("main", 0, 0);
+        f.code.add(new Instr(Opcode.CONST, m.addConst(1)));
+        f.code.add(new Instr(Opcode.CONST, m.addConst(2)));
+        f.code.add(new Instr(Opcode.TAIL_CALL, 0, 0));
+        m.addFunction(f);
+        var probs = new Verifier().verify(m);
+        assertEquals(1, probs.size(), probs.toString());
+        assertTrue(probs.get(0).msg.startsWith("TAIL_CALL"), probs.toString());
+    }
+
+    @Test
+    void logicalOperators_shortCircuitLikeTheInterpreter() {
+        String[] programs = {
+            "fn f(x) { print(x); return x; } print(f(false) && f(1)); print(f(2) || f(3)); print(f(true) && f(0) || f(4));",
+            "fn f(x) { print(x); return x; } if (f(1) && !f(false)) { print(5); } if (!(f(0) || f(false))) { print(6); } else { print(7); }",
+            "fn count(i) { if (i < 10 && !(i == 4 || i == 7)) { print(i); return count(i + 1); } return i; } print(count(0)); print(count(5));",
+        };
+        for (String src : programs) {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            new com.seed.interp.Interpreter(new PrintStream(baos)).interpret(new Parser(new Lexer(src).scanTokens()).parseProgram());
+            Module m = compile(src);
+            assertTrue(new Verifier().verify(m).isEmpty(), src);
+            assertEquals(baos.toString(), run(m), src);
+        }
+    }
+
+    @Test
+    void logicalConditions_jumpWithoutComputingABool() {
+        Module m = compile("fn f(a, b, c) { if (a < b && (b < c || !c)) { return 1; } return 0; }");
+        List<Instr> code = m.funcs.get(m.findFunctionByName("f")).code;
+        // Each operand is tested by its own JMP_IF_FALSE (after a NOT where true jumps); no
+        // true/false constant is materialised
+        assertEquals(3, code.stream().filter(i -> i.op == Opcode.JMP_IF_FALSE).count(), code.toString());
+        assertTrue(code.stream().noneMatch(i -> i.op == Opcode.CONST && m.constant(i.a) instanceof Boolean), code.toString());
+    }
+
+    @Test
+    void sequentialBlocks_shareSlots() {
+        String src = "fn f(n) { if (n > 0) { let a = n * 2; let b = a + 1; print(b); } "
+                + "if (n > 1) { let c = n * 3; let d = c + 1; print(d); } "
+                + "if (n > 2) { let e = n * 4; let g = e + 1; print(g); } return n; } "
+                + "print(f(3)); print(f(1));";
+        Module m = compile(src);
+        assertTrue(new Verifier().verify(m).isEmpty());
+        // n stays in slot 0; each block's two lets are never live together
+        assertEquals(2, m.funcs.get(m.findFunctionByName("f")).nlocals);
+        assertEquals("7\n10\n13\n3\n3\n1\n", run(m));
+    }
+
+    @Test
+    void localsReadBeforeWritten_stillReadNil() {
+        // t's only let never runs, so t is live (as nil) from the entry and must not share a
+        // slot with x, which is dead by the time t is read
+        String src = "fn f(k) { let x = k + 1; print(x); let i = 0; while (i < 2) { if (i > 5) { let t = 9; } print(t); let i = i + 1; } return 0; } f(5);";
+        Module m = compile(src);
+        assertEquals("6\nnil\nnil\n", run(m));
+        assertEquals(2, m.funcs.get(m.findFunctionByName("f")).nlocals); // k, x and i in turn in slot 0, t in slot 1
+
+        for (String p : INLINE_PROGRAMS) assertEquals(run(compile(p, inlining(40))), run(compile(p)), p);
+    }
+
+    private static final String[] TYPED_PROGRAMS = {
+        "fn fib(n) { if (n < 2) { return n; } return fib(n - 1) + fib(n - 2); } print(fib(15));",
+        "fn f(a, b) { return !(a < b) || -a == b; } print(f(1, 2)); print(f(2, -2)); print(!f(3, 3)); print(!(1 > 2));",
+        "fn g(x) { return x; } let k = 3; { let k = true; } print(g(1) + 1); print(k);",
+        "fn count(i, n) { if (i >= n) { return i; } return count(i + 1, n); } print(count(0, 100) / 7);",
+    };
+
+    @Test
+    void typedCompile_keepsOutput() {
+        String[][] sets = { INLINE_PROGRAMS, TYPED_PROGRAMS };
+        for (String[] set : sets) {
+            for (String src : set) {
+                String expected = run(compile(src));
+                for (Compiler c : new Compiler[] { new Compiler(), inlining(40) }) {
+                    Module m = compileTyped(src, c);
+                    assertTrue(new Verifier().verify(m).isEmpty(), src + "\n" + new Verifier().verify(m));
+                    assertEquals(expected, run(m), src);
+                }
+            }
+        }
+    }
+
+    @Test
+    void typedCompile_usesTypedOpcodesOnlyWhereProven() {
+        Module m = compileTyped(TYPED_PROGRAMS[0], new Compiler());
+        List<Opcode> fib = m.funcs.get(1).code.stream().map(i -> i.op).toList();
+        assertTrue(fib.containsAll(List.of(Opcode.ILT, Opcode.ISUB)), fib.toString());
+        // fib's result is not known to be an int
+        assertTrue(fib.contains(Opcode.ADD) && !fib.contains(Opcode.IADD), fib.toString());
+        m = compileTyped(TYPED_PROGRAMS[1], new Compiler());
+        List<Opcode> f = m.funcs.get(1).code.stream().map(i -> i.op).toList();
+        assertTrue(f.containsAll(List.of(Opcode.ILT, Opcode.ISUB, Opcode.IEQ)), f.toString());
+        assertTrue(m.funcs.get(0).code.stream().anyMatch(i -> i.op == Opcode.BNOT));
+        // g's x gets 1 from its only call, but k is let twice
+        m = compileTyped(TYPED_PROGRAMS[2], new Compiler());
+        assertTrue(m.funcs.get(0).code.stream().noneMatch(i -> i.op.isTyped()), m.funcs.get(0).code.toString());
+    }
+
+    @Test
+    void verifier_rejectsTypedOpcodesOnUnprovenOperands() {
+        Module m = new Module();
+        Function main = new Function("main", 0, 1);
+        Function inc = new Function("inc", 1, 1);
+        m.addFunction(main);
+        m.addFunction(inc);
+        inc.code.addAll(List.of(new Instr(Opcode.LOAD, 0), new Instr(Opcode.CONST, m.addConst(1)), new Instr(Opcode.IADD), new Instr(Opcode.RET)));
+        main.code.addAll(List.of(new Instr(Opcode.CONST, m.addConst(2)), new Instr(Opcode.CALL, 1, 1), new Instr(Opcode.POP), new Instr(Opcode.RET)));
+        assertTrue(new Verifier().verify(m).isEmpty(), new Verifier().verify(m).toString());
+        // Another call passes a bool, and a local that was never stored is nil
+        main.code.addAll(0, List.of(new Instr(Opcode.CONST, m.addConst(true)), new Instr(Opcode.CALL, 1, 1), new Instr(Opcode.POP),
+                new Instr(Opcode.LOAD, 0), new Instr(Opcode.BNOT), new Instr(Opcode.POP)));
+        assertEquals("[main:4: BNOT needs a bool operand, inc:2: IADD needs int operands]", new Verifier().verify(m).toString());
+    }
+
+    @Test
+    void binaryFormat_roundTripsEveryModule() {
+        String[][] sets = { INLINE_PROGRAMS, TYPED_PROGRAMS,
+                { "let big = 2000000000; let i = -5; while (i < 3) { let i = i + 1; print(big + i); } print(nil); print(false);" } };
+        for (String[] set : sets) {
+            for (String src : set) {
+                Module typed = compileTyped(src, inlining(40));
+                Module fused = compile(src);
+                new Superinstructions().optimize(fused);
+                for (Module m : new Module[] { compile(src), typed, fused }) {
+                    Module back = BinaryReader.read(BinaryWriter.write(m));
+                    assertEquals(TextWriter.write(m), TextWriter.write(back), src);
+                    assertEquals(run(m), run(back), src);
+                }
+            }
+        }
+    }
+
+    @Test
+    void binaryFormat_rejectsDamagedFiles() {
+        byte[] good = BinaryWriter.write(compile(TYPED_PROGRAMS[0]));
+        byte[] magic = good.clone();
+        magic[0] = 'X';
+        byte[] flipped = good.clone();
+        flipped[good.length - 3] ^= 0x10;
+        byte[] version = good.clone();
+        version[4] = 9;
+        for (byte[] bad : new byte[][] { magic, flipped, version, Arrays.copyOf(good, good.length - 1), Arrays.copyOf(good, 10), "fn main".getBytes() }) {
+            IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> BinaryReader.read(bad));
+            assertTrue(e.getMessage().startsWith("Bad binary .sbc: "), e.getMessage());
+        }
+        assertTrue(assertThrows(IllegalArgumentException.class, () -> BinaryReader.read(flipped)).getMessage().contains("checksum"));
+    }
+
+    @Test
+    void binaryFormat_readsMappedFile(@TempDir Path dir) throws Exception {
+        Module m = compile(INLINE_PROGRAMS[0]);
+        Path bin = dir.resolve("m.sbc"), text = dir.resolve("t.sbc");
+        Files.write(bin, BinaryWriter.write(m));
+        Files.writeString(text, TextWriter.write(m));
+        assertTrue(BinaryReader.isBinary(bin));
+        assertFalse(BinaryReader.isBinary(text));
+        assertEquals("45\n", run(BinaryReader.read(bin)));
+    }
 }
@@ -0,0 +1,95 @@
+package com.seed.bytecode.opt;
+
+import com.seed.bytecode.Compiler;
+import com.seed.bytecode.Function;
+import com.seed.bytecode.Instr;
+import com.seed.bytecode.Module;
+import com.seed.bytecode.Opcode;
+import com.seed.bytecode.Verifier;
+import com.seed.lexer.Lexer;
+import com.seed.parser.Parser;
+import com.seed.vm.Image;
+import com.seed.vm.VM;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PeepholeTest {
+
+    private static Module compile(String src) {
+        return new Compiler().compile(new Parser(new Lexer(src).scanTokens()).parseProgram());
+    }
+
+    private static String run(Module m) {
+        assertTrue(new Verifier().verify(m).isEmpty(), () -> new Verifier().verify(m).toString());
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        new VM(Image.decode(m), new PrintStream(baos)).run();
+        return baos.toString();
+    }
+
+    private static List<Opcode> ops(Module m, String fn) {
+        return m.funcs.get(m.findFunctionByName(fn)).code.stream().map(in -> in.op).toList();
+    }
+
+    @Test
+    void optimizedCode_behavesTheSame() {
+        String[] programs = {
+                "fn fib(n) { if (n < 2) { return n; } return fib(n - 1) + fib(n - 2); } print(fib(15));",
+                "fn sum(n) { let i = 0; let s = 0; while (i < n) { let s = s + i; let i = i + 1; } return s; } print(sum(100));",
+                "print(-(4 - 9)); print(2 * 3 + 1 == 7); print(!(1 < 2)); print(7 / 2); print(true == 1); let x; print(x == x);",
+                "fn f(a) { if (a) { return; } return -a + -1 + 1; } print(f(5)); print(f(0)); if (false) { print(1); } else { print(2); }",
+                "fn g(n) { if (n > 0) { if (n > 1) { print(n); } } else { print(0); } } g(2); g(1); g(0);",
+        };
+        for (String src : programs) {
+            Module m = compile(src);
+            String expected = run(m);
+            Module opt = compile(src);
+            Peephole.Stats stats = new Peephole().optimize(opt);
+            assertTrue(stats.after < stats.before, stats.toString());
+            assertEquals(expected, run(opt), src);
+        }
+    }
+
+    @Test
+    void foldsConstantsAndDropsDeadBranches() {
+        Module m = compile("if (1 + 2 * 3 > 6) { print(-5); } else { print(0); } print(7 / 0);");
+        new Peephole().optimize(m);
+        assertEquals(List.of(Opcode.CONST, Opcode.PRINT, Opcode.CONST, Opcode.CONST, Opcode.DIV, Opcode.PRINT, Opcode.RET),
+                ops(m, "main"));
+        assertEquals(-5, m.constant(m.funcs.get(0).code.get(0).a));
+    }
+
+    @Test
+    void threadsJumpsAndEliminatesStoreLoad() {
+        Module m = new Module();
+        Function f = new Function("main", 0, 1);
+        m.addFunction(f);
+        f.code.add(new Instr(Opcode.JMP, 1));             // 0 -> 2
+        f.code.add(new Instr(Opcode.RET));                // 1 unreachable
+        f.code.add(new Instr(Opcode.JMP, 0));             // 2 -> 3
+        f.code.add(new Instr(Opcode.CONST, m.addConst(4)));
+        f.code.add(new Instr(Opcode.STORE, 0));
+        f.code.add(new Instr(Opcode.LOAD, 0));
+        f.code.add(new Instr(Opcode.PRINT));
+        f.code.add(new Instr(Opcode.LOAD, 0));
+        f.code.add(new Instr(Opcode.STORE, 0));
+        f.code.add(new Instr(Opcode.JMP, 0));             // -> RET
+        f.code.add(new Instr(Opcode.RET));
+        new Peephole().optimize(m);
+        assertEquals(List.of(Opcode.CONST, Opcode.DUP, Opcode.STORE, Opcode.PRINT, Opcode.RET), ops(m, "main"));
+        assertEquals("4\n", run(m));
+    }
+
+    @Test
+    void loops_keepTheirBackEdge() {
+        Module m = compile("fn spin() { while (true) { } } fn count(n) { let i = 0; while (i < n) { let i = i + 1; } return i; } print(count(3));");
+        new Peephole().optimize(m);
+        assertEquals(List.of(Opcode.JMP), ops(m, "spin"));
+        assertEquals(-1, m.funcs.get(m.findFunctionByName("spin")).code.get(0).a);
+        assertEquals("3\n", run(m));
+    }
+}
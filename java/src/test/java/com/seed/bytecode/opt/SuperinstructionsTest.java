@@ -0,0 +1,118 @@
+package com.seed.bytecode.opt;
+
+import com.seed.bytecode.Compiler;
+import com.seed.bytecode.Function;
+import com.seed.bytecode.Instr;
+import com.seed.bytecode.Module;
+import com.seed.bytecode.Opcode;
+import com.seed.bytecode.TextWriter;
+import com.seed.bytecode.Verifier;
+import com.seed.jvm.JvmBackend;
+import com.seed.lexer.Lexer;
+import com.seed.parser.Parser;
+import com.seed.vm.Image;
+import com.seed.vm.VM;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SuperinstructionsTest {
+
+    private static final String LOOPS =
+            "fn sum(n) { let i = 0; let s = 0; while (i < n) { let s = s + i; let i = i + 1; } return s; }"
+            + " fn count() { let j = 0; while (j < 10) { let j = j + 1; } return j; }"
+            + " print(sum(100)); print(count());";
+
+    private static Module compile(String src) {
+        return new Compiler().compile(new Parser(new Lexer(src).scanTokens()).parseProgram());
+    }
+
+    private static String vm(Module m) {
+        assertTrue(new Verifier().verify(m).isEmpty(), () -> new Verifier().verify(m).toString());
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        new VM(Image.decode(m), new PrintStream(baos)).run();
+        return baos.toString();
+    }
+
+    private static String jvm(Module m) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        new JvmBackend().compile(m).run(new PrintStream(baos));
+        return baos.toString();
+    }
+
+    private static List<Opcode> ops(Module m, String fn) {
+        return m.funcs.get(m.findFunctionByName(fn)).code.stream().map(in -> in.op).toList();
+    }
+
+    @Test
+    void fusedCode_behavesTheSame() {
+        String[] programs = {
+                LOOPS,
+                "fn fib(n) { if (n < 2) { return n; } return fib(n - 1) + fib(n - 2); } print(fib(15));",
+                "fn f(a, b) { let c = a + b; if (c < 10) { return c + 1; } return a + a; } print(f(2, 3)); print(f(8, 9));",
+                "fn g(x) { let y = x + 1; return y < 1; } print(g(0)); print(g(-5));",
+        };
+        for (String src : programs) {
+            String expected = vm(compile(src));
+            for (boolean peephole : new boolean[] { false, true }) {
+                Module m = compile(src);
+                if (peephole) new Peephole().optimize(m);
+                Superinstructions.Stats stats = new Superinstructions().optimize(m);
+                assertTrue(stats.after < stats.before, stats.toString());
+                assertEquals(expected, vm(m), src);
+                assertEquals(expected, jvm(m), src);
+            }
+        }
+    }
+
+    @Test
+    void selectsTheLoopSequences() {
+        Module m = compile(LOOPS);
+        new Peephole().optimize(m);
+        new Superinstructions().optimize(m);
+        assertEquals(List.of(Opcode.CONST, Opcode.STORE, Opcode.CONST, Opcode.STORE, Opcode.LOAD_LOAD_LT_JMP_IF_FALSE,
+                Opcode.LOAD_LOAD_ADD, Opcode.STORE, Opcode.LOAD_CONST_ADD_STORE, Opcode.JMP, Opcode.LOAD, Opcode.RET),
+                ops(m, "sum"));
+        assertEquals(List.of(Opcode.CONST, Opcode.STORE, Opcode.LOAD_CONST_LT_JMP_IF_FALSE, Opcode.LOAD_CONST_ADD_STORE,
+                Opcode.JMP, Opcode.LOAD, Opcode.RET), ops(m, "count"));
+        String text = TextWriter.write(m);
+        assertTrue(text.contains("LOAD_CONST_LT_JMP_IF_FALSE 0 " + m.addConst(10) + " 2\n"), text);
+        assertTrue(text.contains("LOAD_CONST_ADD_STORE 0 " + m.addConst(1) + " 0\n"), text);
+    }
+
+    @Test
+    void leavesSequencesThatAJumpLandsIn() {
+        Module m = new Module();
+        Function f = new Function("main", 0, 1);
+        m.addFunction(f);
+        f.code.add(new Instr(Opcode.CONST, m.addConst(3)));
+        f.code.add(new Instr(Opcode.STORE, 0));
+        f.code.add(new Instr(Opcode.CONST, m.addConst(4)));
+        f.code.add(new Instr(Opcode.JMP, 1));            // -> 5
+        f.code.add(new Instr(Opcode.LOAD, 0));           // unreachable
+        f.code.add(new Instr(Opcode.LOAD, 0));
+        f.code.add(new Instr(Opcode.ADD));
+        f.code.add(new Instr(Opcode.PRINT));
+        f.code.add(new Instr(Opcode.RET));
+        new Superinstructions().optimize(m);
+        assertEquals(List.of(Opcode.CONST, Opcode.STORE, Opcode.CONST, Opcode.JMP, Opcode.LOAD, Opcode.LOAD, Opcode.ADD,
+                Opcode.PRINT, Opcode.RET), ops(m, "main"));
+        assertEquals("7\n", vm(m));
+    }
+
+    @Test
+    void verifier_wantsAnIntConstant() {
+        Module m = new Module();
+        Function f = new Function("main", 0, 1);
+        m.addFunction(f);
+        f.code.add(new Instr(Opcode.LOAD_CONST_LT_JMP_IF_FALSE, 0, m.addConst(true), 0));
+        f.code.add(new Instr(Opcode.RET));
+        List<Verifier.Problem> probs = new Verifier().verify(m);
+        assertEquals(1, probs.size());
+        assertEquals("main:0: LOAD_CONST_LT_JMP_IF_FALSE needs an int constant", probs.get(0).toString());
+    }
+}
@@ -0,0 +1,114 @@
+package com.seed.bytecode.reg;
+
+import com.seed.bytecode.Compiler;
+import com.seed.bytecode.Verifier;
+import com.seed.lexer.Lexer;
+import com.seed.parser.Parser;
+import com.seed.vm.Image;
+import com.seed.vm.RegVM;
+import com.seed.vm.VM;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RegCompilerTest {
+
+    private static RegModule compile(String src) {
+        return new RegCompiler().compile(new Parser(new Lexer(src).scanTokens()).parseProgram());
+    }
+
+    private static String regVm(String src) {
+        RegModule m = compile(src);
+        assertTrue(new RegVerifier().verify(m).isEmpty(), () -> new RegVerifier().verify(m).toString());
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try {
+            new RegVM(m, new PrintStream(baos)).run();
+        } catch (RuntimeException e) {
+            return baos + "error: " + e.getMessage();
+        }
+        return baos.toString();
+    }
+
+    private static String vm(String src) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try {
+            new VM(Image.decode(new Compiler().compile(new Parser(new Lexer(src).scanTokens()).parseProgram())),
+                    new PrintStream(baos)).run();
+        } catch (RuntimeException e) {
+            return baos + "error: " + e.getMessage();
+        }
+        return baos.toString();
+    }
+
+    @Test
+    void registerCode_behavesLikeStackCode() {
+        String[] programs = {
+                "fn fib(n) { if (n < 2) { return n; } return fib(n - 1) + fib(n - 2); } print(fib(15));",
+                "fn sum(n) { let i = 0; let s = 0; while (i < n) { let s = s + i; let i = i + 1; } return s; } print(sum(100));",
+                "fn f(a, b) { let c = a * b - (a + b); return c / 2; } print(f(f(3, 4), f(5, 6)));",
+                "fn z() { return 4; } fn w(x) { print(x); } print(z() + z()); w(z()); print(w(1));",
+                "print(-(4 - 9)); print(!5); print(!nil); print(1 == 1); print(2 != 2); print(3 >= 4); print(3 <= 4);",
+                "fn down(n) { if (n == 0) { return 0; } return down(n - 1); } print(down(100000));",
+                "print(2147483647 + 1);",
+                "print(1); print(true + 1);",
+                "print(1); print(7 / 0);",
+                "fn g(x) { return x + y; } print(g(1));",
+        };
+        for (String src : programs) assertEquals(vm(src), regVm(src), src);
+    }
+
+    @Test
+    void variablesAreReadInPlace() {
+        RegModule m = compile("fn f(a, b) { return a + b; }");
+        RegFunction f = m.funcs.get(m.findFunctionByName("f"));
+        assertEquals("[ADD 2 0 1, RET 2]", f.code.subList(0, 2).toString());
+        assertEquals(3, f.nregs);
+    }
+
+    @Test
+    void logicalOperators_shortCircuit() {
+        // As in the Interpreter: the right side only runs when the left does not decide, and
+        // the result is a bool
+        assertEquals("1\nfalse\nfalse\n2\ntrue\n",
+                regVm("fn f(x) { print(x); return x; } print(f(1) && false); print(false && f(2)); print(f(2) || nil);"));
+    }
+
+    @Test
+    void maxDepth_belowTheInitialFrameStack() {
+        String src = "fn down(n) { if (n == 0) { return 0; } return down(n - 1) + 1; } print(down(100));";
+        RegVM vm = new RegVM(compile(src), new PrintStream(new ByteArrayOutputStream()));
+        vm.setMaxDepth(10);
+        RuntimeException ex = assertThrows(RuntimeException.class, vm::run);
+        assertEquals("Stack overflow (call depth limit 10)", ex.getMessage());
+        vm.setMaxDepth(101);
+        vm.run();
+    }
+
+    @Test
+    void textFormat() {
+        String text = RegTextWriter.write(compile("fn f(a, b) { return a + b; } print(f(1, 2));"));
+        assertTrue(text.startsWith("; Seed Register Bytecode (textual)\n.format registers\n"), text);
+        assertTrue(text.contains(".func 1 f arity=2 regs=3\n   0  ADD 2 0 1\n   1  RET 2\n"), text);
+        assertTrue(text.contains("CALL 0 1 2\n"), text);
+    }
+
+    @Test
+    void verifier_reportsBadOperands() {
+        RegModule m = new RegModule();
+        RegFunction f = new RegFunction("main", 0, 2);
+        m.addFunction(f);
+        f.code.add(new RegInstr(RegOpcode.ADD, 0, 1, 2));
+        f.code.add(new RegInstr(RegOpcode.LOADK, 0, 5));
+        f.code.add(new RegInstr(RegOpcode.JMPF, 0, 9));
+        f.code.add(new RegInstr(RegOpcode.CALL, 0, 0, 1));
+        f.code.add(new RegInstr(RegOpcode.PRINT, 0));
+        List<String> probs = new RegVerifier().verify(m).stream().map(Verifier.Problem::toString).toList();
+        assertEquals(List.of("main: code can run off the end", "main:0: register 2 out of range",
+                "main:1: LOADK constant out of range", "main:2: Jump target out of range",
+                "main:3: CALL arity mismatch"), probs);
+    }
+}
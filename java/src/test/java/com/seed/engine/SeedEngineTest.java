@@ -0,0 +1,95 @@
+package com.seed.engine;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SeedEngineTest {
+
+    @Test
+    void concurrentRuns_haveIsolatedGlobalsAndOutput() {
+        try (SeedEngine engine = new SeedEngine()) {
+            List<SeedEngine.Script> scripts = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                String src = "let x = " + i + "; fn f(n) { if (n < 2) { return n; } return f(n - 1) + f(n - 2); } print(x); print(f(15) + x);";
+                scripts.add(engine.compile("s" + i, src, i % 2 == 0 ? SeedEngine.Mode.AST : SeedEngine.Mode.VM));
+            }
+            List<CompletableFuture<SeedEngine.Result>> runs = new ArrayList<>();
+            for (int i = 0; i < 200; i++) runs.add(engine.submit(scripts.get(i % 4)));
+            for (var run : runs) {
+                SeedEngine.Result r = run.join();
+                int x = Integer.parseInt(r.script.name.substring(1));
+                assertTrue(r.ok(), r.error);
+                assertEquals(x + "\n" + (610 + x) + "\n", r.output);
+            }
+            SeedEngine.Stats stats = engine.stats();
+            assertEquals(200, stats.runs);
+            assertEquals(0, stats.failures);
+            assertTrue(stats.p50Nanos <= stats.p99Nanos && stats.p99Nanos <= stats.maxNanos, stats.toString());
+        }
+    }
+
+    @Test
+    void sharedAstScript_runsConcurrently() {
+        // Cached global call sites (fib, adder, apply) and a closure over each run's own globals
+        String src = "let base = 100;\n"
+                + "fn fib(n) { if (n < 2) { return n; } return fib(n - 1) + fib(n - 2); }\n"
+                + "fn adder(k) { fn add(n) { return n + k + base; } return add; }\n"
+                + "fn apply(f, n) { return f(n); }\n"
+                + "print(apply(adder(fib(15)), 1)); print(fib(18));";
+        try (SeedEngine engine = new SeedEngine()) {
+            SeedEngine.Script script = engine.compile("shared", src, SeedEngine.Mode.AST);
+            List<CompletableFuture<SeedEngine.Result>> runs = new ArrayList<>();
+            for (int i = 0; i < 400; i++) runs.add(engine.submit(script));
+            for (var run : runs) {
+                SeedEngine.Result r = run.join();
+                assertTrue(r.ok(), r.error);
+                assertEquals("711\n2584\n", r.output);
+            }
+        }
+    }
+
+    @Test
+    void latencyBuckets_coverEveryValueWithinAnEighth() {
+        for (long v : new long[] { 0, 1, 7, 8, 15, 16, 17, 1000, 123_456_789, Long.MAX_VALUE }) {
+            int b = SeedEngine.bucket(v);
+            assertTrue(SeedEngine.upper(b) >= v && (b == 0 || SeedEngine.upper(b - 1) < v), "v=" + v);
+            assertTrue(SeedEngine.upper(b) - v <= v / 8, "v=" + v);
+        }
+    }
+
+    @Test
+    void errorsAreCapturedPerRun() {
+        try (SeedEngine engine = new SeedEngine()) {
+            SeedEngine.Script bad = engine.compile("bad", "print(1); print(true + 1);", SeedEngine.Mode.AST);
+            SeedEngine.Result r = engine.submit(bad).join();
+            assertFalse(r.ok());
+            assertEquals("1\n", r.output);
+            assertTrue(r.error.startsWith("Expected int"), r.error);
+            assertEquals(1, engine.stats().failures);
+        }
+    }
+
+    @Test
+    void limits_stopRunawayRunsWithoutStallingOthers() {
+        try (SeedEngine engine = new SeedEngine()) {
+            engine.setLimits(1_000_000, 0);
+            SeedEngine.Script spin = engine.compile("spin", "while (true) { }", SeedEngine.Mode.VM);
+            SeedEngine.Script quick = engine.compile("quick", "print(1);", SeedEngine.Mode.VM);
+            CompletableFuture<SeedEngine.Result> runaway = engine.submit(spin);
+            SeedEngine.Result r = engine.submit(quick).join();
+            assertTrue(r.ok(), r.error);
+            assertEquals("1\n", r.output);
+            assertEquals("Out of fuel (limit 1000000)", runaway.join().error);
+
+            engine.setLimits(Long.MAX_VALUE, 20_000_000);
+            SeedEngine.Script spinAst = engine.compile("spin", "while (true) { }", SeedEngine.Mode.AST);
+            assertEquals("Time limit exceeded (20 ms)", engine.submit(spinAst).join().error);
+            assertEquals("Time limit exceeded (20 ms)", engine.submit(spin).join().error);
+        }
+    }
+}
@@ -4,13 +4,21 @@ import com.seed.ast.Stmt;
 import com.seed.lexer.Lexer;
 import com.seed.lexer.Token;
 import com.seed.parser.Parser;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 import org.junit.jupiter.api.Test;
 
 import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class InterpreterTest {
 
@@ -50,4 +58,222 @@ class InterpreterTest {
         String out = run(src).replace("\r\n", "\n");
         assertEquals("true\ntrue\n", out);
     }
+
+    @Test
+    void logicalAndOr_skipTheRightSideWhenTheLeftDecides() {
+        String src = "fn f(x) { print(x); return x; } print(f(false) && f(1)); print(f(2) || f(3)); print(f(true) && f(0) || f(4));";
+        assertEquals("false\nfalse\n2\ntrue\ntrue\n0\n4\ntrue\n", run(src));
+    }
+
+    @Test
+    void blockShadowing_restoresOuterBinding() {
+        String src = "let x = 1; { let x = 2; print(x); } print(x);";
+        assertEquals("2\n1\n", run(src));
+    }
+
+    @Test
+    void nestedFunction_capturesEnclosingFrame() {
+        String src = ""
+                + "fn outer(a) { let b = a * 2; fn inner(c) { return a + b + c; } return inner(1); }\n"
+                + "fn fact(n) { if (n <= 1) { return 1; } return n * fact(n - 1); }\n"
+                + "print(outer(5)); print(fact(10));\n";
+        assertEquals("16\n3628800\n", run(src));
+    }
+
+    @Test
+    void return_leavesNestedStatementsAndLoops() {
+        String src = ""
+                + "fn f(n) { while (true) { { if (n > 0) { return n; } } return 0 - 1; } print(99); }\n"
+                + "fn g() { print(1); return; print(2); }\n"
+                + "print(f(3)); print(f(0)); print(g());";
+        assertEquals("3\n-1\n1\nnil\n", run(src));
+    }
+
+    @Test
+    void tailCalls_runInConstantStack() {
+        String src = ""
+                + "fn count(n, acc) { if (n == 0) { return acc; } return count(n - 1, acc + 1); } print(count(1000000, 0));\n"
+                + "fn even(n) { if (n == 0) { return true; } return odd(n - 1); }\n"
+                + "fn odd(n) { if (n == 0) { return false; } return even(n - 1); }\n"
+                + "print(even(100001));";
+        assertEquals("1000000\nfalse\n", run(src));
+    }
+
+    @Test
+    void callSiteCache_followsRebinding() {
+        String src = ""
+                + "fn a() { return 1; } fn b() { return 2; }\n"
+                + "let g = a; fn h() { return g() + 10; }\n"
+                + "print(h()); print(h());\n"
+                + "let g = b; print(h());";
+        assertEquals("11\n11\n12\n", run(src));
+        // The caches belong to the Interpreter: runs of one parsed program do not see each other's
+        List<Stmt> prog = new Parser(new Lexer(src).scanTokens()).parseProgram();
+        for (int i = 0; i < 2; i++) {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            new Interpreter(new PrintStream(baos)).interpret(prog);
+            assertEquals("11\n11\n12\n", baos.toString());
+        }
+        String closures = "fn mk(n) { fn k() { return n; } return k; } fn call(f) { return f(); } print(call(mk(1))); print(call(mk(2)));";
+        assertEquals("1\n2\n", run(closures));
+    }
+
+    @Test
+    void memo_cachesPureFunctionsOnly() {
+        String src = ""
+                + "fn fib(n) { if (n < 2) { return n; } return fib(n - 1) + fib(n - 2); }\n"
+                + "fn show(n) { print(n); return n; }\n"
+                + "print(fib(40)); show(1); show(1);";
+        List<Stmt> prog = new Parser(new Lexer(src).scanTokens()).parseProgram();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        Interpreter itp = new Interpreter(new PrintStream(baos));
+        itp.enableMemo(8);
+        itp.interpret(prog);
+        assertEquals("102334155\n1\n1\n", baos.toString());
+        MemoTable memo = itp.memoTable();
+        assertEquals(41, memo.misses());
+        assertEquals(38, memo.hits());
+        assertEquals(8, memo.size());
+        assertEquals(33, memo.evictions());
+    }
+
+    @Test
+    void jfrEvents_recordCallsLoopsAndAllocations() throws Exception {
+        String src = "fn sq(n) { return n * n; } fn spin() { while (true) { return 1; } } print(sq(2000) + spin());";
+        List<RecordedEvent> events = record(() -> assertEquals("4000001\n", run(src)),
+                "seed.FunctionCall", "seed.Loop", "seed.Allocations");
+        assertEquals(2, events.stream().filter(e -> e.getEventType().getName().equals("seed.FunctionCall")).count());
+        assertEquals(1, event(events, "seed.Loop").getLong("iterations"));
+        RecordedEvent allocs = event(events, "seed.Allocations");
+        assertEquals(2, allocs.getLong("frames"));
+        assertEquals(3, allocs.getLong("ints")); // 2000, 4000000 and 4000001 are outside the small-int cache
+    }
+
+    @Test
+    void jfrEvents_nodeEngineRecordsTheSameEvents() throws Exception {
+        String src = "fn sq(n) { return n * n; } fn spin() { while (true) { return 1; } } print(sq(2000) + spin());";
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        List<RecordedEvent> events = record(() -> new NodeInterpreter(new PrintStream(baos))
+                .interpret(new Parser(new Lexer(src).scanTokens()).parseProgram()),
+                "seed.FunctionCall", "seed.Loop", "seed.Allocations");
+        assertEquals("4000001\n", baos.toString());
+        RecordedEvent call = events.stream().filter(e -> e.getEventType().getName().equals("seed.FunctionCall"))
+                .filter(e -> e.getString("function").equals("sq")).findFirst().orElseThrow();
+        assertEquals(1, call.getInt("arity"));
+        assertEquals(1, event(events, "seed.Loop").getLong("iterations"));
+        RecordedEvent allocs = event(events, "seed.Allocations");
+        assertEquals(2, allocs.getLong("frames"));
+        assertEquals(2, allocs.getLong("closures"));
+        assertEquals(2, allocs.getLong("ints")); // the literal 2000 is boxed once, when the nodes are built
+    }
+
+    @Test
+    void tiering_promotesHotEligibleFunctions() {
+        String src = ""
+                + "let k = 3;\n"
+                + "fn fib(n) { if (n < 2) { return n; } return fib(n - 1) + fib(n - 2); }\n"
+                + "fn sum(n) { let i = 0; let s = 0; while (i < n) { print(s); return s; } return s; }\n"
+                + "fn scaled(n) { return n * k; }\n"
+                + "fn both(a, b) { return a && b; }\n"
+                + "fn shadow(n) { { let n = 1; } return n; }\n"
+                + "print(fib(15)); print(scaled(2)); print(both(true, false)); print(shadow(5)); print(fib(15) + sum(1));";
+        List<Stmt> prog = new Parser(new Lexer(src).scanTokens()).parseProgram();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        Interpreter itp = new Interpreter(new PrintStream(baos));
+        itp.enableTiering(new Tiering(10, 100, false));
+        itp.interpret(prog);
+        assertEquals(run(src), baos.toString());
+        Tiering t = itp.tiering();
+        assertEquals(Tiering.Tier.COMPILED, t.profile("fib").tier());
+        assertEquals(Tiering.Tier.INTERPRETED, t.profile("sum").tier());
+        assertEquals(Tiering.Tier.INELIGIBLE, t.profile("scaled").tier());
+        assertEquals(Tiering.Tier.INTERPRETED, t.profile("both").tier()); // && compiles; called once
+        assertEquals(Tiering.Tier.INELIGIBLE, t.profile("shadow").tier());
+        assertTrue(t.report().contains("fib: calls="), t.report());
+    }
+
+    @Test
+    void javaStackOverflow_isASeedError() {
+        String src = "fn down(n) { if (n == 0) { return 0; } return down(n - 1) + 1; } print(down(10000000));";
+        RuntimeException ex = assertThrows(RuntimeException.class, () -> run(src));
+        assertEquals("Stack overflow", ex.getMessage());
+    }
+
+    @Test
+    void fuelAndTimeLimit_stopRunawayScripts() {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        Interpreter interp = new Interpreter(new PrintStream(baos));
+        interp.setFuel(5);
+        RuntimeException ex = assertThrows(RuntimeException.class,
+                () -> interp.interpret(new Parser(new Lexer("fn f() { print(1); } f(); f(); while (true) { print(2); }").scanTokens()).parseProgram()));
+        assertEquals("Out of fuel (limit 5)", ex.getMessage());
+        assertEquals("1\n1\n2\n2\n2\n", baos.toString());
+
+        Interpreter timed = new Interpreter(new PrintStream(new ByteArrayOutputStream()));
+        timed.setTimeLimit(20_000_000);
+        ex = assertThrows(RuntimeException.class, () -> timed.interpret(new Parser(new Lexer("while (true) { }").scanTokens()).parseProgram()));
+        assertEquals("Time limit exceeded (20 ms)", ex.getMessage());
+
+        // Promoted code would run a hot loop without checking either budget
+        Interpreter tiered = new Interpreter(new PrintStream(new ByteArrayOutputStream()));
+        tiered.enableTiering(new Tiering(10, 100, false));
+        assertThrows(IllegalStateException.class, () -> tiered.setFuel(1000));
+        assertThrows(IllegalStateException.class, () -> tiered.setTimeLimit(20_000_000));
+        Interpreter limited = new Interpreter(new PrintStream(new ByteArrayOutputStream()));
+        limited.setFuel(1000);
+        assertThrows(IllegalStateException.class, () -> limited.enableTiering(new Tiering(10, 100, false)));
+    }
+
+    @Test
+    void globalDeclaredAfterFunction_isVisibleAtCallTime() {
+        String src = "fn f() { return y; } let y = 7; print(f());";
+        assertEquals("7\n", run(src));
+    }
+
+    @Test
+    void nestedFunctionDeclaredLater_isVisibleAtCallTime() {
+        String src = "fn outer(n) { fn a() { return b() + n; } fn b() { return 10; } return a(); } print(outer(5));";
+        assertEquals("15\n", run(src));
+    }
+
+    @Test
+    void readBeforeLet_isUndefinedEvenAfterABlock() {
+        String src = "fn f() { { let a = 1; } print(b); let b = 2; } f();";
+        RuntimeException ex = assertThrows(RuntimeException.class, () -> run(src));
+        assertEquals("Undefined variable 'b'", ex.getMessage());
+    }
+
+    @Test
+    void arithmetic_boxesOnlyTheResultsItStores() throws Exception {
+        // 200 statements of int arithmetic and comparisons on values outside the small-int cache
+        StringBuilder src = new StringBuilder("let a = 1700; let b = 1500;\n");
+        for (int i = 0; i < 200; i++) {
+            src.append("let x").append(i).append(" = a");
+            for (int k = 0; k < 5; k++) src.append(" + (a * b - a / b) - ").append(2000 + k);
+            src.append(";\nif (a > b");
+            for (int k = 0; k < 5; k++) src.append(" && (a * 3 <= b + ").append(5000 + k).append(") || a == b");
+            src.append(") { a; } else { b; }\n");
+        }
+        RecordedEvent allocs = event(record(() -> run(src.toString()), "seed.Allocations"), "seed.Allocations");
+        // Boxing intermediate results would count thousands; only 1700, 1500 and the 200 lets are boxed
+        assertEquals(202, allocs.getLong("ints"));
+    }
+
+    private static List<RecordedEvent> record(Runnable body, String... names) throws Exception {
+        Path file = Files.createTempFile("seed", ".jfr");
+        try (Recording rec = new Recording()) {
+            for (String name : names) rec.enable(name).withThreshold(Duration.ZERO);
+            rec.start();
+            body.run();
+            rec.stop();
+            rec.dump(file);
+            return RecordingFile.readAllEvents(file);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static RecordedEvent event(List<RecordedEvent> events, String name) {
+        return events.stream().filter(e -> e.getEventType().getName().equals(name)).findFirst().orElseThrow();
+    }
 }
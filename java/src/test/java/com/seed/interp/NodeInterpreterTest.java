@@ -0,0 +1,69 @@
+package com.seed.interp;
+
+import com.seed.ast.Stmt;
+import com.seed.lexer.Lexer;
+import com.seed.parser.Parser;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NodeInterpreterTest {
+
+    private static List<Stmt> parse(String src) {
+        return new Parser(new Lexer(src).scanTokens()).parseProgram();
+    }
+
+    private static String runNodes(String src) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        new NodeInterpreter(new PrintStream(baos)).interpret(parse(src));
+        return baos.toString();
+    }
+
+    private static String runReference(String src) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        new Interpreter(new PrintStream(baos)).interpret(parse(src));
+        return baos.toString();
+    }
+
+    @Test
+    void matchesReferenceInterpreter() {
+        String[] programs = {
+                "let x = 3; fn add(a, b) { return a + b; } if (x < 10) { print(add(x, 5)); }",
+                "if (1 > 2) { print(1); } else { print(2); }",
+                "print( (1 < 2) && (2 < 3) ); print( (1 > 2) || (2 < 3) ); print(!true); print(-(4 - 9));",
+                "print(7 / 2); print(3 * 4 <= 12); print(5 >= 6); print(1 == 1); print(true != false);",
+                "fn fib(n) { if (n < 2) { return n; } return fib(n - 1) + fib(n - 2); } print(fib(15));",
+                "fn outer(a) { let b = a * 2; fn inner(c) { return a + b + c; } return inner(1); } print(outer(5));",
+                "let x = 1; { let x = 2; print(x); } print(x); fn f() { return; } print(f()); print(f);",
+                "fn f() { return y; } let y = 7; print(f()); while (false) { print(0); }",
+                "fn outer(n) { fn a() { return b() + n; } fn b() { return 10; } return a(); } print(outer(5));",
+                "fn f(x) { print(x); return x; } print(f(0) && f(1)); print(f(2) || f(3)); print(f(false) || f(4) && f(0));",
+                "fn count(n, acc) { if (n == 0) { return acc; } return (count(n - 1, acc + 1)); } print(count(100000, 0));",
+                "fn even(n) { if (n == 0) { return true; } return odd(n - 1); } fn odd(n) { if (n == 0) { return false; } return even(n - 1); } print(even(100001));",
+        };
+        for (String src : programs) {
+            assertEquals(runReference(src), runNodes(src), src);
+        }
+    }
+
+    @Test
+    void runtimeErrors_matchReferenceMessages() {
+        String[] programs = { "print(true + 1);", "print(z);", "let f = 1; print(f(2));", "fn g(a) { return a; } print(g());" };
+        for (String src : programs) {
+            RuntimeException ref = assertThrows(RuntimeException.class, () -> runReference(src));
+            RuntimeException got = assertThrows(RuntimeException.class, () -> runNodes(src));
+            assertEquals(ref.getMessage(), got.getMessage(), src);
+        }
+    }
+
+    @Test
+    void deepRecursion_isASeedError() {
+        String src = "fn down(n) { if (n == 0) { return 0; } return down(n - 1) + 1; } print(down(10000000));";
+        RuntimeException ex = assertThrows(RuntimeException.class, () -> runNodes(src));
+        assertEquals("Stack overflow", ex.getMessage());
+    }
+}
@@ -0,0 +1,179 @@
+package com.seed.ir;
+
+import com.seed.ast.Stmt;
+import com.seed.bytecode.Compiler;
+import com.seed.bytecode.Module;
+import com.seed.bytecode.Opcode;
+import com.seed.bytecode.Verifier;
+import com.seed.interp.Interpreter;
+import com.seed.lexer.Lexer;
+import com.seed.parser.Parser;
+import com.seed.vm.Image;
+import com.seed.vm.VM;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IrTest {
+
+    private static final String[] PROGRAMS = {
+            "fn fib(n) { if (n < 2) { return n; } return fib(n - 1) + fib(n - 2); } print(fib(15));",
+            "fn sum(n) { let i = 0; let s = 0; while (i < n) { let s = s + i; let i = i + 1; } return s; } print(sum(100));",
+            "fn f(a, b) { let c = a * b - (a + b); return c / 2; } print(f(f(3, 4), f(5, 6)));",
+            "fn z() { return 4; } fn w(x) { print(x); } print(z() + z()); w(z()); print(w(1));",
+            "print(-(4 - 9)); print(!5); print(!nil); print(1 == 1); print(2 != 2); print(3 >= 4); print(3 <= 4);",
+            "fn down(n) { if (n == 0) { return 0; } return down(n - 1); } print(down(100000));",
+            "print(2147483647 + 1);",
+            "print(1); print(true + 1);",
+            "print(1); print(7 / 0);",
+            "fn g(x) { return x + y; } print(g(1));",
+            // Swapping through phis, variables first set inside a loop, reads before the first let
+            "fn swap(n) { let a = 1; let b = 2; let i = 0; while (i < n) { let t = a; let a = b; let b = t; let i = i + 1; } print(a); print(b); }"
+                    + " swap(3); swap(4);",
+            "fn h(n) { let i = 0; while (i < n) { print(t); let t = i * 2; let i = i + 1; } return t; } print(h(3));",
+            "fn k(x) { if (x > 1) { let y = x; } else { let z = 5; } print(y); print(z); } k(3); k(0);",
+            "fn r(x) { if (x) { return 1; print(9); let q = 2; } print(q); return 2; } print(r(true)); print(r(false));",
+            "fn nest(n) { let i = 0; let s = 0; while (i < n) { let j = 0; while (j < n) { let s = s + i * n + j; let j = j + 1; } let i = i + 1; }"
+                    + " return s; } print(nest(7));",
+            "fn inv(n, k) { let i = 0; let s = 0; let m = k * 3; while (i < n) { let s = s + (m + 1) * (m - 1); let i = i + 1; } return s; }"
+                    + " print(inv(10, 2)); print(inv(3, true));",
+            "fn c(x) { let a = x + 1; print(5); print(a); } c(1); c(false);",
+            "fn e(x) { let a = 2; let b = a * 3; if (b > 5) { print(b + x); } else { print(0); } while (a < 2) { print(99); } } e(1);",
+            "let u = 3; let v = u + 1; print(u * v); if (u < v) { print(1); } print(v / (u - 3));",
+    };
+
+    private static List<Stmt> parse(String src) {
+        return new Parser(new Lexer(src).scanTokens()).parseProgram();
+    }
+
+    private static String vm(Module m) {
+        assertTrue(new Verifier().verify(m).isEmpty(), () -> new Verifier().verify(m).toString());
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try {
+            new VM(Image.decode(m), new PrintStream(baos)).run();
+        } catch (RuntimeException e) {
+            return baos + "error: " + e.getMessage();
+        }
+        return baos.toString();
+    }
+
+    private static IrModule build(String src) {
+        IrModule ir = new IrBuilder().build(parse(src));
+        for (IrFunction f : ir.funcs) assertEquals(List.of(), f.check(), () -> f.toString());
+        return ir;
+    }
+
+    private static IrModule optimized(String src) {
+        IrModule ir = build(src);
+        Optimizer.standard().run(ir);
+        for (IrFunction f : ir.funcs) assertEquals(List.of(), f.check(), () -> f.toString());
+        return ir;
+    }
+
+    private static IrFunction fn(IrModule ir, String name) {
+        return ir.funcs.stream().filter(f -> f.name.equals(name)).findFirst().orElseThrow();
+    }
+
+    private static long count(IrFunction f, Op op) {
+        return f.blocks.stream().flatMap(b -> b.insns.stream()).filter(in -> in.op == op).count();
+    }
+
+    @Test
+    void loweredCode_behavesLikeTheCompilers() {
+        for (String src : PROGRAMS) {
+            String expected = vm(new Compiler().compile(parse(src)));
+            assertEquals(expected, vm(new Lowering().lower(build(src))), src);
+            assertEquals(expected, vm(new Lowering().lower(optimized(src))), src);
+        }
+    }
+
+    @Test
+    void logicalOperators_matchTheInterpreter() {
+        String src = "fn f(x) { print(x); return x; } print(f(1) && false); print(false && f(2)); print(f(2) || 0); print(f(0) || f(false));"
+                + " let a = 5; if (a < 3 || a > 4 && true) { print(1); } else { print(2); }";
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        new Interpreter(new PrintStream(baos)).interpret(parse(src));
+        assertEquals(baos.toString(), vm(new Lowering().lower(optimized(src))));
+    }
+
+    @Test
+    void sccp_foldsAcrossBranchesAndPhis() {
+        IrModule ir = optimized("fn f(n) { let x = 2; let y = 0; if (x > 1) { let y = 3; } else { let y = 4; } return n + y * x; }");
+        IrFunction f = fn(ir, "f");
+        assertEquals(0, count(f, Op.BR), f::toString);
+        assertEquals(0, count(f, Op.MUL), f::toString);
+        assertEquals(1, f.blocks.size(), f::toString);
+        assertTrue(f.toString().contains("const 6"), f::toString);
+    }
+
+    @Test
+    void sccp_leavesFailingOperations() {
+        IrFunction main = fn(optimized("print(1 / 0); print(true + 1); print(2147483647 + 1);"), "main");
+        assertEquals(1, count(main, Op.DIV));
+        assertEquals(2, count(main, Op.ADD));
+    }
+
+    @Test
+    void gvn_reusesEarlierResults() {
+        IrFunction f = fn(optimized("fn f(a, b) { print(a * b + 1); if (a) { print(b * a + 1); } return a * b; }"), "f");
+        assertEquals(1, count(f, Op.MUL), f::toString);
+        assertEquals(1, count(f, Op.ADD), f::toString);
+    }
+
+    @Test
+    void licm_hoistsSafeInvariants() {
+        IrModule ir = optimized(PROGRAMS[15]);
+        IrFunction f = fn(ir, "inv");
+        Dominators dom = new Dominators(f);
+        // (m + 1) * (m - 1) cannot fail once m = k * 3 has succeeded, so it leaves the loop
+        for (Block b : f.blocks) {
+            for (Insn in : b.insns) {
+                if (in.op == Op.MUL && in.args.get(0).op == Op.ADD) assertFalse(dom.dominates(b, f.blocks.get(0)) && b != f.blocks.get(0), f::toString);
+            }
+        }
+        Module m = new Lowering().lower(ir);
+        List<Opcode> ops = m.funcs.get(m.findFunctionByName("inv")).code.stream().map(in -> in.op).toList();
+        assertEquals(2, ops.stream().filter(op -> op == Opcode.MUL).count(), ops::toString);
+        int loop = ops.indexOf(Opcode.JMP_IF_FALSE);
+        assertEquals(1, ops.subList(loop, ops.size()).stream().filter(op -> op == Opcode.ADD).count() - 1, ops::toString);
+
+        // Parameters have no known type, so n * 2 stays where it may fail
+        IrFunction g = fn(optimized("fn g(n) { let i = 0; while (i < 3) { print(n * 2); let i = i + 1; } }"), "g");
+        Block mul = g.blocks.stream().filter(b -> b.insns.stream().anyMatch(in -> in.op == Op.MUL)).findFirst().orElseThrow();
+        assertTrue(mul.insns.stream().anyMatch(in -> in.op == Op.PRINT), g::toString);
+    }
+
+    @Test
+    void dce_removesUnusedValuesButKeepsFailures() {
+        IrFunction f = fn(optimized("fn f(a) { let x = a + 1; let y = 2 * 3; let z = a == 1; return 0; }"), "f");
+        assertEquals(1, count(f, Op.ADD), f::toString);
+        assertEquals(0, count(f, Op.MUL) + count(f, Op.EQ), f::toString);
+    }
+
+    @Test
+    void dominators() {
+        IrFunction f = fn(build("fn f(n) { if (n) { print(1); } else { print(2); } while (n) { print(3); } }"), "f");
+        Dominators dom = new Dominators(f);
+        for (Block b : f.blocks) assertTrue(dom.dominates(f.entry(), b));
+        for (Block b : f.blocks) {
+            if (b.preds.size() > 1 && b.phis().isEmpty() && !b.succs().isEmpty() && b.terminator().op == Op.JMP) {
+                for (Block p : b.preds) assertNotEquals(p, dom.idom(b));
+            }
+        }
+        assertNull(dom.idom(f.entry()));
+    }
+
+    @Test
+    void loweringUsesFewerInstructionsOnLoops() {
+        String src = PROGRAMS[14];
+        Module plain = new Compiler().compile(parse(src));
+        Module ssa = new Lowering().lower(optimized(src));
+        int before = plain.funcs.get(plain.findFunctionByName("nest")).code.size();
+        int after = ssa.funcs.get(ssa.findFunctionByName("nest")).code.size();
+        assertTrue(after <= before, before + " -> " + after);
+    }
+}
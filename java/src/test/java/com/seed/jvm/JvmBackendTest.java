@@ -0,0 +1,103 @@
+package com.seed.jvm;
+
+import com.seed.ast.Stmt;
+import com.seed.bytecode.Compiler;
+import com.seed.bytecode.Module;
+import com.seed.bytecode.Verifier;
+import com.seed.interp.Interpreter;
+import com.seed.lexer.Lexer;
+import com.seed.parser.Parser;
+import com.seed.sema.Resolver;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JvmBackendTest {
+
+    private static List<Stmt> parse(String src) {
+        return new Parser(new Lexer(src).scanTokens()).parseProgram();
+    }
+
+    private static String runJvm(String src) {
+        return runJvm(src, false);
+    }
+
+    private static String runJvm(String src, boolean typed) {
+        List<Stmt> program = parse(src);
+        Compiler c = new Compiler();
+        if (typed) {
+            Resolver r = new Resolver();
+            r.resolve(program);
+            c.setTypes(r);
+        }
+        Module m = c.compile(program);
+        assertTrue(new Verifier().verify(m).isEmpty());
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        new JvmBackend().compile(m).run(new PrintStream(baos));
+        return baos.toString();
+    }
+
+    private static String runInterp(String src) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        new Interpreter(new PrintStream(baos)).interpret(parse(src));
+        return baos.toString();
+    }
+
+    @Test
+    void hello_printsEight() {
+        String src = "let x = 3;\nfn add(a, b) { return a + b; }\nif (x < 10) { print(add(x, 5)); }\n";
+        assertEquals("8\n", runJvm(src));
+    }
+
+    @Test
+    void matchesInterpreter_onCallsAndBranches() {
+        String[] programs = {
+                "fn fib(n) { if (n < 2) { return n; } return fib(n - 1) + fib(n - 2); } print(fib(20));",
+                "if (1 > 2) { print(1); } else { print(2); } print(3 == 3); print(!true); print(-(4 - 9));",
+                "fn f(a) { if (a) { return; } return a * 2; } print(f(0)); print(f(true)); print(7 / 2 >= 3);",
+                "fn even(n) { if (n == 0) { return true; } return odd(n - 1); } fn odd(n) { if (n == 0) { return false; } return even(n - 1); } print(even(10));",
+        };
+        for (String src : programs) {
+            assertEquals(runInterp(src), runJvm(src), src);
+            assertEquals(runInterp(src), runJvm(src, true), src);
+        }
+    }
+
+    @Test
+    void loopsOverLocals() {
+        // The bytecode compiler gives each name one slot per function, so the inner let updates i
+        String src = "fn sum(n) { let i = 0; let s = 0; while (i < n) { let s = s + i; let i = i + 1; } return s; } print(sum(100));";
+        assertEquals("4950\n", runJvm(src));
+    }
+
+    @Test
+    void selfTailCallsBecomeLoops() {
+        assertEquals("1000000\n", runJvm("fn count(n, acc) { if (n == 0) { return acc; } return count(n - 1, acc + 1); } print(count(1000000, 0));"));
+    }
+
+    @Test
+    void typedModule_offersOnlyFunctionsWithoutParameters() {
+        List<Stmt> program = parse("fn add(a, b) { return a + b; } print(add(1, 2));");
+        Resolver r = new Resolver();
+        r.resolve(program);
+        Compiler c = new Compiler();
+        c.setTypes(r);
+        Module typed = c.compile(program);
+        assertTrue(typed.hasTypedOps());
+        JvmBackend.Program prog = new JvmBackend().compile(typed);
+        assertThrows(IllegalArgumentException.class, () -> prog.function("add"));
+        assertNotNull(prog.function("main"));
+        // Untyped code checks its operands itself, so any function can be entered
+        assertNotNull(new JvmBackend().compile(new Compiler().compile(program)).function("add"));
+    }
+
+    @Test
+    void typeErrorsAreReported() {
+        RuntimeException ex = assertThrows(RuntimeException.class, () -> runJvm("print(true + 1);"));
+        assertTrue(ex.getMessage().contains("Expected int"), ex.getMessage());
+    }
+}
@@ -0,0 +1,112 @@
+package com.seed.opt;
+
+import com.seed.ast.AstPrinter;
+import com.seed.ast.Stmt;
+import com.seed.bytecode.Compiler;
+import com.seed.interp.Interpreter;
+import com.seed.lexer.Lexer;
+import com.seed.parser.Parser;
+import com.seed.vm.Image;
+import com.seed.vm.VM;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PipelineTest {
+
+    private static List<Stmt> parse(String src) {
+        return new Parser(new Lexer(src).scanTokens()).parseProgram();
+    }
+
+    private static String optimized(String src) {
+        return new AstPrinter().print(Pipeline.standard().run(parse(src)));
+    }
+
+    private static String interpret(List<Stmt> program) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try {
+            new Interpreter(new PrintStream(baos)).interpret(program);
+        } catch (RuntimeException e) {
+            return baos + "error: " + e.getMessage();
+        }
+        return baos.toString();
+    }
+
+    private static String vm(List<Stmt> program) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try {
+            new VM(Image.decode(new Compiler().compile(program)), new PrintStream(baos)).run();
+        } catch (RuntimeException e) {
+            return baos + "error: " + e.getMessage();
+        }
+        return baos.toString();
+    }
+
+    @Test
+    void optimizedTree_behavesTheSame() {
+        String[] programs = {
+                "fn fib(n) { if (n < 2) { return n; } return fib(n - 1) + fib(n - 2); } print(fib(15));",
+                "let k = 2 * 3 + 1; fn f(a) { return a * 1 + 0 - 0; } print(f(k)); print(k * 0); print(k - k);",
+                "let b = 1 < 2; print(b == true); print(b == false); print(b != true); print(!!b);",
+                "if (1 + 1 == 2) { print(1); } else { print(2); } while (false) { print(3); } if (0) { print(4); }",
+                "fn g(n) { if (n > 0) { return n; print(99); } return -(-n); } print(g(3)); print(g(-4));",
+                "print(!5); print(-(4 - 9)); print(7 / 2);",
+                "print(1); print(7 / 0);",
+                "print(1); print(true + 1);",
+                "print(2147483647 + 1);",
+        };
+        for (String src : programs) {
+            String expectedAst = interpret(parse(src));
+            String expectedVm = vm(parse(src));
+            List<Stmt> opt = Pipeline.standard().run(parse(src));
+            assertEquals(expectedAst, interpret(opt), src);
+            assertEquals(expectedVm, vm(opt), src);
+        }
+        String[] logical = {
+                "let b = 1 < 2; print(b && true); print(b || false); print(b && false); print(true && 0); print(1 || false);",
+                "fn f(x) { print(x); return x; } print(f(false) && false); print(f(1) || true); print(false && f(2)); print(true || f(3));",
+        };
+        for (String src : logical) {
+            String expected = interpret(parse(src));
+            assertEquals(expected, vm(parse(src)), src);
+            List<Stmt> opt = Pipeline.standard().run(parse(src));
+            assertEquals(expected, interpret(opt), src);
+            assertEquals(expected, vm(opt), src);
+        }
+    }
+
+    @Test
+    void foldsConditionsAndDropsDeadCode() {
+        assertEquals("(print 7)", optimized("if (1 + 2 * 3 > 6) { print(1 + 2 * 3); } else { print(0); }"));
+        assertEquals("(print 1)", optimized("{ while (false) { print(0); } 5; { } print(--1); }"));
+        assertEquals("(fn f (x) (return x))", optimized("fn f(x) { return x; print(x); }"));
+    }
+
+    @Test
+    void simplifiesUsingResolvedTypes() {
+        assertEquals("(let x 4)\n(print x)\n(print 0)\n(print (! (< x 3)))",
+                optimized("let x = 4; print(x + 0); print(x * 0); print((x < 3) == false);"));
+        // Parameters are untyped: x + 0 still reports a bool argument
+        assertEquals("(fn f (x) (return (+ x 0)))", optimized("fn f(x) { return x + 0; }"));
+        // The right side of && never runs after false, so it goes even when it has effects
+        assertEquals("(let a 2)\n(print false)\n(print (< 1 a))", optimized("let a = 2; print(false && f(1)); print(1 < a && true);"));
+    }
+
+    @Test
+    void leavesFailingAndOverflowingOperations() {
+        assertEquals("(print (/ 1 0))\n(print (+ true 1))\n(print (+ 2147483647 1))",
+                optimized("print(1 / 0); print(true + 1); print(2147483647 + 1);"));
+    }
+
+    @Test
+    void inputTree_isUnchanged() {
+        List<Stmt> program = parse("let x = 1 + 2; if (true) { print(x * 1); }");
+        String before = new AstPrinter().print(program);
+        Pipeline.standard().run(program);
+        assertEquals(before, new AstPrinter().print(program));
+    }
+}
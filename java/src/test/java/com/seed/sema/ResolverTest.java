@@ -1,5 +1,6 @@
 package com.seed.sema;
 
+import com.seed.ast.Expr;
 import com.seed.ast.Stmt;
 import com.seed.lexer.Lexer;
 import com.seed.lexer.Token;
@@ -7,6 +8,7 @@ import com.seed.parser.Parser;
 import org.junit.jupiter.api.Test;
 
 import java.util.List;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -68,4 +70,110 @@ class ResolverTest {
         List<Diagnostic> ds = check(src);
         assertTrue(ds.isEmpty(), "Expected no diagnostics, got: " + ds);
     }
+
+    @Test
+    void variables_annotatedWithDepthAndSlot() {
+        Lexer lx = new Lexer("let g = 1; fn f(a, b) { { let t = a; } let u = b; return g + u; }");
+        List<Stmt> prog = new Parser(lx.scanTokens()).parseProgram();
+        Resolver r = new Resolver();
+        assertTrue(r.resolve(prog).isEmpty());
+        assertEquals(2, r.globalFrameSize()); // f, g
+        Stmt.Fun f = (Stmt.Fun) prog.get(1);
+        // a, b, then t and u share slot 2 because t's block has ended
+        assertEquals(3, r.frameSize(f));
+        Stmt.Let u = (Stmt.Let) f.body.get(1);
+        assertEquals(2, r.slot(u));
+        Expr.Binary sum = (Expr.Binary) ((Stmt.Return) f.body.get(2)).value;
+        Expr.Variable g = (Expr.Variable) sum.left;
+        assertEquals(new Resolver.Ref(1, r.globalSlot("g")), r.ref(g));
+        assertEquals(0, r.ref((Expr.Variable) sum.right).depth());
+    }
+
+    @Test
+    void forwardReference_resolvedInEnclosingFunction() {
+        Lexer lx = new Lexer("fn outer() { fn a() { return b(); } fn b() { return 1; } return a(); }");
+        List<Stmt> prog = new Parser(lx.scanTokens()).parseProgram();
+        Resolver r = new Resolver();
+        // Still reported, but the read finds b one frame out
+        assertTrue(r.resolve(prog).stream().anyMatch(d -> d.message.contains("Undefined identifier: 'b'")));
+        Stmt.Fun outer = (Stmt.Fun) prog.get(0);
+        Stmt.Fun a = (Stmt.Fun) outer.body.get(0);
+        Expr.Call call = (Expr.Call) ((Stmt.Return) a.body.get(0)).value;
+        assertEquals(new Resolver.Ref(1, r.slot((Stmt.Fun) outer.body.get(1))), r.ref((Expr.Variable) call.callee));
+    }
+
+    @Test
+    void forwardReference_doesNotReuseAClosedBlocksSlot() {
+        Lexer lx = new Lexer("fn f() { { let a = 1; } print(b); let b = 2; }");
+        List<Stmt> prog = new Parser(lx.scanTokens()).parseProgram();
+        Resolver r = new Resolver();
+        r.resolve(prog);
+        Stmt.Fun f = (Stmt.Fun) prog.get(0);
+        Stmt.Let a = (Stmt.Let) ((Stmt.Block) f.body.get(0)).stmts.get(0);
+        Stmt.Let b = (Stmt.Let) f.body.get(2);
+        assertNotEquals(r.slot(a), r.slot(b));
+    }
+
+    @Test
+    void purity_marksFunctionsThatOnlyUseTheirArguments() {
+        String src = ""
+                + "let k = 2;\n"
+                + "fn fib(n) { if (n < 2) { return n; } return fib(n - 1) + fib(n - 2); }\n"
+                + "fn twice(n) { let t = fib(n); return t * 2; }\n"
+                + "fn noisy(n) { print(n); return n; }\n"
+                + "fn callsNoisy(n) { return noisy(n) + 1; }\n"
+                + "fn readsGlobal(n) { return n * k; }\n"
+                + "fn closure(n) { fn inner() { return 1; } return n; }\n";
+        List<Stmt> prog = new Parser(new Lexer(src).scanTokens()).parseProgram();
+        Resolver r = new Resolver();
+        r.resolve(prog);
+        Set<Stmt.Fun> found = Purity.analyze(prog, r);
+        StringBuilder pure = new StringBuilder();
+        for (Stmt s : prog) if (s instanceof Stmt.Fun f && found.contains(f)) pure.append(f.name.lexeme).append(' ');
+        assertEquals("fib twice ", pure.toString());
+    }
+
+    @Test
+    void paramTypes_inferredFromCalls() {
+        String src = ""
+                + "fn add(a, b) { return a + b; }\n"
+                + "fn neg(p) { return !p; }\n"
+                + "fn id(x) { return x; }\n"
+                + "fn unused(u) { return u; }\n"
+                + "fn count(n) { if (n < 1) { return 0; } return count(n - 1); }\n"
+                + "fn outer(n) { return inner(n); }\n"
+                + "fn inner(m) { return m * 2; }\n"
+                + "fn taken(t) { return t; }\n"
+                + "fn bad(b) { return b + 1; }\n"
+                + "let f = taken;\n"
+                + "print(add(1, 2)); print(neg(true)); print(id(1)); print(id(false));\n"
+                + "print(count(5)); print(outer(3)); print(taken(4)); print(bad(true));\n";
+        List<Stmt> prog = new Parser(new Lexer(src).scanTokens()).parseProgram();
+        Resolver r = new Resolver();
+        // Only the first pass, which assumes nothing about parameters, reports
+        assertTrue(r.resolve(prog).isEmpty(), r.diagnostics().toString());
+        StringBuilder got = new StringBuilder();
+        for (Stmt s : prog) if (s instanceof Stmt.Fun f) got.append(f.name.lexeme).append(r.paramTypes(f)).append(' ');
+        assertEquals("add[INT, INT] neg[BOOL] id[UNKNOWN] unused[UNKNOWN] count[INT] outer[INT] inner[INT] "
+                + "taken[UNKNOWN] bad[BOOL] ", got.toString());
+        Stmt.Fun add = (Stmt.Fun) prog.get(0);
+        Expr.Binary sum = (Expr.Binary) ((Stmt.Return) add.body.get(0)).value;
+        assertEquals(Symbol.Type.INT, r.typeOf(sum.left));
+    }
+
+    @Test
+    void typeOf_unknownForAliasedAndEnclosingVariables() {
+        String src = "let x = 1; { let x = true; } let y = 2; print(x); print(y); fn f(a) { { let a = false; } return y + a; } print(f(1));";
+        List<Stmt> prog = new Parser(new Lexer(src).scanTokens()).parseProgram();
+        Resolver r = new Resolver();
+        assertTrue(r.resolve(prog).isEmpty(), r.diagnostics().toString());
+        // One slot per name in the bytecode, so x may hold the block's bool after it
+        assertEquals(Symbol.Type.UNKNOWN, r.typeOf(((Stmt.Print) prog.get(3)).value));
+        assertEquals(Symbol.Type.INT, r.typeOf(((Stmt.Print) prog.get(4)).value));
+        Stmt.Fun f = (Stmt.Fun) prog.get(5);
+        assertEquals(List.of(Symbol.Type.UNKNOWN), r.paramTypes(f));
+        Expr.Binary sum = (Expr.Binary) ((Stmt.Return) f.body.get(1)).value;
+        assertEquals(Symbol.Type.UNKNOWN, r.typeOf(sum.left));
+        assertEquals(Symbol.Type.UNKNOWN, r.typeOf(sum.right));
+    }
 }
@@ -0,0 +1,132 @@
+package com.seed.vm;
+
+import com.seed.ast.Stmt;
+import com.seed.bytecode.Compiler;
+import com.seed.bytecode.Module;
+import com.seed.bytecode.Verifier;
+import com.seed.interp.Interpreter;
+import com.seed.lexer.Lexer;
+import com.seed.parser.Parser;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VMTest {
+
+    private static List<Stmt> parse(String src) {
+        return new Parser(new Lexer(src).scanTokens()).parseProgram();
+    }
+
+    private static String runVm(String src) {
+        Module m = new Compiler().compile(parse(src));
+        assertTrue(new Verifier().verify(m).isEmpty());
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        new VM(Image.decode(m), new PrintStream(baos)).run();
+        return baos.toString();
+    }
+
+    private static String runInterp(String src) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        new Interpreter(new PrintStream(baos)).interpret(parse(src));
+        return baos.toString();
+    }
+
+    @Test
+    void matchesInterpreter() {
+        String[] programs = {
+                "let x = 3;\nfn add(a, b) { return a + b; }\nif (x < 10) { print(add(x, 5)); }\n",
+                "fn fib(n) { if (n < 2) { return n; } return fib(n - 1) + fib(n - 2); } print(fib(20));",
+                "if (1 > 2) { print(1); } else { print(2); } print(3 == 3); print(!true); print(-(4 - 9));",
+                "fn f(a) { if (a) { return; } return a * 2; } print(f(0)); print(f(true)); print(7 / 2 >= 3);",
+                "fn even(n) { if (n == 0) { return true; } return odd(n - 1); } fn odd(n) { if (n == 0) { return false; } return even(n - 1); } print(even(10));",
+                "fn g(a, b) { let c = a * b; print(c); } print(g(6, 7)); let n; print(n);",
+        };
+        for (String src : programs) {
+            assertEquals(runInterp(src), runVm(src), src);
+        }
+    }
+
+    @Test
+    void loopsOverLocals() {
+        String src = "fn sum(n) { let i = 0; let s = 0; while (i < n) { let s = s + i; let i = i + 1; } return s; } print(sum(100));";
+        assertEquals("4950\n", runVm(src));
+    }
+
+    @Test
+    void tailCalls_reuseTheFrame() {
+        assertEquals("1000000\n", runVm("fn count(n, acc) { if (n == 0) { return acc; } return count(n - 1, acc + 1); } print(count(1000000, 0));"));
+        String mutual = "fn even(n) { if (n == 0) { return true; } return odd(n - 1); } "
+                + "fn odd(n) { let unused = n; if (n == 0) { return false; } return even(n - 1); } print(even(100001));";
+        assertEquals("false\n", runVm(mutual));
+    }
+
+    @Test
+    void memo_cachesPureFunctions() {
+        String src = "fn fib(n) { if (n < 2) { return n; } return fib(n - 1) + fib(n - 2); } "
+                + "fn show(n) { print(n); return n; } print(fib(40)); show(fib(3)); show(fib(3));";
+        VM vm = new VM(Image.decode(new Compiler().compile(parse(src))), new PrintStream(new ByteArrayOutputStream()));
+        vm.enableMemo(100);
+        vm.run();
+        assertEquals(41, vm.memoTable().misses());
+        assertEquals(40, vm.memoTable().hits());
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        VM again = new VM(Image.decode(new Compiler().compile(parse(src))), new PrintStream(baos));
+        again.enableMemo(100);
+        again.run();
+        assertEquals("102334155\n2\n2\n", baos.toString());
+    }
+
+    @Test
+    void deepRecursion_growsTheHeapStack() {
+        String src = "fn down(n) { if (n == 0) { return 0; } return down(n - 1) + 1; } print(down(300000));";
+        assertEquals("300000\n", runVm(src));
+        VM vm = new VM(Image.decode(new Compiler().compile(parse(src))), new PrintStream(new ByteArrayOutputStream()));
+        vm.setMaxDepth(1000);
+        RuntimeException ex = assertThrows(RuntimeException.class, vm::run);
+        assertEquals("Stack overflow (call depth limit 1000)", ex.getMessage());
+    }
+
+    @Test
+    void maxDepth_belowTheInitialFrameStack() {
+        String src = "fn down(n) { if (n == 0) { return 0; } return down(n - 1) + 1; } print(down(100));";
+        VM vm = new VM(Image.decode(new Compiler().compile(parse(src))), new PrintStream(new ByteArrayOutputStream()));
+        vm.setMaxDepth(10);
+        RuntimeException ex = assertThrows(RuntimeException.class, vm::run);
+        assertEquals("Stack overflow (call depth limit 10)", ex.getMessage());
+        vm.setMaxDepth(101);
+        assertEquals(VM.Status.DONE, vm.run());
+    }
+
+    @Test
+    void fuel_suspendsAndResumes() {
+        String src = "fn count(n) { let i = 0; while (i < n) { print(i); let i = i + 1; } } count(5);";
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        VM vm = new VM(Image.decode(new Compiler().compile(parse(src))), new PrintStream(baos));
+        vm.setFuel(3); // the call plus two back-edges
+        assertEquals(VM.Status.OUT_OF_FUEL, vm.run());
+        assertTrue(vm.suspended());
+        assertEquals("0\n1\n2\n", baos.toString());
+        vm.setFuel(100);
+        assertEquals(VM.Status.DONE, vm.resume());
+        assertFalse(vm.suspended());
+        assertEquals("0\n1\n2\n3\n4\n", baos.toString());
+        assertEquals(97, vm.fuel());
+
+        VM spin = new VM(Image.decode(new Compiler().compile(parse("while (true) { }"))), new PrintStream(baos));
+        spin.setTimeLimit(20_000_000);
+        assertEquals(VM.Status.DEADLINE, spin.run());
+        assertThrows(IllegalStateException.class, vm::resume);
+    }
+
+    @Test
+    void errors() {
+        RuntimeException ex = assertThrows(RuntimeException.class, () -> runVm("print(true + 1);"));
+        assertTrue(ex.getMessage().contains("Expected int"), ex.getMessage());
+        ex = assertThrows(RuntimeException.class, () -> runVm("fn f(n) { return f(n + 1) + 1; } print(f(0));"));
+        assertTrue(ex.getMessage().startsWith("Stack overflow"), ex.getMessage());
+    }
+}
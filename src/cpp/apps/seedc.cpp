@@ -23,7 +23,7 @@ int main(int argc, char** argv) {
 
   seed::bc::Module mod;
   std::string err;
-  if (!seed::bc::loadTextModule(in, mod, err)) {
+  if (!seed::bc::loadModule(in, mod, err)) {
     std::cerr << "load error: " << err << "\n";
     return 1;
   }
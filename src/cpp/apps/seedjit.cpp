@@ -10,7 +10,7 @@ int main(int argc, char** argv) {
   std::string path = argv[1];
   seed::bc::Module mod;
   std::string err;
-  if (!seed::bc::loadTextModule(path, mod, err)) {
+  if (!seed::bc::loadModule(path, mod, err)) {
     std::cerr << "load error: " << err << "\n";
     return 1;
   }
@@ -1,5 +1,7 @@
+#include <cstdlib>
 #include <iostream>
 #include "seed/bytecode.h"
+#include "seed/regcode.h"
 #include "seed/vm.h"
 
 int main(int argc, char** argv) {
@@ -9,13 +11,24 @@ int main(int argc, char** argv) {
   }
   std::string path = argv[1];
   seed::bc::Module mod;
+  seed::rc::Module regMod;
   std::string err;
-  if (!seed::bc::loadTextModule(path, mod, err)) {
+  // Register code (Compile --registers) announces itself with ".format registers"
+  bool registers = seed::rc::isRegisterText(path);
+  bool loaded = registers ? seed::rc::loadTextModule(path, regMod, err) : seed::bc::loadModule(path, mod, err);
+  if (!loaded) {
     std::cerr << "load error: " << err << "\n";
     return 1;
   }
   seed::VM vm;
-  if (!vm.run(mod, "main", std::cout, err)) {
+  // Optional budgets for untrusted programs
+  if (const char* f = std::getenv("SEED_FUEL")) vm.setFuel(std::atoll(f));
+  if (const char* t = std::getenv("SEED_TIME_LIMIT_MS")) vm.setTimeLimitMs(std::atoll(t));
+  bool ok = registers ? vm.run(regMod, "main", std::cout, err) : vm.run(mod, "main", std::cout, err);
+  if (const char* s = std::getenv("SEED_STATS"); s && *s && std::string(s) != "0") {
+    std::cerr << "dispatched " << vm.dispatched() << " instructions\n";
+  }
+  if (!ok) {
     std::cerr << "vm error: " << err << "\n";
     return 1;
   }
@@ -0,0 +1,194 @@
+#include "seed/bytecode.h"
+#include <array>
+#include <cstring>
+#include <fcntl.h>
+#include <stdexcept>
+#include <sys/mman.h>
+#include <sys/stat.h>
+#include <unistd.h>
+
+using namespace seed::bc;
+
+// Binary .sbc as written by Java BinaryWriter (see there for the layout). The file is mapped
+// read-only and decoded straight from the mapping: no read() copy, no per-line parsing.
+
+namespace {
+
+constexpr unsigned char kMagic[4] = {'S', 'B', 'C', 0};
+constexpr unsigned kVersion = 1;
+constexpr std::size_t kHeader = 16;
+
+// A read-only mapping of a whole file, unmapped when it goes out of scope
+struct Mapping {
+  const unsigned char* data{nullptr};
+  std::size_t size{0};
+  Mapping() = default;
+  Mapping(const Mapping&) = delete;
+  Mapping& operator=(const Mapping&) = delete;
+  ~Mapping() { if (data) munmap(const_cast<unsigned char*>(data), size); }
+
+  bool open(const std::string& path, std::string& err) {
+    int fd = ::open(path.c_str(), O_RDONLY);
+    if (fd < 0) { err = "Cannot open " + path; return false; }
+    struct stat st{};
+    if (fstat(fd, &st) != 0) { ::close(fd); err = "Cannot stat " + path; return false; }
+    size = static_cast<std::size_t>(st.st_size);
+    if (size == 0) { ::close(fd); return true; }
+    void* p = mmap(nullptr, size, PROT_READ, MAP_PRIVATE, fd, 0);
+    ::close(fd);
+    if (p == MAP_FAILED) { size = 0; err = "Cannot map " + path; return false; }
+    data = static_cast<const unsigned char*>(p);
+    return true;
+  }
+};
+
+std::uint32_t crc32(const unsigned char* p, std::size_t n) {
+  static const std::array<std::uint32_t, 256> table = [] {
+    std::array<std::uint32_t, 256> t{};
+    for (std::uint32_t i = 0; i < 256; ++i) {
+      std::uint32_t c = i;
+      for (int k = 0; k < 8; ++k) c = (c & 1) ? 0xEDB88320u ^ (c >> 1) : c >> 1;
+      t[i] = c;
+    }
+    return t;
+  }();
+  std::uint32_t c = 0xFFFFFFFFu;
+  for (std::size_t i = 0; i < n; ++i) c = table[(c ^ p[i]) & 0xFF] ^ (c >> 8);
+  return c ^ 0xFFFFFFFFu;
+}
+
+// Bounds-checked cursor over the payload
+struct Reader {
+  const unsigned char* p;
+  const unsigned char* end;
+
+  std::size_t left() const { return static_cast<std::size_t>(end - p); }
+
+  unsigned u8() {
+    if (p == end) throw std::runtime_error("truncated");
+    return *p++;
+  }
+  std::uint64_t uvar() {
+    std::uint64_t v = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      unsigned b = u8();
+      v |= static_cast<std::uint64_t>(b & 0x7F) << shift;
+      if (!(b & 0x80)) return v;
+    }
+    throw std::runtime_error("varint too long");
+  }
+  std::int64_t svar() {
+    std::uint64_t v = uvar();
+    return static_cast<std::int64_t>(v >> 1) ^ -static_cast<std::int64_t>(v & 1);
+  }
+  // A number of bytes or items to follow; every item takes at least a byte
+  std::size_t count() {
+    std::uint64_t v = uvar();
+    if (v > left()) throw std::runtime_error("count exceeds the bytes left");
+    return static_cast<std::size_t>(v);
+  }
+  int index() {
+    std::uint64_t v = uvar();
+    if (v > 0x7FFFFFFF) throw std::runtime_error("index out of range");
+    return static_cast<int>(v);
+  }
+  int operand() {
+    std::int64_t v = svar();
+    if (v < INT32_MIN || v > INT32_MAX) throw std::runtime_error("operand out of int range");
+    return static_cast<int>(v);
+  }
+};
+
+std::uint32_t le(const unsigned char* p, int n) {
+  std::uint32_t v = 0;
+  for (int i = n - 1; i >= 0; --i) v = (v << 8) | p[i];
+  return v;
+}
+
+// Operands an opcode carries in the file (Java BinaryWriter.operands)
+int operands(Op op) {
+  switch (op) {
+    case Op::CONST: case Op::LOAD: case Op::STORE: case Op::JMP: case Op::JMP_IF_FALSE: return 1;
+    case Op::CALL: case Op::TAIL_CALL: case Op::LOAD_LOAD_ADD: return 2;
+    case Op::LOAD_CONST_ADD_STORE: case Op::LOAD_CONST_LT_JMP_IF_FALSE: case Op::LOAD_LOAD_LT_JMP_IF_FALSE: return 3;
+    default: return 0;
+  }
+}
+
+} // namespace
+
+bool seed::bc::isBinaryModule(const std::string& path) {
+  int fd = ::open(path.c_str(), O_RDONLY);
+  if (fd < 0) return false;
+  unsigned char head[sizeof kMagic];
+  bool yes = ::read(fd, head, sizeof head) == static_cast<ssize_t>(sizeof head) && std::memcmp(head, kMagic, sizeof head) == 0;
+  ::close(fd);
+  return yes;
+}
+
+bool seed::bc::loadBinaryModule(const std::string& path, Module& out, std::string& err) {
+  Mapping map;
+  if (!map.open(path, err)) return false;
+  try {
+    if (map.size < kHeader) throw std::runtime_error("too short for a header");
+    const unsigned char* h = map.data;
+    if (std::memcmp(h, kMagic, sizeof kMagic) != 0) throw std::runtime_error("not a binary module");
+    unsigned version = le(h + 4, 2);
+    if (version != kVersion) throw std::runtime_error("unsupported version " + std::to_string(version));
+    std::size_t length = le(h + 8, 4);
+    if (length != map.size - kHeader) throw std::runtime_error("payload length does not match the header");
+    if (crc32(h + kHeader, length) != le(h + 12, 4)) throw std::runtime_error("checksum mismatch");
+
+    Reader r{h + kHeader, h + map.size};
+    std::vector<std::string> strings(r.count());
+    for (auto& s : strings) {
+      std::size_t n = r.count();
+      s.assign(reinterpret_cast<const char*>(r.p), n);
+      r.p += n;
+    }
+    std::size_t nconsts = r.count();
+    out.consts.reserve(nconsts);
+    out.constTags.reserve(nconsts);
+    for (std::size_t i = 0; i < nconsts; ++i) {
+      unsigned tag = r.u8();
+      long long v = 0;
+      if (tag == static_cast<unsigned>(ConstTag::INT)) {
+        v = r.svar();
+        if (v < INT32_MIN || v > INT32_MAX) throw std::runtime_error("constant " + std::to_string(i) + " out of int range");
+      }
+      else if (tag == static_cast<unsigned>(ConstTag::BOOL)) v = r.u8() != 0;
+      else if (tag != static_cast<unsigned>(ConstTag::NIL)) throw std::runtime_error("unknown constant tag");
+      out.consts.push_back(v);
+      out.constTags.push_back(static_cast<ConstTag>(tag));
+    }
+    std::size_t nfuncs = r.count();
+    out.funcs.resize(nfuncs);
+    for (auto& f : out.funcs) {
+      int name = r.index();
+      if (name >= static_cast<int>(strings.size())) throw std::runtime_error("function name out of range");
+      f.name = strings[name];
+      f.arity = r.index();
+      f.nlocals = r.index();
+      f.code.resize(r.count());
+      for (auto& ins : f.code) {
+        unsigned op = r.u8();
+        if (op > static_cast<unsigned>(Op::LOAD_LOAD_LT_JMP_IF_FALSE)) throw std::runtime_error("unknown opcode " + std::to_string(op));
+        ins.op = static_cast<Op>(op);
+        int k = operands(ins.op);
+        if (k > 0) ins.a = r.operand();
+        if (k > 1) ins.b = r.operand();
+        if (k > 2) ins.c = r.operand();
+      }
+    }
+    if (r.left() != 0) throw std::runtime_error("bytes after the last function");
+  } catch (const std::exception& ex) {
+    out = Module();
+    err = std::string("Bad binary module: ") + ex.what();
+    return false;
+  }
+  return true;
+}
+
+bool seed::bc::loadModule(const std::string& path, Module& out, std::string& err) {
+  return isBinaryModule(path) ? loadBinaryModule(path, out, err) : loadTextModule(path, out, err);
+}
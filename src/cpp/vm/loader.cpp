@@ -14,8 +14,14 @@ static Op parseOp(const std::string& s) {
     {"NOT", Op::NOT},
     {"EQ", Op::EQ}, {"NE", Op::NE}, {"LT", Op::LT}, {"LE", Op::LE}, {"GT", Op::GT}, {"GE", Op::GE},
     {"JMP", Op::JMP}, {"JMP_IF_FALSE", Op::JMP_IF_FALSE},
-    {"CALL", Op::CALL}, {"RET", Op::RET},
-    {"PRINT", Op::PRINT}
+    {"CALL", Op::CALL}, {"TAIL_CALL", Op::TAIL_CALL}, {"RET", Op::RET},
+    {"PRINT", Op::PRINT},
+    {"IADD", Op::IADD}, {"ISUB", Op::ISUB}, {"IMUL", Op::IMUL}, {"IDIV", Op::IDIV},
+    {"BNOT", Op::BNOT},
+    {"IEQ", Op::IEQ}, {"INE", Op::INE}, {"ILT", Op::ILT}, {"ILE", Op::ILE}, {"IGT", Op::IGT}, {"IGE", Op::IGE},
+    {"LOAD_LOAD_ADD", Op::LOAD_LOAD_ADD}, {"LOAD_CONST_ADD_STORE", Op::LOAD_CONST_ADD_STORE},
+    {"LOAD_CONST_LT_JMP_IF_FALSE", Op::LOAD_CONST_LT_JMP_IF_FALSE},
+    {"LOAD_LOAD_LT_JMP_IF_FALSE", Op::LOAD_LOAD_LT_JMP_IF_FALSE}
   };
   auto it = M.find(s);
   if (it == M.end()) throw std::runtime_error("Unknown opcode: " + s);
@@ -49,10 +55,14 @@ bool seed::bc::loadTextModule(const std::string& path, Module& out, std::string&
         auto colon = t.find(':');
         if (colon == std::string::npos) continue;
         std::string sval = trim(t.substr(colon + 1));
-        if (sval == "true") out.consts.push_back(1);
-        else if (sval == "false") out.consts.push_back(0);
-        else if (sval == "nil" || sval == "null") out.consts.push_back(0);
-        else out.consts.push_back(std::stoll(sval));
+        ConstTag tag = ConstTag::INT;
+        long long v = 0;
+        if (sval == "true") { tag = ConstTag::BOOL; v = 1; }
+        else if (sval == "false") tag = ConstTag::BOOL;
+        else if (sval == "nil" || sval == "null") tag = ConstTag::NIL;
+        else v = std::stoll(sval);
+        out.consts.push_back(v);
+        out.constTags.push_back(tag);
       } else if (st == State::Funcs) {
         if (t.rfind(".func ", 0) == 0) {
           // .func <idx> <name> arity=X locals=Y
@@ -80,7 +90,7 @@ bool seed::bc::loadTextModule(const std::string& path, Module& out, std::string&
           st = State::Funcs;
           continue;
         }
-        // "<pc>  OPC [a [b]]"
+        // "<pc>  OPC [a [b [c]]]"
         std::istringstream ss(t);
         int pc; ss >> pc;
         std::string opstr; ss >> opstr;
@@ -89,8 +99,11 @@ bool seed::bc::loadTextModule(const std::string& path, Module& out, std::string&
         if (ins.op == Op::CONST || ins.op == Op::LOAD || ins.op == Op::STORE ||
             ins.op == Op::JMP || ins.op == Op::JMP_IF_FALSE) {
           ss >> ins.a;
-        } else if (ins.op == Op::CALL) {
+        } else if (ins.op == Op::CALL || ins.op == Op::TAIL_CALL || ins.op == Op::LOAD_LOAD_ADD) {
           ss >> ins.a >> ins.b;
+        } else if (ins.op == Op::LOAD_CONST_ADD_STORE || ins.op == Op::LOAD_CONST_LT_JMP_IF_FALSE ||
+                   ins.op == Op::LOAD_LOAD_LT_JMP_IF_FALSE) {
+          ss >> ins.a >> ins.b >> ins.c;
         }
         curf.code.push_back(ins);
       }
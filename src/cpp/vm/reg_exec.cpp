@@ -0,0 +1,135 @@
+#include "seed/vm.h"
+#include "seed/regcode.h"
+#include "seed/value.h"
+#include <algorithm>
+#include <chrono>
+#include <iostream>
+#include <stdexcept>
+#include <vector>
+
+using namespace seed;
+
+namespace {
+
+// A suspended caller: its registers start at base, and the callee's result goes to result
+struct RegFrame {
+  const rc::Function* fn;
+  int pc;
+  std::size_t base;
+  std::size_t result;
+};
+
+} // namespace
+
+// Registers of all frames live in one vector; a callee's window starts right above its
+// caller's. The loader has checked register, constant, jump and call operands already.
+bool VM::run(const rc::Module& mod, const std::string& entry, std::ostream& out, std::string& err) {
+  int entryIdx = mod.findFuncByName(entry);
+  if (entryIdx < 0) { err = "Entry function '" + entry + "' not found"; return false; }
+
+  std::vector<Value> k;
+  k.reserve(mod.consts.size());
+  for (std::size_t i = 0; i < mod.consts.size(); ++i) {
+    switch (mod.constTags[i]) {
+      case bc::ConstTag::BOOL: k.push_back(Value::fromBool(mod.consts[i] != 0)); break;
+      case bc::ConstTag::NIL: k.push_back(Value::Nil()); break;
+      default: k.push_back(Value::fromInt(mod.consts[i])); break;
+    }
+  }
+
+  const rc::Function* fn = &mod.funcs[entryIdx];
+  std::vector<Value> regs(std::max(fn->nregs, 1), Value::Nil());
+  std::vector<RegFrame> frames;
+  std::size_t base = 0;
+  int pc = 0;
+  std::size_t op_count = 0;
+
+  // Fuel and deadline, charged on back-edges and calls as in the stack VM
+  using Clock = std::chrono::steady_clock;
+  const Clock::time_point deadline = Clock::now() + std::chrono::milliseconds(timeLimitMs_);
+  std::int64_t fuel = fuel_;
+  std::int64_t budget = 0;
+  const std::int64_t kGrant = 4096;
+  auto charge = [&](){
+    if (--budget >= 0) return;
+    if (fuel_ > 0 && fuel == 0) throw std::runtime_error("Out of fuel (limit " + std::to_string(fuel_) + ")");
+    if (timeLimitMs_ > 0 && Clock::now() >= deadline) {
+      throw std::runtime_error("Time limit exceeded (" + std::to_string(timeLimitMs_) + " ms)");
+    }
+    budget = fuel_ > 0 ? std::min(fuel, kGrant) : kGrant;
+    if (fuel_ > 0) fuel -= budget;
+    --budget;
+  };
+  // Makes room for a callee window at nbase and moves argc arguments from src into it
+  auto enter = [&](const rc::Function* cal, std::size_t nbase, std::size_t src, int argc) {
+    std::size_t need = nbase + std::max(cal->nregs, 1);
+    if (regs.size() < need) regs.resize(need, Value::Nil());
+    for (int i = 0; i < argc; ++i) regs[nbase + i] = regs[src + i];
+    std::fill(regs.begin() + nbase + argc, regs.begin() + need, Value::Nil());
+  };
+
+  try {
+    using Op = rc::Op;
+    while (true) {
+      const rc::Instr& ins = fn->code[pc++];
+      ++op_count;
+      Value* r = regs.data() + base;
+      switch (ins.op) {
+        case Op::MOV: r[ins.a] = r[ins.b]; break;
+        case Op::LOADK: r[ins.a] = k[ins.b]; break;
+        case Op::ADD: r[ins.a] = Value::fromInt(r[ins.b].asInt() + r[ins.c].asInt()); break;
+        case Op::SUB: r[ins.a] = Value::fromInt(r[ins.b].asInt() - r[ins.c].asInt()); break;
+        case Op::MUL: r[ins.a] = Value::fromInt(r[ins.b].asInt() * r[ins.c].asInt()); break;
+        case Op::DIV: r[ins.a] = Value::fromInt(r[ins.b].asInt() / r[ins.c].asInt()); break;
+        case Op::EQ: r[ins.a] = Value::fromBool(r[ins.b].asInt() == r[ins.c].asInt()); break;
+        case Op::NE: r[ins.a] = Value::fromBool(r[ins.b].asInt() != r[ins.c].asInt()); break;
+        case Op::LT: r[ins.a] = Value::fromBool(r[ins.b].asInt() <  r[ins.c].asInt()); break;
+        case Op::LE: r[ins.a] = Value::fromBool(r[ins.b].asInt() <= r[ins.c].asInt()); break;
+        case Op::GT: r[ins.a] = Value::fromBool(r[ins.b].asInt() >  r[ins.c].asInt()); break;
+        case Op::GE: r[ins.a] = Value::fromBool(r[ins.b].asInt() >= r[ins.c].asInt()); break;
+        case Op::NEG: r[ins.a] = Value::fromInt(-r[ins.b].asInt()); break;
+        case Op::NOT: r[ins.a] = Value::fromBool(!r[ins.b].truthy()); break;
+        case Op::JMP:
+          if (ins.a < 0) charge();
+          pc += ins.a;
+          break;
+        case Op::JMPF:
+          if (!r[ins.a].truthy()) pc += ins.b;
+          break;
+        case Op::CALL: {
+          charge();
+          const rc::Function* cal = &mod.funcs[ins.b];
+          std::size_t nbase = base + std::max(fn->nregs, 1);
+          frames.push_back({fn, pc, base, base + ins.a});
+          enter(cal, nbase, base + ins.a, ins.c);
+          fn = cal; pc = 0; base = nbase;
+          break;
+        }
+        case Op::TAILCALL: {
+          charge();
+          const rc::Function* cal = &mod.funcs[ins.b];
+          enter(cal, base, base + ins.a, ins.c);
+          fn = cal; pc = 0;
+          break;
+        }
+        case Op::RET: {
+          Value rv = r[ins.a];
+          if (frames.empty()) {
+            dispatched_ = op_count;
+            return true;
+          }
+          RegFrame f = frames.back();
+          frames.pop_back();
+          regs[f.result] = rv;
+          fn = f.fn; pc = f.pc; base = f.base;
+          break;
+        }
+        case Op::PRINT: out << r[ins.a] << "\n"; break;
+      }
+    }
+  } catch (const std::exception& e) {
+    dispatched_ = op_count;
+    err = e.what();
+    return false;
+  }
+}
@@ -0,0 +1,164 @@
+#include "seed/regcode.h"
+#include <cctype>
+#include <fstream>
+#include <sstream>
+#include <stdexcept>
+#include <unordered_map>
+
+using namespace seed::rc;
+
+namespace {
+
+std::string trim(const std::string& s) {
+  size_t i = 0; while (i < s.size() && std::isspace(static_cast<unsigned char>(s[i]))) ++i;
+  size_t j = s.size(); while (j > i && std::isspace(static_cast<unsigned char>(s[j-1]))) --j;
+  return s.substr(i, j - i);
+}
+
+Op parseOp(const std::string& s) {
+  static const std::unordered_map<std::string, Op> M = {
+    {"MOV", Op::MOV}, {"LOADK", Op::LOADK},
+    {"ADD", Op::ADD}, {"SUB", Op::SUB}, {"MUL", Op::MUL}, {"DIV", Op::DIV},
+    {"EQ", Op::EQ}, {"NE", Op::NE}, {"LT", Op::LT}, {"LE", Op::LE}, {"GT", Op::GT}, {"GE", Op::GE},
+    {"NEG", Op::NEG}, {"NOT", Op::NOT},
+    {"JMP", Op::JMP}, {"JMPF", Op::JMPF},
+    {"CALL", Op::CALL}, {"TAILCALL", Op::TAILCALL}, {"RET", Op::RET},
+    {"PRINT", Op::PRINT}
+  };
+  auto it = M.find(s);
+  if (it == M.end()) throw std::runtime_error("Unknown opcode: " + s);
+  return it->second;
+}
+
+int operands(Op op) {
+  switch (op) {
+    case Op::JMP: case Op::RET: case Op::PRINT: return 1;
+    case Op::MOV: case Op::LOADK: case Op::NEG: case Op::NOT: case Op::JMPF: return 2;
+    default: return 3;
+  }
+}
+
+// The checks of the Java RegVerifier; returns an empty string if f is fine
+std::string check(const Module& m, const Function& f) {
+  auto reg = [&](int r) { return r >= 0 && r < f.nregs; };
+  int n = static_cast<int>(f.code.size());
+  if (f.nregs < f.arity) return f.name + ": fewer registers than parameters";
+  if (n == 0) return f.name + ": code can run off the end";
+  Op last = f.code.back().op;
+  if (last != Op::RET && last != Op::TAILCALL && last != Op::JMP) return f.name + ": code can run off the end";
+  for (int pc = 0; pc < n; ++pc) {
+    const Instr& in = f.code[pc];
+    std::string where = f.name + ":" + std::to_string(pc) + ": ";
+    bool ok = true;
+    switch (in.op) {
+      case Op::MOV: case Op::NEG: case Op::NOT: ok = reg(in.a) && reg(in.b); break;
+      case Op::LOADK:
+        if (in.b < 0 || in.b >= static_cast<int>(m.consts.size())) return where + "LOADK constant out of range";
+        ok = reg(in.a);
+        break;
+      case Op::JMP:
+        if (pc + 1 + in.a < 0 || pc + 1 + in.a >= n) return where + "Jump target out of range";
+        break;
+      case Op::JMPF:
+        if (pc + 1 + in.b < 0 || pc + 1 + in.b >= n) return where + "Jump target out of range";
+        ok = reg(in.a);
+        break;
+      case Op::CALL: case Op::TAILCALL:
+        if (in.b < 0 || in.b >= static_cast<int>(m.funcs.size())) return where + "CALL funcIndex out of range";
+        if (m.funcs[in.b].arity != in.c) return where + "CALL arity mismatch";
+        ok = reg(in.a) && (in.c == 0 || reg(in.a + in.c - 1));
+        break;
+      case Op::RET: case Op::PRINT: ok = reg(in.a); break;
+      default: ok = reg(in.a) && reg(in.b) && reg(in.c); break;
+    }
+    if (!ok) return where + "register out of range";
+  }
+  return "";
+}
+
+} // namespace
+
+bool seed::rc::isRegisterText(const std::string& path) {
+  std::ifstream in(path);
+  std::string line;
+  while (std::getline(in, line)) {
+    std::string t = trim(line);
+    if (t.empty() || t[0] == ';') continue;
+    return t == ".format registers";
+  }
+  return false;
+}
+
+bool seed::rc::loadTextModule(const std::string& path, Module& out, std::string& err) {
+  std::ifstream in(path);
+  if (!in) { err = "Cannot open " + path; return false; }
+  std::string line;
+  enum class State { Start, Consts, Funcs, InFunc } st = State::Start;
+  Function curf;
+  try {
+    while (std::getline(in, line)) {
+      std::string t = trim(line);
+      if (t.empty() || t[0] == ';') continue;
+      if (st == State::Start || st == State::Consts) {
+        if (t.rfind(".consts", 0) == 0) { st = State::Consts; continue; }
+        if (t.rfind(".funcs", 0) == 0) { st = State::Funcs; continue; }
+        if (st == State::Start) continue; // .format
+        // "i: value"
+        auto colon = t.find(':');
+        if (colon == std::string::npos) continue;
+        std::string sval = trim(t.substr(colon + 1));
+        bc::ConstTag tag = bc::ConstTag::INT;
+        long long v = 0;
+        if (sval == "true") { tag = bc::ConstTag::BOOL; v = 1; }
+        else if (sval == "false") tag = bc::ConstTag::BOOL;
+        else if (sval == "nil") tag = bc::ConstTag::NIL;
+        else v = std::stoll(sval);
+        out.consts.push_back(v);
+        out.constTags.push_back(tag);
+      } else if (st == State::Funcs) {
+        if (t.rfind(".func ", 0) == 0) {
+          // .func <idx> <name> arity=X regs=Y
+          std::istringstream ss(t);
+          std::string dotfunc, name, arityEq, regsEq;
+          int idx;
+          ss >> dotfunc >> idx >> name >> arityEq >> regsEq;
+          auto value = [](const std::string& kv) {
+            auto p = kv.find('=');
+            return p == std::string::npos ? 0 : std::stoi(kv.substr(p + 1));
+          };
+          curf = Function();
+          curf.name = name;
+          curf.arity = value(arityEq);
+          curf.nregs = value(regsEq);
+          st = State::InFunc;
+        }
+      } else if (st == State::InFunc) {
+        if (t == ".end") {
+          out.funcs.push_back(curf);
+          st = State::Funcs;
+          continue;
+        }
+        // "<pc>  OPC a [b [c]]"
+        std::istringstream ss(t);
+        int pc; ss >> pc;
+        std::string opstr; ss >> opstr;
+        Instr ins{};
+        ins.op = parseOp(opstr);
+        int k = operands(ins.op);
+        ss >> ins.a;
+        if (k > 1) ss >> ins.b;
+        if (k > 2) ss >> ins.c;
+        if (ss.fail()) throw std::runtime_error("Missing operand in '" + t + "'");
+        curf.code.push_back(ins);
+      }
+    }
+  } catch (const std::exception& ex) {
+    err = std::string("Parse error: ") + ex.what();
+    return false;
+  }
+  for (const Function& f : out.funcs) {
+    std::string problem = check(out, f);
+    if (!problem.empty()) { err = problem; return false; }
+  }
+  return true;
+}
@@ -1,7 +1,9 @@
 #include "seed/vm.h"
 #include "seed/value.h"
 #include "seed/gc.h"
+#include <algorithm>
 #include <vector>
+#include <chrono>
 #include <iostream>
 #include <stdexcept>
 #include <cstdlib>
@@ -23,7 +25,6 @@ static const char* opname(bc::Op op) {
     case Op::SUB: return "SUB";
     case Op::MUL: return "MUL";
     case Op::DIV: return "DIV";
-    case Op::MOD: return "MOD";
     case Op::NOT: return "NOT";
     case Op::EQ: return "EQ";
     case Op::NE: return "NE";
@@ -34,8 +35,24 @@ static const char* opname(bc::Op op) {
     case Op::JMP: return "JMP";
     case Op::JMP_IF_FALSE: return "JMP_IF_FALSE";
     case Op::CALL: return "CALL";
+    case Op::TAIL_CALL: return "TAIL_CALL";
     case Op::RET: return "RET";
     case Op::PRINT: return "PRINT";
+    case Op::IADD: return "IADD";
+    case Op::ISUB: return "ISUB";
+    case Op::IMUL: return "IMUL";
+    case Op::IDIV: return "IDIV";
+    case Op::BNOT: return "BNOT";
+    case Op::IEQ: return "IEQ";
+    case Op::INE: return "INE";
+    case Op::ILT: return "ILT";
+    case Op::ILE: return "ILE";
+    case Op::IGT: return "IGT";
+    case Op::IGE: return "IGE";
+    case Op::LOAD_LOAD_ADD: return "LOAD_LOAD_ADD";
+    case Op::LOAD_CONST_ADD_STORE: return "LOAD_CONST_ADD_STORE";
+    case Op::LOAD_CONST_LT_JMP_IF_FALSE: return "LOAD_CONST_LT_JMP_IF_FALSE";
+    case Op::LOAD_LOAD_LT_JMP_IF_FALSE: return "LOAD_LOAD_LT_JMP_IF_FALSE";
     default: return "UNKNOWN";
   }
 }
@@ -72,6 +89,15 @@ bool VM::run(const bc::Module& mod, const std::string& entry, std::ostream& out,
     Value v = stack.back(); stack.pop_back(); return v;
   };
   auto push = [&](const Value& v){ stack.push_back(v); };
+  // Operands of the superinstructions
+  auto local = [&](Frame& f, int i) -> const Value& {
+    if (i < 0 || i >= (int)f.locals.size()) throw std::runtime_error("LOAD out of range");
+    return f.locals[i];
+  };
+  auto intConst = [&](int idx) -> long long {
+    if (idx < 0 || idx >= (int)mod.consts.size()) throw std::runtime_error("CONST out of range");
+    return mod.consts[idx];
+  };
 
   // Optional periodic GC: collect every N executed instructions using current roots
   std::size_t op_count = 0;
@@ -81,6 +107,23 @@ bool VM::run(const bc::Module& mod, const std::string& entry, std::ostream& out,
     if (gc_every < 0) gc_every = 0;
   }
 
+  // Fuel and deadline: charge() runs on back-edges and calls; the clock is read once per grant
+  using Clock = std::chrono::steady_clock;
+  const Clock::time_point deadline = Clock::now() + std::chrono::milliseconds(timeLimitMs_);
+  std::int64_t fuel = fuel_;
+  std::int64_t budget = 0;
+  const std::int64_t kGrant = 4096;
+  auto charge = [&](){
+    if (--budget >= 0) return;
+    if (fuel_ > 0 && fuel == 0) throw std::runtime_error("Out of fuel (limit " + std::to_string(fuel_) + ")");
+    if (timeLimitMs_ > 0 && Clock::now() >= deadline) {
+      throw std::runtime_error("Time limit exceeded (" + std::to_string(timeLimitMs_) + " ms)");
+    }
+    budget = fuel_ > 0 ? std::min(fuel, kGrant) : kGrant;
+    if (fuel_ > 0) fuel -= budget;
+    --budget;
+  };
+
   auto collect_roots = [&](){
     if (gc_every <= 0) return;
     std::vector<void*> roots;
@@ -113,7 +156,7 @@ bool VM::run(const bc::Module& mod, const std::string& entry, std::ostream& out,
 
       if (trace) {
         std::cerr << "[pc=" << (fr.pc - 1) << "] " << opname(ins.op)
-                  << " a=" << ins.a << " b=" << ins.b
+                  << " a=" << ins.a << " b=" << ins.b << " c=" << ins.c
                   << " stack=" << stack.size() << "\n";
       }
       switch (ins.op) {
@@ -128,7 +171,12 @@ bool VM::run(const bc::Module& mod, const std::string& entry, std::ostream& out,
         case Op::CONST: {
           int idx = ins.a;
           if (idx < 0 || idx >= (int)mod.consts.size()) throw std::runtime_error("CONST out of range");
-          push(Value::fromInt(mod.consts[idx]));
+          long long k = mod.consts[idx];
+          switch (idx < (int)mod.constTags.size() ? mod.constTags[idx] : bc::ConstTag::INT) {
+            case bc::ConstTag::BOOL: push(Value::fromBool(k != 0)); break;
+            case bc::ConstTag::NIL: push(Value::Nil()); break;
+            default: push(Value::fromInt(k)); break;
+          }
           break;
         }
         case Op::LOAD: {
@@ -157,7 +205,6 @@ bool VM::run(const bc::Module& mod, const std::string& entry, std::ostream& out,
         case Op::SUB: { Value b = pop(), a = pop(); push(Value::fromInt(a.asInt() - b.asInt())); break; }
         case Op::MUL: { Value b = pop(), a = pop(); push(Value::fromInt(a.asInt() * b.asInt())); break; }
         case Op::DIV: { Value b = pop(), a = pop(); push(Value::fromInt(a.asInt() / b.asInt())); break; }
-        case Op::MOD: { Value b = pop(), a = pop(); push(Value::fromInt(a.asInt() % b.asInt())); break; }
         case Op::NOT: { Value a = pop(); push(Value::fromBool(!truthy(a))); break; }
         case Op::EQ:  { Value b = pop(), a = pop(); push(Value::fromBool(a.asInt() == b.asInt())); break; }
         case Op::NE:  { Value b = pop(), a = pop(); push(Value::fromBool(a.asInt() != b.asInt())); break; }
@@ -165,7 +212,20 @@ bool VM::run(const bc::Module& mod, const std::string& entry, std::ostream& out,
         case Op::LE:  { Value b = pop(), a = pop(); push(Value::fromBool(a.asInt() <= b.asInt())); break; }
         case Op::GT:  { Value b = pop(), a = pop(); push(Value::fromBool(a.asInt() >  b.asInt())); break; }
         case Op::GE:  { Value b = pop(), a = pop(); push(Value::fromBool(a.asInt() >= b.asInt())); break; }
+        // Typed forms: the operands were proven int (bool for BNOT), so the payloads are used as is
+        case Op::IADD: { Value b = pop(), a = pop(); push(Value::fromInt(a.asInt() + b.asInt())); break; }
+        case Op::ISUB: { Value b = pop(), a = pop(); push(Value::fromInt(a.asInt() - b.asInt())); break; }
+        case Op::IMUL: { Value b = pop(), a = pop(); push(Value::fromInt(a.asInt() * b.asInt())); break; }
+        case Op::IDIV: { Value b = pop(), a = pop(); push(Value::fromInt(a.asInt() / b.asInt())); break; }
+        case Op::BNOT: { Value a = pop(); push(Value::fromBool(!a.asBool())); break; }
+        case Op::IEQ: { Value b = pop(), a = pop(); push(Value::fromBool(a.asInt() == b.asInt())); break; }
+        case Op::INE: { Value b = pop(), a = pop(); push(Value::fromBool(a.asInt() != b.asInt())); break; }
+        case Op::ILT: { Value b = pop(), a = pop(); push(Value::fromBool(a.asInt() <  b.asInt())); break; }
+        case Op::ILE: { Value b = pop(), a = pop(); push(Value::fromBool(a.asInt() <= b.asInt())); break; }
+        case Op::IGT: { Value b = pop(), a = pop(); push(Value::fromBool(a.asInt() >  b.asInt())); break; }
+        case Op::IGE: { Value b = pop(), a = pop(); push(Value::fromBool(a.asInt() >= b.asInt())); break; }
         case Op::JMP: {
+          if (ins.a < 0) charge();
           fr.pc = fr.pc + ins.a;
           break;
         }
@@ -177,6 +237,7 @@ bool VM::run(const bc::Module& mod, const std::string& entry, std::ostream& out,
           break;
         }
         case Op::CALL: {
+          charge();
           int fidx = ins.a;
           int argc = ins.b;
           if (fidx < 0 || fidx >= (int)mod.funcs.size()) throw std::runtime_error("CALL out of range");
@@ -192,6 +253,20 @@ bool VM::run(const bc::Module& mod, const std::string& entry, std::ostream& out,
           for (int i = 0; i < argc; ++i) nf.locals[i] = args[i];
           break;
         }
+        case Op::TAIL_CALL: {
+          // Replace the current frame instead of pushing one, so tail recursion runs in constant space
+          charge();
+          int fidx = ins.a;
+          int argc = ins.b;
+          if (fidx < 0 || fidx >= (int)mod.funcs.size()) throw std::runtime_error("TAIL_CALL out of range");
+          const bc::Function* cal = &mod.funcs[fidx];
+          if (argc != cal->arity) throw std::runtime_error("TAIL_CALL arity mismatch");
+          fr.fn = cal;
+          fr.pc = 0;
+          fr.locals.assign(cal->nlocals, Value::Nil());
+          for (int i = argc - 1; i >= 0; --i) { fr.locals[i] = pop(); }
+          break;
+        }
         case Op::RET: {
           Value rv = stack.empty() ? Value::Nil() : pop();
           callstack.pop_back();
@@ -207,13 +282,33 @@ bool VM::run(const bc::Module& mod, const std::string& entry, std::ostream& out,
           out << v << "\n";
           break;
         }
+        case Op::LOAD_LOAD_ADD: {
+          push(Value::fromInt(local(fr, ins.a).asInt() + local(fr, ins.b).asInt()));
+          break;
+        }
+        case Op::LOAD_CONST_ADD_STORE: {
+          Value v = Value::fromInt(local(fr, ins.a).asInt() + intConst(ins.b));
+          if (ins.c < 0 || ins.c >= (int)fr.locals.size()) throw std::runtime_error("STORE out of range");
+          fr.locals[ins.c] = v;
+          break;
+        }
+        case Op::LOAD_CONST_LT_JMP_IF_FALSE: {
+          if (!(local(fr, ins.a).asInt() < intConst(ins.b))) fr.pc = fr.pc + ins.c;
+          break;
+        }
+        case Op::LOAD_LOAD_LT_JMP_IF_FALSE: {
+          if (!(local(fr, ins.a).asInt() < local(fr, ins.b).asInt())) fr.pc = fr.pc + ins.c;
+          break;
+        }
         default:
           throw std::runtime_error("Unknown opcode at runtime");
       }
     }
   } catch (const std::exception& e) {
+    dispatched_ = op_count;
     err = e.what();
     return false;
   }
+  dispatched_ = op_count;
   return true;
 }
\ No newline at end of file
@@ -12,14 +12,24 @@ enum class Op {
   NOT,
   EQ, NE, LT, LE, GT, GE,
   JMP, JMP_IF_FALSE,
-  CALL, RET,
-  PRINT
+  CALL, TAIL_CALL, RET,
+  PRINT,
+  // Typed forms of ADD..DIV, NOT and EQ..GE; the Java Verifier proved the operands int (bool for BNOT)
+  IADD, ISUB, IMUL, IDIV,
+  BNOT,
+  IEQ, INE, ILT, ILE, IGT, IGE,
+  // Superinstructions (see Java bytecode.opt.Superinstructions); k must be an int constant
+  LOAD_LOAD_ADD,               // a b:   push local a + local b
+  LOAD_CONST_ADD_STORE,        // a k c: local c = local a + k
+  LOAD_CONST_LT_JMP_IF_FALSE,  // a k c: jump by c unless local a < k
+  LOAD_LOAD_LT_JMP_IF_FALSE    // a b c: jump by c unless local a < local b
 };
 
 struct Instr {
   Op op;
   int a{0};
   int b{0};
+  int c{0};
 };
 
 struct Function {
@@ -29,8 +39,12 @@ struct Function {
   std::vector<Instr> code;
 };
 
+// Constant kinds, parallel to Module::consts (bools are 0/1 and nil is 0 in consts)
+enum class ConstTag : std::uint8_t { INT, BOOL, NIL };
+
 struct Module {
   std::vector<long long> consts;
+  std::vector<ConstTag> constTags;
   std::vector<Function> funcs;
 
   int findFuncIndex(const std::string& name, int arity) const {
@@ -50,4 +64,11 @@ struct Module {
 // Load textual .sbc (as produced by Java TextWriter)
 bool loadTextModule(const std::string& path, Module& out, std::string& err);
 
+// Binary .sbc (as produced by Java BinaryWriter), memory-mapped and decoded in one pass
+bool isBinaryModule(const std::string& path);
+bool loadBinaryModule(const std::string& path, Module& out, std::string& err);
+
+// Either of the two, told apart by the binary magic
+bool loadModule(const std::string& path, Module& out, std::string& err);
+
 } // namespace seed::bc
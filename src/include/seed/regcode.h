@@ -0,0 +1,54 @@
+#pragma once
+#include <string>
+#include <vector>
+#include "seed/bytecode.h"
+
+// Register code: three-address instructions over the registers of a frame, the alternative
+// lowering written by the Java RegCompiler (Compile --registers)
+namespace seed::rc {
+
+enum class Op {
+  MOV, LOADK,
+  ADD, SUB, MUL, DIV,
+  EQ, NE, LT, LE, GT, GE,
+  NEG, NOT,
+  JMP, JMPF,
+  CALL, TAILCALL, RET,
+  PRINT
+};
+
+struct Instr {
+  Op op;
+  int a{0};
+  int b{0};
+  int c{0};
+};
+
+struct Function {
+  std::string name;
+  int arity{0};
+  int nregs{0};
+  std::vector<Instr> code;
+};
+
+struct Module {
+  std::vector<long long> consts;
+  std::vector<bc::ConstTag> constTags;
+  std::vector<Function> funcs;
+
+  int findFuncByName(const std::string& name) const {
+    for (int i = 0; i < static_cast<int>(funcs.size()); ++i) {
+      if (funcs[i].name == name) return i;
+    }
+    return -1;
+  }
+};
+
+// True if the file starts with the ".format registers" directive
+bool isRegisterText(const std::string& path);
+
+// Load textual register code (as produced by Java RegTextWriter) and check it the way
+// RegVerifier does, so the interpreter can skip range checks
+bool loadTextModule(const std::string& path, Module& out, std::string& err);
+
+} // namespace seed::rc
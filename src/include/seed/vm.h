@@ -1,7 +1,9 @@
 #pragma once
+#include <cstdint>
 #include <iosfwd>
 #include <string>
 #include "seed/bytecode.h"
+#include "seed/regcode.h"
 
 namespace seed {
 
@@ -12,6 +14,22 @@ public:
   // Run entry function (default "main") and print using provided stream.
   // Returns true on success; false and sets err on error.
   bool run(const bc::Module& mod, const std::string& entry, std::ostream& out, std::string& err);
+
+  // Same for register code; the fuel, time limit and dispatch count apply alike
+  bool run(const rc::Module& mod, const std::string& entry, std::ostream& out, std::string& err);
+
+  // Budgets for run(): one unit of fuel per loop back-edge and per call, and a wall-clock
+  // limit that is checked every few thousand units. Running out is an error. 0 means none.
+  void setFuel(std::int64_t fuel) { fuel_ = fuel; }
+  void setTimeLimitMs(std::int64_t ms) { timeLimitMs_ = ms; }
+
+  // Instructions dispatched by the last run()
+  std::uint64_t dispatched() const { return dispatched_; }
+
+private:
+  std::int64_t fuel_ = 0;
+  std::int64_t timeLimitMs_ = 0;
+  std::uint64_t dispatched_ = 0;
 };
 
 } // namespace seed